@@ -0,0 +1,83 @@
+package uk.nhs.fhir.benchmarks.render;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.nhs.fhir.event.RendererLoggingEventHandler;
+import uk.nhs.fhir.render.FhirProfileRenderer;
+import uk.nhs.fhir.render.RendererExitStatus;
+
+/**
+ * A whole rendering job, from finding the files to copying the rendered pages into place, as the publishing pipeline runs it.
+ * Each run renders into an empty output folder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class EndToEndRenderBenchmark {
+
+	@Param({"10", "100"})
+	public int scale;
+
+	@Param({"20"})
+	public int profiles;
+
+	@Param({"1", "4"})
+	public int renderThreads;
+
+	private RenderFixture fixture;
+	private Path output;
+	private FhirProfileRenderer renderer;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		fixture = new RenderFixture(scale, profiles);
+	}
+
+	@Setup(Level.Iteration)
+	public void newRenderer() throws IOException {
+		output = Files.createTempDirectory("fhir-render-benchmarks-out");
+		renderer = new FhirProfileRenderer(fixture.getFolder(), output, Optional.empty(), Optional.empty(), Optional.empty(),
+			new RendererLoggingEventHandler(), Optional.empty(), false, renderThreads);
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteOutput() throws IOException {
+		FileUtils.deleteDirectory(output.toFile());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		fixture.delete();
+	}
+
+	@Benchmark
+	public RendererExitStatus process() {
+		RendererExitStatus status = renderer.process();
+		if (status == RendererExitStatus.FINISHED_WITH_ERRORS) {
+			throw new IllegalStateException("Rendering the generated resources failed");
+		}
+		return status;
+	}
+}
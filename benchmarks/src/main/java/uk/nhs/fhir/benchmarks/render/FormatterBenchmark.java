@@ -0,0 +1,137 @@
+package uk.nhs.fhir.benchmarks.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.jdom2.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.CharStreams;
+
+import uk.nhs.fhir.data.wrap.WrappedResource;
+import uk.nhs.fhir.render.DefaultRendererFileLocator;
+import uk.nhs.fhir.render.FormattedOutputSpec;
+import uk.nhs.fhir.render.format.HTMLDocSection;
+import uk.nhs.fhir.render.format.ResourceFormatter;
+import uk.nhs.fhir.render.format.ResourceFormatterFactory;
+import uk.nhs.fhir.render.format.SectionedHTMLDoc;
+import uk.nhs.fhir.render.html.HTMLUtil;
+
+/**
+ * Each page the renderer writes for a resource, named by resource type and file name. The formatters for one resource share
+ * the resource's wrapper, which keeps the trees it builds, so as while rendering only the first formatter to ask builds them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatterBenchmark {
+
+	private static final String SEPARATOR = "/";
+
+	@Param({"10", "100"})
+	public int scale;
+
+	@Param({"StructureDefinition/metadata.html", "StructureDefinition/snapshot.html", "StructureDefinition/bindings.html",
+		"StructureDefinition/details.html", "StructureDefinition/full.html", "StructureDefinition/differential.html",
+		"CodeSystem/metadata.html", "CodeSystem/concepts.html", "CodeSystem/codesystem-full.html",
+		"ValueSet/render.html"})
+	public String page;
+
+	private RenderFixture fixture;
+	private ResourceFormatter<?> formatter;
+	private Document html;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, ParserConfigurationException {
+		fixture = new RenderFixture(scale, 1);
+
+		String resourceType = page.substring(0, page.indexOf(SEPARATOR));
+		String filename = page.substring(page.indexOf(SEPARATOR) + 1);
+
+		File file;
+		switch (resourceType) {
+			case "StructureDefinition":
+				file = fixture.profileFile();
+				break;
+			case "CodeSystem":
+				file = fixture.codeSystemFile();
+				break;
+			case "ValueSet":
+				file = fixture.valueSetFile();
+				break;
+			default:
+				throw new IllegalArgumentException("No generated " + resourceType);
+		}
+
+		formatter = formatter(fixture.current(file), file, filename);
+
+		HTMLDocSection section = formatter.makeSectionHTML();
+		if (section == null) {
+			throw new IllegalStateException("Formatter for " + page + " has nothing to show for the generated " + resourceType);
+		}
+		SectionedHTMLDoc doc = new SectionedHTMLDoc();
+		doc.addSection(section);
+		html = doc.getHTML();
+	}
+
+	private <T extends WrappedResource<T>> ResourceFormatter<?> formatter(WrappedResource<?> resource, File file, String filename) {
+		@SuppressWarnings("unchecked")
+		T typedResource = (T)resource;
+
+		DefaultRendererFileLocator locator = new DefaultRendererFileLocator(fixture.getFolder(), fixture.getFolder().resolve("rendered"), fixture.getFolder().resolve("out"));
+		List<FormattedOutputSpec<?>> specs = new ResourceFormatterFactory().allFormatterSpecs(typedResource, locator, file.getName());
+
+		for (FormattedOutputSpec<?> spec : specs) {
+			if (spec.getOutputPath(file.getPath()).getFileName().toString().equals(filename)) {
+				return spec.getFormatter();
+			}
+		}
+
+		throw new IllegalArgumentException("No formatter writes " + filename + " for " + file.getName());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		fixture.delete();
+	}
+
+	@Benchmark
+	public HTMLDocSection makeSectionHTML() throws ParserConfigurationException {
+		return formatter.makeSectionHTML();
+	}
+
+	/**
+	 * Serialising the whole page to a String, as FormattedOutputSpec used to before writing it
+	 */
+	@Benchmark
+	public String docToString() throws IOException {
+		return HTMLUtil.docToString(html, true, false);
+	}
+	
+	/**
+	 * Serialising the page as it is written, as FormattedOutputSpec does
+	 */
+	@Benchmark
+	public void writeDoc() throws IOException {
+		HTMLUtil.writeDoc(html, true, false, CharStreams.nullWriter());
+	}
+}
@@ -0,0 +1,90 @@
+package uk.nhs.fhir.benchmarks.render;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.nhs.fhir.event.RendererLoggingEventHandler;
+import uk.nhs.fhir.render.FhirProfileRenderer;
+import uk.nhs.fhir.render.RendererExitStatus;
+
+/**
+ * An incremental rendering job into a folder which already holds the output of a full render. Either nothing has
+ * changed, or the extension which every profile uses has, so the extension and all the profiles are rendered again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class IncrementalRenderBenchmark {
+
+	@Param({"100"})
+	public int scale;
+
+	@Param({"20"})
+	public int profiles;
+
+	@Param({"none", "extension"})
+	public String changed;
+
+	private RenderFixture fixture;
+	private Path output;
+	private FhirProfileRenderer renderer;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		fixture = new RenderFixture(scale, profiles);
+		output = Files.createTempDirectory("fhir-render-benchmarks-out");
+		newRenderer().process();
+	}
+
+	@Setup(Level.Iteration)
+	public void prepareRender() throws IOException {
+		if (changed.equals("extension")) {
+			// trailing whitespace changes the content hash without changing the resource
+			Files.write(fixture.extensionFile().toPath(), "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		}
+		renderer = newRenderer();
+	}
+
+	private FhirProfileRenderer newRenderer() {
+		return new FhirProfileRenderer(fixture.getFolder(), output, Optional.empty(), Optional.empty(), Optional.empty(),
+			new RendererLoggingEventHandler(), Optional.empty(), false, 1, true);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(output.toFile());
+		fixture.delete();
+	}
+
+	@Benchmark
+	public RendererExitStatus process() {
+		RendererExitStatus status = renderer.process();
+		if (status == RendererExitStatus.FINISHED_WITH_ERRORS) {
+			throw new IllegalStateException("Rendering the generated resources failed");
+		}
+		return status;
+	}
+}
@@ -0,0 +1,66 @@
+package uk.nhs.fhir.benchmarks.render;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.nhs.fhir.load.FhirFileParser;
+import uk.nhs.fhir.load.FhirParsingFailedException;
+
+/**
+ * Parsing the files the renderer finds, which it does once for each file before rendering anything
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({"10", "100"})
+	public int scale;
+
+	private RenderFixture fixture;
+	private FhirFileParser parser;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		fixture = new RenderFixture(scale, 1);
+		parser = new FhirFileParser();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		fixture.delete();
+	}
+
+	@Benchmark
+	public IBaseResource parseStructureDefinition() throws FhirParsingFailedException {
+		return parser.parseFile(fixture.profileFile());
+	}
+
+	@Benchmark
+	public IBaseResource parseCodeSystem() throws FhirParsingFailedException {
+		return parser.parseFile(fixture.codeSystemFile());
+	}
+
+	@Benchmark
+	public IBaseResource parseValueSet() throws FhirParsingFailedException {
+		return parser.parseFile(fixture.valueSetFile());
+	}
+}
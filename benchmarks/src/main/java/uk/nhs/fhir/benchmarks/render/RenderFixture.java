@@ -0,0 +1,86 @@
+package uk.nhs.fhir.benchmarks.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.data.wrap.WrappedResource;
+import uk.nhs.fhir.data.wrap.WrappedStructureDefinition;
+import uk.nhs.fhir.render.RendererContext;
+import uk.nhs.fhir.util.FhirFileRegistry;
+
+/**
+ * Generated resources registered as the renderer would register them, so that a benchmark can format one resource with the
+ * others available to it (the extensions a profile uses, the CodeSystem a ValueSet draws on).
+ * The renderer's context is per thread, so this has to be set up on the thread which runs the benchmark.
+ */
+public class RenderFixture {
+
+	private final Path folder;
+	private final List<File> profileFiles;
+	private final FhirFileRegistry registry = new FhirFileRegistry();
+
+	public RenderFixture(int scale, int profiles) throws IOException {
+		folder = Files.createTempDirectory("fhir-render-benchmarks");
+		profileFiles = new SyntheticResources(scale).write(folder, profiles);
+
+		for (File file : FileUtils.listFiles(folder.toFile(), new String[]{"xml"}, true)) {
+			registry.register(file);
+		}
+
+		RendererContext.forThread().setFhirFileRegistry(registry);
+	}
+
+	public Path getFolder() {
+		return folder;
+	}
+
+	public FhirFileRegistry getRegistry() {
+		return registry;
+	}
+
+	public File profileFile() {
+		return profileFiles.get(0);
+	}
+
+	public File extensionFile() {
+		return SyntheticResources.file(folder, ResourceType.STRUCTUREDEFINITION, SyntheticResources.extensionName(0));
+	}
+
+	public File codeSystemFile() {
+		return SyntheticResources.file(folder, ResourceType.CODESYSTEM, SyntheticResources.codeSystemName());
+	}
+
+	public File valueSetFile() {
+		return SyntheticResources.file(folder, ResourceType.VALUESET, SyntheticResources.valueSetName());
+	}
+
+	public WrappedStructureDefinition profile() {
+		return (WrappedStructureDefinition)current(profileFile());
+	}
+
+	/**
+	 * The registered resource for a file, made the renderer's current resource as it would be while the file is rendered
+	 */
+	public WrappedResource<?> current(File file) {
+		WrappedResource<?> resource = registry.getResource(file);
+		if (resource == null) {
+			throw new IllegalStateException("Generated file wasn't registered: " + file);
+		}
+
+		RendererContext.forThread().setCurrentSource(file);
+		RendererContext.forThread().setCurrentParsedResource(Optional.of(resource));
+		return resource;
+	}
+
+	public void delete() throws IOException {
+		RendererContext.forThread().clearCurrent();
+		FileUtils.deleteDirectory(folder.toFile());
+	}
+}
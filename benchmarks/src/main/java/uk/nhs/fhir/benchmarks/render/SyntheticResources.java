@@ -0,0 +1,428 @@
+package uk.nhs.fhir.benchmarks.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.util.FhirURLConstants;
+
+/**
+ * Writes generated STU3 resources shaped like the CareConnect and NHS Digital profiles, at sizes well beyond the real ones:
+ * Observation profiles whose components are sliced, with the codings of each component slice sliced again, plus the extensions
+ * they use and a large CodeSystem with a ValueSet drawing on all of it.
+ * The scale is the number of component slices in each profile (each adds about 30 snapshot elements) and a hundredth of the
+ * number of concepts in the CodeSystem.
+ */
+public class SyntheticResources {
+
+	public static final String NAME_PREFIX = "Bench-";
+	// Default local domain, so that the renderer treats the resources as ours. The FHIR version is taken from the URL.
+	private static final String URL_PREFIX = FhirURLConstants.FHIR_NHS_UK_QDOMAIN + "/STU3/";
+	private static final String HL7_URL_PREFIX = "http://hl7.org/fhir/StructureDefinition/";
+
+	static final int EXTENSIONS = 10;
+	static final int CONCEPTS_PER_SCALE = 100;
+	private static final String[] CODING_SYSTEMS = {"snomed", "read"};
+	private static final int NOT_SLICED = -1;
+
+	private final int scale;
+
+	public SyntheticResources(int scale) {
+		this.scale = scale;
+	}
+
+	public static String profileName(int profile) {
+		return NAME_PREFIX + "Observation-" + profile;
+	}
+
+	public static String extensionName(int extension) {
+		return "Extension-" + NAME_PREFIX + extension;
+	}
+
+	public static String codeSystemName() {
+		return NAME_PREFIX + "CodeSystem";
+	}
+
+	public static String valueSetName() {
+		return NAME_PREFIX + "ValueSet";
+	}
+
+	private static String url(ResourceType type, String name) {
+		return URL_PREFIX + type.getHAPIName() + "/" + name;
+	}
+
+	/**
+	 * Writes the profiles, extensions, CodeSystem and ValueSet, laid out in folders by resource type as they are in the
+	 * specification repositories.
+	 * @return the profiles' files
+	 */
+	public List<File> write(Path folder, int profiles) throws IOException {
+		List<File> profileFiles = Lists.newArrayList();
+		for (int profile = 0; profile < profiles; profile++) {
+			profileFiles.add(write(folder, ResourceType.STRUCTUREDEFINITION, profileName(profile), structureDefinition(profile)));
+		}
+
+		for (int extension = 0; extension < EXTENSIONS; extension++) {
+			write(folder, ResourceType.STRUCTUREDEFINITION, extensionName(extension), extension(extension));
+		}
+
+		write(folder, ResourceType.CODESYSTEM, codeSystemName(), codeSystem());
+		write(folder, ResourceType.VALUESET, valueSetName(), valueSet());
+
+		return profileFiles;
+	}
+
+	public static File file(Path folder, ResourceType type, String name) {
+		return folder.resolve(type.getFolderName()).resolve(name + ".xml").toFile();
+	}
+
+	private static File write(Path folder, ResourceType type, String name, String xml) throws IOException {
+		File file = file(folder, type, name);
+		Files.createDirectories(file.getParentFile().toPath());
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	String structureDefinition(int profile) {
+		String name = profileName(profile);
+		StringBuilder xml = new StringBuilder(scale * 12 * 1024);
+		appendHeader(xml, ResourceType.STRUCTUREDEFINITION, name, "Observation profile with " + scale + " sliced components");
+		xml.append("  <fhirVersion value=\"3.0.1\"/>\n")
+			.append("  <kind value=\"resource\"/>\n")
+			.append("  <abstract value=\"false\"/>\n")
+			.append("  <type value=\"Observation\"/>\n")
+			.append("  <baseDefinition value=\"").append(HL7_URL_PREFIX).append("Observation\"/>\n")
+			.append("  <derivation value=\"constraint\"/>\n");
+
+		xml.append("  <snapshot>\n");
+		new ElementXml("Observation").appendTo(xml);
+		new ElementXml("Observation.id").max("1").type("id").appendTo(xml);
+		new ElementXml("Observation.meta").max("1").type("Meta").appendTo(xml);
+		new ElementXml("Observation.implicitRules").max("1").type("uri").appendTo(xml);
+		new ElementXml("Observation.language").max("1").type("code").appendTo(xml);
+		new ElementXml("Observation.text").max("1").type("Narrative").appendTo(xml);
+		new ElementXml("Observation.contained").type("Resource").appendTo(xml);
+		new ElementXml("Observation.extension").slicedBy("url").type("Extension").appendTo(xml);
+		for (int extension = 0; extension < EXTENSIONS; extension++) {
+			extensionSlice(extension).appendTo(xml);
+		}
+		new ElementXml("Observation.modifierExtension").type("Extension").appendTo(xml);
+		new ElementXml("Observation.identifier").type("Identifier").appendTo(xml);
+		new ElementXml("Observation.status").min("1").max("1").type("code")
+			.binding("required", "http://hl7.org/fhir/ValueSet/observation-status").appendTo(xml);
+		new ElementXml("Observation.category").type("CodeableConcept").appendTo(xml);
+		codeableConcept(xml, "Observation.code", "Observation.code", NOT_SLICED);
+		new ElementXml("Observation.subject").max("1").reference("Patient").appendTo(xml);
+		new ElementXml("Observation.effective[x]").max("1").type("dateTime").type("Period").appendTo(xml);
+		new ElementXml("Observation.issued").max("1").type("instant").appendTo(xml);
+		new ElementXml("Observation.value[x]").max("1").type("Quantity").type("CodeableConcept").type("string").appendTo(xml);
+		new ElementXml("Observation.interpretation").max("1").type("CodeableConcept").appendTo(xml);
+		new ElementXml("Observation.comment").max("1").type("string").appendTo(xml);
+		new ElementXml("Observation.component").slicedBy("code").type("BackboneElement").appendTo(xml);
+		component(xml, "Observation.component", NOT_SLICED);
+		for (int slice = 0; slice < scale; slice++) {
+			String id = "Observation.component:" + componentSlice(slice);
+			new ElementXml(id, "Observation.component").sliceName(componentSlice(slice)).max("1").type("BackboneElement").appendTo(xml);
+			component(xml, id, slice);
+		}
+		xml.append("  </snapshot>\n");
+
+		xml.append("  <differential>\n");
+		for (int extension = 0; extension < EXTENSIONS; extension++) {
+			extensionSlice(extension).appendTo(xml);
+		}
+		new ElementXml("Observation.code").min("1").max("1").binding("preferred", url(ResourceType.VALUESET, valueSetName())).appendTo(xml);
+		new ElementXml("Observation.component").slicedBy("code").appendTo(xml);
+		for (int slice = 0; slice < scale; slice++) {
+			String id = "Observation.component:" + componentSlice(slice);
+			new ElementXml(id, "Observation.component").sliceName(componentSlice(slice)).max("1").appendTo(xml);
+			new ElementXml(id + ".code.coding", "Observation.component.code.coding").slicedBy("system").appendTo(xml);
+			for (String system : CODING_SYSTEMS) {
+				String codingId = id + ".code.coding:" + system + slice;
+				new ElementXml(codingId, "Observation.component.code.coding").sliceName(system + slice).min("1").max("1").appendTo(xml);
+				new ElementXml(codingId + ".system", "Observation.component.code.coding.system").min("1").fixedUri(codingSystemUrl(system)).appendTo(xml);
+			}
+			new ElementXml(id + ".value[x]", "Observation.component.value[x]").type("Quantity").appendTo(xml);
+		}
+		xml.append("  </differential>\n");
+
+		return xml.append("</StructureDefinition>\n").toString();
+	}
+
+	private static String codingSystemUrl(String system) {
+		return "https://fhir.example.nhs.uk/Id/" + system;
+	}
+
+	private static String componentSlice(int slice) {
+		return "component" + slice;
+	}
+
+	private static ElementXml extensionSlice(int extension) {
+		return new ElementXml("Observation.extension:" + extensionName(extension), "Observation.extension")
+			.sliceName(extensionName(extension))
+			.max("1")
+			.extension(url(ResourceType.STRUCTUREDEFINITION, extensionName(extension)));
+	}
+
+	private void component(StringBuilder xml, String id, int slice) {
+		String path = "Observation.component";
+		new ElementXml(id + ".id", path + ".id").max("1").type("string").appendTo(xml);
+		new ElementXml(id + ".extension", path + ".extension").type("Extension").appendTo(xml);
+		new ElementXml(id + ".modifierExtension", path + ".modifierExtension").type("Extension").appendTo(xml);
+		codeableConcept(xml, id + ".code", path + ".code", slice);
+		new ElementXml(id + ".value[x]", path + ".value[x]").max("1").type("Quantity").type("CodeableConcept").type("string").appendTo(xml);
+		new ElementXml(id + ".dataAbsentReason", path + ".dataAbsentReason").max("1").type("CodeableConcept").appendTo(xml);
+		new ElementXml(id + ".interpretation", path + ".interpretation").max("1").type("CodeableConcept").appendTo(xml);
+		new ElementXml(id + ".referenceRange", path + ".referenceRange").type("BackboneElement").appendTo(xml);
+		new ElementXml(id + ".referenceRange.low", path + ".referenceRange.low").max("1").type("Quantity").appendTo(xml);
+		new ElementXml(id + ".referenceRange.high", path + ".referenceRange.high").max("1").type("Quantity").appendTo(xml);
+		new ElementXml(id + ".referenceRange.type", path + ".referenceRange.type").max("1").type("CodeableConcept").appendTo(xml);
+	}
+
+	/**
+	 * A mandatory CodeableConcept bound to the generated ValueSet. Within a component slice its codings are sliced by system.
+	 */
+	private void codeableConcept(StringBuilder xml, String id, String path, int slice) {
+		new ElementXml(id, path).min("1").max("1").type("CodeableConcept")
+			.binding("preferred", url(ResourceType.VALUESET, valueSetName())).appendTo(xml);
+		new ElementXml(id + ".id", path + ".id").max("1").type("string").appendTo(xml);
+		new ElementXml(id + ".extension", path + ".extension").type("Extension").appendTo(xml);
+
+		boolean sliced = slice != NOT_SLICED;
+		ElementXml coding = new ElementXml(id + ".coding", path + ".coding").type("Coding");
+		if (sliced) {
+			coding.slicedBy("system");
+		}
+		coding.appendTo(xml);
+		coding(xml, id + ".coding", path + ".coding", null);
+
+		if (sliced) {
+			for (String system : CODING_SYSTEMS) {
+				String sliceName = system + slice;
+				String codingId = id + ".coding:" + sliceName;
+				new ElementXml(codingId, path + ".coding").sliceName(sliceName).min("1").max("1").type("Coding").appendTo(xml);
+				coding(xml, codingId, path + ".coding", codingSystemUrl(system));
+			}
+		}
+
+		new ElementXml(id + ".text", path + ".text").max("1").type("string").appendTo(xml);
+	}
+
+	private static void coding(StringBuilder xml, String id, String path, String fixedSystem) {
+		new ElementXml(id + ".id", path + ".id").max("1").type("string").appendTo(xml);
+		new ElementXml(id + ".extension", path + ".extension").type("Extension").appendTo(xml);
+		ElementXml system = new ElementXml(id + ".system", path + ".system").max("1").type("uri");
+		if (fixedSystem != null) {
+			system.min("1").fixedUri(fixedSystem);
+		}
+		system.appendTo(xml);
+		new ElementXml(id + ".version", path + ".version").max("1").type("string").appendTo(xml);
+		new ElementXml(id + ".code", path + ".code").max("1").type("code").appendTo(xml);
+		new ElementXml(id + ".display", path + ".display").max("1").type("string").appendTo(xml);
+		new ElementXml(id + ".userSelected", path + ".userSelected").max("1").type("boolean").appendTo(xml);
+	}
+
+	/**
+	 * A simple extension holding a code from the generated ValueSet
+	 */
+	String extension(int extension) {
+		String name = extensionName(extension);
+		StringBuilder xml = new StringBuilder(8 * 1024);
+		appendHeader(xml, ResourceType.STRUCTUREDEFINITION, name, "Extension " + extension + " for the generated Observation profiles");
+		xml.append("  <fhirVersion value=\"3.0.1\"/>\n")
+			.append("  <kind value=\"complex-type\"/>\n")
+			.append("  <abstract value=\"false\"/>\n")
+			.append("  <contextType value=\"resource\"/>\n")
+			.append("  <context value=\"Observation\"/>\n")
+			.append("  <type value=\"Extension\"/>\n")
+			.append("  <baseDefinition value=\"").append(HL7_URL_PREFIX).append("Extension\"/>\n")
+			.append("  <derivation value=\"constraint\"/>\n");
+
+		xml.append("  <snapshot>\n");
+		new ElementXml("Extension").appendTo(xml);
+		new ElementXml("Extension.id").max("1").type("string").appendTo(xml);
+		new ElementXml("Extension.extension").max("0").type("Extension").appendTo(xml);
+		new ElementXml("Extension.url").min("1").max("1").type("uri").fixedUri(url(ResourceType.STRUCTUREDEFINITION, name)).appendTo(xml);
+		new ElementXml("Extension.valueCodeableConcept", "Extension.valueCodeableConcept").min("1").max("1").type("CodeableConcept")
+			.binding("extensible", url(ResourceType.VALUESET, valueSetName())).appendTo(xml);
+		xml.append("  </snapshot>\n");
+
+		xml.append("  <differential>\n");
+		new ElementXml("Extension.extension").max("0").appendTo(xml);
+		new ElementXml("Extension.url").fixedUri(url(ResourceType.STRUCTUREDEFINITION, name)).appendTo(xml);
+		new ElementXml("Extension.valueCodeableConcept", "Extension.valueCodeableConcept").min("1").type("CodeableConcept")
+			.binding("extensible", url(ResourceType.VALUESET, valueSetName())).appendTo(xml);
+		xml.append("  </differential>\n");
+
+		return xml.append("</StructureDefinition>\n").toString();
+	}
+
+	/**
+	 * A flat list of concepts, since the renderer doesn't support nested concepts, counts or filters in CodeSystems
+	 */
+	String codeSystem() {
+		int concepts = scale * CONCEPTS_PER_SCALE;
+		StringBuilder xml = new StringBuilder(concepts * 256);
+		appendHeader(xml, ResourceType.CODESYSTEM, codeSystemName(), concepts + " concepts for the generated profiles");
+		xml.append("  <caseSensitive value=\"true\"/>\n")
+			.append("  <valueSet value=\"").append(url(ResourceType.VALUESET, valueSetName())).append("\"/>\n")
+			.append("  <content value=\"complete\"/>\n");
+
+		for (int concept = 0; concept < concepts; concept++) {
+			xml.append("  <concept>\n");
+			appendConceptDetails(xml, concept, "    ");
+			xml.append("  </concept>\n");
+		}
+
+		return xml.append("</CodeSystem>\n").toString();
+	}
+
+	private static void appendConceptDetails(StringBuilder xml, int concept, String indent) {
+		xml.append(indent).append("<code value=\"").append(String.format("B%06d", concept)).append("\"/>\n")
+			.append(indent).append("<display value=\"Benchmark concept ").append(concept).append("\"/>\n")
+			.append(indent).append("<definition value=\"Definition of benchmark concept ").append(concept).append("\"/>\n");
+	}
+
+	/**
+	 * Includes the whole of the generated CodeSystem, so the renderer has to find it and list every concept
+	 */
+	String valueSet() {
+		StringBuilder xml = new StringBuilder(4 * 1024);
+		appendHeader(xml, ResourceType.VALUESET, valueSetName(), "All concepts from " + codeSystemName());
+		xml.append("  <immutable value=\"false\"/>\n")
+			.append("  <compose>\n")
+			.append("    <include>\n")
+			.append("      <system value=\"").append(url(ResourceType.CODESYSTEM, codeSystemName())).append("\"/>\n")
+			.append("    </include>\n")
+			.append("  </compose>\n");
+
+		return xml.append("</ValueSet>\n").toString();
+	}
+
+	private static void appendHeader(StringBuilder xml, ResourceType type, String name, String description) {
+		xml.append("<").append(type.getHAPIName()).append(" xmlns=\"http://hl7.org/fhir\">\n")
+			.append("  <id value=\"").append(name).append("\"/>\n")
+			.append("  <url value=\"").append(url(type, name)).append("\"/>\n")
+			.append("  <version value=\"1.0.0\"/>\n")
+			.append("  <name value=\"").append(name).append("\"/>\n")
+			.append("  <status value=\"draft\"/>\n")
+			.append("  <date value=\"2018-01-01\"/>\n")
+			.append("  <publisher value=\"Benchmarks\"/>\n")
+			.append("  <description value=\"").append(description).append("\"/>\n")
+			.append("  <copyright value=\"Copyright (C) Benchmarks\"/>\n");
+	}
+
+	/**
+	 * One ElementDefinition, written in the order the STU3 schema expects
+	 */
+	private static class ElementXml {
+		private final String id;
+		private final String path;
+		private String sliceName = null;
+		private String discriminator = null;
+		private String min = "0";
+		private String max = "*";
+		private final List<String> types = Lists.newArrayList();
+		private String fixedUri = null;
+		private String bindingStrength = null;
+		private String bindingValueSet = null;
+
+		ElementXml(String path) {
+			this(path, path);
+		}
+
+		ElementXml(String id, String path) {
+			this.id = id;
+			this.path = path;
+		}
+
+		ElementXml sliceName(String sliceName) {
+			this.sliceName = sliceName;
+			return this;
+		}
+
+		ElementXml slicedBy(String discriminator) {
+			this.discriminator = discriminator;
+			return this;
+		}
+
+		ElementXml min(String min) {
+			this.min = min;
+			return this;
+		}
+
+		ElementXml max(String max) {
+			this.max = max;
+			return this;
+		}
+
+		ElementXml type(String code) {
+			types.add("        <code value=\"" + code + "\"/>\n");
+			return this;
+		}
+
+		ElementXml extension(String profile) {
+			types.add("        <code value=\"Extension\"/>\n        <profile value=\"" + profile + "\"/>\n");
+			return this;
+		}
+
+		ElementXml reference(String target) {
+			types.add("        <code value=\"Reference\"/>\n        <targetProfile value=\"" + HL7_URL_PREFIX + target + "\"/>\n");
+			return this;
+		}
+
+		ElementXml fixedUri(String fixedUri) {
+			this.fixedUri = fixedUri;
+			return this;
+		}
+
+		ElementXml binding(String strength, String valueSet) {
+			this.bindingStrength = strength;
+			this.bindingValueSet = valueSet;
+			return this;
+		}
+
+		void appendTo(StringBuilder xml) {
+			xml.append("    <element id=\"").append(id).append("\">\n")
+				.append("      <path value=\"").append(path).append("\"/>\n");
+			if (sliceName != null) {
+				xml.append("      <sliceName value=\"").append(sliceName).append("\"/>\n");
+			}
+			if (discriminator != null) {
+				xml.append("      <slicing>\n")
+					.append("        <discriminator>\n")
+					.append("          <type value=\"value\"/>\n")
+					.append("          <path value=\"").append(discriminator).append("\"/>\n")
+					.append("        </discriminator>\n")
+					.append("        <rules value=\"open\"/>\n")
+					.append("      </slicing>\n");
+			}
+			xml.append("      <short value=\"").append(sliceName != null ? sliceName : path).append("\"/>\n")
+				.append("      <definition value=\"Definition of ").append(id).append("\"/>\n")
+				.append("      <min value=\"").append(min).append("\"/>\n")
+				.append("      <max value=\"").append(max).append("\"/>\n");
+			for (String type : types) {
+				xml.append("      <type>\n").append(type).append("      </type>\n");
+			}
+			if (fixedUri != null) {
+				xml.append("      <fixedUri value=\"").append(fixedUri).append("\"/>\n");
+			}
+			if (bindingStrength != null) {
+				xml.append("      <binding>\n")
+					.append("        <strength value=\"").append(bindingStrength).append("\"/>\n")
+					.append("        <description value=\"Codes for ").append(path).append("\"/>\n")
+					.append("        <valueSetReference>\n")
+					.append("          <reference value=\"").append(bindingValueSet).append("\"/>\n")
+					.append("        </valueSetReference>\n")
+					.append("      </binding>\n");
+			}
+			xml.append("    </element>\n");
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package uk.nhs.fhir.benchmarks.render;
+
+import uk.nhs.fhir.data.structdef.tree.DifferentialData;
+import uk.nhs.fhir.data.structdef.tree.DifferentialTreeNode;
+import uk.nhs.fhir.data.structdef.tree.FhirTreeData;
+import uk.nhs.fhir.data.structdef.tree.SnapshotData;
+import uk.nhs.fhir.data.structdef.tree.SnapshotTreeNode;
+import uk.nhs.fhir.data.structdef.tree.tidy.ChildlessDummyNodeRemover;
+import uk.nhs.fhir.data.structdef.tree.tidy.ComplexExtensionChildrenStripper;
+import uk.nhs.fhir.data.structdef.tree.tidy.DefaultElementStripper;
+import uk.nhs.fhir.data.structdef.tree.tidy.ExtensionsSlicingNodesRemover;
+import uk.nhs.fhir.data.structdef.tree.tidy.RedundantValueNodeRemover;
+import uk.nhs.fhir.data.structdef.tree.tidy.RemovedElementStripper;
+import uk.nhs.fhir.data.structdef.tree.tidy.UnchangedSliceInfoRemover;
+import uk.nhs.fhir.data.structdef.tree.tidy.UnwantedConstraintRemover;
+
+/**
+ * The steps which tidy a profile's trees before the snapshot view is rendered, in the order StructureDefinitionSnapshotFormatter
+ * runs them. The differential view runs a subset of the same steps.
+ */
+public enum TidyStep {
+	DefaultElementStripper {
+		@Override
+		void apply(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+			new DefaultElementStripper<>(differential).process(snapshot);
+		}
+	},
+	UnchangedSliceInfoRemover {
+		@Override
+		void apply(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+			new UnchangedSliceInfoRemover<>(differential).process(snapshot);
+		}
+	},
+	RedundantValueNodeRemover {
+		@Override
+		void apply(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+			new RedundantValueNodeRemover<>(differential).process(snapshot);
+		}
+	},
+	ChildlessDummyNodeRemover {
+		@Override
+		void apply(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+			new ChildlessDummyNodeRemover<>(differential).process();
+		}
+	},
+	RemovedElementStripper {
+		@Override
+		void apply(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+			new RemovedElementStripper<>(snapshot).process();
+		}
+	},
+	ExtensionsSlicingNodesRemover {
+		@Override
+		void apply(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+			new ExtensionsSlicingNodesRemover<>(snapshot).process();
+		}
+	},
+	UnwantedConstraintRemover {
+		@Override
+		void apply(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+			new UnwantedConstraintRemover<>(snapshot).process();
+		}
+	},
+	ComplexExtensionChildrenStripper {
+		@Override
+		void apply(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+			new ComplexExtensionChildrenStripper<>(snapshot).process();
+		}
+	};
+
+	abstract void apply(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential);
+
+	/**
+	 * Runs the steps which come before this one, leaving the trees as this step would find them
+	 */
+	void prepare(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+		for (TidyStep step : values()) {
+			if (step == this) {
+				return;
+			}
+			step.apply(snapshot, differential);
+		}
+	}
+
+	static void applyAll(FhirTreeData<SnapshotData, SnapshotTreeNode> snapshot, FhirTreeData<DifferentialData, DifferentialTreeNode> differential) {
+		for (TidyStep step : values()) {
+			step.apply(snapshot, differential);
+		}
+	}
+}
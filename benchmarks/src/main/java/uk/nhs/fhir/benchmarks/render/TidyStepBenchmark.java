@@ -0,0 +1,84 @@
+package uk.nhs.fhir.benchmarks.render;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.nhs.fhir.data.structdef.tree.CloneableFhirTreeData;
+import uk.nhs.fhir.data.structdef.tree.DifferentialData;
+import uk.nhs.fhir.data.structdef.tree.DifferentialTreeNode;
+import uk.nhs.fhir.data.structdef.tree.FhirTreeDatas;
+import uk.nhs.fhir.data.structdef.tree.SnapshotData;
+import uk.nhs.fhir.data.structdef.tree.SnapshotTreeNode;
+import uk.nhs.fhir.data.wrap.WrappedStructureDefinition;
+import uk.nhs.fhir.render.RendererContext;
+import uk.nhs.fhir.util.StructureDefinitionRepository;
+
+/**
+ * Each tidy step on its own. The steps change the trees, so fresh trees are built before every call and taken through the
+ * earlier steps, so that each step sees what it would see while rendering.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TidyStepBenchmark {
+
+	@Param({"10", "100"})
+	public int scale;
+
+	@Param({"DefaultElementStripper", "UnchangedSliceInfoRemover", "RedundantValueNodeRemover", "ChildlessDummyNodeRemover",
+		"RemovedElementStripper", "ExtensionsSlicingNodesRemover", "UnwantedConstraintRemover", "ComplexExtensionChildrenStripper"})
+	public TidyStep step;
+
+	private RenderFixture fixture;
+	private WrappedStructureDefinition profile;
+	private Optional<StructureDefinitionRepository> repository;
+	private Set<String> permittedMissingExtensionPrefixes;
+
+	private CloneableFhirTreeData<SnapshotData, SnapshotTreeNode> snapshot;
+	private CloneableFhirTreeData<DifferentialData, DifferentialTreeNode> differential;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		fixture = new RenderFixture(scale, 1);
+		profile = fixture.profile();
+		repository = Optional.of(fixture.getRegistry());
+		permittedMissingExtensionPrefixes = RendererContext.forThread().getPermittedMissingExtensionPrefixes();
+	}
+
+	@Setup(Level.Invocation)
+	public void buildTrees() {
+		snapshot = FhirTreeDatas.getSnapshotTree(profile, repository, permittedMissingExtensionPrefixes);
+		differential = FhirTreeDatas.getDifferentialTree(profile, snapshot, repository, permittedMissingExtensionPrefixes);
+		step.prepare(snapshot, differential);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		fixture.delete();
+	}
+
+	@Benchmark
+	public CloneableFhirTreeData<SnapshotData, SnapshotTreeNode> tidy() {
+		step.apply(snapshot, differential);
+		return snapshot;
+	}
+}
@@ -0,0 +1,125 @@
+package uk.nhs.fhir.benchmarks.render;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.nhs.fhir.data.structdef.tree.CloneableFhirTreeData;
+import uk.nhs.fhir.data.structdef.tree.DifferentialData;
+import uk.nhs.fhir.data.structdef.tree.DifferentialTreeNode;
+import uk.nhs.fhir.data.structdef.tree.FhirTreeDatas;
+import uk.nhs.fhir.data.structdef.tree.SnapshotData;
+import uk.nhs.fhir.data.structdef.tree.SnapshotTreeNode;
+import uk.nhs.fhir.data.structdef.tree.StructureDefinitionTreeDataProvider;
+import uk.nhs.fhir.data.structdef.tree.tidy.ChildlessDummyNodeRemover;
+import uk.nhs.fhir.data.structdef.tree.tidy.ComplexExtensionChildrenStripper;
+import uk.nhs.fhir.data.structdef.tree.tidy.ExtensionsSlicingNodesRemover;
+import uk.nhs.fhir.data.structdef.tree.tidy.UnwantedConstraintRemover;
+import uk.nhs.fhir.data.wrap.WrappedStructureDefinition;
+import uk.nhs.fhir.render.RendererContext;
+import uk.nhs.fhir.render.html.table.Table;
+import uk.nhs.fhir.render.html.tree.FhirTreeTable;
+import uk.nhs.fhir.util.FhirVersion;
+import uk.nhs.fhir.util.StructureDefinitionRepository;
+
+/**
+ * Building a profile's snapshot and differential trees from its elements, and laying the tidied trees out as tables.
+ * The wrapped profile keeps the trees it builds, so this calls FhirTreeDatas directly to measure building them from scratch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBenchmark {
+
+	@Param({"10", "100"})
+	public int scale;
+
+	private RenderFixture fixture;
+	private WrappedStructureDefinition profile;
+	private Optional<StructureDefinitionRepository> repository;
+	private Set<String> permittedMissingExtensionPrefixes;
+	private CloneableFhirTreeData<SnapshotData, SnapshotTreeNode> snapshot;
+	private FhirTreeTable<SnapshotData, SnapshotTreeNode> tidiedSnapshot;
+	private FhirTreeTable<DifferentialData, DifferentialTreeNode> differential;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		fixture = new RenderFixture(scale, 1);
+		profile = fixture.profile();
+		repository = Optional.of(fixture.getRegistry());
+		permittedMissingExtensionPrefixes = RendererContext.forThread().getPermittedMissingExtensionPrefixes();
+
+		snapshot = FhirTreeDatas.getSnapshotTree(profile, repository, permittedMissingExtensionPrefixes);
+
+		CloneableFhirTreeData<SnapshotData, SnapshotTreeNode> tidied = FhirTreeDatas.getSnapshotTree(profile, repository, permittedMissingExtensionPrefixes);
+		TidyStep.applyAll(tidied, FhirTreeDatas.getDifferentialTree(profile, tidied, repository, permittedMissingExtensionPrefixes));
+		tidiedSnapshot = new FhirTreeTable<>(tidied, FhirVersion.STU3);
+
+		// as StructureDefinitionDifferentialFormatter tidies it
+		CloneableFhirTreeData<DifferentialData, DifferentialTreeNode> tidiedDifferential = FhirTreeDatas.getDifferentialTree(profile, snapshot, repository, permittedMissingExtensionPrefixes);
+		new ExtensionsSlicingNodesRemover<>(tidiedDifferential).process();
+		new ChildlessDummyNodeRemover<>(tidiedDifferential).process();
+		new UnwantedConstraintRemover<>(tidiedDifferential).process();
+		new ComplexExtensionChildrenStripper<>(tidiedDifferential).process();
+		differential = new FhirTreeTable<>(tidiedDifferential, FhirVersion.STU3);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		fixture.delete();
+	}
+
+	@Benchmark
+	public CloneableFhirTreeData<SnapshotData, SnapshotTreeNode> getSnapshotTree() {
+		return FhirTreeDatas.getSnapshotTree(profile, repository, permittedMissingExtensionPrefixes);
+	}
+
+	/**
+	 * Needs a snapshot tree to find the elements the differential doesn't mention, which is built once up front
+	 */
+	@Benchmark
+	public CloneableFhirTreeData<DifferentialData, DifferentialTreeNode> getDifferentialTree() {
+		return FhirTreeDatas.getDifferentialTree(profile, snapshot, repository, permittedMissingExtensionPrefixes);
+	}
+
+	/**
+	 * As the wrapped profile builds its snapshot tree, i.e. also resolving the links between nodes
+	 */
+	@Benchmark
+	public CloneableFhirTreeData<SnapshotData, SnapshotTreeNode> getSnapshotTreeData() {
+		return new StructureDefinitionTreeDataProvider(profile).getSnapshotTreeData(repository, permittedMissingExtensionPrefixes);
+	}
+
+	@Benchmark
+	public CloneableFhirTreeData<DifferentialData, DifferentialTreeNode> getDifferentialTreeData() {
+		return new StructureDefinitionTreeDataProvider(profile).getDifferentialTreeData(snapshot, repository, permittedMissingExtensionPrefixes);
+	}
+
+	@Benchmark
+	public Table snapshotAsTable() {
+		return tidiedSnapshot.asTable();
+	}
+
+	@Benchmark
+	public Table differentialAsTable() {
+		return differential.asTable();
+	}
+}
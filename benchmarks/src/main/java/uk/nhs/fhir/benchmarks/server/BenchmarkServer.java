@@ -0,0 +1,118 @@
+package uk.nhs.fhir.benchmarks.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+
+import org.apache.commons.io.FileUtils;
+
+import uk.nhs.fhir.datalayer.FileCache;
+import uk.nhs.fhir.servlet.SharedServletContext;
+import uk.nhs.fhir.util.FhirServerProperties;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * Starts the parts of the server the benchmarks use (the shared properties and the file cache) against a synthetic spec tree,
+ * without a servlet container.
+ * The server state is static, so this can only be started once per JVM. JMH forks a JVM for each benchmark and parameter set.
+ */
+public class BenchmarkServer {
+
+	private static final String DEFAULT_PROPERTIES_FILE = "fhirserver.config.properties";
+	private static final String RESOURCE_FOLDER_PREFIX = "Benchmarks";
+	private static final long LOAD_TIMEOUT_MINUTES = 30;
+
+	private static Path root = null;
+
+	/**
+	 * Writes the synthetic tree, then starts the server and waits for it to load everything
+	 */
+	public static synchronized void start(int resources, int versions) throws IOException, InterruptedException {
+		if (root != null) {
+			throw new IllegalStateException("Benchmark server already started from " + root);
+		}
+
+		root = Files.createTempDirectory("fhir-benchmarks");
+		Path specRoot = root.resolve(RESOURCE_FOLDER_PREFIX);
+		for (FhirVersion fhirVersion : FhirVersion.getSupportedVersions()) {
+			Files.createDirectories(specRoot.resolve(fhirVersion.toString()));
+		}
+		SyntheticSpecTree.write(specRoot.resolve(FhirVersion.STU3.toString()), resources, versions);
+
+		System.setProperty("CONFIG_FILE", writeProperties().toString());
+		new SharedServletContext().contextInitialized(new ServletContextEvent(attributesOnlyContext()));
+
+		long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(LOAD_TIMEOUT_MINUTES);
+		while (FileCache.getSnapshotGeneration() == 0) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("Cache not loaded from " + specRoot + " after " + LOAD_TIMEOUT_MINUTES + " minutes");
+			}
+			Thread.sleep(100);
+		}
+	}
+
+	/**
+	 * Deletes the synthetic tree. The server itself can't be stopped, but the JVM is about to exit.
+	 */
+	public static synchronized void stop() throws IOException {
+		if (root != null) {
+			FileUtils.deleteDirectory(root.toFile());
+		}
+	}
+
+	/**
+	 * The normal server properties, pointed at the synthetic tree. Nothing is watched or saved, so the data stays put while it is measured.
+	 */
+	private static Path writeProperties() throws IOException {
+		Properties properties = FhirServerProperties.parseProperties(DEFAULT_PROPERTIES_FILE);
+		properties.setProperty("defaultResourceRootPath", root.toString());
+		properties.setProperty("resourceFolderPrefix", RESOURCE_FOLDER_PREFIX);
+		properties.setProperty("watchResourceFiles", "false");
+		properties.setProperty("persistMetadataIndex", "false");
+		properties.setProperty("renderedPageWarmUpCount", "0");
+
+		Path propertiesFile = root.resolve("benchmark.properties");
+		try (OutputStream out = Files.newOutputStream(propertiesFile)) {
+			properties.store(out, "Generated for benchmarks");
+		}
+		return propertiesFile;
+	}
+
+	/**
+	 * The server only uses its servlet context to share attributes
+	 */
+	private static ServletContext attributesOnlyContext() {
+		Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+		return (ServletContext)Proxy.newProxyInstance(ServletContext.class.getClassLoader(), new Class<?>[]{ServletContext.class},
+			(proxy, method, args) -> {
+				switch (method.getName()) {
+					case "getAttribute":
+						return attributes.get((String)args[0]);
+					case "setAttribute":
+						attributes.put((String)args[0], args[1]);
+						return null;
+					case "removeAttribute":
+						attributes.remove((String)args[0]);
+						return null;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "BenchmarkServletContext" + attributes.keySet();
+					default:
+						throw new UnsupportedOperationException("Not available to benchmarks: ServletContext." + method.getName());
+				}
+			});
+	}
+}
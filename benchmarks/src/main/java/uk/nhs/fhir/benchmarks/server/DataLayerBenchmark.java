@@ -0,0 +1,101 @@
+package uk.nhs.fhir.benchmarks.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.datalayer.FileCache;
+import uk.nhs.fhir.datalayer.FilesystemIF;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * Lookups the FHIR API makes against the file cache. Each call picks the next resource in turn, so that the parsed resource
+ * cache sees a realistic spread of requests rather than one resource.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataLayerBenchmark {
+
+	private static final int PAGE_SIZE = 10;
+
+	@Param({"100", "1000", "10000"})
+	public int resources;
+
+	@Param({"3"})
+	public int versions;
+
+	private FilesystemIF dataSource;
+	private IdType[] ids;
+	private String[] urls;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InterruptedException {
+		BenchmarkServer.start(resources, versions);
+		dataSource = new FilesystemIF();
+
+		ids = new IdType[resources];
+		urls = new String[resources];
+		for (int i = 0; i < resources; i++) {
+			ids[i] = new IdType(ResourceType.STRUCTUREDEFINITION.getHAPIName(), SyntheticSpecTree.name(i));
+			urls[i] = SyntheticSpecTree.url(i);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		BenchmarkServer.stop();
+	}
+
+	private int nextIndex() {
+		next = (next + 1) % resources;
+		return next;
+	}
+
+	@Benchmark
+	public IBaseResource getResourceByID() {
+		return dataSource.getResourceByID(FhirVersion.STU3, ids[nextIndex()]);
+	}
+
+	/**
+	 * name:contains matching one base type, i.e. an eighth of the resources
+	 */
+	@Benchmark
+	public List<IBaseResource> getResourceMatchByName() {
+		String baseType = SyntheticSpecTree.baseType(nextIndex());
+		return dataSource.getResourceMatchByName(FhirVersion.STU3, ResourceType.STRUCTUREDEFINITION, baseType, 0, PAGE_SIZE);
+	}
+
+	@Benchmark
+	public List<IBaseResource> getResourceMatchByURL() {
+		return dataSource.getResourceMatchByURL(FhirVersion.STU3, ResourceType.STRUCTUREDEFINITION, urls[nextIndex()], 0, PAGE_SIZE);
+	}
+
+	@Benchmark
+	public Map<String, List<ResourceMetadata>> getGroupedNameList() {
+		return FileCache.getGroupedNameList(ResourceType.STRUCTUREDEFINITION);
+	}
+}
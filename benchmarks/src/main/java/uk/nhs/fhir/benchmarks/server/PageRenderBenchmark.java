@@ -0,0 +1,109 @@
+package uk.nhs.fhir.benchmarks.server;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.dstu3.model.IdType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.datalayer.FilesystemIF;
+import uk.nhs.fhir.enums.MimeType;
+import uk.nhs.fhir.page.rendered.ResourcePageRenderer;
+import uk.nhs.fhir.resourcehandlers.ResourceWebHandler;
+import uk.nhs.fhir.servlethelpers.RawResourceRenderer;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * The HTML views of single resources which browsers request. Each call picks the next resource in turn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageRenderBenchmark {
+
+	private static final String BASE_URL = "http://localhost:8080";
+
+	@Param({"100", "1000", "10000"})
+	public int resources;
+
+	@Param({"3"})
+	public int versions;
+
+	private ResourcePageRenderer pageRenderer;
+	private RawResourceRenderer rawRenderer;
+	private IdType[] ids;
+	private ResourceMetadata[] latest;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InterruptedException {
+		BenchmarkServer.start(resources, versions);
+
+		FilesystemIF dataSource = new FilesystemIF();
+		pageRenderer = new ResourcePageRenderer(new ResourceWebHandler(dataSource));
+		rawRenderer = new RawResourceRenderer();
+
+		ids = new IdType[resources];
+		latest = new ResourceMetadata[resources];
+		for (int i = 0; i < resources; i++) {
+			ids[i] = new IdType(ResourceType.STRUCTUREDEFINITION.getHAPIName(), SyntheticSpecTree.name(i));
+			latest[i] = dataSource.getResourceEntityByID(FhirVersion.STU3, ids[i]);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		pageRenderer.close();
+		BenchmarkServer.stop();
+	}
+
+	private int nextIndex() {
+		next = (next + 1) % resources;
+		return next;
+	}
+
+	/**
+	 * Served from the rendered page cache once each page has been requested (as long as they all fit)
+	 */
+	@Benchmark
+	public String renderSingleResource() {
+		int index = nextIndex();
+		return pageRenderer.renderSingleResource(FhirVersion.STU3, BASE_URL, ids[index], ResourceType.STRUCTUREDEFINITION);
+	}
+
+	/**
+	 * As renderSingleResource, but always rendering the page, e.g. straight after a cache refresh
+	 */
+	@Benchmark
+	public String renderSingleResourceUncached() {
+		pageRenderer.getPageCache().invalidateAll();
+		return renderSingleResource();
+	}
+
+	@Benchmark
+	public String renderRawXml() {
+		return rawRenderer.renderSingleWrappedRAWResourceWithoutText(latest[nextIndex()], FhirVersion.STU3, ResourceType.STRUCTUREDEFINITION, MimeType.XML);
+	}
+
+	@Benchmark
+	public String renderRawJson() {
+		return rawRenderer.renderSingleWrappedRAWResourceWithoutText(latest[nextIndex()], FhirVersion.STU3, ResourceType.STRUCTUREDEFINITION, MimeType.JSON);
+	}
+}
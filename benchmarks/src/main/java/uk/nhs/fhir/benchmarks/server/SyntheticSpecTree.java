@@ -0,0 +1,115 @@
+package uk.nhs.fhir.benchmarks.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import uk.nhs.fhir.data.metadata.ResourceType;
+
+/**
+ * Writes a tree of generated STU3 StructureDefinitions laid out like the published specifications the server loads,
+ * so that the data layer can be measured at sizes well beyond the real ones.
+ * Each profile constrains one of a few base types (so the list pages have several groups) and is written once per version.
+ */
+public class SyntheticSpecTree {
+
+	public static final String NAME_PREFIX = "Bench-";
+	// The server takes the FHIR version from the URL
+	public static final String URL_PREFIX = "https://fhir.example.nhs.uk/STU3/StructureDefinition/";
+
+	static final String[] BASE_TYPES = {"Patient", "Observation", "Encounter", "Condition", "Organization", "Practitioner", "Medication", "Procedure"};
+
+	// Snapshot elements for each base type, so that the parsed resources are a realistic size
+	private static final String[] ELEMENT_NAMES = {"id", "meta", "implicitRules", "language", "text", "contained", "extension",
+		"modifierExtension", "identifier", "status", "category", "code", "subject", "context", "effective", "issued",
+		"performer", "value", "interpretation", "comment", "bodySite", "method", "specimen", "device", "related"};
+
+	public static String name(int index) {
+		return NAME_PREFIX + baseType(index) + "-" + String.format("%06d", index);
+	}
+
+	public static String url(int index) {
+		return URL_PREFIX + name(index);
+	}
+
+	public static String baseType(int index) {
+		return BASE_TYPES[index % BASE_TYPES.length];
+	}
+
+	public static String version(int version) {
+		return (version + 1) + ".0.0";
+	}
+
+	/**
+	 * @param sourceRoot the folder for STU3 resources, i.e. what the server's file locator returns for STU3
+	 * @param resources the number of distinct profiles
+	 * @param versions the number of versions of each profile
+	 */
+	public static void write(Path sourceRoot, int resources, int versions) throws IOException {
+		Path folder = sourceRoot.resolve(ResourceType.STRUCTUREDEFINITION.getFolderName());
+		Files.createDirectories(folder);
+
+		for (int index = 0; index < resources; index++) {
+			for (int version = 0; version < versions; version++) {
+				Path file = folder.resolve(name(index) + "-" + version(version) + ".xml");
+				Files.write(file, structureDefinition(index, version).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	static String structureDefinition(int index, int version) {
+		String name = name(index);
+		String baseType = baseType(index);
+
+		StringBuilder xml = new StringBuilder(8 * 1024);
+		xml.append("<StructureDefinition xmlns=\"http://hl7.org/fhir\">\n")
+			.append("  <id value=\"").append(name).append("\"/>\n")
+			.append("  <text>\n")
+			.append("    <status value=\"generated\"/>\n")
+			.append("    <div xmlns=\"http://www.w3.org/1999/xhtml\"><p>Generated profile ").append(name)
+				.append(" constraining ").append(baseType).append(" for benchmarks</p></div>\n")
+			.append("  </text>\n")
+			.append("  <url value=\"").append(url(index)).append("\"/>\n")
+			.append("  <version value=\"").append(version(version)).append("\"/>\n")
+			.append("  <name value=\"").append(name).append("\"/>\n")
+			.append("  <status value=\"active\"/>\n")
+			.append("  <date value=\"2018-01-01\"/>\n")
+			.append("  <publisher value=\"Benchmarks\"/>\n")
+			.append("  <description value=\"Generated ").append(baseType).append(" profile, version ").append(version(version)).append("\"/>\n")
+			.append("  <fhirVersion value=\"3.0.1\"/>\n")
+			.append("  <kind value=\"resource\"/>\n")
+			.append("  <abstract value=\"false\"/>\n")
+			.append("  <type value=\"").append(baseType).append("\"/>\n")
+			.append("  <baseDefinition value=\"http://hl7.org/fhir/StructureDefinition/").append(baseType).append("\"/>\n")
+			.append("  <derivation value=\"constraint\"/>\n");
+
+		xml.append("  <snapshot>\n");
+		appendElement(xml, baseType, baseType, "0", "*", null);
+		for (String elementName : ELEMENT_NAMES) {
+			appendElement(xml, baseType + "." + elementName, baseType + "." + elementName, "0", "*", "string");
+		}
+		xml.append("  </snapshot>\n");
+
+		xml.append("  <differential>\n");
+		appendElement(xml, baseType + ".identifier", baseType + ".identifier", "1", "*", "Identifier");
+		xml.append("  </differential>\n");
+
+		return xml.append("</StructureDefinition>\n").toString();
+	}
+
+	private static void appendElement(StringBuilder xml, String id, String path, String min, String max, String type) {
+		xml.append("    <element id=\"").append(id).append("\">\n")
+			.append("      <path value=\"").append(path).append("\"/>\n")
+			.append("      <short value=\"").append(path).append("\"/>\n")
+			.append("      <definition value=\"Definition of ").append(path).append("\"/>\n")
+			.append("      <min value=\"").append(min).append("\"/>\n")
+			.append("      <max value=\"").append(max).append("\"/>\n");
+		if (type != null) {
+			xml.append("      <type>\n")
+				.append("        <code value=\"").append(type).append("\"/>\n")
+				.append("      </type>\n");
+		}
+		xml.append("    </element>\n");
+	}
+}
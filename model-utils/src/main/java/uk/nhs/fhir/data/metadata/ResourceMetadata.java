@@ -101,6 +101,10 @@ public class ResourceMetadata {
 		return baseType.get();
 	}
 
+	public boolean hasBaseType() {
+		return baseType != null && baseType.isPresent();
+	}
+
 	public String getDisplayGroup() {
 		return displayGroup;
 	}
@@ -52,6 +52,18 @@ public class VersionNumber implements Comparable<VersionNumber> {
 		}
 	}
 
+	/**
+	 * For version numbers taken from requests, which may not be valid
+	 */
+	public static Optional<VersionNumber> parse(String versionStr) {
+		if (versionStr == null
+		  || !REGEX.matcher(versionStr).find()) {
+			return Optional.empty();
+		}
+		
+		return Optional.of(new VersionNumber(versionStr));
+	}
+
 	public int getMajor() {
 		return major;
 	}
@@ -53,13 +53,17 @@ public abstract class FhirURL {
 	public abstract String toLinkString();
 	public abstract String toFullString();
 
-	private static final Set<String> linkUrls = Sets.newHashSet();
+	// collected for each render, so that they can all be tested at the end
+	private static final Set<String> linkUrls = Sets.newConcurrentHashSet();
 	public static Set<String> getLinkUrls() {
 		return linkUrls;
 	}
 	public static void addLinkUrl(String url) {
 		linkUrls.add(url);
 	}
+	public static void clearLinkUrls() {
+		linkUrls.clear();
+	}
 
 	public static FhirURL buildOrThrow(String url, FhirVersion version) {
 		try {
@@ -1,15 +1,14 @@
 package uk.nhs.fhir.load;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hl7.fhir.instance.model.api.IBaseMetaType;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -18,10 +17,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import ca.uhn.fhir.parser.DataFormatException;
-import ca.uhn.fhir.parser.IParser;
 import uk.nhs.fhir.util.FhirContexts;
 import uk.nhs.fhir.util.FhirReflectionUtils;
 import uk.nhs.fhir.util.FhirRelease;
@@ -51,108 +49,122 @@ public class FhirFileParser {
 		return supportedClasses.contains(resource.getClass());
 	}
 	
+	// Number of times file content has been run through a HAPI parser
+	private final AtomicInteger parseCount = new AtomicInteger(0);
+	
+	public int getParseCount() {
+		return parseCount.get();
+	}
+	
+	/**
+	 * Reads the file once and tries the content against each supported FHIR version, reusing whichever
+	 * parse turns out to be the right one rather than parsing the file again.
+	 */
 	public IBaseResource parseFile(File thisFile) throws FhirParsingFailedException {
+		String fileContents = FileLoader.loadFile(thisFile);
 		
-		List<FhirVersion> successfullyParsedVersions = Lists.newArrayList();
+		Map<FhirVersion, IBaseResource> parsedByVersion = Maps.newEnumMap(FhirVersion.class);
+		Map<FhirVersion, DataFormatException> failuresByVersion = Maps.newEnumMap(FhirVersion.class);
 		
-		IBaseResource resource;
 		for (FhirVersion version : FhirVersion.getSupportedVersions()) {
-			resource = tryParse(thisFile, version, successfullyParsedVersions);
-			if (resource != null) {
-				return resource;
+			IBaseResource parsed = parse(fileContents, version, failuresByVersion);
+			if (parsed != null) {
+				parsedByVersion.put(version, parsed);
+				
+				if (matchesVersion(thisFile, parsed, version)) {
+					return parsed;
+				}
 			}
 		}
 		
-		if (successfullyParsedVersions.isEmpty()) {
-			// No versions succeeded, let's trigger an error if we can and get some idea what went wrong. 
+		if (parsedByVersion.isEmpty()) {
+			// No versions succeeded, report what went wrong if we can. 
 			// We don't know what FHIR version it should have been.
-			try {
-				parseFile(FhirContexts.xmlParser(FhirVersion.STU3), thisFile);
-			} catch (IOException e) {
-				throw new FhirParsingFailedException("Parsing failed for file: " + thisFile.getAbsolutePath(), e);
+			DataFormatException stu3Failure = failuresByVersion.get(FhirVersion.STU3);
+			if (stu3Failure != null) {
+				throw stu3Failure;
 			}
 
 			throw new FhirParsingFailedException("Parsing failed for file: " + thisFile.getAbsolutePath());
-		} else if (successfullyParsedVersions.size() == 1) {
+		} else if (parsedByVersion.size() == 1) {
 			// Couldn't confirm that any was correct. If we only successfully parsed a single version, use that.
-			FhirVersion onlyParsableVersion = successfullyParsedVersions.get(0);
-			return parseFile(FhirContexts.xmlParser(onlyParsableVersion), thisFile, onlyParsableVersion);
+			return parsedByVersion.values().iterator().next();
 		} else {
 			// Multiple FHIR versions succeeded - default to DEFAULT_FHIR_VERSION
-			try {
-				LOG.info("Successfully parsed {} to multiple versions {}, defaulting to {}", 
-					new Object[]{thisFile.getAbsolutePath(), successfullyParsedVersions, DEFAULT_FHIR_VERSION});
-				return parseFile(FhirContexts.xmlParser(DEFAULT_FHIR_VERSION), thisFile);
-			} catch (IOException e) {
-				throw new FhirParsingFailedException("Failed default parsing to " + DEFAULT_FHIR_VERSION.toString() + ": " + thisFile.getAbsolutePath(), e);
-			}
+			LOG.info("Successfully parsed {} to multiple versions {}, defaulting to {}", 
+				new Object[]{thisFile.getAbsolutePath(), parsedByVersion.keySet(), DEFAULT_FHIR_VERSION});
+			return parsedByVersion.get(DEFAULT_FHIR_VERSION);
 		}
 	}
 	
-	private IBaseResource tryParse(File thisFile, FhirVersion versionToTry, List<FhirVersion> successfullyParsedVersions) {
-		IParser xmlParser = FhirContexts.xmlParser(versionToTry);
-		IBaseResource resource = parseFile(xmlParser, thisFile, versionToTry);
+	private IBaseResource parse(String fileContents, FhirVersion version, Map<FhirVersion, DataFormatException> failuresByVersion) {
+		parseCount.incrementAndGet();
 		
-		if (resource != null) {
-			successfullyParsedVersions.add(versionToTry);
-
-			String className = resource.getClass().getName();
+		try {
+			return FhirContexts.xmlParser(version).parseResource(new StringReader(fileContents));
+		} catch (DataFormatException e) {
+			failuresByVersion.put(version, e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Whether a resource successfully parsed using this FHIR version identifies itself as belonging to it
+	 */
+	private boolean matchesVersion(File thisFile, IBaseResource resource, FhirVersion versionToTry) {
+		String className = resource.getClass().getName();
+		
+		if (!isSupported(resource)) {
 			
-			if (!isSupported(resource)) {
-				
-				IBaseMetaType meta = null;
-				switch (versionToTry) {
-					case DSTU2:
-						ca.uhn.fhir.model.dstu2.resource.BaseResource dstu2Resource = (ca.uhn.fhir.model.dstu2.resource.BaseResource)resource;
-						meta = dstu2Resource.getMeta();
-						break;
-					case STU3:
-						org.hl7.fhir.dstu3.model.BaseResource stu3Resource = (org.hl7.fhir.dstu3.model.BaseResource)resource;
-						meta = stu3Resource.getMeta();
-						break;
-					default:
-						throw new IllegalStateException("Trying unexpected version " + versionToTry.toString());
-				}
-				
-				if (meta != null) {
-					for (IPrimitiveType<String> profile : meta.getProfile()) {
-						String url = profile.getValueAsString();
-						if (fromResourceUrl(url).equals(versionToTry)) {
-							return resource;
-						}
+			IBaseMetaType meta = null;
+			switch (versionToTry) {
+				case DSTU2:
+					ca.uhn.fhir.model.dstu2.resource.BaseResource dstu2Resource = (ca.uhn.fhir.model.dstu2.resource.BaseResource)resource;
+					meta = dstu2Resource.getMeta();
+					break;
+				case STU3:
+					org.hl7.fhir.dstu3.model.BaseResource stu3Resource = (org.hl7.fhir.dstu3.model.BaseResource)resource;
+					meta = stu3Resource.getMeta();
+					break;
+				default:
+					throw new IllegalStateException("Trying unexpected version " + versionToTry.toString());
+			}
+			
+			if (meta != null) {
+				for (IPrimitiveType<String> profile : meta.getProfile()) {
+					String url = profile.getValueAsString();
+					if (fromResourceUrl(url).equals(versionToTry)) {
+						return true;
 					}
-					
-					StringJoiner profileUrlList = new StringJoiner(", ", "[", "]");
-					meta.getProfile().forEach(profile -> profileUrlList.add(profile.getValueAsString()));
-					
-					LOG.debug("Parsed file {} to type {} (possibly an example resource) version from urls {} didn't match version tried {}", 
-							new Object[]{thisFile.toPath(), className, profileUrlList, versionToTry});
-					return null;
-				} else {
-					LOG.info("Successfully parsed file {} for {} but meta wasn't present or didn't have a profile URL. Class={}",
-							new Object[]{thisFile.getAbsolutePath(), versionToTry.toString(), className});
-					return null;
 				}
 				
-			} else {
-				Optional<FhirVersion> selfIdentifiedVersion = getResourceVersion(resource);
+				StringJoiner profileUrlList = new StringJoiner(", ", "[", "]");
+				meta.getProfile().forEach(profile -> profileUrlList.add(profile.getValueAsString()));
 				
-				if (selfIdentifiedVersion.isPresent()
-				  && versionToTry.equals(selfIdentifiedVersion.get())) {
-					// Successfully parsed, was a supported class type and matched the version we tried
-					return resource;
-				} else if (selfIdentifiedVersion.isPresent()) {
-					LOG.debug("Parsed file {} to type {} but self identified version {} didn't match version tried {}", 
-						new Object[]{thisFile.toPath(), className, selfIdentifiedVersion.get(), versionToTry});
-					return null;
-				} else {
-					LOG.debug("Couldn't identify version for file {} when parsed into class {}", thisFile.toPath(), resource.getClass().getName());
-					return null;
-				}
+				LOG.debug("Parsed file {} to type {} (possibly an example resource) version from urls {} didn't match version tried {}", 
+						new Object[]{thisFile.toPath(), className, profileUrlList, versionToTry});
+				return false;
+			} else {
+				LOG.info("Successfully parsed file {} for {} but meta wasn't present or didn't have a profile URL. Class={}",
+						new Object[]{thisFile.getAbsolutePath(), versionToTry.toString(), className});
+				return false;
 			}
+			
 		} else {
-			// failed to parse the source for this FHIR version
-			return null;
+			Optional<FhirVersion> selfIdentifiedVersion = getResourceVersion(resource);
+			
+			if (selfIdentifiedVersion.isPresent()
+			  && versionToTry.equals(selfIdentifiedVersion.get())) {
+				// Successfully parsed, was a supported class type and matched the version we tried
+				return true;
+			} else if (selfIdentifiedVersion.isPresent()) {
+				LOG.debug("Parsed file {} to type {} but self identified version {} didn't match version tried {}", 
+					new Object[]{thisFile.toPath(), className, selfIdentifiedVersion.get(), versionToTry});
+				return false;
+			} else {
+				LOG.debug("Couldn't identify version for file {} when parsed into class {}", thisFile.toPath(), resource.getClass().getName());
+				return false;
+			}
 		}
 	}
 
@@ -197,17 +209,4 @@ public class FhirFileParser {
 			throw new IllegalStateException(e);
 		}
 	}
-
-	private IBaseResource parseFile(IParser xmlParser, File thisFile, FhirVersion expectedVersion) {
-		try {
-			return parseFile(xmlParser, thisFile);
-		} catch (IOException | DataFormatException e) {}
-		
-		return null;
-	}
-	
-	private IBaseResource parseFile(IParser xmlParser, File thisFile) throws FileNotFoundException, IOException {
-		String fileContents = FileLoader.loadFile(thisFile);
-		return xmlParser.parseResource(new StringReader(fileContents));
-	}
 }
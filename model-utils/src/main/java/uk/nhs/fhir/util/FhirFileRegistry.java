@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.StringReader;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -15,6 +16,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -41,8 +43,10 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 	// useful to work out if an error was caused by another file failing parsing or validation
 	private final Set<String> possibleFileNames = Sets.newHashSet();
 	
-	private final Map<File, WrappedResource<?>> resourcesByFile = Maps.newHashMap();
+	// sorted, so that resources are rendered in the same order every time
+	private final Map<File, WrappedResource<?>> resourcesByFile = Maps.newTreeMap();
 	private final Map<String, WrappedResource<?>> resourcesByUrl = Maps.newHashMap();
+	private final Map<String, File> filesByUrl = Maps.newHashMap();
 	private final Map<FhirVersion, Map<String, Map<String, WrappedStructureDefinition>>> userDefinedDatatypes = Maps.newHashMap();
 	
 	private final Map<File, IBaseResource> exampleFhirResources = Maps.newHashMap();
@@ -54,6 +58,7 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 	private final Set<String> cachedPermittedMissingExtensions = Sets.newConcurrentHashSet();
 
 	public boolean isCachedPermittedMissingExtension(String url) {
+		recordDependency(RegistryDependency.permittedMissingExtension(url));
 		return cachedPermittedMissingExtensions.contains(url);
 	}
 	
@@ -65,9 +70,14 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 	private final Map<String, File> localCopiesOfExternalFhirResources = Maps.newHashMap();
 	private final Map<FhirVersion, Map<String, IBaseResource>> externalFhirResources = Maps.newHashMap();
 	
+	private volatile boolean readOnly = false;
+	
+	// lookups made by the file being rendered on each thread, while they are being recorded
+	private final ThreadLocal<Set<RegistryDependency>> recordedDependencies = new ThreadLocal<>();
+	
 	public FhirFileRegistry() {
 		for (FhirVersion version : FhirVersion.getSupportedVersions()) {
-			externalFhirResources.put(version, Maps.newHashMap());
+			externalFhirResources.put(version, Maps.newConcurrentMap());
 			hl7Extensions.put(version, Maps.newHashMap());
 		}
 	}
@@ -82,9 +92,93 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 		}
 	}
 	
+	/**
+	 * Once read-only, nothing more can be registered and the registry can be shared between rendering threads.
+	 * External resources are still parsed lazily, but are cached in concurrent maps.
+	 */
+	public void makeReadOnly() {
+		readOnly = true;
+	}
+	
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+	
+	/**
+	 * Starts recording the lookups made on this thread, so that an incremental render can tell which other
+	 * files a rendered file depends on.
+	 */
+	public void startRecordingDependencies() {
+		recordedDependencies.set(Sets.newHashSet());
+	}
+	
+	public Set<RegistryDependency> stopRecordingDependencies() {
+		Set<RegistryDependency> dependencies = recordedDependencies.get();
+		recordedDependencies.remove();
+		return dependencies != null ? dependencies : Collections.emptySet();
+	}
+	
+	private void recordDependency(RegistryDependency dependency) {
+		Set<RegistryDependency> dependencies = recordedDependencies.get();
+		if (dependencies != null) {
+			dependencies.add(dependency);
+		}
+	}
+	
+	/**
+	 * The registered files which would answer this lookup, sorted. Empty if it would be answered by a resource
+	 * baked into the jar, or wouldn't be answered at all.
+	 */
+	public List<File> resolveDependency(RegistryDependency dependency) {
+		List<String> args = dependency.getArgs();
+		
+		switch (dependency.getKind()) {
+			case STRUCTURE_DEFINITION:
+				return filesWithUrlIgnoreCase(args.get(1), true);
+			case PERMITTED_MISSING_EXTENSION:
+				return filesWithUrlIgnoreCase(args.get(0), false);
+			case CODE_SYSTEM:
+				return filesByUrl.containsKey(args.get(0)) ? ImmutableList.of(filesByUrl.get(args.get(0))) : ImmutableList.of();
+			case CONCEPT_MAPS_FOR_SOURCE:
+				return resourcesByFile
+					.entrySet()
+					.stream()
+					.filter(entry -> entry.getValue() instanceof WrappedConceptMap
+					  && conceptMapUrlMatches((WrappedConceptMap)entry.getValue(), args.get(0)))
+					.map(entry -> entry.getKey())
+					.collect(Collectors.toList());
+			case USER_DEFINED_TYPE:
+				return getUserDefinedType(args.get(1), args.get(2), FhirVersion.valueOf(args.get(0)))
+					.map(type -> (List<File>)ImmutableList.of(filesByUrl.get(type.getUrl().get())))
+					.orElse(ImmutableList.of());
+			default:
+				throw new IllegalStateException("Unexpected dependency kind " + dependency.getKind());
+		}
+	}
+	
+	private List<File> filesWithUrlIgnoreCase(String url, boolean structureDefinitionsOnly) {
+		List<File> matchingFiles = 
+			filesByUrl
+				.entrySet()
+				.stream()
+				.filter(entry -> entry.getKey().equalsIgnoreCase(url)
+				  && (!structureDefinitionsOnly || resourcesByUrl.get(entry.getKey()) instanceof WrappedStructureDefinition))
+				.map(entry -> entry.getValue())
+				.sorted()
+				.collect(Collectors.toList());
+		
+		if (matchingFiles.isEmpty()
+		  && localCopiesOfExternalFhirResources.containsKey(url)) {
+			return ImmutableList.of(localCopiesOfExternalFhirResources.get(url));
+		}
+		
+		return matchingFiles;
+	}
+	
 	public IBaseResource getExternal(FhirVersion version, String resourceUrl) throws ResourceNotAvailableException {
-		if (externalFhirResources.get(version).containsKey(resourceUrl)) {
-			return externalFhirResources.get(version).get(resourceUrl);
+		IBaseResource cachedResource = externalFhirResources.get(version).get(resourceUrl);
+		if (cachedResource != null) {
+			return cachedResource;
 		} else {
 			// We don't have a pre-parsed version we can use for this FHIR version
 			IParser parser = FhirContexts.xmlParser(version);
@@ -101,8 +195,9 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 			}
 			
 			IBaseResource parsedResource = parser.parseResource(new StringReader(rawResource));
-			externalFhirResources.get(version).put(resourceUrl, parsedResource);
-			return parsedResource;
+			// another thread may have parsed it in the meantime - make sure everyone uses the same copy
+			IBaseResource existing = externalFhirResources.get(version).putIfAbsent(resourceUrl, parsedResource);
+			return existing != null ? existing : parsedResource;
 		}
 	}
 	
@@ -160,6 +255,10 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 	}
 		
 	public void register(File xmlFile, IBaseResource parsedFile) {
+		if (readOnly) {
+			throw new IllegalStateException("Registry is read-only, can't register " + xmlFile.getAbsolutePath());
+		}
+		
 		possibleFileNames.add(StringUtil.getTrimmedFileName(xmlFile).toLowerCase(Locale.UK));
 		
 		if (FhirFileParser.isSupported(parsedFile)) {
@@ -194,6 +293,7 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 				
 				if (!resourcesByUrl.containsKey(extractedUrl)) {
 					resourcesByUrl.put(extractedUrl, wrappedResource); 
+					filesByUrl.put(extractedUrl, xmlFile);
 				} else {
 					throw new IllegalStateException("Found multiple resources with URL " + extractedUrl
 						+ " (need to add support for multiple versions of same resource)");
@@ -269,6 +369,8 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 	}
 	
 	public Optional<WrappedCodeSystem> getCodeSystem(String url) {
+		recordDependency(RegistryDependency.codeSystem(url));
+		
 		if (resourcesByUrl.containsKey(url)) {
 			return Optional.of((WrappedCodeSystem)resourcesByUrl.get(url));
 		} else {
@@ -277,6 +379,8 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 	}
 
 	public WrappedStructureDefinition getStructureDefinitionIgnoreCase(FhirVersion version, String url) throws ResourceNotAvailableException {
+		recordDependency(RegistryDependency.structureDefinition(version, url));
+		
 		List<WrappedStructureDefinition> matchingDefinitions = 
 			resourcesByUrl
 				.entrySet()
@@ -307,6 +411,8 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 	}
 
 	public List<WrappedConceptMap> getConceptMapsForSource(String sourceUrl) {
+		recordDependency(RegistryDependency.conceptMapsForSource(sourceUrl));
+		
 		return resourcesByFile
 			.values()
 			.stream()
@@ -321,6 +427,8 @@ public class FhirFileRegistry implements Iterable<Map.Entry<File, WrappedResourc
 	}
 	
 	public Optional<WrappedStructureDefinition> getUserDefinedType(String constrainedType, String url, FhirVersion version) {
+		recordDependency(RegistryDependency.userDefinedType(version, constrainedType, url));
+		
 		if (userDefinedDatatypes.containsKey(version)
 		  && userDefinedDatatypes.get(version).containsKey(constrainedType)
 		  && userDefinedDatatypes.get(version).get(constrainedType).containsKey(url)) {
@@ -2,26 +2,51 @@ package uk.nhs.fhir.util;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
-import com.google.common.collect.Maps;
+import com.google.common.cache.Cache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 public class FhirReflectionUtils {
 	
-	private static final Map<Class<?>, Map<String, Method>> cachedMethods = Maps.newConcurrentMap();
+	private static final long MAX_CACHED_METHODS = 1_000;
+	private static final Cache<MethodKey, Method> cachedMethods = SharedCaches.newCache("reflection_methods", MAX_CACHED_METHODS);
 	
 	private static Method getOrCacheMethod(Object o, String methodName) {
 		Class<?> clazz = o.getClass();
-		cachedMethods.putIfAbsent(clazz, Maps.newConcurrentMap());
-		Map<String, Method> methodsMap = cachedMethods.get(clazz);
 		try {
-			methodsMap.putIfAbsent(methodName, o.getClass().getMethod(methodName));
-			return methodsMap.get(methodName);
-		} catch (NoSuchMethodException | SecurityException e) {
-			throw new IllegalStateException("No method " + methodName + "() for resource class " + o.getClass().getName());
+			return cachedMethods.get(new MethodKey(clazz, methodName), () -> clazz.getMethod(methodName));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new IllegalStateException("No method " + methodName + "() for resource class " + clazz.getName());
+		}
+	}
+	
+	private static class MethodKey {
+		private final Class<?> clazz;
+		private final String methodName;
+		
+		MethodKey(Class<?> clazz, String methodName) {
+			this.clazz = clazz;
+			this.methodName = methodName;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof MethodKey)) {
+				return false;
+			}
+			MethodKey other = (MethodKey)o;
+			return clazz.equals(other.clazz)
+			  && methodName.equals(other.methodName);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(clazz, methodName);
 		}
 	}
 	
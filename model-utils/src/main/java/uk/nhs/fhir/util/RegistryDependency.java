@@ -0,0 +1,77 @@
+package uk.nhs.fhir.util;
+
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A lookup made against a FhirFileRegistry while rendering a file. Repeating the lookup against a later registry
+ * (see FhirFileRegistry.resolveDependency()) shows whether the file would now be rendered from different resources.
+ */
+public class RegistryDependency {
+
+	public enum Kind {
+		STRUCTURE_DEFINITION,
+		PERMITTED_MISSING_EXTENSION,
+		CODE_SYSTEM,
+		CONCEPT_MAPS_FOR_SOURCE,
+		USER_DEFINED_TYPE
+	}
+
+	private final Kind kind;
+	private final List<String> args;
+
+	public RegistryDependency(Kind kind, List<String> args) {
+		this.kind = kind;
+		this.args = ImmutableList.copyOf(args);
+	}
+
+	public static RegistryDependency structureDefinition(FhirVersion version, String url) {
+		return new RegistryDependency(Kind.STRUCTURE_DEFINITION, ImmutableList.of(String.valueOf(version), url));
+	}
+
+	public static RegistryDependency permittedMissingExtension(String url) {
+		return new RegistryDependency(Kind.PERMITTED_MISSING_EXTENSION, ImmutableList.of(url));
+	}
+
+	public static RegistryDependency codeSystem(String url) {
+		return new RegistryDependency(Kind.CODE_SYSTEM, ImmutableList.of(url));
+	}
+
+	public static RegistryDependency conceptMapsForSource(String sourceUrl) {
+		return new RegistryDependency(Kind.CONCEPT_MAPS_FOR_SOURCE, ImmutableList.of(sourceUrl));
+	}
+
+	public static RegistryDependency userDefinedType(FhirVersion version, String constrainedType, String url) {
+		return new RegistryDependency(Kind.USER_DEFINED_TYPE, ImmutableList.of(version.name(), constrainedType, url));
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public List<String> getArgs() {
+		return args;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof RegistryDependency)) {
+			return false;
+		}
+		RegistryDependency other = (RegistryDependency)o;
+		return kind.equals(other.kind)
+		  && args.equals(other.args);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(kind, args);
+	}
+
+	@Override
+	public String toString() {
+		return kind.name() + args.toString();
+	}
+}
@@ -0,0 +1,51 @@
+package uk.nhs.fhir.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Static caches which outlive a single render and may be used from several rendering threads at once.
+ * Each is bounded and records statistics, so that the bounds can be checked against real runs.
+ */
+public class SharedCaches {
+	private static final Logger LOG = LoggerFactory.getLogger(SharedCaches.class.getName());
+
+	// sorted by name for logging
+	private static final Map<String, Cache<?, ?>> caches = new ConcurrentSkipListMap<>();
+
+	public static <K, V> Cache<K, V> newCache(String name, long maximumSize) {
+		Cache<K, V> cache =
+			CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.recordStats()
+				.build();
+
+		if (caches.putIfAbsent(name, cache) != null) {
+			throw new IllegalStateException("Already have a shared cache called " + name);
+		}
+
+		return cache;
+	}
+
+	public static Map<String, CacheStats> getStats() {
+		ImmutableMap.Builder<String, CacheStats> stats = ImmutableMap.builder();
+		caches.forEach((name, cache) -> stats.put(name, cache.stats()));
+		return stats.build();
+	}
+
+	public static void logStats() {
+		caches.forEach((name, cache) -> {
+			CacheStats stats = cache.stats();
+			LOG.info(String.format("Cache %s: size=%d hits=%d misses=%d evictions=%d hitRate=%.2f",
+				name, cache.size(), stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate()));
+		});
+	}
+}
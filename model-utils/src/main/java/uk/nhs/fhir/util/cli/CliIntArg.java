@@ -0,0 +1,26 @@
+package uk.nhs.fhir.util.cli;
+
+import java.util.Optional;
+
+public class CliIntArg extends CliArg<Integer> {
+	public CliIntArg(String id, String desc) {
+		super(id, desc);
+	}
+	public CliIntArg(String id, String desc, String label, String flag) throws InvalidConfiguration {
+		super(id, desc, Optional.ofNullable(label), Optional.ofNullable(flag));
+	}
+
+	@Override
+	public Integer convert(String arg) {
+		int value = Integer.parseInt(arg);
+		if (value < 0) {
+			throw new IllegalArgumentException("Expected a non-negative number: " + arg);
+		}
+		return value;
+	}
+
+	@Override
+	public String example() {
+		return "4";
+	}
+}
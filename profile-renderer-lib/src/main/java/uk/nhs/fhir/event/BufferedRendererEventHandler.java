@@ -0,0 +1,97 @@
+package uk.nhs.fhir.event;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Holds on to the events raised while a file is rendered on a worker thread, so that they can be passed to the real
+ * event handler once rendering has finished. Replaying files one at a time in a fixed order means the output is the
+ * same as if they had been rendered one after another.
+ */
+public class BufferedRendererEventHandler extends AbstractRendererEventHandler {
+
+	private enum BufferedEventType {
+		IGNORE,
+		LOG,
+		ERROR
+	}
+
+	private static class BufferedEvent {
+		private final BufferedEventType type;
+		private final Optional<String> info;
+		private final Optional<Exception> error;
+
+		BufferedEvent(BufferedEventType type, Optional<String> info, Optional<Exception> error) {
+			this.type = type;
+			this.info = info;
+			this.error = error;
+		}
+	}
+
+	private final List<BufferedEvent> events = Lists.newArrayList();
+
+	@Override
+	public void ignore(String info, Optional<Exception> throwable) {
+		events.add(new BufferedEvent(BufferedEventType.IGNORE, Optional.of(info), throwable));
+	}
+
+	@Override
+	protected void logImpl(String info, Optional<Exception> throwable) {
+		events.add(new BufferedEvent(BufferedEventType.LOG, Optional.of(info), throwable));
+	}
+
+	@Override
+	protected void errorImpl(Optional<String> info, Optional<Exception> error) {
+		events.add(new BufferedEvent(BufferedEventType.ERROR, info, error));
+	}
+
+	/**
+	 * Passes on every buffered event in the order it was raised. The target should be set up with the same
+	 * current source and resource as when the events were raised.
+	 */
+	public void replayTo(AbstractRendererEventHandler target) {
+		for (BufferedEvent event : events) {
+			switch (event.type) {
+				case IGNORE:
+					target.ignore(event.info.get(), event.error);
+					break;
+				case LOG:
+					target.log(event.info.get(), event.error);
+					break;
+				case ERROR:
+					try {
+						target.error(event.info, event.error);
+					} catch (LoggedRenderingException e) {
+						// the renderer already reacted to this on the worker thread
+					}
+					break;
+				default:
+					throw new IllegalStateException("Unexpected event type: " + event.type.toString());
+			}
+		}
+	}
+
+	/**
+	 * The messages of the warnings raised so far, in order
+	 */
+	public List<String> getLoggedMessages() {
+		return events
+			.stream()
+			.filter(event -> event.type.equals(BufferedEventType.LOG))
+			.map(event -> event.info.get())
+			.collect(Collectors.toList());
+	}
+
+	@Override
+	public void displayOutstandingEvents() {
+		// nothing to display until replayed
+	}
+
+	@Override
+	public boolean isDeferred() {
+		return true;
+	}
+}
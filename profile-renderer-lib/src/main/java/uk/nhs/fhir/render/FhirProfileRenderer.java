@@ -9,6 +9,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
@@ -17,12 +22,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import uk.nhs.fhir.data.url.FhirURL;
 import uk.nhs.fhir.data.url.FullFhirURL;
 import uk.nhs.fhir.data.wrap.WrappedResource;
 import uk.nhs.fhir.event.AbstractRendererEventHandler;
+import uk.nhs.fhir.event.BufferedRendererEventHandler;
 import uk.nhs.fhir.event.EventHandler;
 import uk.nhs.fhir.event.EventHandlerContext;
 import uk.nhs.fhir.event.LoggedRenderingException;
@@ -31,10 +39,13 @@ import uk.nhs.fhir.load.RootedXmlFileFinder;
 import uk.nhs.fhir.util.FhirFileRegistry;
 import uk.nhs.fhir.util.FhirFileUtils;
 import uk.nhs.fhir.util.FhirVersion;
+import uk.nhs.fhir.util.RegistryDependency;
+import uk.nhs.fhir.util.SharedCaches;
 import uk.nhs.fhir.util.UrlValidator;
 
 public class FhirProfileRenderer {
 	private static final String RENDERER_TEMP_DIR_PREFIX = "fhir-renderer-tmp-";
+	private static final long RENDER_SHUTDOWN_WAIT_MINUTES = 5;
 	
     private static final Logger LOG = LoggerFactory.getLogger(FhirProfileRenderer.class.getName());
 	
@@ -45,6 +56,8 @@ public class FhirProfileRenderer {
     private final boolean allowCopyOnError;
     private final Optional<Set<String>> localQdomains;
     private final Optional<Path> httpCacheDirectory;
+    private final int renderThreads;
+    private final boolean incremental;
     
 	public FhirProfileRenderer(
 		Path inputDirectory, 
@@ -55,6 +68,42 @@ public class FhirProfileRenderer {
 		AbstractRendererEventHandler errorHandler, 
 		Optional<Set<String>> localQdomains,
 		boolean copyOnError) 
+	{
+		this(inputDirectory, outPath, newBaseURL, permittedMissingExtensionPrefixes, httpCacheDirectory, errorHandler, localQdomains, copyOnError, 1);
+	}
+	
+	/**
+	 * @param renderThreads number of files to render at once. 1 renders everything on the calling thread, 0 uses one thread per processor.
+	 */
+	public FhirProfileRenderer(
+		Path inputDirectory, 
+		Path outPath, 
+		Optional<String> newBaseURL, 
+		Optional<Set<String>> permittedMissingExtensionPrefixes,
+		Optional<Path> httpCacheDirectory,
+		AbstractRendererEventHandler errorHandler, 
+		Optional<Set<String>> localQdomains,
+		boolean copyOnError,
+		int renderThreads) 
+	{
+		this(inputDirectory, outPath, newBaseURL, permittedMissingExtensionPrefixes, httpCacheDirectory, errorHandler, localQdomains, copyOnError, renderThreads, false);
+	}
+	
+	/**
+	 * @param incremental only render files which have changed since the last render into outPath, or which depend on files which
+	 * have changed. Everything is rendered if there is no manifest from a previous render, or if the renderer settings have changed.
+	 */
+	public FhirProfileRenderer(
+		Path inputDirectory, 
+		Path outPath, 
+		Optional<String> newBaseURL, 
+		Optional<Set<String>> permittedMissingExtensionPrefixes,
+		Optional<Path> httpCacheDirectory,
+		AbstractRendererEventHandler errorHandler, 
+		Optional<Set<String>> localQdomains,
+		boolean copyOnError,
+		int renderThreads,
+		boolean incremental) 
 	{
 		this.rendererFileLocator = new DefaultRendererFileLocator(inputDirectory, makeRenderedArtefactTempDirectory(), outPath);
 		this.newBaseURL = newBaseURL;
@@ -63,6 +112,8 @@ public class FhirProfileRenderer {
 		this.localQdomains = localQdomains.map(qdomains -> (Set<String>)ImmutableSet.copyOf(qdomains));
 		this.allowCopyOnError = copyOnError;
 		this.httpCacheDirectory = httpCacheDirectory;
+		this.renderThreads = renderThreads > 0 ? renderThreads : Runtime.getRuntime().availableProcessors();
+		this.incremental = incremental;
 	}
 	
 	private static Path makeRenderedArtefactTempDirectory() {
@@ -88,12 +139,20 @@ public class FhirProfileRenderer {
     public RendererExitStatus process() {
     	RendererExitStatus exitStatus;
     	
-    	// clear down any previous temp directories
+    	// clear down any previous temp directories (but not this renderer's own, which may be all that an incremental render copies from)
     	for (File f : FhirFileUtils.getSystemTempDir().toFile().listFiles(TMP_DIR_FILTER)) {
+    		if (f.toPath().equals(rendererFileLocator.getRenderingTempOutputDirectory())) {
+    			continue;
+    		}
+    		
     		LOG.warn("Directory " + f.getAbsolutePath() + " should have been deleted after rendering. Clearing up now.");
     		FhirFileUtils.deleteRecursive(f.toPath());
     	}
     	
+    	// link URLs and their failures are collected and reported for each render
+    	FhirURL.clearLinkUrls();
+    	UrlValidator.clearFailures();
+    	
         if (newBaseURL.isPresent()) {
         	LOG.info("Using new base URL: " + newBaseURL.get());
         }
@@ -164,6 +223,9 @@ public class FhirProfileRenderer {
 				}
 			}
 	    	
+	        // from here on the registry is only read, so rendering threads can share it
+	        fhirFileRegistry.makeReadOnly();
+	        
 	        FileProcessor fileProcessor = new FileProcessor();
 	        try {
 	        	if (!fhirFileRegistry.iterator().hasNext()) {
@@ -171,34 +233,21 @@ public class FhirProfileRenderer {
         				FhirURL.getLocalQDomains().stream().collect(Collectors.joining(" ")));
 	        	}
 	        	
-	        	for (Map.Entry<File, WrappedResource<?>> e : fhirFileRegistry) {
-	        		rendererContext.setCurrentSource(e.getKey());
-	        		rendererContext.setCurrentParsedResource(Optional.of(e.getValue()));
-					
-	        		boolean causedException = false;
-	        		
-	        		try {
-	        			try {
-							String filename = rendererContext.getCurrentSource().getAbsolutePath().substring(rawArtefactDirectory.toString().length());
-	        				fileProcessor.processFile(rendererFileLocator, filename, newBaseURL);
-		        		} catch (LoggedRenderingException loggedError) {
-		        			// Already passed to the event handler - just rethrow
-		        			throw loggedError;
-		        		} catch (Exception error) {
-		        			// Needs to be passed to the event handler so that it can be logged.
-		        			eventHandler.error(Optional.empty(), Optional.of(error));
-		        		}
-	        		} catch (LoggedRenderingException loggedError) {
-	        			causedException = true;
-	        		}
-	        		
-	    			if (causedException 
-	    			  && !allowCopyOnError) {
-	    				break;
-	    			}
-	
-	        		rendererContext.clearCurrent();
-		        }
+	        	Optional<IncrementalRender> incrementalRender = Optional.empty();
+	        	if (incremental) {
+	        		incrementalRender = Optional.of(new IncrementalRender(rendererFileLocator, fhirFileRegistry, 
+	        			IncrementalRender.settingsHash(newBaseURL, FhirURL.getLocalQDomains(), permittedMissingExtensionPrefixes)));
+	        	}
+	        	
+	        	if (renderThreads > 1) {
+	        		renderInParallel(fhirFileRegistry, fileProcessor, rendererContext, rawArtefactDirectory, incrementalRender);
+	        	} else {
+	        		renderSequentially(fhirFileRegistry, fileProcessor, rendererContext, rawArtefactDirectory, incrementalRender);
+	        	}
+	        	
+	        	if (incrementalRender.isPresent()) {
+	        		LOG.info("Skipped " + incrementalRender.get().getSkippedCount() + " files which were unchanged since the last render");
+	        	}
 	
 	    		boolean succeeded = !eventHandler.foundErrors();
 	        	
@@ -223,6 +272,7 @@ public class FhirProfileRenderer {
 	        		
 	        		copyExamples(fhirFileRegistry);
 	        		copyGeneratedArtefacts();
+	        		incrementalRender.ifPresent(IncrementalRender::saveManifest);
 	        	} else {
 	        		LOG.warn("At least one error was encountered and allowCopyOnError is not set - not copying rendered resources");
 	        	}
@@ -253,6 +303,8 @@ public class FhirProfileRenderer {
 	            UrlValidator.logSuccessAndFailures();
 	        }
 	        
+	        SharedCaches.logStats();
+	        
 	        return exitStatus;
 	        
     	} finally {
@@ -261,6 +313,174 @@ public class FhirProfileRenderer {
     	}
     }
 
+	private void renderSequentially(FhirFileRegistry fhirFileRegistry, FileProcessor fileProcessor, RendererContext rendererContext, Path rawArtefactDirectory,
+			Optional<IncrementalRender> incrementalRender) {
+		for (Map.Entry<File, WrappedResource<?>> e : fhirFileRegistry) {
+			rendererContext.setCurrentSource(e.getKey());
+			rendererContext.setCurrentParsedResource(Optional.of(e.getValue()));
+			
+			Optional<List<String>> previousWarnings = incrementalRender.flatMap(render -> render.checkUpToDate(e.getKey()));
+			if (previousWarnings.isPresent()) {
+				replayPreviousWarnings(previousWarnings.get());
+			} else {
+				RenderTaskResult result = renderTask(fileProcessor, rendererContext, rawArtefactDirectory);
+				finishFile(e, result, incrementalRender);
+				
+				if (result.causedException 
+				  && !allowCopyOnError) {
+					break;
+				}
+			}
+			
+			rendererContext.clearCurrent();
+		}
+	}
+	
+	/**
+	 * Renders files on a pool of threads, each with its own renderer context and event handler. Events are buffered
+	 * and passed to the real event handler one file at a time in registry order, so that they come out exactly as if
+	 * the files had been rendered sequentially.
+	 */
+	private void renderInParallel(FhirFileRegistry fhirFileRegistry, FileProcessor fileProcessor, RendererContext rendererContext, Path rawArtefactDirectory,
+			Optional<IncrementalRender> incrementalRender) {
+		LOG.info("Rendering using " + renderThreads + " threads");
+		
+		ExecutorService executor = Executors.newFixedThreadPool(renderThreads, new ThreadFactoryBuilder().setNameFormat("renderer-%d").setDaemon(true).build());
+		
+		try {
+			List<Map.Entry<File, WrappedResource<?>>> entries = Lists.newArrayList(fhirFileRegistry);
+			List<Optional<List<String>>> previousWarnings = Lists.newArrayListWithCapacity(entries.size());
+			List<Future<RenderTaskResult>> results = Lists.newArrayListWithCapacity(entries.size());
+			for (Map.Entry<File, WrappedResource<?>> e : entries) {
+				Optional<List<String>> unchangedWarnings = incrementalRender.flatMap(render -> render.checkUpToDate(e.getKey()));
+				previousWarnings.add(unchangedWarnings);
+				
+				if (unchangedWarnings.isPresent()) {
+					results.add(null);
+				} else {
+					RendererContext taskContext = rendererContext.forTask(e.getKey(), e.getValue());
+					results.add(executor.submit(() -> renderTask(fileProcessor, taskContext, rawArtefactDirectory)));
+				}
+			}
+			
+			for (int i = 0; i < entries.size(); i++) {
+				// replay with the same current file as the task had, since some handlers record it alongside the event
+				rendererContext.setCurrentSource(entries.get(i).getKey());
+				rendererContext.setCurrentParsedResource(Optional.of(entries.get(i).getValue()));
+				
+				if (previousWarnings.get(i).isPresent()) {
+					replayPreviousWarnings(previousWarnings.get(i).get());
+					rendererContext.clearCurrent();
+					continue;
+				}
+				
+				RenderTaskResult result = results.get(i).get();
+				finishFile(entries.get(i), result, incrementalRender);
+				rendererContext.clearCurrent();
+				
+				if (result.causedException
+				  && !allowCopyOnError) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while rendering", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Rendering task failed", e.getCause());
+		} finally {
+			// don't leave files still being written when the temp directory is copied or deleted
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(RENDER_SHUTDOWN_WAIT_MINUTES, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Renders the current file of the task context, buffering its events and recording what it looked up in the registry.
+	 */
+	private RenderTaskResult renderTask(FileProcessor fileProcessor, RendererContext taskContext, Path rawArtefactDirectory) {
+		BufferedRendererEventHandler taskEvents = new BufferedRendererEventHandler();
+		FhirFileRegistry fhirFileRegistry = taskContext.getFhirFileRegistry();
+		
+		RendererContext oldRendererContext = RendererContext.forThread();
+		EventHandler oldEventHandler = EventHandlerContext.forThread();
+		RendererContext.setForThread(taskContext);
+		EventHandlerContext.setForThread(taskEvents);
+		fhirFileRegistry.startRecordingDependencies();
+		
+		boolean causedException;
+		Set<RegistryDependency> dependencies;
+		try {
+			causedException = renderFile(fileProcessor, taskEvents, rawArtefactDirectory);
+		} finally {
+			dependencies = fhirFileRegistry.stopRecordingDependencies();
+			RendererContext.setForThread(oldRendererContext);
+			EventHandlerContext.setForThread(oldEventHandler);
+		}
+		
+		return new RenderTaskResult(taskEvents, causedException, dependencies);
+	}
+	
+	private static class RenderTaskResult {
+		private final BufferedRendererEventHandler events;
+		private final boolean causedException;
+		private final Set<RegistryDependency> dependencies;
+		
+		RenderTaskResult(BufferedRendererEventHandler events, boolean causedException, Set<RegistryDependency> dependencies) {
+			this.events = events;
+			this.causedException = causedException;
+			this.dependencies = dependencies;
+		}
+	}
+	
+	/**
+	 * Passes on the file's events and, if it rendered without errors, records it for the next incremental render.
+	 */
+	private void finishFile(Map.Entry<File, WrappedResource<?>> file, RenderTaskResult result, Optional<IncrementalRender> incrementalRender) {
+		result.events.replayTo(eventHandler);
+		
+		if (incrementalRender.isPresent()
+		  && !result.events.foundErrors()) {
+			incrementalRender.get().rendered(file.getKey(), file.getValue(), result.dependencies, result.events.getLoggedMessages());
+		}
+	}
+	
+	/**
+	 * A skipped file still reports the warnings it had when it was rendered, so that the outcome of the render is the same
+	 */
+	private void replayPreviousWarnings(List<String> warnings) {
+		for (String warning : warnings) {
+			eventHandler.log(warning, Optional.empty());
+		}
+	}
+	
+	/**
+	 * Renders the current file of this thread's renderer context.
+	 * @return whether rendering was abandoned because of an error
+	 */
+	private boolean renderFile(FileProcessor fileProcessor, AbstractRendererEventHandler fileEventHandler, Path rawArtefactDirectory) {
+		try {
+			try {
+				String filename = RendererContext.forThread().getCurrentSource().getAbsolutePath().substring(rawArtefactDirectory.toString().length());
+				fileProcessor.processFile(rendererFileLocator, filename, newBaseURL);
+			} catch (LoggedRenderingException loggedError) {
+				// Already passed to the event handler - just rethrow
+				throw loggedError;
+			} catch (Exception error) {
+				// Needs to be passed to the event handler so that it can be logged.
+				fileEventHandler.error(Optional.empty(), Optional.of(error));
+			}
+		} catch (LoggedRenderingException loggedError) {
+			return true;
+		}
+		
+		return false;
+	}
+
 	private void copyExamples(FhirFileRegistry fhirFileRegistry) {
 		
 		for (Map.Entry<File, IBaseResource> entry : fhirFileRegistry.getUnsupportedFhirResources().entrySet()) {
@@ -18,6 +18,7 @@ import uk.nhs.fhir.event.EventHandlerContext;
 import uk.nhs.fhir.event.RendererEventType;
 import uk.nhs.fhir.load.FileLoader;
 import uk.nhs.fhir.render.format.HTMLDocSection;
+import uk.nhs.fhir.render.format.HTMLDocSectionCache;
 import uk.nhs.fhir.render.format.ResourceFormatter;
 import uk.nhs.fhir.render.format.ResourceFormatterFactory;
 import uk.nhs.fhir.render.format.SectionedHTMLDoc;
@@ -46,11 +47,18 @@ public class FileProcessor {
 	    
 		doBOMCheck(currentSource);
 		
-	    saveAugmentedResource(rendererFileLocator, newBaseURL);
-		
-		for (FormattedOutputSpec<?> formatter : resourceFormatterFactory.allFormatterSpecs(resource, rendererFileLocator, filename)) {
-			LOG.debug("Generating " + formatter.getOutputPath(inFilePath).toString());
-			formatter.formatAndSave(inFilePath);
+		// sections are shared between the resource's text and its pages
+		HTMLDocSectionCache sectionCache = RendererContext.forThread().getSectionCache();
+		sectionCache.start();
+		try {
+			saveAugmentedResource(rendererFileLocator, newBaseURL);
+			
+			for (FormattedOutputSpec<?> formatter : resourceFormatterFactory.allFormatterSpecs(resource, rendererFileLocator, filename)) {
+				LOG.debug("Generating " + formatter.getOutputPath(inFilePath).toString());
+				formatter.formatAndSave(inFilePath);
+			}
+		} finally {
+			sectionCache.stop();
 		}
 	}
 	
@@ -96,18 +104,22 @@ public class FileProcessor {
 		
 		LOG.debug("Generating " + outFilePath.toString());	    
 		ResourceFormatter<?> defaultViewFormatter = resourceFormatterFactory.defaultFormatter(resource);		
-		HTMLDocSection defaultViewSection = defaultViewFormatter.makeSectionHTML();
+		HTMLDocSection defaultViewSection = defaultViewFormatter.getSectionHTML();
 		
 		SectionedHTMLDoc defaultView = new SectionedHTMLDoc();
 		defaultView.addSection(defaultViewSection);
 		
 		Element textSection = Elements.withChildren("div", 
 			defaultView.createStyleSection(),
-			Elements.withChildren("div", defaultView.getBodyElements()));
+			Elements.withChildren("div", defaultView.cloneBodyElements()));
 		
 	    String renderedTextSection = HTMLUtil.docToEscapedString(new Document(textSection), true, false);
 	    
         String augmentedResource = prepareAndSerialise(resource, renderedTextSection, newBaseURL);
+        if (newBaseURL.isPresent()) {
+        	// the pages need to show the new URL
+        	RendererContext.forThread().getSectionCache().clear();
+        }
         if (FhirFileUtils.writeFile(outFilePath.toFile(), augmentedResource.getBytes(FileLoader.DEFAULT_ENCODING))) {
         	LOG.debug("Wrote file to " + outFilePath.toAbsolutePath().toString());
         } else {
@@ -1,11 +1,15 @@
 package uk.nhs.fhir.render;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.file.Path;
 
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.jdom2.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +39,7 @@ public class FormattedOutputSpec<T extends WrappedResource<T>> {
 		ensureOutputDirectoryExists(inputPath);
 		Path outputPath = getOutputPath(inputPath);
 		
-		HTMLDocSection sectionHTML = formatter.makeSectionHTML();
+		HTMLDocSection sectionHTML = formatter.getSectionHTML();
 		
 		if (sectionHTML == null) {
 			LOG.debug("No section returned by formatter - skipping " + outputPath);
@@ -44,9 +48,16 @@ public class FormattedOutputSpec<T extends WrappedResource<T>> {
 		
 		SectionedHTMLDoc outputDoc = new SectionedHTMLDoc();
 		outputDoc.addSection(sectionHTML);
-		String outputString = HTMLUtil.docToString(outputDoc.getHTML(), true, false);
+		Document html = outputDoc.getHTML();
 		
-		if (FhirFileUtils.writeFile(outputPath.toFile(), outputString.getBytes(FileLoader.DEFAULT_ENCODING))) {
+		// Streamed straight to the file, and to a gzipped copy which is served in place of the HTML to clients which accept gzip
+		boolean written = FhirFileUtils.writeFileWithGzippedCopy(outputPath.toFile(), out -> {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, FileLoader.DEFAULT_ENCODING));
+			HTMLUtil.writeDoc(html, true, false, writer);
+			writer.flush();
+		});
+		
+		if (written) {
 			LOG.debug("Wrote to " + outputPath.toAbsolutePath().toString());
 		} else {
 			throw new IllegalStateException("Failed to write file " + outputPath);
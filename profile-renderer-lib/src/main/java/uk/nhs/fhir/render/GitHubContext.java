@@ -6,6 +6,7 @@ import java.net.HttpURLConnection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.kohsuke.github.AbuseLimitHandler;
 import org.kohsuke.github.GHCommit;
@@ -31,13 +32,30 @@ public class GitHubContext {
 
 	private Optional<GitHub> github = Optional.empty();
 	private boolean triedGithubConnect = false;
-	private boolean exceededRateLimit = false;
+	// shared with any copies, since the rate limit handlers belong to whichever context made the connection
+	private final AtomicBoolean exceededRateLimit;
 	private Map<String, GithubAccess> githubRepos = Maps.newHashMap();
 	private Optional<Cache> httpCache = Optional.empty();
 	
 	private Optional<GithubRepoDirectory> currentGitDir = Optional.empty();
 	private Optional<GHRepository> currentGitRepo = Optional.empty();
 	
+	public GitHubContext() {
+		this.exceededRateLimit = new AtomicBoolean(false);
+	}
+	
+	/**
+	 * Shares the connection and repositories of another context, but tracks its own current repository.
+	 * Used to render a file on another thread. Never tries to connect again.
+	 */
+	GitHubContext(GitHubContext shared) {
+		this.github = shared.github;
+		this.triedGithubConnect = true;
+		this.exceededRateLimit = shared.exceededRateLimit;
+		this.githubRepos = shared.githubRepos;
+		this.httpCache = shared.httpCache;
+	}
+	
 	public void setCacheDirectory(File httpCacheDirectory) {
 		Preconditions.checkNotNull(httpCacheDirectory);
 		Preconditions.checkArgument(httpCacheDirectory.isDirectory());
@@ -47,7 +65,7 @@ public class GitHubContext {
 	
 	private boolean githubAvailable() {
 		return github.isPresent()
-		  && !exceededRateLimit;
+		  && !exceededRateLimit.get();
 	}
 	
 	public void setGitRepos(List<GithubRepoDirectory> gitRepos) {
@@ -79,7 +97,7 @@ public class GitHubContext {
 	private final RateLimitHandler githubRateLimitHandler = new RateLimitHandler() {
 		@Override
 		public void onError(IOException e, HttpURLConnection uc) throws IOException {
-			exceededRateLimit = true;
+			exceededRateLimit.set(true);
 			LOG.warn("Exceeded rate limiting usage of GitHub API. Not going to attempt to access it again.");
 			throw new GithubRateLimitOrAbuseException();
 		}
@@ -88,7 +106,7 @@ public class GitHubContext {
 	private final AbuseLimitHandler githubAbuseLimitHandler = new AbuseLimitHandler() {
 		@Override
 		public void onError(IOException e, HttpURLConnection uc) throws IOException {
-			exceededRateLimit = true;
+			exceededRateLimit.set(true);
 			LOG.warn("Triggered GitHub API abuse response. Not going to attempt to access it again.");
 			throw new GithubRateLimitOrAbuseException();
 		}
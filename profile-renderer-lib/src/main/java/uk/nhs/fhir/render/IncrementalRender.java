@@ -0,0 +1,276 @@
+package uk.nhs.fhir.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import uk.nhs.fhir.data.wrap.WrappedResource;
+import uk.nhs.fhir.load.FileLoader;
+import uk.nhs.fhir.util.FhirFileRegistry;
+import uk.nhs.fhir.util.RegistryDependency;
+
+/**
+ * Works out which files can be skipped because neither they, nor any file they looked up in the registry while they
+ * were last rendered, have changed since then. Their previous output is left in place in the output directory.
+ * Everything else is rendered as normal and recorded for next time.
+ */
+class IncrementalRender {
+	private static final Logger LOG = LoggerFactory.getLogger(IncrementalRender.class.getName());
+
+	static final String MANIFEST_FILE_NAME = "render-manifest.bin";
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	// the renderer's own code, so that a different build renders everything again
+	private static final Supplier<String> RENDERER_CODE_HASH = Suppliers.memoize(IncrementalRender::rendererCodeHash);
+
+	private final RendererFileLocator rendererFileLocator;
+	private final FhirFileRegistry fhirFileRegistry;
+	private final RenderManifestFile manifestFile;
+	private final Optional<RenderManifest> previousManifest;
+	private final RenderManifest manifest;
+
+	// only used from the thread which calls process(), so no need to be concurrent
+	private final Map<File, HashCode> contentHashes = Maps.newHashMap();
+	private final Map<RegistryDependency, HashCode> dependencyHashes = Maps.newHashMap();
+	private int skippedCount = 0;
+
+	IncrementalRender(RendererFileLocator rendererFileLocator, FhirFileRegistry fhirFileRegistry, HashCode settingsHash) {
+		this.rendererFileLocator = rendererFileLocator;
+		this.fhirFileRegistry = fhirFileRegistry;
+		this.manifestFile = new RenderManifestFile(rendererFileLocator.getRenderingFinalOutputDirectory().resolve(MANIFEST_FILE_NAME));
+		this.previousManifest = readPreviousManifest(manifestFile, settingsHash);
+		this.manifest = new RenderManifest(settingsHash);
+	}
+
+	/**
+	 * Anything which changes the output of every file, so that changing it means everything is rendered again
+	 */
+	static HashCode settingsHash(Optional<String> newBaseURL, Set<String> localQDomains, Set<String> permittedMissingExtensionPrefixes) {
+		Hasher hasher = HASH_FUNCTION.newHasher();
+		hasher.putUnencodedChars(RENDERER_CODE_HASH.get()).putChar('\0');
+		hasher.putUnencodedChars(newBaseURL.orElse("")).putChar('\0');
+		Sets.newTreeSet(localQDomains).forEach(qDomain -> hasher.putUnencodedChars(qDomain).putChar('\0'));
+		hasher.putChar('\0');
+		Sets.newTreeSet(permittedMissingExtensionPrefixes).forEach(prefix -> hasher.putUnencodedChars(prefix).putChar('\0'));
+		return hasher.hash();
+	}
+
+	/**
+	 * Hashes the jars (or class folders) which the renderer and its model are loaded from. If they can't be read,
+	 * returns something unique to this run, so that nothing is skipped.
+	 */
+	private static String rendererCodeHash() {
+		try {
+			Set<Path> codeLocations = Sets.newTreeSet();
+			for (Class<?> rendererClass : new Class<?>[]{FhirProfileRenderer.class, RegistryDependency.class}) {
+				CodeSource codeSource = rendererClass.getProtectionDomain().getCodeSource();
+				if (codeSource == null
+				  || codeSource.getLocation() == null) {
+					throw new IOException("No code location for " + rendererClass.getName());
+				}
+				codeLocations.add(Paths.get(codeSource.getLocation().toURI()));
+			}
+			
+			Hasher hasher = HASH_FUNCTION.newHasher();
+			for (Path codeLocation : codeLocations) {
+				hasher.putBytes(codeHash(codeLocation).asBytes());
+			}
+			return hasher.hash().toString();
+		} catch (IOException | URISyntaxException | RuntimeException e) {
+			LOG.warn("Unable to identify the renderer build - rendering every file", e);
+			return UUID.randomUUID().toString();
+		}
+	}
+
+	static HashCode codeHash(Path codeLocation) throws IOException {
+		if (Files.isRegularFile(codeLocation)) {
+			return com.google.common.io.Files.asByteSource(codeLocation.toFile()).hash(HASH_FUNCTION);
+		}
+		
+		Hasher hasher = HASH_FUNCTION.newHasher();
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(codeLocation)) {
+			files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			hasher.putUnencodedChars(codeLocation.relativize(file).toString()).putChar('\0');
+			hasher.putBytes(Files.readAllBytes(file));
+		}
+		return hasher.hash();
+	}
+
+	private static Optional<RenderManifest> readPreviousManifest(RenderManifestFile manifestFile, HashCode settingsHash) {
+		if (!manifestFile.exists()) {
+			LOG.info("No render manifest found at " + manifestFile.getPath() + " - rendering every file");
+			return Optional.empty();
+		}
+
+		RenderManifest previousManifest;
+		try {
+			previousManifest = manifestFile.read();
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Failed to read render manifest " + manifestFile.getPath() + " - rendering every file", e);
+			return Optional.empty();
+		}
+
+		if (!previousManifest.getSettingsHash().equals(settingsHash)) {
+			LOG.info("Renderer settings have changed since " + manifestFile.getPath() + " was written - rendering every file");
+			return Optional.empty();
+		}
+
+		return Optional.of(previousManifest);
+	}
+
+	/**
+	 * If the file can be skipped, carries its previous entry over into the new manifest.
+	 * @return the warnings logged when the file was last rendered, or empty if it needs rendering again
+	 */
+	Optional<List<String>> checkUpToDate(File source) {
+		if (!previousManifest.isPresent()) {
+			return Optional.empty();
+		}
+
+		String inputFile = relativeInputPath(source);
+		RenderManifest.Entry entry = previousManifest.get().getEntries().get(inputFile);
+		if (entry == null
+		  || !entry.getContentHash().equals(contentHash(source))) {
+			return Optional.empty();
+		}
+
+		Path outputDirectory = rendererFileLocator.getRenderingFinalOutputDirectory();
+		for (String output : entry.getOutputs()) {
+			if (!outputDirectory.resolve(output).toFile().isFile()) {
+				return Optional.empty();
+			}
+		}
+
+		for (Map.Entry<RegistryDependency, HashCode> dependency : entry.getDependencies().entrySet()) {
+			if (!dependencyHash(dependency.getKey()).equals(dependency.getValue())) {
+				return Optional.empty();
+			}
+		}
+
+		manifest.put(inputFile, entry);
+		skippedCount++;
+		return Optional.of(entry.getWarnings());
+	}
+
+	/**
+	 * Records a file which rendered without errors. Must be called before the temporary output directory is deleted.
+	 */
+	void rendered(File source, WrappedResource<?> resource, Set<RegistryDependency> dependencies, List<String> warnings) {
+		List<String> outputs;
+		try {
+			outputs = listOutputs(source, resource);
+		} catch (IOException e) {
+			LOG.warn("Failed to list rendered output for " + source.getPath() + " - it will be rendered again next time", e);
+			return;
+		}
+
+		Map<RegistryDependency, HashCode> hashedDependencies = Maps.newHashMapWithExpectedSize(dependencies.size());
+		for (RegistryDependency dependency : dependencies) {
+			hashedDependencies.put(dependency, dependencyHash(dependency));
+		}
+
+		manifest.put(relativeInputPath(source), new RenderManifest.Entry(contentHash(source), hashedDependencies, outputs, warnings));
+	}
+
+	int getSkippedCount() {
+		return skippedCount;
+	}
+
+	void saveManifest() {
+		try {
+			manifestFile.write(manifest);
+			LOG.info("Saved render manifest for " + manifest.getEntries().size() + " files to " + manifestFile.getPath());
+		} catch (IOException e) {
+			LOG.warn("Failed to save render manifest " + manifestFile.getPath() + " - the next incremental render will render every file", e);
+		}
+	}
+
+	/**
+	 * The augmented copy of the resource, and everything in the directory of HTML artefacts next to it
+	 */
+	private List<String> listOutputs(File source, WrappedResource<?> resource) throws IOException {
+		Path tempOutputDirectory = rendererFileLocator.getRenderingTempOutputDirectory();
+		Path resourceOutputDirectory = rendererFileLocator.getRenderingTempOutputDirectory(resource);
+
+		List<String> outputs = Lists.newArrayList();
+
+		Path augmentedResource = resourceOutputDirectory.resolve(source.getName());
+		if (augmentedResource.toFile().isFile()) {
+			outputs.add(tempOutputDirectory.relativize(augmentedResource).toString());
+		}
+
+		Path artefactDirectory = resourceOutputDirectory.resolve(FileLoader.removeFileExtension(source.getName()));
+		if (artefactDirectory.toFile().isDirectory()) {
+			try (Stream<Path> artefacts = Files.walk(artefactDirectory)) {
+				outputs.addAll(
+					artefacts
+						.filter(Files::isRegularFile)
+						.map(artefact -> tempOutputDirectory.relativize(artefact).toString())
+						.sorted()
+						.collect(Collectors.toList()));
+			}
+		}
+
+		return outputs;
+	}
+
+	/**
+	 * A hash of the files which would answer the lookup now. Lookups answered from outside the input directory
+	 * (e.g. by resources in the jar) always hash the same.
+	 */
+	private HashCode dependencyHash(RegistryDependency dependency) {
+		HashCode hash = dependencyHashes.get(dependency);
+		if (hash == null) {
+			Hasher hasher = HASH_FUNCTION.newHasher();
+			for (File file : fhirFileRegistry.resolveDependency(dependency)) {
+				hasher.putUnencodedChars(relativeInputPath(file));
+				hasher.putBytes(contentHash(file).asBytes());
+			}
+			hash = hasher.hash();
+			dependencyHashes.put(dependency, hash);
+		}
+		return hash;
+	}
+
+	private HashCode contentHash(File file) {
+		return contentHashes.computeIfAbsent(file, f -> {
+			try {
+				return com.google.common.io.Files.asByteSource(f).hash(HASH_FUNCTION);
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to read " + f.getPath(), e);
+			}
+		});
+	}
+
+	private String relativeInputPath(File file) {
+		return rendererFileLocator.getRawArtefactDirectory().toAbsolutePath().relativize(file.toPath().toAbsolutePath()).toString();
+	}
+}
@@ -0,0 +1,72 @@
+package uk.nhs.fhir.render;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+
+import uk.nhs.fhir.util.RegistryDependency;
+
+/**
+ * What was rendered last time from each input file, and what it was rendered from. Input files and outputs are
+ * stored relative to the input and output directories respectively.
+ */
+class RenderManifest {
+
+	private final HashCode settingsHash;
+	// sorted, so that the same render always writes the same manifest
+	private final Map<String, Entry> entries = Maps.newTreeMap();
+
+	RenderManifest(HashCode settingsHash) {
+		this.settingsHash = settingsHash;
+	}
+
+	HashCode getSettingsHash() {
+		return settingsHash;
+	}
+
+	Map<String, Entry> getEntries() {
+		return entries;
+	}
+
+	void put(String inputFile, Entry entry) {
+		entries.put(inputFile, entry);
+	}
+
+	static class Entry {
+		private final HashCode contentHash;
+		private final Map<RegistryDependency, HashCode> dependencies;
+		private final List<String> outputs;
+		private final List<String> warnings;
+
+		/**
+		 * @param dependencies the registry lookups made while rendering, with a hash of the files which answered each one
+		 * @param warnings messages logged while rendering, so that they are still reported when the file is skipped
+		 */
+		Entry(HashCode contentHash, Map<RegistryDependency, HashCode> dependencies, List<String> outputs, List<String> warnings) {
+			this.contentHash = contentHash;
+			this.dependencies = ImmutableMap.copyOf(dependencies);
+			this.outputs = ImmutableList.copyOf(outputs);
+			this.warnings = ImmutableList.copyOf(warnings);
+		}
+
+		HashCode getContentHash() {
+			return contentHash;
+		}
+
+		Map<RegistryDependency, HashCode> getDependencies() {
+			return dependencies;
+		}
+
+		List<String> getOutputs() {
+			return outputs;
+		}
+
+		List<String> getWarnings() {
+			return warnings;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package uk.nhs.fhir.render;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+
+import uk.nhs.fhir.util.RegistryDependency;
+
+/**
+ * Saves a RenderManifest alongside the rendered artefacts. The format is only read back by the same version of
+ * this class - anything else is rejected and every file is rendered again.
+ */
+class RenderManifestFile {
+
+	private static final int MAGIC = 0x4648524D; // "FHRM"
+	private static final int FORMAT_VERSION = 1;
+
+	private final Path manifestFile;
+
+	RenderManifestFile(Path manifestFile) {
+		this.manifestFile = manifestFile;
+	}
+
+	Path getPath() {
+		return manifestFile;
+	}
+
+	boolean exists() {
+		return manifestFile.toFile().isFile();
+	}
+
+	/**
+	 * Writes to a temporary file first, so a reader never sees a partly written manifest
+	 */
+	void write(RenderManifest manifest) throws IOException {
+		Files.createDirectories(manifestFile.getParent());
+		Path tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			writeHash(out, manifest.getSettingsHash());
+
+			out.writeInt(manifest.getEntries().size());
+			for (Map.Entry<String, RenderManifest.Entry> entry : manifest.getEntries().entrySet()) {
+				writeString(out, entry.getKey());
+				writeEntry(out, entry.getValue());
+			}
+		}
+
+		Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @throws IOException if the manifest can't be read, or was written in a different format
+	 */
+	RenderManifest read() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifestFile)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(manifestFile + " is not a render manifest");
+			}
+			int formatVersion = in.readInt();
+			if (formatVersion != FORMAT_VERSION) {
+				throw new IOException("Render manifest " + manifestFile + " has format version " + formatVersion + ", expected " + FORMAT_VERSION);
+			}
+
+			RenderManifest manifest = new RenderManifest(readHash(in));
+
+			int entryCount = in.readInt();
+			for (int i = 0; i < entryCount; i++) {
+				String inputFile = readString(in);
+				manifest.put(inputFile, readEntry(in));
+			}
+
+			return manifest;
+		}
+	}
+
+	private static void writeEntry(DataOutputStream out, RenderManifest.Entry entry) throws IOException {
+		writeHash(out, entry.getContentHash());
+
+		out.writeInt(entry.getDependencies().size());
+		for (Map.Entry<RegistryDependency, HashCode> dependency : entry.getDependencies().entrySet()) {
+			writeString(out, dependency.getKey().getKind().name());
+			writeStrings(out, dependency.getKey().getArgs());
+			writeHash(out, dependency.getValue());
+		}
+
+		writeStrings(out, entry.getOutputs());
+		writeStrings(out, entry.getWarnings());
+	}
+
+	private static RenderManifest.Entry readEntry(DataInputStream in) throws IOException {
+		HashCode contentHash = readHash(in);
+
+		int dependencyCount = in.readInt();
+		Map<RegistryDependency, HashCode> dependencies = Maps.newHashMapWithExpectedSize(dependencyCount);
+		for (int i = 0; i < dependencyCount; i++) {
+			String kind = readString(in);
+			List<String> args = readStrings(in);
+			try {
+				dependencies.put(new RegistryDependency(RegistryDependency.Kind.valueOf(kind), args), readHash(in));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Unknown dependency kind in render manifest: " + kind, e);
+			}
+		}
+
+		List<String> outputs = readStrings(in);
+		List<String> warnings = readStrings(in);
+
+		return new RenderManifest.Entry(contentHash, dependencies, outputs, warnings);
+	}
+
+	private static void writeHash(DataOutputStream out, HashCode hash) throws IOException {
+		byte[] bytes = hash.asBytes();
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static HashCode readHash(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return HashCode.fromBytes(bytes);
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String string : strings) {
+			writeString(out, string);
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<String> strings = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			strings.add(readString(in));
+		}
+		return strings;
+	}
+
+	// Not writeUTF, which can't write strings over 64KB (e.g. long warning messages)
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
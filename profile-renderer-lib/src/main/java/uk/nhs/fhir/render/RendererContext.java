@@ -9,6 +9,7 @@ import java.util.Set;
 import com.google.common.collect.Sets;
 
 import uk.nhs.fhir.data.wrap.WrappedResource;
+import uk.nhs.fhir.render.format.HTMLDocSectionCache;
 import uk.nhs.fhir.util.FhirFileRegistry;
 
 public class RendererContext {
@@ -19,12 +20,18 @@ public class RendererContext {
 		return theRendererContext.get();
 	}
 	
+	public static void setForThread(RendererContext rendererContext) {
+		theRendererContext.set(rendererContext);
+	}
+	
 	private Set<String> permittedMissingExtensionPrefixes = Sets.newHashSet();
 	private FhirFileRegistry fhirFileRegistry = new FhirFileRegistry();
 	private File currentSource = null;
 	private Optional<WrappedResource<?>> currentParsedResource = null;
 
 	private final GitHubContext githubData;
+	// not shared with task contexts, since each renders a different file
+	private final HTMLDocSectionCache sectionCache = new HTMLDocSectionCache();
 	
 	// TODO migrate local domains to here from FhirURL. Will require passing into FullFhirURL.toLinkString() though.
 	// private DomainTrimmer localDomains = DomainTrimmer.nhsDomains();
@@ -38,6 +45,23 @@ public class RendererContext {
 		this.githubData = new GitHubContext();
 	}
 	
+	private RendererContext(RendererContext shared) {
+		this.fhirFileRegistry = shared.fhirFileRegistry;
+		this.permittedMissingExtensionPrefixes = shared.permittedMissingExtensionPrefixes;
+		this.githubData = new GitHubContext(shared.githubData);
+	}
+	
+	/**
+	 * A context for rendering a single file on another thread. The registry, permitted missing extensions and
+	 * GitHub connection are shared, while the current source and resource belong to the task.
+	 */
+	public RendererContext forTask(File source, WrappedResource<?> resource) {
+		RendererContext taskContext = new RendererContext(this);
+		taskContext.setCurrentSource(source);
+		taskContext.setCurrentParsedResource(Optional.of(resource));
+		return taskContext;
+	}
+	
 	public FhirFileRegistry getFhirFileRegistry() {
 		return fhirFileRegistry;
 	}
@@ -81,6 +105,10 @@ public class RendererContext {
 		currentParsedResource = newParsedResource;
 	}
 
+	public HTMLDocSectionCache getSectionCache() {
+		return sectionCache;
+	}
+	
 	public void clearCurrent() {
 		setCurrentParsedResource(Optional.empty());
 		setCurrentSource(null);
@@ -0,0 +1,83 @@
+package uk.nhs.fhir.render.format;
+
+import java.util.Map;
+import java.util.Optional;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Holds the sections made for the file currently being rendered, so that a section which appears in several pages
+ * (e.g. the snapshot tree, which is in snapshot.html, full.html and the resource's text) is only made once.
+ * Sections are shared, so must not be changed once made. Pages clone the elements they use (see SectionedHTMLDoc).
+ * Only active while a file is being rendered - otherwise every section is made afresh.
+ */
+public class HTMLDocSectionCache {
+
+	private final Map<SectionKey, Optional<HTMLDocSection>> sections = Maps.newHashMap();
+	private boolean active = false;
+
+	public void start() {
+		sections.clear();
+		active = true;
+	}
+
+	public void stop() {
+		active = false;
+		sections.clear();
+	}
+
+	/**
+	 * Forgets the sections made so far, e.g. after the resource has been changed
+	 */
+	public void clear() {
+		sections.clear();
+	}
+
+	HTMLDocSection get(ResourceFormatter<?> formatter) throws ParserConfigurationException {
+		if (!active) {
+			return formatter.makeSectionHTML();
+		}
+
+		SectionKey key = new SectionKey(formatter.getClass(), formatter.wrappedResource);
+		Optional<HTMLDocSection> section = sections.get(key);
+		if (section == null) {
+			// formatters return null if they have nothing to show
+			section = Optional.ofNullable(formatter.makeSectionHTML());
+			sections.put(key, section);
+		}
+
+		return section.orElse(null);
+	}
+
+	/**
+	 * Formatters are only given the resource (other than the git history formatter, which is only made once for each
+	 * file), so the same formatter class always makes the same section for the same resource.
+	 * Resources are compared by identity, since they are changed while they are rendered.
+	 */
+	private static class SectionKey {
+		private final Class<?> formatterClass;
+		private final Object resource;
+
+		SectionKey(Class<?> formatterClass, Object resource) {
+			this.formatterClass = formatterClass;
+			this.resource = resource;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof SectionKey)) {
+				return false;
+			}
+			SectionKey other = (SectionKey)o;
+			return formatterClass.equals(other.formatterClass)
+			  && resource == other.resource;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * formatterClass.hashCode() + System.identityHashCode(resource);
+		}
+	}
+}
@@ -3,6 +3,7 @@ package uk.nhs.fhir.render.format;
 import javax.xml.parsers.ParserConfigurationException;
 
 import uk.nhs.fhir.data.wrap.WrappedResource;
+import uk.nhs.fhir.render.RendererContext;
 import uk.nhs.fhir.util.FhirVersion;
 
 public abstract class ResourceFormatter<T extends WrappedResource<T>> {
@@ -15,6 +16,14 @@ public abstract class ResourceFormatter<T extends WrappedResource<T>> {
 	
 	public abstract HTMLDocSection makeSectionHTML() throws ParserConfigurationException;
 	
+	/**
+	 * The section for this resource, only made once for each file being rendered (see HTMLDocSectionCache).
+	 * The result must not be changed.
+	 */
+	public final HTMLDocSection getSectionHTML() throws ParserConfigurationException {
+		return RendererContext.forThread().getSectionCache().get(this);
+	}
+	
 	protected FhirVersion getResourceVersion() {
 		return wrappedResource.getImplicitFhirVersion();
 	}
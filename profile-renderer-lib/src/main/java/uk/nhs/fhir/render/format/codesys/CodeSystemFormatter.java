@@ -15,9 +15,9 @@ public class CodeSystemFormatter extends ResourceFormatter<WrappedCodeSystem> {
 	@Override
 	public HTMLDocSection makeSectionHTML() throws ParserConfigurationException {
 		
-		HTMLDocSection metadataPanel = new CodeSystemMetadataFormatter(wrappedResource).makeSectionHTML();
-		HTMLDocSection conceptsPanel = new CodeSystemConceptTableFormatter(wrappedResource).makeSectionHTML();
-		HTMLDocSection filterRowsPanel = new CodeSystemFiltersTableFormatter(wrappedResource).makeSectionHTML();
+		HTMLDocSection metadataPanel = new CodeSystemMetadataFormatter(wrappedResource).getSectionHTML();
+		HTMLDocSection conceptsPanel = new CodeSystemConceptTableFormatter(wrappedResource).getSectionHTML();
+		HTMLDocSection filterRowsPanel = new CodeSystemFiltersTableFormatter(wrappedResource).getSectionHTML();
 		
 		HTMLDocSection codeSystemSection = new HTMLDocSection();
 		
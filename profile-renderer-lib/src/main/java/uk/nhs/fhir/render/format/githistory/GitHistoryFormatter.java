@@ -1,7 +1,8 @@
 package uk.nhs.fhir.render.format.githistory;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.List;
 
@@ -88,14 +89,15 @@ public class GitHistoryFormatter<T extends WrappedResource<T>> extends TableForm
 			new TableTitle("Commit Details Link", "Link to full details of commit", "15%"));
 	}
 	
-	private static final SimpleDateFormat COMMIT_DATE_FORMAT = new SimpleDateFormat("dd MMM yyyy HH:mm");
+	// Thread safe, since files are rendered in parallel
+	private static final DateTimeFormatter COMMIT_DATE_FORMAT = DateTimeFormatter.ofPattern("dd MMM yyyy HH:mm").withZone(ZoneId.systemDefault());
 	
 	private TableRow getCommitRow(GHCommit commit) throws IOException {
 		TableRow commitRow = new TableRow();
 		
 		// Date
 		Date commitDate = commit.getCommitDate();
-		String formattedDate = COMMIT_DATE_FORMAT.format(commitDate);
+		String formattedDate = COMMIT_DATE_FORMAT.format(commitDate.toInstant());
 		commitRow.addCell(new SimpleTextCell(formattedDate));
 		
 		// Committer
@@ -14,8 +14,8 @@ public class SearchParameterFormatter extends ResourceFormatter<WrappedSearchPar
 
 	@Override
 	public HTMLDocSection makeSectionHTML() throws ParserConfigurationException {
-		HTMLDocSection metadataPanel = new SearchParameterMetadataFormatter(wrappedResource).makeSectionHTML();
-		HTMLDocSection tablePanel = new SearchParameterTableFormatter(wrappedResource).makeSectionHTML();
+		HTMLDocSection metadataPanel = new SearchParameterMetadataFormatter(wrappedResource).getSectionHTML();
+		HTMLDocSection tablePanel = new SearchParameterTableFormatter(wrappedResource).getSectionHTML();
 		
 		HTMLDocSection searchParameterSection = new HTMLDocSection();
 		
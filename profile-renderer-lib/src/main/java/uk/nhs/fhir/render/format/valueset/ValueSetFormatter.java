@@ -18,8 +18,8 @@ public class ValueSetFormatter extends ResourceFormatter<WrappedValueSet> {
 	@Override
 	public HTMLDocSection makeSectionHTML() throws ParserConfigurationException {
 
-		HTMLDocSection metadataPanel = new ValueSetMetadataFormatter(wrappedResource).makeSectionHTML();
-		HTMLDocSection conceptTable = new ValueSetTableFormatter(wrappedResource).makeSectionHTML();
+		HTMLDocSection metadataPanel = new ValueSetMetadataFormatter(wrappedResource).getSectionHTML();
+		HTMLDocSection conceptTable = new ValueSetTableFormatter(wrappedResource).getSectionHTML();
 		
 		HTMLDocSection valueSetSection = new HTMLDocSection();
 		
@@ -27,7 +27,7 @@ public class ValueSetFormatter extends ResourceFormatter<WrappedValueSet> {
 		valueSetSection.addSection(conceptTable);
 		
 		for (WrappedConceptMap conceptMap : wrappedResource.getConceptMaps(RendererContext.forThread().getFhirFileRegistry())) {
-			HTMLDocSection formattedConceptMap = new ConceptMapFormatter(conceptMap).makeSectionHTML();
+			HTMLDocSection formattedConceptMap = new ConceptMapFormatter(conceptMap).getSectionHTML();
 			valueSetSection.addSection(formattedConceptMap);
 		}
 
@@ -0,0 +1,129 @@
+package uk.nhs.fhir.render.html;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Turns html entities which have had their ampersands escaped (e.g. &amp;amp;#160;) back into entities as they are
+ * written, so that a whole document doesn't need to be held in memory to fix them. Only a possible entity is held
+ * back until it is known whether it is one, so writes may be split anywhere.
+ */
+class EntityFixingWriter extends FilterWriter {
+
+	private static final String ESCAPED_ENTITY_START = "&amp;#";
+
+	// the start of a possible escaped entity, not yet written
+	private final StringBuilder pending = new StringBuilder();
+
+	EntityFixingWriter(Writer out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		write(new char[]{(char)c}, 0, 1);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int end = off + len;
+		// unaffected characters are passed on in runs
+		int runStart = off;
+		for (int i = off; i < end; i++) {
+			char c = cbuf[i];
+			if (pending.length() == 0 && c != '&') {
+				continue;
+			}
+
+			if (i > runStart) {
+				out.write(cbuf, runStart, i - runStart);
+			}
+			runStart = i + 1;
+			consume(c);
+		}
+
+		if (end > runStart) {
+			out.write(cbuf, runStart, end - runStart);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		int end = off + len;
+		int runStart = off;
+		for (int i = off; i < end; i++) {
+			char c = str.charAt(i);
+			if (pending.length() == 0 && c != '&') {
+				continue;
+			}
+
+			if (i > runStart) {
+				out.write(str, runStart, i - runStart);
+			}
+			runStart = i + 1;
+			consume(c);
+		}
+
+		if (end > runStart) {
+			out.write(str, runStart, end - runStart);
+		}
+	}
+
+	private void consume(char c) throws IOException {
+		int matched = pending.length();
+
+		if (matched < ESCAPED_ENTITY_START.length()) {
+			if (c == ESCAPED_ENTITY_START.charAt(matched)) {
+				pending.append(c);
+				return;
+			}
+		} else if (isHexDigit(c)) {
+			pending.append(c);
+			return;
+		} else if (c == ';'
+		  && matched > ESCAPED_ENTITY_START.length()) {
+			out.write("&#");
+			out.append(pending, ESCAPED_ENTITY_START.length(), matched);
+			out.write(';');
+			pending.setLength(0);
+			return;
+		}
+
+		// not an escaped entity after all
+		writePending();
+		if (c == '&') {
+			// may be the start of the next one
+			pending.append(c);
+		} else {
+			out.write(c);
+		}
+	}
+
+	private static boolean isHexDigit(char c) {
+		return (c >= '0' && c <= '9')
+		  || (c >= 'a' && c <= 'f')
+		  || (c >= 'A' && c <= 'F');
+	}
+
+	private void writePending() throws IOException {
+		if (pending.length() > 0) {
+			out.append(pending);
+			pending.setLength(0);
+		}
+	}
+
+	/**
+	 * Writes anything held back. Must be called once everything has been written, since the last characters
+	 * may look like the start of an entity.
+	 */
+	void finish() throws IOException {
+		writePending();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		super.close();
+	}
+}
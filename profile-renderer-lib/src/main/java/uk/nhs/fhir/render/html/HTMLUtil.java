@@ -1,30 +1,42 @@
 package uk.nhs.fhir.render.html;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 
 import org.jdom2.Document;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
 
 public class HTMLUtil {
-	
+
 	public static String docToString(Document document, boolean prettyPrint, boolean xmlDeclaration) throws IOException {
+		StringWriter writer = new StringWriter();
+		writeDoc(document, prettyPrint, xmlDeclaration, writer);
+		return writer.toString();
+	}
+
+	/**
+	 * Writes the document as it is serialised, rather than building it up as a String first. The writer is not closed.
+	 */
+	public static void writeDoc(Document document, boolean prettyPrint, boolean xmlDeclaration, Writer writer) throws IOException {
 		//fix html entities which will have had their apersands escaped
-        return docToEscapedString(document, prettyPrint, xmlDeclaration)
-        	.replaceAll("&amp;#([\\dA-Fa-f]+);", "&#$1;");
+		EntityFixingWriter entityFixingWriter = new EntityFixingWriter(writer);
+		outputter(prettyPrint, xmlDeclaration).output(document, entityFixingWriter);
+		entityFixingWriter.finish();
 	}
-	
+
 	public static String docToEscapedString(Document document, boolean prettyPrint, boolean xmlDeclaration) throws IOException {
+		return outputter(prettyPrint, xmlDeclaration).outputString(document);
+	}
+
+	private static XMLOutputter outputter(boolean prettyPrint, boolean xmlDeclaration) {
 		Format format = prettyPrint ? Format.getPrettyFormat() : Format.getCompactFormat();
-		
-		String output = 
-			new XMLOutputter(
-				format
-					.setOmitDeclaration(!xmlDeclaration)
-					.setIndent("  ")
-					.setLineSeparator(prettyPrint ? "\n" : ""))
-					.outputString(document);
-		
-        return output;
+
+		return new XMLOutputter(
+			format
+				.setOmitDeclaration(!xmlDeclaration)
+				.setIndent("  ")
+				.setLineSeparator(prettyPrint ? "\n" : ""));
 	}
 }
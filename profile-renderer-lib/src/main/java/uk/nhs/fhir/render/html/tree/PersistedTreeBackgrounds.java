@@ -0,0 +1,87 @@
+package uk.nhs.fhir.render.html.tree;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generated tree backgrounds kept on disk as base64 text, one file per CSS class, so that later runs can reuse them
+ * rather than drawing and encoding the same images again.
+ */
+class PersistedTreeBackgrounds {
+	private static final Logger LOG = LoggerFactory.getLogger(PersistedTreeBackgrounds.class.getName());
+
+	private static final String SUFFIX = ".base64";
+
+	private final Path directory;
+
+	PersistedTreeBackgrounds(Path directory) {
+		this.directory = directory;
+	}
+
+	Path getDirectory() {
+		return directory;
+	}
+
+	Optional<String> load(String cssClass) {
+		Path file = directory.resolve(cssClass + SUFFIX);
+		if (!Files.isRegularFile(file)) {
+			return Optional.empty();
+		}
+
+		try {
+			String base64 = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+			// written into pages as it is, so must be nothing but a whole image
+			if (!isBase64Png(base64)) {
+				LOG.warn("Tree background " + file.toString() + " is not a valid image - will generate it again");
+				return Optional.empty();
+			}
+			return Optional.of(base64);
+		} catch (IOException e) {
+			LOG.warn("Failed to read tree background " + file.toString() + " - will generate it again", e);
+			return Optional.empty();
+		}
+	}
+
+	static boolean isBase64Png(String base64) {
+		byte[] png;
+		try {
+			// rejects anything outside the base64 alphabet
+			png = Base64.getDecoder().decode(base64);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+
+		int signatureLength = TablePNGGenerator.PNG_SIGNATURE.length;
+		int endLength = TablePNGGenerator.PNG_END_CHUNK.length;
+		return png.length >= signatureLength + endLength
+		  && Arrays.equals(Arrays.copyOfRange(png, 0, signatureLength), TablePNGGenerator.PNG_SIGNATURE)
+		  && Arrays.equals(Arrays.copyOfRange(png, png.length - endLength, png.length), TablePNGGenerator.PNG_END_CHUNK);
+	}
+
+	/**
+	 * Writes to a temporary file first, so that other threads and renderers never see part of an image.
+	 */
+	void save(String cssClass, String base64) {
+		try {
+			Files.createDirectories(directory);
+			Path tempFile = Files.createTempFile(directory, cssClass, ".tmp");
+			try {
+				Files.write(tempFile, base64.getBytes(StandardCharsets.US_ASCII));
+				Files.move(tempFile, directory.resolve(cssClass + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+		} catch (IOException e) {
+			LOG.warn("Failed to save tree background " + cssClass + " to " + directory.toString(), e);
+		}
+	}
+}
@@ -2,15 +2,22 @@ package uk.nhs.fhir.render.html.tree;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
 import org.apache.commons.codec.binary.Base64;
 
-import com.google.common.collect.Maps;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import uk.nhs.fhir.util.SharedCaches;
 
 /**
  * Generates background pngs for table rows as base64.
@@ -27,7 +34,28 @@ public class TablePNGGenerator {
 	private static final int firstLinePixelIndex = 12;
 	private static final int pixelsBetweenLines = 16;
 	
-	private static final Map<String, String> cache = Maps.newHashMap();
+	private static final long MAX_CACHED_BACKGROUNDS = 2_000;
+	private static final Cache<String, String> cache = SharedCaches.newCache("tree_backgrounds", MAX_CACHED_BACKGROUNDS);
+	
+	static final byte[] PNG_SIGNATURE = new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+	static final byte[] PNG_END_CHUNK = new byte[]{0,0,0,0,'I','E','N','D',(byte)0xAE,0x42,0x60,(byte)0x82};
+	
+	// Per user, since saved images are written into every page, so mustn't come from a folder other users can write to.
+	// Versioned so that changes to how backgrounds are drawn don't pick up old images.
+	public static final Path DEFAULT_PERSISTED_DIRECTORY = Paths.get(System.getProperty("user.home"), ".fhir-renderer", "tree-backgrounds-v1");
+	
+	private static volatile Optional<PersistedTreeBackgrounds> persisted = Optional.of(new PersistedTreeBackgrounds(DEFAULT_PERSISTED_DIRECTORY));
+	
+	/**
+	 * Where generated backgrounds are saved between runs. Empty to only keep them in memory.
+	 */
+	public static void setPersistedDirectory(Optional<Path> directory) {
+		persisted = directory.map(PersistedTreeBackgrounds::new);
+	}
+	
+	public static Optional<Path> getPersistedDirectory() {
+		return persisted.map(PersistedTreeBackgrounds::getDirectory);
+	}
 	
 	/**
 	 * Unique css class for any given line style. Can be used as a key for caching.
@@ -69,26 +97,41 @@ public class TablePNGGenerator {
 	
 	public String getBase64(Style style, boolean[] vlinesRequired) {
 		String key = getCSSClass(style, vlinesRequired);
-		if (!cache.containsKey(key)) {
-			cache(key, style, vlinesRequired);
+		try {
+			return cache.get(key, () -> loadOrGenerate(key, style, vlinesRequired));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new RuntimeException(e.getCause());
 		}
-		return cache.get(key);
+	}
+	
+	private String loadOrGenerate(String key, Style style, boolean[] vlinesRequired) throws IOException {
+		Optional<PersistedTreeBackgrounds> persisted = TablePNGGenerator.persisted;
+		
+		if (persisted.isPresent()) {
+			Optional<String> saved = persisted.get().load(key);
+			if (saved.isPresent()) {
+				return saved.get();
+			}
+		}
+		
+		String base64Png = generate(style, vlinesRequired);
+		
+		if (persisted.isPresent()) {
+			persisted.get().save(key, base64Png);
+		}
+		
+		return base64Png;
 	}
 
-	private void cache(String key, Style style, boolean[] vlinesRequired) {
+	private String generate(Style style, boolean[] vlinesRequired) throws IOException {
 		int maxVlines = (width - firstLinePixelIndex) / pixelsBetweenLines;
 		if (vlinesRequired.length > maxVlines) {
 			throw new IllegalArgumentException("Too many vlines required: [" + Arrays.toString(vlinesRequired) + " : " + maxVlines + "]");
 		}
 
-		try {
-			byte[] pngBytes = getPngBytes(style, vlinesRequired);
-			String base64Png = new String(Base64.encodeBase64(pngBytes), "UTF-8");
-			cache.put(key, base64Png);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-		
+		byte[] pngBytes = getPngBytes(style, vlinesRequired);
+		return new String(Base64.encodeBase64(pngBytes), "UTF-8");
 	}
 
 	byte[] getPngBytes(Style style, boolean[] vlinesRequired) throws IOException {
@@ -105,7 +148,7 @@ public class TablePNGGenerator {
 	}
 
 	private byte[] getPNGHeaderBytes() throws IOException {
-		return new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+		return PNG_SIGNATURE;
 	}
 	
 	private byte[] getIHDRBytes(int height) throws IOException {
@@ -209,7 +252,7 @@ public class TablePNGGenerator {
 	}
 
 	private byte[] getEndChunk() {
-		return new byte[]{0,0,0,0,'I','E','N','D',(byte)0xAE,0x42,0x60,(byte)0x82};
+		return PNG_END_CHUNK;
 	}
 
 	private void writeInt(ByteArrayOutputStream bytesOut, int value) throws IOException {
@@ -20,12 +20,14 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
@@ -35,6 +37,8 @@ import com.google.common.base.Strings;
 
 public class FhirFileUtils {
 	private static final Logger logger = LoggerFactory.getLogger(FhirFileUtils.class);
+	
+	public static final String GZIP_SUFFIX = ".gz";
     
     /**
      * @param file File to write data into
@@ -63,6 +67,71 @@ public class FhirFileUtils {
         return success;
     }
     
+    public interface StreamWriter {
+    	void writeTo(OutputStream out) throws IOException;
+    }
+    
+    /**
+     * Writes the file and a gzipped copy alongside it (e.g. full.html.gz next to full.html) together as the data is
+     * produced, so that it never needs to be held in memory. Servers can send the copy as it is to clients accepting gzip,
+     * rather than compressing the file for every request.
+     * @param file File to write data into
+     * @param writer writes the data to the stream it is given, which it should not close
+     * @return true if successful, false otherwise
+     */
+    public static boolean writeFileWithGzippedCopy(File file, StreamWriter writer) {
+    	File gzippedFile = new File(file.getPath() + GZIP_SUFFIX);
+    	
+    	boolean written = false;
+    	try {
+	    	// closed in reverse order, so the copy is at least as new as the file
+	    	try (
+	    		GZIPOutputStream gzos = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(gzippedFile)));
+	    		BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(file));
+	    		) {
+	    		writer.writeTo(new TeeOutputStream(bos, gzos));
+	    	}
+	    	written = true;
+    	} catch (IOException ex) {
+    		logger.error("IOException writing to {}", file.getAbsolutePath(), ex);
+    	} finally {
+    		if (!written) {
+    			// Don't leave a partial copy which could be served in place of the file, whatever went wrong
+    			gzippedFile.delete();
+    		}
+    	}
+    	
+    	return written;
+    }
+    
+    private static class TeeOutputStream extends OutputStream {
+    	private final OutputStream first;
+    	private final OutputStream second;
+    	
+    	TeeOutputStream(OutputStream first, OutputStream second) {
+    		this.first = first;
+    		this.second = second;
+    	}
+    	
+		@Override
+		public void write(int b) throws IOException {
+			first.write(b);
+			second.write(b);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			first.write(b, off, len);
+			second.write(b, off, len);
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			first.flush();
+			second.flush();
+		}
+    }
+    
     /**
      * @param filename Filename to write data into - content will be added to the end of the file
      * @param data array of bytes to write to specified file
@@ -1,5 +1,6 @@
 package uk.nhs.fhir.util;
 
+import uk.nhs.fhir.util.cli.CliIntArg;
 import uk.nhs.fhir.util.cli.CliPathArg;
 import uk.nhs.fhir.util.cli.CliStringArg;
 import uk.nhs.fhir.util.cli.CliStringSetArg;
@@ -21,4 +22,8 @@ public class RendererCliArg {
 	public static final CliFlag FLAG_COPY_ON_ERROR = new CliFlag("copy-on-error", "", "force-copy", "f");
 	public static final CliPathArg ARG_HTTP_CACHE = new CliPathArg("httpcache", 
 		"Directory to use to hold the HTTP cache, used when retrieving Git history (to avoid unecessary calls to Git)", "http-cache", "c");
+	public static final CliIntArg ARG_RENDER_THREADS = new CliIntArg("threads", 
+		"Number of files to render at once (default 1, 0 for one per processor)", "render-threads", "j");
+	public static final CliFlag FLAG_INCREMENTAL = new CliFlag("incremental", 
+		"Only render files which have changed since the last render to the same output directory, or which depend on files that have changed", "incremental", "i");
 }
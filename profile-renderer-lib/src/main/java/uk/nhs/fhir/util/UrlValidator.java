@@ -3,6 +3,7 @@ package uk.nhs.fhir.util;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import javax.net.ssl.SSLHandshakeException;
@@ -15,6 +16,7 @@ import org.apache.http.impl.client.HttpClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -25,9 +27,19 @@ public class UrlValidator {
 
 	private static final Logger LOG = LoggerFactory.getLogger(UrlValidator.class);
 	
-	private static Map<String, Integer> success = Maps.newConcurrentMap();
-	private static Map<String, Integer> silentFailure = Maps.newConcurrentMap();
-	private static Map<String, Integer> failure = Maps.newConcurrentMap();
+	private static final long MAX_SUCCESSFUL_URLS = 10_000;
+	
+	// status code by URL
+	// URLs which worked don't need testing again, but only failures are reported in full
+	private static final Cache<String, Integer> success = SharedCaches.newCache("url_success", MAX_SUCCESSFUL_URLS);
+	// reported at the end of each render, so kept until the next one starts
+	private static final Map<String, Integer> silentFailure = Maps.newConcurrentMap();
+	private static final Map<String, Integer> failure = Maps.newConcurrentMap();
+	
+	public static void clearFailures() {
+		silentFailure.clear();
+		failure.clear();
+	}
 	
 	public void testUrls(Set<String> linkUrls) {
 		testUrls(Lists.newArrayList(linkUrls));
@@ -50,8 +62,8 @@ public class UrlValidator {
 	}
 	
 	public static void logSuccessAndFailures() {
-		if (!success.isEmpty()) {
-			LOG.info("Successfully tested the following link URLs:\n" + String.join("\n", success.keySet()));
+		if (success.size() > 0) {
+			LOG.info("Successfully tested the following link URLs:\n" + String.join("\n", success.asMap().keySet()));
 		}
 		
 		if (!silentFailure.isEmpty()) {
@@ -64,15 +76,16 @@ public class UrlValidator {
 	}
 
 	public boolean testSingleUrl(String linkUrl) {
-		if (success.containsKey(linkUrl)) {
+		if (success.getIfPresent(linkUrl) != null) {
 			return true;
 		} else if (silentFailure.containsKey(linkUrl)
 		  || failure.containsKey(linkUrl)) {
 			return false;
 		}
 		
+		Optional<Boolean> worked;
 		try (CloseableHttpClient client = HttpClientBuilder.create().build()) {
-			testUrl(client, linkUrl, silentFailure);
+			worked = testUrl(client, linkUrl, silentFailure);
 		} catch (SSLHandshakeException e1) {
 			LOG.warn("SSL Handshake Exception for " + linkUrl);
 			silentFailure.put(linkUrl, -1);
@@ -84,20 +97,18 @@ public class UrlValidator {
 			return false;
 		}
 		
-		if (success.containsKey(linkUrl)) {
-			return true;
-		} else if (silentFailure.containsKey(linkUrl)) {
-			return false;
-		} else {
-			throw new IllegalStateException("Didn't find URL in success or failure maps: " + linkUrl);
-		}
+		// the result is returned rather than looked up, since the success cache may already have evicted it
+		return worked.orElseThrow(() -> new IllegalStateException("Didn't test URL: " + linkUrl));
 	}
 	
-	private void testUrl(CloseableHttpClient client, String linkUrl, Map<String, Integer> failureMap) throws IOException {
+	/**
+	 * @return whether the URL worked, or empty if it wasn't tested
+	 */
+	private Optional<Boolean> testUrl(CloseableHttpClient client, String linkUrl, Map<String, Integer> failureMap) throws IOException {
 		// fix up relative URLs before testing
 		if (linkUrl.startsWith("/")) {
 			// don't bother testing local addresses - would need to modify the URL to point at some up-to-date instance of the server
-			return;
+			return Optional.empty();
 		}
 		
 		int statusCode;
@@ -110,8 +121,10 @@ public class UrlValidator {
 		// 2XX or 3XX is success, anything else is a failure
 		if (statusCode >= 200 && statusCode < 400) {
 			success.put(linkUrl, statusCode);
+			return Optional.of(true);
 		} else {
 			failureMap.put(linkUrl, statusCode);
+			return Optional.of(false);
 		}
 	}
 
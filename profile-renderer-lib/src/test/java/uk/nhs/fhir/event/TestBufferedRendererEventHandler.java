@@ -0,0 +1,61 @@
+package uk.nhs.fhir.event;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TestBufferedRendererEventHandler {
+
+	@Test
+	public void testEventsReplayedInOrder() {
+		BufferedRendererEventHandler buffer = new BufferedRendererEventHandler();
+		buffer.log("first warning", Optional.empty());
+		buffer.ignore("ignored", Optional.empty());
+		try {
+			buffer.error(Optional.of("error"), Optional.empty());
+			fail("Expected error to be thrown on the rendering thread");
+		} catch (LoggedRenderingException e) {}
+		buffer.log("second warning", Optional.empty());
+
+		RecordingEventHandler target = new RecordingEventHandler();
+		assertFalse(target.foundWarnings());
+
+		buffer.replayTo(target);
+
+		assertEquals(Lists.newArrayList("LOG first warning", "IGNORE ignored", "ERROR error", "LOG second warning"), target.events);
+		assertTrue(target.foundWarnings());
+		assertTrue(target.foundErrors());
+	}
+
+	private static class RecordingEventHandler extends AbstractRendererEventHandler {
+		private final List<String> events = Lists.newArrayList();
+
+		@Override
+		public void ignore(String info, Optional<Exception> throwable) {
+			events.add("IGNORE " + info);
+		}
+
+		@Override
+		protected void logImpl(String info, Optional<Exception> throwable) {
+			events.add("LOG " + info);
+		}
+
+		@Override
+		protected void errorImpl(Optional<String> info, Optional<Exception> error) {
+			events.add("ERROR " + info.orElse(""));
+		}
+
+		@Override
+		public void displayOutstandingEvents() {}
+
+		@Override
+		public boolean isDeferred() {
+			return false;
+		}
+	}
+}
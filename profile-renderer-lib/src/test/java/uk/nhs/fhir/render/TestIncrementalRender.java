@@ -0,0 +1,42 @@
+package uk.nhs.fhir.render;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+
+public class TestIncrementalRender {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSettingsHashStableForSameBuild() {
+		HashCode first = IncrementalRender.settingsHash(Optional.empty(), ImmutableSet.of("fhir.nhs.uk"), ImmutableSet.of());
+		HashCode second = IncrementalRender.settingsHash(Optional.empty(), ImmutableSet.of("fhir.nhs.uk"), ImmutableSet.of());
+		assertEquals(first, second);
+		assertNotEquals(first, IncrementalRender.settingsHash(Optional.of("https://example.org/fhir"), ImmutableSet.of("fhir.nhs.uk"), ImmutableSet.of()));
+	}
+
+	@Test
+	public void testCodeHashFollowsClasses() throws IOException {
+		Path classes = folder.newFolder("classes").toPath();
+		Path renderer = Files.createDirectories(classes.resolve("uk/nhs/fhir/render")).resolve("FhirProfileRenderer.class");
+		Files.write(renderer, new byte[]{1, 2, 3});
+		HashCode original = IncrementalRender.codeHash(classes);
+
+		assertEquals(original, IncrementalRender.codeHash(classes));
+
+		Files.write(renderer, new byte[]{1, 2, 4});
+		assertNotEquals(original, IncrementalRender.codeHash(classes));
+	}
+}
@@ -0,0 +1,57 @@
+package uk.nhs.fhir.render;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+
+import uk.nhs.fhir.util.FhirVersion;
+import uk.nhs.fhir.util.RegistryDependency;
+
+public class TestRenderManifestFile {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testManifestReadBackByLaterRun() throws IOException {
+		RegistryDependency extension = RegistryDependency.structureDefinition(FhirVersion.STU3, "https://fhir.nhs.uk/STU3/StructureDefinition/Extension-Test");
+		RegistryDependency codeSystem = RegistryDependency.codeSystem("https://fhir.nhs.uk/STU3/CodeSystem/Test");
+
+		RenderManifest manifest = new RenderManifest(HashCode.fromLong(1L));
+		manifest.put("StructureDefinition/Profile.xml", new RenderManifest.Entry(
+			HashCode.fromLong(2L),
+			ImmutableMap.of(extension, HashCode.fromLong(3L), codeSystem, HashCode.fromLong(4L)),
+			ImmutableList.of("STU3/StructureDefinition/Profile.xml", "STU3/StructureDefinition/Profile/render.html"),
+			ImmutableList.of("Found BOM")));
+
+		Path manifestPath = folder.getRoot().toPath().resolve("output").resolve(IncrementalRender.MANIFEST_FILE_NAME);
+		new RenderManifestFile(manifestPath).write(manifest);
+
+		RenderManifest readBack = new RenderManifestFile(manifestPath).read();
+		assertEquals(HashCode.fromLong(1L), readBack.getSettingsHash());
+		assertEquals(1, readBack.getEntries().size());
+
+		RenderManifest.Entry entry = readBack.getEntries().get("StructureDefinition/Profile.xml");
+		assertEquals(HashCode.fromLong(2L), entry.getContentHash());
+		assertEquals(ImmutableMap.of(extension, HashCode.fromLong(3L), codeSystem, HashCode.fromLong(4L)), entry.getDependencies());
+		assertEquals(ImmutableList.of("STU3/StructureDefinition/Profile.xml", "STU3/StructureDefinition/Profile/render.html"), entry.getOutputs());
+		assertEquals(ImmutableList.of("Found BOM"), entry.getWarnings());
+	}
+
+	@Test(expected = IOException.class)
+	public void testOtherFileRejected() throws IOException {
+		Path manifestPath = folder.newFile(IncrementalRender.MANIFEST_FILE_NAME).toPath();
+		Files.write(manifestPath, new byte[]{0, 0, 0, 1, 0, 0, 0, 1});
+		new RenderManifestFile(manifestPath).read();
+	}
+}
@@ -0,0 +1,59 @@
+package uk.nhs.fhir.render.format;
+
+import static org.junit.Assert.*;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import uk.nhs.fhir.data.wrap.WrappedStructureDefinition;
+import uk.nhs.fhir.render.RendererContext;
+
+public class TestHTMLDocSectionCache {
+
+	private static int sectionsMade = 0;
+
+	@After
+	public void stopCache() {
+		RendererContext.forThread().getSectionCache().stop();
+	}
+
+	@Test
+	public void testSectionMadeOnceWhileRendering() throws ParserConfigurationException {
+		RendererContext.forThread().getSectionCache().start();
+		sectionsMade = 0;
+
+		HTMLDocSection first = new CountingFormatter(null).getSectionHTML();
+		HTMLDocSection second = new CountingFormatter(null).getSectionHTML();
+
+		assertSame(first, second);
+		assertEquals(1, sectionsMade);
+
+		RendererContext.forThread().getSectionCache().clear();
+		assertNotSame(first, new CountingFormatter(null).getSectionHTML());
+		assertEquals(2, sectionsMade);
+	}
+
+	@Test
+	public void testSectionMadeEachTimeOutsideRendering() throws ParserConfigurationException {
+		sectionsMade = 0;
+
+		new CountingFormatter(null).getSectionHTML();
+		new CountingFormatter(null).getSectionHTML();
+
+		assertEquals(2, sectionsMade);
+	}
+
+	private static class CountingFormatter extends ResourceFormatter<WrappedStructureDefinition> {
+		CountingFormatter(WrappedStructureDefinition wrappedResource) {
+			super(wrappedResource);
+		}
+
+		@Override
+		public HTMLDocSection makeSectionHTML() {
+			sectionsMade++;
+			return new HTMLDocSection();
+		}
+	}
+}
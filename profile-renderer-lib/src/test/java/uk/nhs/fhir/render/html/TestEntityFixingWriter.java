@@ -0,0 +1,71 @@
+package uk.nhs.fhir.render.html;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class TestEntityFixingWriter {
+
+	private static final String[] INPUTS = {
+		"<td>a&amp;#160;b</td>",
+		"&amp;#12&amp;#34;",
+		"&amp;#x2022; &amp;#zz; &amp;amp; &amp;#;",
+		"&&amp;#A0;&amp;&amp;#a0;",
+		"no entities here",
+		"ends with &amp;#16",
+		"ends with &am",
+		""
+	};
+
+	@Test
+	public void testMatchesWholeStringReplacement() throws IOException {
+		for (String input : INPUTS) {
+			assertEquals(input, expected(input), fixWhole(input));
+		}
+	}
+
+	@Test
+	public void testWritesSplitAnywhere() throws IOException {
+		for (String input : INPUTS) {
+			for (int split = 0; split <= input.length(); split++) {
+				StringWriter out = new StringWriter();
+				EntityFixingWriter writer = new EntityFixingWriter(out);
+				writer.write(input, 0, split);
+				writer.write(input.toCharArray(), split, input.length() - split);
+				writer.finish();
+
+				assertEquals(input + " split at " + split, expected(input), out.toString());
+			}
+		}
+	}
+
+	@Test
+	public void testSingleCharacterWrites() throws IOException {
+		for (String input : INPUTS) {
+			StringWriter out = new StringWriter();
+			EntityFixingWriter writer = new EntityFixingWriter(out);
+			for (char c : input.toCharArray()) {
+				writer.write(c);
+			}
+			writer.close();
+
+			assertEquals(input, expected(input), out.toString());
+		}
+	}
+
+	private static String fixWhole(String input) throws IOException {
+		StringWriter out = new StringWriter();
+		EntityFixingWriter writer = new EntityFixingWriter(out);
+		writer.write(input);
+		writer.finish();
+		return out.toString();
+	}
+
+	// the replacement previously applied to the whole serialised document
+	private static String expected(String input) {
+		return input.replaceAll("&amp;#([\\dA-Fa-f]+);", "&#$1;");
+	}
+}
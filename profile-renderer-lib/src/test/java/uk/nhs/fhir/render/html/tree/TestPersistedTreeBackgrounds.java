@@ -0,0 +1,54 @@
+package uk.nhs.fhir.render.html.tree;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestPersistedTreeBackgrounds {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSavedBackgroundLoadedByLaterRun() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("backgrounds");
+		boolean[] vlinesRequired = new boolean[]{true, false};
+		String cssClass = TablePNGGenerator.getCSSClass(Style.DOTTED, vlinesRequired);
+		String base64 = Base64.getEncoder().encodeToString(new TablePNGGenerator().getPngBytes(Style.DOTTED, vlinesRequired));
+
+		PersistedTreeBackgrounds firstRun = new PersistedTreeBackgrounds(directory);
+		assertEquals(Optional.empty(), firstRun.load(cssClass));
+		firstRun.save(cssClass, base64);
+
+		PersistedTreeBackgrounds secondRun = new PersistedTreeBackgrounds(directory);
+		assertEquals(Optional.of(base64), secondRun.load(cssClass));
+		assertEquals(1, directory.toFile().list().length);
+	}
+
+	@Test
+	public void testOtherContentNotLoaded() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("backgrounds");
+		String cssClass = TablePNGGenerator.getCSSClass(Style.SOLID, new boolean[]{true});
+		PersistedTreeBackgrounds backgrounds = new PersistedTreeBackgrounds(directory);
+
+		// markup
+		backgrounds.save(cssClass, "x);}</style><script>alert(1)</script>");
+		assertEquals(Optional.empty(), backgrounds.load(cssClass));
+
+		// base64, but not an image
+		backgrounds.save(cssClass, Base64.getEncoder().encodeToString("not an image".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals(Optional.empty(), backgrounds.load(cssClass));
+
+		// truncated image
+		backgrounds.save(cssClass, "iVBORw0KGgo=");
+		assertEquals(Optional.empty(), backgrounds.load(cssClass));
+	}
+}
@@ -0,0 +1,52 @@
+package uk.nhs.fhir.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+public class TestFhirFileUtils {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testGzippedCopyMatchesFile() throws IOException {
+		File file = new File(folder.getRoot(), "full.html");
+		byte[] content = "<html>é</html>".getBytes(StandardCharsets.UTF_8);
+
+		assertTrue(FhirFileUtils.writeFileWithGzippedCopy(file, out -> out.write(content)));
+
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		try (GZIPInputStream gzipped = new GZIPInputStream(new FileInputStream(file.getPath() + FhirFileUtils.GZIP_SUFFIX))) {
+			assertArrayEquals(content, ByteStreams.toByteArray(gzipped));
+		}
+	}
+
+	@Test
+	public void testNoGzippedCopyLeftWhenWriterFails() {
+		File file = new File(folder.getRoot(), "full.html");
+
+		try {
+			FhirFileUtils.writeFileWithGzippedCopy(file, out -> {
+				out.write("<html>".getBytes(StandardCharsets.UTF_8));
+				throw new IllegalStateException("Failed to render");
+			});
+			fail("Expected the writer's exception");
+		} catch (IllegalStateException e) {
+			assertEquals("Failed to render", e.getMessage());
+		}
+
+		assertFalse(new File(file.getPath() + FhirFileUtils.GZIP_SUFFIX).exists());
+	}
+}
@@ -46,7 +46,9 @@ public class ProfileRendererMain {
     		cliArgs.getHttpCacheDirectory(),
     		new RendererLoggingEventHandler(), 
     		cliArgs.getLocalDomains(),
-    		cliArgs.getCopyOnError());
+    		cliArgs.getCopyOnError(),
+    		cliArgs.getRenderThreads().orElse(1),
+    		cliArgs.getIncremental());
     	
     	RendererExitStatus exitStatus = renderer.process();
     	System.exit(exitStatus.exitCode());
@@ -12,6 +12,8 @@ public class RendererCliArgs {
 	private final Optional<Set<String>> localDomains;
 	private final boolean copyOnError;
     private final Optional<Path> httpCacheDirectory;
+    private final Optional<Integer> renderThreads;
+    private final boolean incremental;
 	
 	public RendererCliArgs(
 			Path inputDir, 
@@ -20,7 +22,9 @@ public class RendererCliArgs {
 			Optional<Set<String>> allowedMissingExtensionPrefixes, 
 			Optional<Path> httpCacheDirectory,
 			Optional<Set<String>> localDomains,
-			boolean copyOnError) {
+			boolean copyOnError,
+			Optional<Integer> renderThreads,
+			boolean incremental) {
 		this.inputDir = inputDir;
 		this.outputDir = outputDir;
 		this.newBaseUrl = newBaseUrl;
@@ -28,6 +32,8 @@ public class RendererCliArgs {
 		this.httpCacheDirectory = httpCacheDirectory;
 		this.localDomains = localDomains;
 		this.copyOnError = copyOnError;
+		this.renderThreads = renderThreads;
+		this.incremental = incremental;
 	}
 
 	public Path getInputDir() {
@@ -57,4 +63,12 @@ public class RendererCliArgs {
 	public Optional<Path> getHttpCacheDirectory() {
 		return httpCacheDirectory;
 	}
+
+	public Optional<Integer> getRenderThreads() {
+		return renderThreads;
+	}
+
+	public boolean getIncremental() {
+		return incremental;
+	}
 }
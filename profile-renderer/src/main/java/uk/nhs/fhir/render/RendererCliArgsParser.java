@@ -9,6 +9,7 @@ import uk.nhs.fhir.util.cli.CliArgSpec;
 import uk.nhs.fhir.util.cli.CliArgSpecBuilder;
 import uk.nhs.fhir.util.cli.CliArgsParser;
 import uk.nhs.fhir.util.cli.CliFlag;
+import uk.nhs.fhir.util.cli.CliIntArg;
 import uk.nhs.fhir.util.cli.CliPathArg;
 import uk.nhs.fhir.util.cli.CliStringArg;
 import uk.nhs.fhir.util.cli.CliStringSetArg;
@@ -22,7 +23,9 @@ public class RendererCliArgsParser extends CliArgsParser<RendererCliArgs> {
 	private static final CliStringSetArg ARG_MISSING_EXT = RendererCliArg.ARG_MISSING_EXT;
 	private static final CliStringSetArg ARG_LOCAL_DOMAINS = RendererCliArg.ARG_LOCAL_DOMAINS;
 	private static final CliPathArg ARG_HTTP_CACHE = RendererCliArg.ARG_HTTP_CACHE;
+	private static final CliIntArg ARG_RENDER_THREADS = RendererCliArg.ARG_RENDER_THREADS;
 	private static final CliFlag FLAG_COPY_ON_ERROR = RendererCliArg.FLAG_COPY_ON_ERROR;
+	private static final CliFlag FLAG_INCREMENTAL = RendererCliArg.FLAG_INCREMENTAL;
 	
 	private static final CliArgSpec RENDERER_ARG_SPEC = 
 		new CliArgSpecBuilder()
@@ -34,8 +37,10 @@ public class RendererCliArgsParser extends CliArgsParser<RendererCliArgs> {
 				.addArg(ARG_MISSING_EXT)
 				.addArg(ARG_LOCAL_DOMAINS)
 				.addArg(ARG_HTTP_CACHE)
+				.addArg(ARG_RENDER_THREADS)
 			.booleanFlag()
 				.addFlag(FLAG_COPY_ON_ERROR)
+				.addFlag(FLAG_INCREMENTAL)
 			.build();
 	
 	public RendererCliArgsParser() {
@@ -50,9 +55,11 @@ public class RendererCliArgsParser extends CliArgsParser<RendererCliArgs> {
         Optional<String> newBaseUrl = Optional.ofNullable(parsedArgs.get(ARG_NEW_PATH));
         Optional<Set<String>> localDomains = Optional.ofNullable(parsedArgs.get(ARG_LOCAL_DOMAINS));
         boolean copyOnError = parsedArgs.get(FLAG_COPY_ON_ERROR);
+        Optional<Integer> renderThreads = Optional.ofNullable(parsedArgs.get(ARG_RENDER_THREADS));
+        boolean incremental = parsedArgs.get(FLAG_INCREMENTAL);
 		
 		return new RendererCliArgs(inputDir, outputDir, newBaseUrl,
 							allowedMissingExtensionPrefixes, httpCacheDirectory,
-							localDomains, copyOnError);
+							localDomains, copyOnError, renderThreads, incremental);
 	}
 }
@@ -1,17 +1,27 @@
 package uk.nhs.fhir.datalayer;
 
+import java.util.Collections;
 import java.util.List;
 
 import com.google.common.collect.Lists;
 
 public class DataLoaderMessages {
 
-	private static List<String> profileLoadMessages = Lists.newArrayList(); 
+	// Cache loads run on several threads, and the status page can be read during a load
+	private static List<String> profileLoadMessages = Collections.synchronizedList(Lists.newArrayList());
 	
 	public static void addMessage(String msg) {
 		profileLoadMessages.add(msg);
 	}
 	
+	public static void addMessages(List<String> msgs) {
+		profileLoadMessages.addAll(msgs);
+	}
+	
+	public static void addPhaseTiming(String phase, long millis) {
+		addMessage("[Timing] " + phase + " took " + millis + "ms");
+	}
+	
 	public static void clearProfileLoadMessages() {
 		profileLoadMessages.clear();
 	}
@@ -19,8 +29,10 @@ public class DataLoaderMessages {
 	public static String getProfileLoadMessages() {
 		StringBuilder messages = new StringBuilder("Messages from profile loader:\n\n");
 		
-		for (String message : profileLoadMessages) {
-			messages.append(message).append("\n");
+		synchronized (profileLoadMessages) {
+			for (String message : profileLoadMessages) {
+				messages.append(message).append("\n");
+			}
 		}
 		
 		return messages.toString();
@@ -15,28 +15,32 @@
  */
 package uk.nhs.fhir.datalayer;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 import uk.nhs.fhir.data.metadata.ResourceMetadata;
 import uk.nhs.fhir.data.metadata.ResourceType;
 import uk.nhs.fhir.data.metadata.VersionNumber;
+import uk.nhs.fhir.datalayer.collections.NameIndex;
 import uk.nhs.fhir.datalayer.collections.ResourceEntityWithMultipleVersions;
+import uk.nhs.fhir.datalayer.collections.ResourceIndex;
+import uk.nhs.fhir.metrics.ServerMetrics;
+import uk.nhs.fhir.servlet.SharedServletContext;
 import uk.nhs.fhir.util.AbstractFhirFileLocator;
-import uk.nhs.fhir.util.FHIRUtils;
+import uk.nhs.fhir.util.FhirServerProperties;
 import uk.nhs.fhir.util.FhirVersion;
 
 /**
@@ -47,56 +51,248 @@ import uk.nhs.fhir.util.FhirVersion;
 public class FileCache {
     private static final Logger LOG = LoggerFactory.getLogger(FileCache.class.getName());
     
-    // Allows cache update to be performed atomically (i.e. once started replacing cached data collections, 
-    // no data can be requested until the replacement is finished). Not bomb-proof as a request could technically 
-    // get something before and something else after replacement.
-    private static final Object CACHE_SYNCH_OBJ = new Object();
-    
     private static AbstractFhirFileLocator fhirFileLocator = new PropertiesFhirFileLocator();
     public static void setVersionedFileLocator(AbstractFhirFileLocator versionedFileLocator) {
     	FileCache.fhirFileLocator = versionedFileLocator;
+    	FileCache.fileCacher = null;
     }
     
-    // Singleton object to act as a cache of the files in the profiles and valueset directories
-    private static Map<FhirVersion, List<ResourceEntityWithMultipleVersions>> resourceListByFhirVersion = Maps.newConcurrentMap();
-    private static Map<FhirVersion, Map<String, List<ResourceMetadata>>> examplesListByFhirVersion = Maps.newConcurrentMap();
-    private static Map<FhirVersion, Map<String, ResourceMetadata>> examplesListByName = Maps.newConcurrentMap();
+    // Singleton object to act as a cache of the files in the profiles and valueset directories.
+    // Each refresh publishes a complete new snapshot in one step, so readers never need to lock and never
+    // see a mixture of old and new data. Callers making several lookups for one request should use getSnapshot()
+    // once and query that, rather than calling the static methods repeatedly.
+    private static final AtomicReference<FileCacheSnapshot> currentSnapshot = new AtomicReference<>(FileCacheSnapshot.EMPTY);
+    
+    // Parsed copies of recently requested resources. Cleared whenever a new snapshot is published.
+    private static volatile ParsedResourceCache parsedResourceCache = null;
+    
+    // Encoded JSON/XML ready to send to clients. Clears itself when it sees a new snapshot generation.
+    private static volatile SerialisedResourceCache serialisedResourceCache = null;
+    
+    // Told whenever a new snapshot is published, e.g. to warm up caches built from the old one
+    private static final List<Runnable> snapshotListeners = new CopyOnWriteArrayList<>();
+    
+    private static final String METADATA_INDEX_FILE_NAME = "metadata-index.bin";
     
     private static AtomicBoolean updatingCache = new AtomicBoolean(false);
     
-    private static final Runnable UPDATE_CACHE =
-    	new Runnable() {
-			public void run() {
-				try {
-			    	DataLoaderMessages.clearProfileLoadMessages();
-			        LOG.debug("Updating cache from filesystem");
-			        
-					FileCacher fileCacher = new FileCacher(fhirFileLocator);
-					fileCacher.snapshotResourceMetadata();
-					
-					LOG.info("Finished caching resources. Updating cached resource maps.");
-					
-					synchronized (CACHE_SYNCH_OBJ) {
-						resourceListByFhirVersion = fileCacher.getResourceListByFhirVersion();
-						examplesListByFhirVersion = fileCacher.getExamplesListByFhirVersion();
-						examplesListByName = fileCacher.getExamplesListByName();
-					}
-				} finally {
-					updatingCache.set(false);
-				}
+    // Remembers what was loaded at the last refresh, so that the next one can just load what has changed.
+    // Only used by the thread running a refresh (see updatingCache).
+    private static FileCacher fileCacher = null;
+    
+    private static void updateCache(boolean incremental) {
+    	long start = System.nanoTime();
+		try {
+	    	DataLoaderMessages.clearProfileLoadMessages();
+	        LOG.debug("Updating cache from filesystem");
+	        
+	        boolean loadEverything = !incremental || fileCacher == null;
+	        if (fileCacher == null) {
+				fileCacher = newFileCacher();
+	        }
+	        
+	        if (loadEverything) {
+	        	DataLoaderMessages.addMessage("Loading all resources");
+	        	fileCacher.snapshotResourceMetadata();
+	        } else {
+	        	DataLoaderMessages.addMessage("Loading changed resources");
+	        	fileCacher.refreshResourceMetadata();
+	        }
+			
+			LOG.info("Finished caching resources. Updating cached resource maps.");
+			publishSnapshot();
+			
+			ParsedResourceCache parsedResources = getParsedResourceCache();
+			if (loadEverything) {
+				LOG.info("Clearing parsed resources: " + parsedResources.toString());
+				parsedResources.invalidateAll();
+			} else {
+				LOG.info("Clearing parsed resources for " + fileCacher.getChangedFiles().size() + " changed files: " + parsedResources.toString());
+				parsedResources.invalidate(fileCacher.getChangedFiles());
 			}
-		};
+			
+			saveMetadataIndex();
+			
+			ServerMetrics.getInstance().recordRefresh(!loadEverything, System.nanoTime() - start);
+		} catch (RuntimeException e) {
+			ServerMetrics.getInstance().recordRefreshFailure();
+			
+			// Don't trust anything remembered from a refresh which failed part way through
+			fileCacher = null;
+			throw e;
+		} finally {
+			updatingCache.set(false);
+		}
+    }
 
-	// If a refresh is not already running, kick it off now in a new thread  
+    private static FileCacher newFileCacher() {
+		return SharedServletContext.initialised() ?
+			new FileCacher(fhirFileLocator, SharedServletContext.getProperties().getCacheLoadThreads()) :
+			new FileCacher(fhirFileLocator);
+    }
+    
+    // Only called by the thread running a refresh (see updatingCache), so nothing else can publish between get and set
+    private static void publishSnapshot() {
+		long newGeneration = currentSnapshot.get().getGeneration() + 1;
+		currentSnapshot.set(
+			new FileCacheSnapshot(newGeneration,
+				fileCacher.getResourceIndexByFhirVersion(),
+				fileCacher.getExamplesListByFhirVersion(),
+				fileCacher.getExamplesListByName()));
+		
+		LOG.info("Published cache generation " + newGeneration);
+		
+		for (Runnable listener : snapshotListeners) {
+			try {
+				listener.run();
+			} catch (RuntimeException e) {
+				LOG.error("Error notifying listener of cache generation " + newGeneration, e);
+			}
+		}
+    }
+    
+    /**
+     * Runs the listener each time a new snapshot is published. It is called on the thread running the refresh, so should
+     * hand anything slow over to another thread.
+     */
+    public static void addSnapshotListener(Runnable listener) {
+    	snapshotListeners.add(listener);
+    }
+    
+    public static void removeSnapshotListener(Runnable listener) {
+    	snapshotListeners.remove(listener);
+    }
+    
+    /**
+     * Where to save what was loaded, so the next start-up doesn't need to load everything again.
+     * Kept next to the source folders for each FHIR version (not inside them, so that writing it doesn't trigger the file watcher).
+     */
+    private static Optional<Path> metadataIndexFile() {
+    	if (!SharedServletContext.initialised()
+    	  || !SharedServletContext.getProperties().getPersistMetadataIndex()) {
+    		return Optional.empty();
+    	}
+    	
+    	Path resourceRoot = fhirFileLocator.getSourceRoot(FhirVersion.getSupportedVersions().iterator().next()).getParent();
+    	return Optional.ofNullable(resourceRoot).map(root -> root.resolve(METADATA_INDEX_FILE_NAME));
+    }
+    
+    private static void saveMetadataIndex() {
+    	Optional<Path> indexFile = metadataIndexFile();
+    	if (indexFile.isPresent()) {
+    		try {
+    			fileCacher.saveIndex(indexFile.get());
+    		} catch (IOException | RuntimeException e) {
+    			// Not fatal - the next start-up will just have to load everything
+    			LOG.warn("Unable to save metadata index to " + indexFile.get(), e);
+    		}
+    	}
+    }
+    
+    /**
+     * For start-up. Publishes the resources saved in the metadata index at the last refresh (if there is one), so that
+     * requests can be answered straight away, then refreshes to load anything which has changed since the index was saved.
+     * Without an index, this just loads everything.
+     */
+    public static void loadCache() {
+    	Optional<Path> indexFile = metadataIndexFile();
+    	if (indexFile.isPresent()
+    	  && updatingCache.compareAndSet(false, true)) {
+    		try {
+    			FileCacher restored = newFileCacher();
+    			if (restored.loadIndex(indexFile.get())) {
+    				fileCacher = restored;
+    				publishSnapshot();
+    				LOG.info("Restored cache from metadata index " + indexFile.get() + " - checking for changed files");
+    			}
+    		} finally {
+    			updatingCache.set(false);
+    		}
+    	}
+    	
+    	refreshCache(true);
+    }
+
+    public static FileCacheSnapshot getSnapshot() {
+    	return currentSnapshot.get();
+    }
+    
+    public static long getSnapshotGeneration() {
+    	return currentSnapshot.get().getGeneration();
+    }
+    
+    public static ParsedResourceCache getParsedResourceCache() {
+    	if (parsedResourceCache == null) {
+    		initParsedResourceCache();
+    	}
+    	return parsedResourceCache;
+    }
+    
+    private static synchronized void initParsedResourceCache() {
+    	if (parsedResourceCache == null) {
+    		long maxBytes = SharedServletContext.initialised() ? 
+    			SharedServletContext.getProperties().getParsedResourceCacheMaxBytes() : 
+    			FhirServerProperties.DEFAULT_PARSED_RESOURCE_CACHE_MAX_BYTES;
+    		ParsedResourceCache cache = new ParsedResourceCache(maxBytes);
+    		ServerMetrics.getInstance().registerCache("parsed_resources", cache::getStats, cache::size);
+    		parsedResourceCache = cache;
+    	}
+    }
+    
+    public static SerialisedResourceCache getSerialisedResourceCache() {
+    	if (serialisedResourceCache == null) {
+    		initSerialisedResourceCache();
+    	}
+    	return serialisedResourceCache;
+    }
+    
+    private static synchronized void initSerialisedResourceCache() {
+    	if (serialisedResourceCache == null) {
+    		long maxBytes = SharedServletContext.initialised() ? 
+    			SharedServletContext.getProperties().getSerialisedResourceCacheMaxBytes() : 
+    			FhirServerProperties.DEFAULT_SERIALISED_RESOURCE_CACHE_MAX_BYTES;
+    		SerialisedResourceCache cache = new SerialisedResourceCache(maxBytes, FileCache::getSnapshotGeneration);
+    		ServerMetrics.getInstance().registerCache("serialised_resources", cache::getStats, cache::size);
+    		serialisedResourceCache = cache;
+    	}
+    }
+    
+	// If a refresh is not already running, reload everything now
     public static void invalidateCache() {
+    	refreshCache(false);
+    }
+    
+    /**
+     * If a refresh is not already running, run one now on this thread.
+     * @param incremental only load files which have changed since the last refresh (a full load is done if there hasn't been one yet)
+     * @return false if a refresh was already running
+     */
+    public static boolean refreshCache(boolean incremental) {
 		if (updatingCache.compareAndSet(false, true)) {
-			LOG.info("Invalidating cache on thread " + Thread.currentThread().getName());
-			UPDATE_CACHE.run();
+			LOG.info((incremental ? "Refreshing" : "Invalidating") + " cache on thread " + Thread.currentThread().getName());
+			updateCache(incremental);
+			return true;
 		} else {
 			LOG.info("Would have triggered cache update, but it was already running (updatingCache is true)");
+			return false;
 		}
     }
     
+    /**
+     * Starts refreshing the cache whenever files change under the source directories.
+     * The caller is responsible for closing the watcher.
+     */
+    public static ResourceFileWatcher watchForChanges() throws IOException {
+    	List<Path> sourceRoots = Lists.newArrayList();
+    	for (FhirVersion fhirVersion : FhirVersion.getSupportedVersions()) {
+    		sourceRoots.add(fhirFileLocator.getSourceRoot(fhirVersion));
+    	}
+    	
+    	ResourceFileWatcher watcher = new ResourceFileWatcher(sourceRoots, () -> refreshCache(true));
+    	watcher.start();
+    	return watcher;
+    }
+    
     /**
      * Method to get the cached set of Resource names of the specified type
      * 
@@ -104,7 +300,7 @@ public class FileCache {
      */
     public static List<String> getResourceNameList(FhirVersion fhirVersion, ResourceType resourceType) {
         HashSet<String> names = new HashSet<String>();
-        for (ResourceEntityWithMultipleVersions entry : resourcesForFhirVersion(fhirVersion)) {
+        for (ResourceEntityWithMultipleVersions entry : indexForFhirVersion(fhirVersion).getAllOfType(resourceType)) {
         	if (entry.getLatest().getResourceType() == resourceType
         	  && !names.contains(entry.getLatest().getResourceName())) {
     			names.add(entry.getLatest().getResourceName());
@@ -119,16 +315,7 @@ public class FileCache {
      * @return
      */
     public static List<ResourceMetadata> getExtensions(FhirVersion fhirVersion)  {
-    	List<ResourceMetadata> results = Lists.newArrayList();
-    	
-		for(ResourceEntityWithMultipleVersions entry : resourcesForFhirVersion(fhirVersion)) {
-        	if (entry.getLatest().isExtension())
-        		results.add(entry.getLatest());
-        }
-		
-		Collections.sort(results, ResourceMetadata.BY_RESOURCE_NAME);
-        
-		return results;
+    	return currentSnapshot.get().getAggregates().getExtensions(fhirVersion);
 	}
     
     
@@ -137,106 +324,70 @@ public class FileCache {
      * @param resourceType
      * @return
      */
-    public static HashMap<String, List<ResourceMetadata>> getGroupedNameList(ResourceType resourceType) {
-        LOG.debug("Creating HashMap");
-        HashMap<String, List<ResourceMetadata>> result = new HashMap<String, List<ResourceMetadata>>();
-        try {
-            for (FhirVersion fhirVersion : FhirVersion.getSupportedVersions()) {
-	        	for(ResourceEntityWithMultipleVersions entry : resourcesForFhirVersion(fhirVersion)) {
-	            	if (entry.getLatest().getResourceType().equals(resourceType)) {
-		            	boolean isExtension = entry.getLatest().isExtension();
-		                String group = entry.getLatest().getDisplayGroup();
-		                
-		                // Don't include extensions
-		                if (!isExtension) {
-			                if(result.containsKey(group)) {
-			                    List<ResourceMetadata> resultEntry = result.get(group);
-			                    resultEntry.add(entry.getLatest());
-			                } else {
-			                    List<ResourceMetadata> resultEntry = Lists.newArrayList();
-			                    resultEntry.add(entry.getLatest());
-			                    result.put(group, resultEntry);
-			                }
-		                }
-	            	}
-	            }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            LOG.error("ERROR: " + e.getMessage());
-        }
-        LOG.debug("Generated HashMap: " + result.toString());
-        return result;
+    public static Map<String, List<ResourceMetadata>> getGroupedNameList(ResourceType resourceType) {
+    	return currentSnapshot.get().getAggregates().getGroupedResources(resourceType);
+    }
+    
+    /**
+     * Number of resources of each type, for all FHIR versions
+     */
+    public static Map<String, Integer> getResourceTypeCounts() {
+    	return currentSnapshot.get().getAggregates().getResourceTypeCounts();
     }
     
     
     /**
-     * Method to get all of the resources of this type (latest versions)
-     * 
-     * @return 
+     * Latest versions of all of the resources of this type, in load order
      */
-    public static List<IBaseResource> getResources(FhirVersion fhirVersion, ResourceType resourceType,
-    												int theFromIndex, int theToIndex) {
-        // Load each resource file and put them in a list to return
-        int counter = 0;
-        List<IBaseResource> allFiles = Lists.newArrayList();
-        for (ResourceEntityWithMultipleVersions entry : resourcesForFhirVersion(fhirVersion)) {
-        	if (entry.getLatest().getResourceType() == resourceType) {
-        		if (counter >= theFromIndex && counter < theToIndex) {
-	        		IBaseResource vs = FHIRUtils.loadResourceFromFile(fhirVersion, entry.getLatest().getResourceFile());
-	        		allFiles.add(vs);
-        		}
-        		counter++;
-        	}
-        }
-        return allFiles;
+    public static List<ResourceMetadata> getLatestResourcesOfType(FhirVersion fhirVersion, ResourceType resourceType) {
+    	return indexForFhirVersion(fhirVersion).getLatestOfType(resourceType);
     }
     
     public static ResourceMetadata getSingleResourceByID(FhirVersion fhirVersion, IIdType type) {
-    	for (ResourceEntityWithMultipleVersions entry : resourcesForFhirVersion(fhirVersion)) {
-    		if (entry.getResourceID().equals(type.getIdPart())
-    		  && entry.getResourceType().equals(ResourceType.getTypeFromHAPIName(type.getResourceType()))) {
-    			if (type.getVersionIdPart() != null) {
-    				// Get a specific version
-    				VersionNumber version = new VersionNumber(type.getVersionIdPart());
-    				LOG.debug("Getting versioned resource with ID=" + type.getIdPart() + ", type=" + type.getResourceType() + ", version=" + version);
-    				return entry.getSpecificVersion(version);
-    			} else {
-    				// Get the latest
-    				return entry.getLatest();
-    			}
-    		}
+    	ResourceType resourceType = ResourceType.getTypeFromHAPIName(type.getResourceType());
+    	ResourceEntityWithMultipleVersions entry = indexForFhirVersion(fhirVersion).getById(resourceType, type.getIdPart());
+    	if (entry == null) {
+    		return null;
     	}
-    	return null;
+    	
+		if (type.getVersionIdPart() != null) {
+			// Get a specific version
+			Optional<VersionNumber> version = VersionNumber.parse(type.getVersionIdPart());
+			LOG.debug("Getting versioned resource with ID=" + type.getIdPart() + ", type=" + type.getResourceType() + ", version=" + type.getVersionIdPart());
+			return version.map(entry::getSpecificVersion).orElse(null);
+		} else {
+			// Get the latest
+			return entry.getLatest();
+		}
     }
     
     public static ResourceEntityWithMultipleVersions getversionsByID(FhirVersion fhirVersion, String idPart, ResourceType resourceType) {    	
-    	for (ResourceEntityWithMultipleVersions entry : resourcesForFhirVersion(fhirVersion)) {
-    		if (entry.getResourceID().equals(idPart)
-    		  && entry.getResourceType().equals(resourceType)) {
-    			return entry;
-    		}
-    	}
-        
-    	return null;
+    	return indexForFhirVersion(fhirVersion).getById(resourceType, idPart);
     }
     
     public static ResourceMetadata getSingleResourceByName(FhirVersion fhirVersion, String name, ResourceType resourceType) {
-        for (ResourceEntityWithMultipleVersions entry : resourcesForFhirVersion(fhirVersion)) {
-        	if (entry != null
-        	  && entry.getResourceName().equals(name)
-    		  && entry.getResourceType().equals(resourceType)) {
-    			return entry.getLatest();
-    		}
-    	}
-        
-    	return null;
+    	ResourceEntityWithMultipleVersions entry = indexForFhirVersion(fhirVersion).getByName(resourceType, name);
+    	return entry == null ? null : entry.getLatest();
+    }
+    
+    /**
+     * Latest versions of the resources of this type whose names match the search term
+     */
+    public static List<ResourceMetadata> findResourcesByName(FhirVersion fhirVersion, ResourceType resourceType, String searchTerm, NameIndex.Match match) {
+    	return indexForFhirVersion(fhirVersion).findByName(resourceType, searchTerm, match);
+    }
+    
+    /**
+     * Latest versions of the resources of this type whose canonical URL matches exactly
+     */
+    public static List<ResourceMetadata> getLatestResourcesByUrl(FhirVersion fhirVersion, ResourceType resourceType, String url) {
+    	return indexForFhirVersion(fhirVersion).getLatestByUrl(resourceType, url);
     }
 
 	public static List<ResourceMetadata> getResourceList(FhirVersion fhirVersion) {
 		List<ResourceMetadata> latestResourcesList = Lists.newArrayList();
 		
-		for (ResourceEntityWithMultipleVersions item : resourcesForFhirVersion(fhirVersion)) {
+		for (ResourceEntityWithMultipleVersions item : indexForFhirVersion(fhirVersion).getAll()) {
 			if (item != null) {
 				latestResourcesList.add(item.getLatest());
 			}
@@ -245,21 +396,16 @@ public class FileCache {
 		return latestResourcesList;
 	}
     
-    private static List<ResourceEntityWithMultipleVersions> resourcesForFhirVersion(FhirVersion fhirVersion) {
-    	synchronized (CACHE_SYNCH_OBJ) {
-    		return Lists.newArrayList(resourceListByFhirVersion.getOrDefault(fhirVersion, Lists.newArrayList()));
-    	}
+    // The index is immutable once built, so callers can use it without copying
+    private static ResourceIndex indexForFhirVersion(FhirVersion fhirVersion) {
+    	return currentSnapshot.get().getResourceIndex(fhirVersion);
     }
 	
 	public static List<ResourceMetadata> getExamples(FhirVersion fhirVersion, String resourceTypeAndID) {
-		synchronized (CACHE_SYNCH_OBJ) {
-			return Lists.newArrayList(examplesListByFhirVersion.getOrDefault(fhirVersion, Maps.newHashMap()).getOrDefault(resourceTypeAndID, Lists.newArrayList()));
-		}
+		return currentSnapshot.get().getExamples(fhirVersion, resourceTypeAndID);
 	}
 	
 	public static Optional<ResourceMetadata> getExampleByName(FhirVersion fhirVersion, String resourceFilename) {
-		synchronized (CACHE_SYNCH_OBJ) {
-			return Optional.ofNullable(examplesListByName.getOrDefault(fhirVersion, Maps.newHashMap()).get(resourceFilename));
-		}
+		return currentSnapshot.get().getExampleByName(fhirVersion, resourceFilename);
 	}
 }
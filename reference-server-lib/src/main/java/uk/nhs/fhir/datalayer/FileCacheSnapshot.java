@@ -0,0 +1,98 @@
+package uk.nhs.fhir.datalayer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.datalayer.collections.ResourceIndex;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * One complete, immutable generation of the FileCache. A new snapshot is built by each cache refresh and
+ * published in a single step, so readers always see resources and examples which were loaded together.
+ */
+public class FileCacheSnapshot {
+
+	public static final FileCacheSnapshot EMPTY = new FileCacheSnapshot(0L, ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+
+	private final long generation;
+	private final long publishedMillis = System.currentTimeMillis();
+	private final ImmutableMap<FhirVersion, ResourceIndex> resourceIndexByFhirVersion;
+	private final ImmutableMap<FhirVersion, ImmutableMap<String, ImmutableList<ResourceMetadata>>> examplesListByFhirVersion;
+	private final ImmutableMap<FhirVersion, ImmutableMap<String, ResourceMetadata>> examplesListByName;
+	// Built the first time something asks for them
+	private final Supplier<SnapshotAggregates> aggregates = Suppliers.memoize(() -> new SnapshotAggregates(this));
+
+	public FileCacheSnapshot(long generation, Map<FhirVersion, ResourceIndex> resourceIndexByFhirVersion,
+			Map<FhirVersion, Map<String, List<ResourceMetadata>>> examplesListByFhirVersion,
+			Map<FhirVersion, Map<String, ResourceMetadata>> examplesListByName) {
+		this.generation = generation;
+		this.resourceIndexByFhirVersion = ImmutableMap.copyOf(resourceIndexByFhirVersion);
+
+		ImmutableMap.Builder<FhirVersion, ImmutableMap<String, ImmutableList<ResourceMetadata>>> examplesBuilder = ImmutableMap.builder();
+		for (Map.Entry<FhirVersion, Map<String, List<ResourceMetadata>>> examplesForVersion : examplesListByFhirVersion.entrySet()) {
+			ImmutableMap.Builder<String, ImmutableList<ResourceMetadata>> examplesForVersionBuilder = ImmutableMap.builder();
+			for (Map.Entry<String, List<ResourceMetadata>> examplesForProfile : examplesForVersion.getValue().entrySet()) {
+				examplesForVersionBuilder.put(examplesForProfile.getKey(), ImmutableList.copyOf(examplesForProfile.getValue()));
+			}
+			examplesBuilder.put(examplesForVersion.getKey(), examplesForVersionBuilder.build());
+		}
+		this.examplesListByFhirVersion = examplesBuilder.build();
+
+		ImmutableMap.Builder<FhirVersion, ImmutableMap<String, ResourceMetadata>> examplesByNameBuilder = ImmutableMap.builder();
+		for (Map.Entry<FhirVersion, Map<String, ResourceMetadata>> examplesForVersion : examplesListByName.entrySet()) {
+			examplesByNameBuilder.put(examplesForVersion.getKey(), ImmutableMap.copyOf(examplesForVersion.getValue()));
+		}
+		this.examplesListByName = examplesByNameBuilder.build();
+	}
+
+	/**
+	 * Increases by one each time the cache is refreshed. Anything derived from cached resources can be
+	 * tagged with this to tell whether it is still current.
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * When the snapshot was built, which is the latest that anything derived from it can have changed
+	 */
+	public long getPublishedMillis() {
+		return publishedMillis;
+	}
+
+	/**
+	 * Grouped lists, extensions and counts of the resources in this snapshot
+	 */
+	public SnapshotAggregates getAggregates() {
+		return aggregates.get();
+	}
+
+	public ResourceIndex getResourceIndex(FhirVersion fhirVersion) {
+		return resourceIndexByFhirVersion.getOrDefault(fhirVersion, ResourceIndex.EMPTY);
+	}
+
+	public List<ResourceMetadata> getExamples(FhirVersion fhirVersion, String resourceTypeAndID) {
+		ImmutableMap<String, ImmutableList<ResourceMetadata>> examplesForVersion = examplesListByFhirVersion.get(fhirVersion);
+		if (examplesForVersion == null) {
+			return ImmutableList.of();
+		}
+
+		return examplesForVersion.getOrDefault(resourceTypeAndID, ImmutableList.of());
+	}
+
+	public Optional<ResourceMetadata> getExampleByName(FhirVersion fhirVersion, String resourceFilename) {
+		ImmutableMap<String, ResourceMetadata> examplesForVersion = examplesListByName.get(fhirVersion);
+		if (examplesForVersion == null) {
+			return Optional.empty();
+		}
+
+		return Optional.ofNullable(examplesForVersion.get(resourceFilename));
+	}
+}
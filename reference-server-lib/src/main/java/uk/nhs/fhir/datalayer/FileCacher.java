@@ -2,11 +2,15 @@ package uk.nhs.fhir.datalayer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import org.apache.commons.io.FileUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -14,45 +18,74 @@ import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import uk.nhs.fhir.data.metadata.ResourceMetadata;
 import uk.nhs.fhir.data.metadata.ResourceType;
 import uk.nhs.fhir.data.wrap.WrappedResource;
+import uk.nhs.fhir.datalayer.ParsedFileRegistry.ParsedFile;
 import uk.nhs.fhir.datalayer.collections.ResourceEntityWithMultipleVersions;
-import uk.nhs.fhir.load.FhirFileParser;
+import uk.nhs.fhir.datalayer.collections.ResourceIndex;
 import uk.nhs.fhir.load.FhirParsingFailedException;
 import uk.nhs.fhir.load.XmlFileFinder;
+import uk.nhs.fhir.metrics.ServerMetrics;
 import uk.nhs.fhir.util.AbstractFhirFileLocator;
 import uk.nhs.fhir.util.FhirVersion;
 
 /**
  * Takes a snapshot of the metadata for the currently available resources in the directory indicated by its resourceFileFinder.
+ * Remembers what it loaded from each file, so that later refreshes can just load the files which have changed.
+ * Only one refresh should be run at a time.
  */
 public class FileCacher {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(FileCacher.class);
 
     private static final XmlFileFinder resourceFileFinder = new XmlFileFinder();
-    private static final FhirFileParser parser = new FhirFileParser();
 
 	private final VersionedFilePreprocessor preprocessor;
 	private AbstractFhirFileLocator fhirFileLocator;
+	private final int parallelism;
+	private int filesParsed = 0;
+	private final List<File> changedFiles = Lists.newArrayList();
+	
+	// What was loaded from each directory at the last refresh
+	private final Map<Path, FileLoadState<File>> copiesBySourceDirectory = Maps.newHashMap();
+	private final Map<Path, FileLoadState<ResourceMetadata>> resourcesByDirectory = Maps.newHashMap();
+	private final Map<Path, Map<String, ResourceEntityWithMultipleVersions>> entitiesByDirectory = Maps.newHashMap();
+	private final Map<Path, FileLoadState<Map.Entry<String, ResourceMetadata>>> examplesByRoot = Maps.newHashMap();
 
 	private final Map<FhirVersion, List<ResourceEntityWithMultipleVersions>> resourceListByFhirVersion = Maps.newConcurrentMap();
+	private final Map<FhirVersion, ResourceIndex> resourceIndexByFhirVersion = Maps.newConcurrentMap();
     private final Map<FhirVersion, Map<String, List<ResourceMetadata>>> examplesListByFhirVersion = Maps.newConcurrentMap();
     private final Map<FhirVersion, Map<String, ResourceMetadata>> examplesListByName = Maps.newConcurrentMap();
 	
 	public FileCacher(AbstractFhirFileLocator fhirFileLocator) {
+		this(fhirFileLocator, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param parallelism the number of files to parse at once
+	 */
+	public FileCacher(AbstractFhirFileLocator fhirFileLocator, int parallelism) {
 		this.preprocessor = new VersionedFilePreprocessor(fhirFileLocator);
 		this.fhirFileLocator = fhirFileLocator;
+		this.parallelism = parallelism;
 	}
 
 	public Map<FhirVersion, List<ResourceEntityWithMultipleVersions>> getResourceListByFhirVersion() {
 		return resourceListByFhirVersion;
 	}
 
+	public Map<FhirVersion, ResourceIndex> getResourceIndexByFhirVersion() {
+		return resourceIndexByFhirVersion;
+	}
+
 	public Map<FhirVersion, Map<String, List<ResourceMetadata>>> getExamplesListByFhirVersion() {
 		return examplesListByFhirVersion;
 	}
@@ -61,13 +94,144 @@ public class FileCacher {
 		return examplesListByName;
 	}
 
+	/**
+	 * Loads everything from scratch, ignoring anything remembered from previous refreshes
+	 */
 	public void snapshotResourceMetadata() {
-    	for (FhirVersion fhirVersion : FhirVersion.getSupportedVersions()) {
-            cacheResources(fhirVersion);
-            
-        	copyExamplesToImportedFolder(fhirVersion);
-            cacheExamples(fhirVersion);
-    	}
+		clearAll();
+		refreshResourceMetadata();
+	}
+	
+	private void clearAll() {
+		copiesBySourceDirectory.clear();
+		resourcesByDirectory.clear();
+		entitiesByDirectory.clear();
+		examplesByRoot.clear();
+		resourceListByFhirVersion.clear();
+		resourceIndexByFhirVersion.clear();
+		examplesListByFhirVersion.clear();
+		examplesListByName.clear();
+	}
+	
+	/**
+	 * Only processes files which have been added, changed or removed since the last refresh, reusing what was
+	 * loaded from the others. Gives the same result as snapshotResourceMetadata().
+	 */
+	public void refreshResourceMetadata() {
+		long start = System.currentTimeMillis();
+		changedFiles.clear();
+		
+		// Every stage gets its parsed files from here, so each file is only parsed once during the refresh
+		ParsedFileRegistry parsedFiles = new ParsedFileRegistry();
+		
+		try (ParallelFileLoader loader = new ParallelFileLoader(parallelism)) {
+			DataLoaderMessages.addMessage("Loading resources using " + loader.getParallelism() + " thread(s)");
+			
+	    	for (FhirVersion fhirVersion : FhirVersion.getSupportedVersions()) {
+	    		timePhase("Pre-processing " + fhirVersion + " resources", () -> preprocessResources(fhirVersion, loader, parsedFiles));
+	    		timePhase("Loading " + fhirVersion + " resources", () -> cacheResources(fhirVersion, loader, parsedFiles));
+	            
+	    		timePhase("Copying " + fhirVersion + " examples", () -> copyExamplesToImportedFolder(fhirVersion, loader, parsedFiles));
+	    		timePhase("Loading " + fhirVersion + " examples", () -> cacheExamples(fhirVersion, loader, parsedFiles));
+	    	}
+		}
+		
+		DataLoaderMessages.addPhaseTiming("Loading all resources", System.currentTimeMillis() - start);
+		
+		filesParsed = parsedFiles.getFilesParsed();
+		String parseMessage = "[Parsing] Parsed " + filesParsed + " files (" + parsedFiles.getXmlParses() + " XML parses), " 
+			+ parsedFiles.getParsesReused() + " parses reused";
+		LOG.info(parseMessage);
+		DataLoaderMessages.addMessage(parseMessage);
+		ServerMetrics.getInstance().recordParses(ServerMetrics.PARSE_PHASE_REFRESH, parsedFiles.getXmlParses());
+	}
+	
+	/**
+	 * Saves what was loaded from each file, so that loadIndex() can restore it after a restart
+	 */
+	public void saveIndex(Path indexFile) throws IOException {
+		long start = System.currentTimeMillis();
+		new MetadataIndexFile(indexFile).write(copiesBySourceDirectory, resourcesByDirectory, examplesByRoot);
+		LOG.info("Saved metadata index to " + indexFile + " in " + (System.currentTimeMillis() - start) + "ms");
+	}
+	
+	/**
+	 * Restores the resources saved by saveIndex(), without reading any resource files. The index may be out of date, so
+	 * refreshResourceMetadata() should be called afterwards - it will only load the files which have changed since the index was saved.
+	 * @return false if there was no usable index, in which case nothing has been restored
+	 */
+	public boolean loadIndex(Path indexFile) {
+		MetadataIndexFile index = new MetadataIndexFile(indexFile);
+		if (!index.exists()) {
+			LOG.info("No metadata index found at " + indexFile);
+			return false;
+		}
+		
+		long start = System.currentTimeMillis();
+		clearAll();
+		
+		try {
+			index.read(copiesBySourceDirectory, resourcesByDirectory, examplesByRoot);
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Unable to read metadata index " + indexFile + " - all resources will be loaded", e);
+			clearAll();
+			return false;
+		}
+		
+		for (FhirVersion fhirVersion : FhirVersion.getSupportedVersions()) {
+			List<ResourceEntityWithMultipleVersions> resourceList = Lists.newArrayList();
+			for (ResourceType resourceType : ResourceType.typesForFhirVersion(fhirVersion)) {
+				Path versionedPath = fhirFileLocator.getDestinationPathForResourceType(resourceType, fhirVersion);
+				resourcesByDirectory.computeIfAbsent(versionedPath, key -> new FileLoadState<>());
+				mergeResources(versionedPath, ImmutableSet.of(), resourceList);
+			}
+			resourceListByFhirVersion.put(fhirVersion, resourceList);
+			resourceIndexByFhirVersion.put(fhirVersion, new ResourceIndex(resourceList));
+			
+			Path rootPath = fhirFileLocator.getSourceRoot(fhirVersion);
+			examplesByRoot.computeIfAbsent(rootPath, key -> new FileLoadState<>());
+			mergeExamples(fhirVersion, rootPath);
+		}
+		
+		filesParsed = 0;
+		DataLoaderMessages.addPhaseTiming("Reading metadata index", System.currentTimeMillis() - start);
+		return true;
+	}
+	
+	/**
+	 * Number of distinct files parsed during the last refresh
+	 */
+	public int getFilesParsed() {
+		return filesParsed;
+	}
+	
+	/**
+	 * Files found to have been added, changed or removed during the last refresh
+	 */
+	public List<File> getChangedFiles() {
+		return changedFiles;
+	}
+	
+	private <T> FileLoadState.Changes<T> refreshFiles(Map<Path, FileLoadState<T>> states, Path directory, List<File> files, ParallelFileLoader loader,
+			Function<List<File>, List<FileLoadResult<T>>> loadChanged, Predicate<FileLoadResult<T>> stillValid) {
+		FileLoadState<T> state = states.computeIfAbsent(directory, key -> new FileLoadState<>());
+		FileLoadState.Changes<T> changes = state.refresh(files, loader, loadChanged, stillValid);
+		
+		changedFiles.addAll(changes.getAffectedFiles());
+		if (changes.getUnchangedCount() > 0) {
+			DataLoaderMessages.addMessage("  - " + changes.getUnchangedCount() + " unchanged files in " + directory + " were not reloaded");
+		}
+		
+		return changes;
+	}
+	
+	private void timePhase(String phase, Runnable work) {
+		long start = System.currentTimeMillis();
+		work.run();
+		long millis = System.currentTimeMillis() - start;
+		
+		LOG.info(phase + " took " + millis + "ms");
+		DataLoaderMessages.addPhaseTiming(phase, millis);
 	}
     
     /**
@@ -93,93 +257,158 @@ public class FileCacher {
     	return resourceMap;
     }
 
-	private void cacheResources(FhirVersion fhirVersion) {
+	private void preprocessResources(FhirVersion fhirVersion, ParallelFileLoader loader, ParsedFileRegistry parsedFiles) {
+		for (ResourceType resourceType : ResourceType.typesForFhirVersion(fhirVersion)) {
+	    	// Call pre-processor to copy new and changed files into the versioned directory
+			Path sourcePath = fhirFileLocator.getSourcePathForResourceType(resourceType, fhirVersion);
+	    	try {
+	    		refreshFiles(copiesBySourceDirectory, sourcePath, preprocessor.findSourceFiles(fhirVersion, resourceType), loader,
+	    			changed -> copyIntoVersionedDirectory(fhirVersion, resourceType, changed, loader, parsedFiles),
+	    			FileCacher::copiesExist);
+	    	} catch (UncheckedIOException e) {
+	    		LOG.error("Unable to pre-process files into versioned directory! - error: " + e.getMessage());
+	    	}
+		}
+	}
+
+	private List<FileLoadResult<File>> copyIntoVersionedDirectory(FhirVersion fhirVersion, ResourceType resourceType, List<File> files, 
+			ParallelFileLoader loader, ParsedFileRegistry parsedFiles) {
+		try {
+			return preprocessor.copyFHIRResourcesIntoVersionedDirectory(fhirVersion, resourceType, files, loader, parsedFiles);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	private static boolean copiesExist(FileLoadResult<File> copies) {
+		return copies.getValues().stream().allMatch(File::isFile);
+	}
+
+	private void cacheResources(FhirVersion fhirVersion, ParallelFileLoader loader, ParsedFileRegistry parsedFiles) {
 		List<ResourceEntityWithMultipleVersions> newList = Lists.newArrayList();
+		boolean changed = false;
 		
         for (ResourceType resourceType : ResourceType.typesForFhirVersion(fhirVersion)) {
-        	newList.addAll(cacheFHIRResources(fhirVersion, resourceType));
+        	changed |= cacheFHIRResources(fhirVersion, resourceType, loader, parsedFiles, newList);
         }
         
-        resourceListByFhirVersion.put(fhirVersion, newList);
+        // The index is the same as last time if nothing has changed, so there's no need to build it again
+        if (changed || !resourceIndexByFhirVersion.containsKey(fhirVersion)) {
+	        resourceListByFhirVersion.put(fhirVersion, newList);
+	        resourceIndexByFhirVersion.put(fhirVersion, new ResourceIndex(newList));
+        }
 	}
     
-    private List<ResourceEntityWithMultipleVersions> cacheFHIRResources(FhirVersion fhirVersion, ResourceType resourceType) {
-    	
-    	// Call pre-processor to copy files into the versioned directory
-    	try {
-    		preprocessor.copyFHIRResourcesIntoVersionedDirectory(fhirVersion, resourceType);
-    	} catch (IOException e) {
-    		LOG.error("Unable to pre-process files into versioned directory! - error: " + e.getMessage());
-    	}
-    	
+    /**
+     * Adds the resources of this type to the list. Resources whose files have not changed are reused from the last refresh.
+     * @return whether anything changed
+     */
+    private boolean cacheFHIRResources(FhirVersion fhirVersion, ResourceType resourceType, ParallelFileLoader loader, ParsedFileRegistry parsedFiles,
+    		List<ResourceEntityWithMultipleVersions> resourceList) {
     	LOG.debug("Started loading resources into cache");
     	DataLoaderMessages.addMessage("Started loading " + resourceType + " resources into cache");
     	
         // Now, read the resources from the versioned path into our cache
-    	List<ResourceEntityWithMultipleVersions> newFileList = Lists.newArrayList();
-    	String sourcePathForResourceAndVersion = fhirFileLocator.getDestinationPathForResourceType(resourceType, fhirVersion).toString();
-    	LOG.debug("Reading pre-processed files from path: " + sourcePathForResourceAndVersion);
-        List<File> fileList = resourceFileFinder.findFiles(sourcePathForResourceAndVersion);
+    	Path versionedPath = fhirFileLocator.getDestinationPathForResourceType(resourceType, fhirVersion);
+    	LOG.debug("Reading pre-processed files from path: " + versionedPath.toString());
+        List<File> fileList = resourceFileFinder.findFiles(versionedPath.toFile());
         
-        for (File thisFile : fileList) {
-            if (thisFile.isFile()) {
-                LOG.debug("Reading " + resourceType + " ResourceEntity into cache: " + thisFile.getName());
-                
-                try {
-                	IBaseResource parsedFile = parser.parseFile(thisFile);
-                	if (FhirFileParser.isSupported(parsedFile)) {
-						WrappedResource<?> wrappedResource = WrappedResource.fromBaseResource(parsedFile);
-	                	
-	                	if (wrappedResource.getImplicitFhirVersion().equals(fhirVersion)) {
-	    					ResourceMetadata newEntity = wrappedResource.getMetadata(thisFile);
-	    	                
-	    	                addToResourceList(newFileList,newEntity);
-	    	                
-	    	                DataLoaderMessages.addMessage("  - Loading " + resourceType + " resource with ID: " + newEntity.getResourceID() + " and version: " + newEntity.getVersionNo());
-	                	}
-                	}
-
-                } catch (Exception ex) {
-                	LOG.error("Unable to load FHIR resource from file: "+thisFile.getAbsolutePath() + " - IGNORING");
-                	DataLoaderMessages.addMessage("[!] Error loading " + resourceType + " resource from file : " + thisFile.getAbsolutePath() + " message: " + ex.getMessage());
-                	ex.printStackTrace();
-                }
-            }
+        FileLoadState.Changes<ResourceMetadata> changes = 
+        	refreshFiles(resourcesByDirectory, versionedPath, fileList, loader,
+        		changed -> loader.map(changed, thisFile -> loadResource(fhirVersion, resourceType, thisFile, parsedFiles)),
+        		unchanged -> true);
+        
+        // Only resources with a version in a changed file need building again
+        Set<String> affectedIds = Sets.newHashSet();
+        for (FileLoadResult<ResourceMetadata> loadedFile : Iterables.concat(changes.getAdded(), changes.getRemoved())) {
+        	for (ResourceMetadata entity : loadedFile.getValues()) {
+        		affectedIds.add(entity.getResourceID());
+        	}
+        }
+        
+        mergeResources(versionedPath, affectedIds, resourceList);
+        return !changes.isEmpty();
+    }
+    
+    /**
+     * Builds the resources loaded from this directory, reusing the ones from the last refresh unless they have a version in an affected file
+     */
+    private void mergeResources(Path versionedPath, Set<String> affectedIds, List<ResourceEntityWithMultipleVersions> resourceList) {
+        Map<String, ResourceEntityWithMultipleVersions> previousEntitiesById = entitiesByDirectory.getOrDefault(versionedPath, ImmutableMap.of());
+        
+        // Merge in file order, so the result doesn't depend on which thread finished first
+        Map<String, ResourceEntityWithMultipleVersions> entitiesById = Maps.newLinkedHashMap();
+        for (FileLoadResult<ResourceMetadata> loadedFile : resourcesByDirectory.get(versionedPath).getResults()) {
+        	for (ResourceMetadata newEntity : loadedFile.getValues()) {
+        		ResourceEntityWithMultipleVersions previousEntity = previousEntitiesById.get(newEntity.getResourceID());
+        		if (previousEntity != null
+        		  && !affectedIds.contains(newEntity.getResourceID())) {
+        			// Published entities are never modified, so can be shared with the previous snapshot
+        			entitiesById.putIfAbsent(newEntity.getResourceID(), previousEntity);
+        		} else {
+        			addToResourceList(entitiesById, newEntity);
+        		}
+        	}
+        	DataLoaderMessages.addMessages(loadedFile.getMessages());
         }
+        entitiesByDirectory.put(versionedPath, entitiesById);
         
         // Sort our collection into alpha order by resource name
         //Collections.sort(newFileList);
         LOG.debug("Finished reading resources into cache");
-        return newFileList;
+        resourceList.addAll(entitiesById.values());
+    }
+    
+    private FileLoadResult<ResourceMetadata> loadResource(FhirVersion fhirVersion, ResourceType resourceType, File thisFile, ParsedFileRegistry parsedFiles) {
+    	FileLoadResult<ResourceMetadata> result = new FileLoadResult<>();
+    	
+        if (thisFile.isFile()) {
+            LOG.debug("Reading " + resourceType + " ResourceEntity into cache: " + thisFile.getName());
+            
+            try {
+            	ParsedFile parsedFile = parsedFiles.parse(thisFile);
+            	if (parsedFile.isSupported()) {
+					WrappedResource<?> wrappedResource = parsedFile.getWrappedResource();
+                	
+                	if (wrappedResource.getImplicitFhirVersion().equals(fhirVersion)) {
+    					ResourceMetadata newEntity = wrappedResource.getMetadata(thisFile);
+    	                
+    	                result.add(newEntity);
+    	                
+    	                result.addMessage("  - Loading " + resourceType + " resource with ID: " + newEntity.getResourceID() + " and version: " + newEntity.getVersionNo());
+                	}
+            	}
+
+            } catch (Exception ex) {
+            	LOG.error("Unable to load FHIR resource from file: "+thisFile.getAbsolutePath() + " - IGNORING");
+            	result.addMessage("[!] Error loading " + resourceType + " resource from file : " + thisFile.getAbsolutePath() + " message: " + ex.getMessage());
+            	ex.printStackTrace();
+            }
+        }
+        
+        return result;
     }
     
-    private void addToResourceList(List<ResourceEntityWithMultipleVersions> list,
+    private void addToResourceList(Map<String, ResourceEntityWithMultipleVersions> entitiesById,
     										ResourceMetadata entry) {
-    	boolean found = false;
-    	for (ResourceEntityWithMultipleVersions listItem : list) {
-    		if (listItem.getResourceID().equals(entry.getResourceID())
-    		  && listItem.getResourceType().equals(entry.getResourceType())) {
-    			// This is a new version of an existing resource - add the version
-    			listItem.add(entry);
-    			found = true;
-    			LOG.debug("Added new version to resource: " + entry.getResourceID());
-    			break;
-    		}
-    	}
-		if (!found) {
+    	// All entries being merged here have the same resource type, so the ID identifies the resource
+    	ResourceEntityWithMultipleVersions listItem = entitiesById.get(entry.getResourceID());
+    	if (listItem != null) {
+			// This is a new version of an existing resource - add the version
+			listItem.add(entry);
+			LOG.debug("Added new version to resource: " + entry.getResourceID());
+    	} else {
 			// This is a new resource we haven't seen before
 			ResourceEntityWithMultipleVersions newEntry = new ResourceEntityWithMultipleVersions(entry);
-			list.add(newEntry);
+			entitiesById.put(entry.getResourceID(), newEntry);
 			LOG.debug("Added new resource (first version found): " + entry.getResourceID());
 		}
     }
     
-    private void cacheExamples(FhirVersion fhirVersion) {
+    private void cacheExamples(FhirVersion fhirVersion, ParallelFileLoader loader, ParsedFileRegistry parsedFiles) {
     	LOG.debug("Started loading example resources into cache");
     	DataLoaderMessages.addMessage("Started loading example resources into cache");
     	
-        // Now, read the resources into our cache
-		HashMap<String, List<ResourceMetadata>> examplesList = Maps.newHashMap();
 		// We want resources that qualify as full implementations AND examples to be included in both places, so start from the source root.
         //String path = fhirFileLocator.getDestinationPathForResourceType(EXAMPLES, fhirVersion).toString();
 		Path rootPath = fhirFileLocator.getSourceRoot(fhirVersion);
@@ -187,78 +416,103 @@ public class FileCacher {
 			resourceFileFinder.findFilesRecursively(rootPath) :
 			Lists.newArrayList();
 		
-        for (File thisFile : fileList) {
-            if (thisFile.isFile()) {
-                LOG.debug("Reading example ResourceEntity into cache: " + thisFile.getName());
-                
-                String resourceID = null;
-                
-                try {
-                	IBaseResource exampleResource = parser.parseFile(thisFile);
-                	
-                	// A supported file is any class we treat as part of a specification (StructureDefinition, ValueSet etc)
-                	// Anything else we have successfully parsed, can be treated as an example
-                	//if (!FhirFileParser.isSupported(exampleResource)) {
-                		resourceID = exampleResource.getIdElement().getIdPart();
-                    
-	                    // Find the profile resource ID the example relates to
-	                    List<? extends IPrimitiveType<String>> profiles = exampleResource.getMeta().getProfile();
-	                    if (profiles.isEmpty()
-	                      && thisFile.getAbsolutePath().contains("/" + ResourceType.EXAMPLES.getFolderName() + "/")) {
-	                    	LOG.error("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - no profile was specified in the example!");
-	                    	DataLoaderMessages.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " no profile was specified in the example!");
-	                    }
-	                    for (IPrimitiveType<String> profile : profiles) {
-	                    	String profileStr = profile.getValueAsString();
-	                    	if (profileStr != null) {
-	                    		if (profileStr.contains("_history")) {
-	                    			LOG.error("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - versioned profile URLs not supported!");
-	                    			DataLoaderMessages.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " versioned profile URLs not supported!");
-	                    		} else {
-	                    			String[] profileParts = profileStr.split("/");
-	                    			if (profileParts.length < 3) {
-	                    				LOG.error("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - profile URL invalid: " + profileStr);
-	                    				DataLoaderMessages.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " - profile URL invalid: " + profileStr);
-	                    			} else {
-	                    				// We seem to have a valid profile - add to our cache
-	            	                    String profileResourceID = profileParts[profileParts.length-2] + "/" + 
-	            	                    							profileParts[profileParts.length-1];
-	
-	            	                    // Load the examples into a different in-memory cache for later look-up
-	            	                    ResourceMetadata newEntity = new ResourceMetadata(thisFile.getName(), thisFile, ResourceType.EXAMPLES, false, Optional.empty(),
-	            								null, true, resourceID, null, null, null, null, null, null, fhirVersion, null);
-	            		                
-	            	                    if (examplesList.containsKey(profileResourceID)) {
-	            	                    	examplesList.get(profileResourceID).add(newEntity);
-	            	                    } else {
-	            	                    	List<ResourceMetadata> e = Lists.newArrayList();
-	            	                    	e.add(newEntity);
-	            	                    	examplesList.put(profileResourceID, e);
-	            	                    }
-	            	                    
-	            	                    DataLoaderMessages.addMessage("  - Loading example resource with ID: " + resourceID + " as an example of resource with ID: " + profileResourceID);
-	                    			}
-	                    		}
-	                    	} else {
-	                    		LOG.warn("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - no profile was specified in the example!");
-	                    		DataLoaderMessages.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " no profile was specified in the example!");
-	                    	}
-	                    }
-                	//}
-	                
-                } catch (FhirParsingFailedException | RuntimeException ex) {
-                	LOG.error("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - IGNORING");
-                	DataLoaderMessages.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " message: " + ex.getMessage());
+		refreshFiles(examplesByRoot, rootPath, fileList, loader,
+			changed -> loader.map(changed, thisFile -> loadExample(fhirVersion, thisFile, parsedFiles)),
+			unchanged -> true);
+		
+		mergeExamples(fhirVersion, rootPath);
+    }
+    
+    private void mergeExamples(FhirVersion fhirVersion, Path rootPath) {
+		HashMap<String, List<ResourceMetadata>> examplesList = Maps.newHashMap();
+		
+		for (FileLoadResult<Map.Entry<String, ResourceMetadata>> loadedFile : examplesByRoot.get(rootPath).getResults()) {
+			for (Map.Entry<String, ResourceMetadata> example : loadedFile.getValues()) {
+				String profileResourceID = example.getKey();
+                if (examplesList.containsKey(profileResourceID)) {
+                	examplesList.get(profileResourceID).add(example.getValue());
+                } else {
+                	List<ResourceMetadata> e = Lists.newArrayList();
+                	e.add(example.getValue());
+                	examplesList.put(profileResourceID, e);
                 }
-            }
-        }
+			}
+			DataLoaderMessages.addMessages(loadedFile.getMessages());
+		}
         LOG.debug("Finished reading example resources into cache");
 
         examplesListByFhirVersion.put(fhirVersion, examplesList);
         examplesListByName.put(fhirVersion, buildExampleListByName(examplesList));
     }
+    
+    /**
+     * @return the examples found in the file, keyed by the [type]/[id] of the profile they are examples of
+     */
+    private FileLoadResult<Map.Entry<String, ResourceMetadata>> loadExample(FhirVersion fhirVersion, File thisFile, ParsedFileRegistry parsedFiles) {
+    	FileLoadResult<Map.Entry<String, ResourceMetadata>> result = new FileLoadResult<>();
+    	
+        if (thisFile.isFile()) {
+            LOG.debug("Reading example ResourceEntity into cache: " + thisFile.getName());
+            
+            String resourceID = null;
+            
+            try {
+            	IBaseResource exampleResource = parsedFiles.parse(thisFile).getResource();
+            	
+            	// A supported file is any class we treat as part of a specification (StructureDefinition, ValueSet etc)
+            	// Anything else we have successfully parsed, can be treated as an example
+            	//if (!FhirFileParser.isSupported(exampleResource)) {
+            		resourceID = exampleResource.getIdElement().getIdPart();
+                
+                    // Find the profile resource ID the example relates to
+                    List<? extends IPrimitiveType<String>> profiles = exampleResource.getMeta().getProfile();
+                    if (profiles.isEmpty()
+                      && thisFile.getAbsolutePath().contains("/" + ResourceType.EXAMPLES.getFolderName() + "/")) {
+                    	LOG.error("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - no profile was specified in the example!");
+                    	result.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " no profile was specified in the example!");
+                    }
+                    for (IPrimitiveType<String> profile : profiles) {
+                    	String profileStr = profile.getValueAsString();
+                    	if (profileStr != null) {
+                    		if (profileStr.contains("_history")) {
+                    			LOG.error("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - versioned profile URLs not supported!");
+                    			result.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " versioned profile URLs not supported!");
+                    		} else {
+                    			String[] profileParts = profileStr.split("/");
+                    			if (profileParts.length < 3) {
+                    				LOG.error("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - profile URL invalid: " + profileStr);
+                    				result.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " - profile URL invalid: " + profileStr);
+                    			} else {
+                    				// We seem to have a valid profile - add to our cache
+            	                    String profileResourceID = profileParts[profileParts.length-2] + "/" + 
+            	                    							profileParts[profileParts.length-1];
+
+            	                    // Load the examples into a different in-memory cache for later look-up
+            	                    ResourceMetadata newEntity = new ResourceMetadata(thisFile.getName(), thisFile, ResourceType.EXAMPLES, false, Optional.empty(),
+            								null, true, resourceID, null, null, null, null, null, null, fhirVersion, null);
+            		                
+            	                    result.add(Maps.immutableEntry(profileResourceID, newEntity));
+            	                    
+            	                    result.addMessage("  - Loading example resource with ID: " + resourceID + " as an example of resource with ID: " + profileResourceID);
+                    			}
+                    		}
+                    	} else {
+                    		LOG.warn("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - no profile was specified in the example!");
+                    		result.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " no profile was specified in the example!");
+                    	}
+                    }
+            	//}
+                
+            } catch (FhirParsingFailedException | RuntimeException ex) {
+            	LOG.error("Unable to load FHIR example resource from file: "+thisFile.getAbsolutePath() + " - IGNORING");
+            	result.addMessage("[!] Error loading example resource from file : " + thisFile.getAbsolutePath() + " message: " + ex.getMessage());
+            }
+        }
+        
+        return result;
+    }
 
-	void copyExamplesToImportedFolder(FhirVersion fhirVersion) {
+	void copyExamplesToImportedFolder(FhirVersion fhirVersion, ParallelFileLoader loader, ParsedFileRegistry parsedFiles) {
 		// Call pre-processor to copy files into the versioned directory
         Path renderedExamplesPath = fhirFileLocator.getSourcePathForResourceType(ResourceType.EXAMPLES, fhirVersion);
         Path importedExamplesPath = fhirFileLocator.getDestinationPathForResourceType(ResourceType.EXAMPLES, fhirVersion);
@@ -269,15 +523,31 @@ public class FileCacher {
         }
         
 		List<File> renderedFiles = resourceFileFinder.findFiles(renderedExamplesPath.toFile());
-        
+		
+		refreshFiles(copiesBySourceDirectory, renderedExamplesPath, renderedFiles, loader,
+			changed -> copyExamples(changed, importedExamplesPath, parsedFiles),
+			FileCacher::copiesExist);
+	}
+	
+	private List<FileLoadResult<File>> copyExamples(List<File> renderedFiles, Path importedExamplesPath, ParsedFileRegistry parsedFiles) {
+		List<FileLoadResult<File>> copies = Lists.newArrayListWithCapacity(renderedFiles.size());
+		
         for (File renderedFile : renderedFiles) {
+        	FileLoadResult<File> copy = new FileLoadResult<>();
+        	copies.add(copy);
+        	
         	String fileName = renderedFile.getName();
 			try {
-				FileUtils.copyFile(renderedFile, importedExamplesPath.resolve(fileName).toFile());
+				File importedFile = importedExamplesPath.resolve(fileName).toFile();
+				FileUtils.copyFile(renderedFile, importedFile);
+				parsedFiles.recordCopy(renderedFile, importedFile);
+				copy.add(importedFile);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
         }
+        
+        return copies;
 	}
 
 }
@@ -0,0 +1,127 @@
+package uk.nhs.fhir.datalayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import uk.nhs.fhir.load.FileLoader;
+
+/**
+ * Identifies the content of a file, so a refresh can tell which files need loading again.
+ * Modification time and size are checked first. Only if they differ is the content hashed, so files which are rewritten
+ * unchanged (e.g. by re-running the renderer) are not reloaded.
+ * The listing of the supporting artefact directory next to the file is included, since resource metadata is built from it.
+ */
+class FileFingerprint {
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	private final long lastModified;
+	private final long length;
+	private final HashCode artefactListing;
+	// null if the file couldn't be read, in which case it never matches
+	private final HashCode contentHash;
+
+	FileFingerprint(long lastModified, long length, HashCode artefactListing, HashCode contentHash) {
+		this.lastModified = lastModified;
+		this.length = length;
+		this.artefactListing = artefactListing;
+		this.contentHash = contentHash;
+	}
+
+	/**
+	 * @param previous the fingerprint from the last refresh, if there was one. Returned as is if nothing appears to have changed.
+	 */
+	static FileFingerprint read(File file, FileFingerprint previous) {
+		long lastModified = file.lastModified();
+		long length = file.length();
+		HashCode artefactListing = artefactListing(file);
+
+		if (previous != null
+		  && previous.lastModified == lastModified
+		  && previous.length == length
+		  && previous.artefactListing.equals(artefactListing)) {
+			return previous;
+		}
+
+		HashCode contentHash;
+		try {
+			contentHash = Files.asByteSource(file).hash(HASH_FUNCTION);
+		} catch (IOException e) {
+			contentHash = null;
+		}
+
+		return new FileFingerprint(lastModified, length, artefactListing, contentHash);
+	}
+
+	long getLastModified() {
+		return lastModified;
+	}
+
+	long getLength() {
+		return length;
+	}
+
+	HashCode getArtefactListing() {
+		return artefactListing;
+	}
+
+	HashCode getContentHash() {
+		return contentHash;
+	}
+
+	boolean hasSameContentAs(FileFingerprint other) {
+		return other != null
+		  && contentHash != null
+		  && contentHash.equals(other.contentHash)
+		  && artefactListing.equals(other.artefactListing);
+	}
+
+	/**
+	 * Names, sizes and modification times of the files in the artefact directory (see WrappedResource.getArtefacts())
+	 */
+	private static HashCode artefactListing(File file) {
+		Hasher hasher = HASH_FUNCTION.newHasher();
+
+		File artefactDir = new File(file.getParentFile(), FileLoader.removeFileExtension(file.getName()));
+		File[] artefacts = artefactDir.listFiles();
+		if (artefacts != null) {
+			Arrays.sort(artefacts, Comparator.comparing(File::getName));
+			for (File artefact : artefacts) {
+				hasher.putUnencodedChars(artefact.getName())
+					.putLong(artefact.length())
+					.putLong(artefact.lastModified());
+			}
+		}
+
+		return hasher.hash();
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(lastModified, length, artefactListing, contentHash);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof FileFingerprint)) {
+			return false;
+		}
+
+		FileFingerprint other = (FileFingerprint) obj;
+		return lastModified == other.lastModified
+		  && length == other.length
+		  && artefactListing.equals(other.artefactListing)
+		  && Objects.equals(contentHash, other.contentHash);
+	}
+}
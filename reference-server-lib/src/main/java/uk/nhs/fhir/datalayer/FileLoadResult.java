@@ -0,0 +1,31 @@
+package uk.nhs.fhir.datalayer;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * What was loaded from a single file during a cache refresh, along with any messages for the load report.
+ * Messages are held here rather than added to DataLoaderMessages directly, so that they are reported in file
+ * order when files are loaded in parallel.
+ */
+class FileLoadResult<T> {
+	private final List<T> values = Lists.newArrayList();
+	private final List<String> messages = Lists.newArrayList();
+
+	void add(T value) {
+		values.add(value);
+	}
+
+	void addMessage(String message) {
+		messages.add(message);
+	}
+
+	List<T> getValues() {
+		return values;
+	}
+
+	List<String> getMessages() {
+		return messages;
+	}
+}
@@ -0,0 +1,191 @@
+package uk.nhs.fhir.datalayer;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Remembers what was loaded from each file in one directory (or directory tree) at the last refresh, so that the
+ * next refresh only needs to load files which have been added or changed since, and can tell what has been removed.
+ * Results are kept in file order, so merging them gives the same answer as loading every file again.
+ */
+class FileLoadState<T> {
+
+	private Map<String, LoadedFile<T>> loadedFiles = ImmutableMap.of();
+
+	/**
+	 * Brings the state up to date with the supplied files.
+	 * @param loadChanged loads the files which are new or have changed, returning a result for each in the same order
+	 * @param stillValid checked for the previous results of unchanged files, for example that files they created still exist
+	 */
+	Changes<T> refresh(List<File> files, ParallelFileLoader loader,
+			Function<List<File>, List<FileLoadResult<T>>> loadChanged, Predicate<FileLoadResult<T>> stillValid) {
+		List<FileFingerprint> fingerprints = loader.map(files, file -> FileFingerprint.read(file, previousFingerprint(file)));
+
+		List<File> changedFiles = Lists.newArrayList();
+		for (int i = 0; i < files.size(); i++) {
+			LoadedFile<T> previous = loadedFiles.get(key(files.get(i)));
+			if (previous == null
+			  || !fingerprints.get(i).hasSameContentAs(previous.fingerprint)
+			  || !stillValid.test(previous.result)) {
+				changedFiles.add(files.get(i));
+			}
+		}
+
+		List<FileLoadResult<T>> changedResults =
+			changedFiles.isEmpty() ?
+				ImmutableList.of() :
+				loadChanged.apply(changedFiles);
+
+		Map<String, FileLoadResult<T>> changedResultsByKey = Maps.newHashMap();
+		for (int i = 0; i < changedFiles.size(); i++) {
+			changedResultsByKey.put(key(changedFiles.get(i)), changedResults.get(i));
+		}
+
+		Map<String, LoadedFile<T>> newLoadedFiles = Maps.newLinkedHashMap();
+		List<FileLoadResult<T>> removedResults = Lists.newArrayList();
+		List<File> affectedFiles = Lists.newArrayList(changedFiles);
+
+		for (int i = 0; i < files.size(); i++) {
+			String key = key(files.get(i));
+			LoadedFile<T> previous = loadedFiles.get(key);
+			FileLoadResult<T> changedResult = changedResultsByKey.get(key);
+
+			if (changedResult != null) {
+				newLoadedFiles.put(key, new LoadedFile<>(files.get(i), fingerprints.get(i), changedResult));
+				if (previous != null) {
+					removedResults.add(previous.result);
+				}
+			} else {
+				// Unchanged - keep the new fingerprint, which may have a newer modification time for the same content
+				newLoadedFiles.put(key, new LoadedFile<>(files.get(i), fingerprints.get(i), previous.result));
+			}
+		}
+
+		for (Map.Entry<String, LoadedFile<T>> previous : loadedFiles.entrySet()) {
+			if (!newLoadedFiles.containsKey(previous.getKey())) {
+				removedResults.add(previous.getValue().result);
+				affectedFiles.add(previous.getValue().file);
+			}
+		}
+
+		loadedFiles = newLoadedFiles;
+
+		return new Changes<>(changedResults, removedResults, affectedFiles, files.size() - changedFiles.size());
+	}
+
+	/**
+	 * Results for all of the files, in the order they were supplied to the last refresh
+	 */
+	List<FileLoadResult<T>> getResults() {
+		List<FileLoadResult<T>> results = Lists.newArrayListWithCapacity(loadedFiles.size());
+		for (LoadedFile<T> loadedFile : loadedFiles.values()) {
+			results.add(loadedFile.result);
+		}
+		return results;
+	}
+
+	/**
+	 * Everything remembered from the last refresh, in file order
+	 */
+	Collection<LoadedFile<T>> getLoadedFiles() {
+		return loadedFiles.values();
+	}
+
+	/**
+	 * Restores a file remembered from an earlier run (see MetadataIndexFile). The next refresh checks whether it is still current.
+	 */
+	void restore(File file, FileFingerprint fingerprint, FileLoadResult<T> result) {
+		if (loadedFiles instanceof ImmutableMap) {
+			loadedFiles = Maps.newLinkedHashMap(loadedFiles);
+		}
+		loadedFiles.put(key(file), new LoadedFile<>(file, fingerprint, result));
+	}
+
+	private FileFingerprint previousFingerprint(File file) {
+		LoadedFile<T> previous = loadedFiles.get(key(file));
+		return previous == null ? null : previous.fingerprint;
+	}
+
+	private static String key(File file) {
+		return file.getAbsoluteFile().toPath().normalize().toString();
+	}
+
+	static class LoadedFile<T> {
+		private final File file;
+		private final FileFingerprint fingerprint;
+		private final FileLoadResult<T> result;
+
+		LoadedFile(File file, FileFingerprint fingerprint, FileLoadResult<T> result) {
+			this.file = file;
+			this.fingerprint = fingerprint;
+			this.result = result;
+		}
+
+		File getFile() {
+			return file;
+		}
+
+		FileFingerprint getFingerprint() {
+			return fingerprint;
+		}
+
+		FileLoadResult<T> getResult() {
+			return result;
+		}
+	}
+
+	/**
+	 * What a refresh found to have changed
+	 */
+	static class Changes<T> {
+		private final List<FileLoadResult<T>> added;
+		private final List<FileLoadResult<T>> removed;
+		private final List<File> affectedFiles;
+		private final int unchangedCount;
+
+		Changes(List<FileLoadResult<T>> added, List<FileLoadResult<T>> removed, List<File> affectedFiles, int unchangedCount) {
+			this.added = added;
+			this.removed = removed;
+			this.affectedFiles = affectedFiles;
+			this.unchangedCount = unchangedCount;
+		}
+
+		/**
+		 * Results for files which were new or had changed
+		 */
+		List<FileLoadResult<T>> getAdded() {
+			return added;
+		}
+
+		/**
+		 * Previous results for files which have changed or been removed
+		 */
+		List<FileLoadResult<T>> getRemoved() {
+			return removed;
+		}
+
+		/**
+		 * Files which were added, changed or removed
+		 */
+		List<File> getAffectedFiles() {
+			return affectedFiles;
+		}
+
+		int getUnchangedCount() {
+			return unchangedCount;
+		}
+
+		boolean isEmpty() {
+			return affectedFiles.isEmpty();
+		}
+	}
+}
@@ -16,23 +16,20 @@
 package uk.nhs.fhir.datalayer;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Lists;
-
 import ca.uhn.fhir.model.primitive.IdDt;
 import uk.nhs.fhir.data.metadata.ResourceMetadata;
 import uk.nhs.fhir.data.metadata.ResourceType;
 import uk.nhs.fhir.data.metadata.VersionNumber;
+import uk.nhs.fhir.datalayer.collections.NameIndex;
 import uk.nhs.fhir.datalayer.collections.ResourceEntityWithMultipleVersions;
 import uk.nhs.fhir.util.FHIRUtils;
 import uk.nhs.fhir.util.FhirVersion;
@@ -53,7 +50,23 @@ public class FilesystemIF {
     }
     
     /**
-     * Gets a specific resource, optionally also with a specific version
+     * Loads the cache at start-up, starting from the saved metadata index if there is one
+     */
+    public static void loadCache() {
+    	FileCache.loadCache();
+    }
+    
+    /**
+     * Reloads just the files which have changed since the last refresh
+     * @return false if a refresh was already running
+     */
+    public static boolean refreshChangedResources() {
+    	return FileCache.refreshCache(true);
+    }
+    
+    /**
+     * Gets a specific resource, optionally also with a specific version.
+     * The returned resource may be shared with other requests and must not be modified.
      * @param id
      * @return 
      */
@@ -63,13 +76,21 @@ public class FilesystemIF {
 	    	File path = entry.getResourceFile();
 	    	LOG.debug("Getting Resource with id=" + theId.getIdPart() + " looking for file: " + path.getAbsolutePath());
 	        
-	    	IBaseResource foundResource = FHIRUtils.loadResourceFromFile(fhirVersion, path);
+	    	IBaseResource foundResource = FileCache.getParsedResourceCache().get(fhirVersion, path);
 	        return foundResource;
     	} else {
     		return null;
     	}
     }
     
+    /**
+     * As getResourceByID, but returns a copy which the caller is free to modify. 
+     * Resources returned by getResourceByID may be shared with other requests.
+     */
+    public IBaseResource getResourceCopyByID(FhirVersion fhirVersion, IIdType theId) {
+    	return FHIRUtils.copyResource(fhirVersion, getResourceByID(fhirVersion, theId));
+    }
+    
     public ResourceMetadata getResourceEntityByID(FhirVersion fhirVersion, IIdType theId) {
     	String idPart = theId.getIdPart();
 		ResourceType resourceType = ResourceType.getTypeFromHAPIName(theId.getResourceType());
@@ -80,8 +101,10 @@ public class FilesystemIF {
 		}
 		
 		if (theId.hasVersionIdPart()) {
-    		VersionNumber version = new VersionNumber(theId.getVersionIdPart());
-    		return versionsByID.getSpecificVersion(version);
+    		// No resource can have a version which isn't a valid version number
+    		return VersionNumber.parse(theId.getVersionIdPart())
+    			.map(versionsByID::getSpecificVersion)
+    			.orElse(null);
     	} else {
     		return versionsByID.getLatest();
     	}
@@ -101,9 +124,38 @@ public class FilesystemIF {
     	return getResourceByID(fhirVersion, new IdDt(id));
     }
     
+    /**
+     * Latest versions of all resources of the supplied type
+     */
+    public SearchResult searchByType(FhirVersion fhirVersion, ResourceType resourceType) {
+    	return new SearchResult(fhirVersion, FileCache.getLatestResourcesOfType(fhirVersion, resourceType));
+    }
+    
+    /**
+     * Resources of the supplied type whose name contains the supplied string, i.e. name:contains=[parameter]
+     */
+    public SearchResult searchByName(FhirVersion fhirVersion, ResourceType resourceType, String theNamePart) {
+    	return new SearchResult(fhirVersion, getAllResourceIDforResourcesMatchingNamePattern(fhirVersion, resourceType, theNamePart));
+    }
+    
+    /**
+     * Resources of the supplied type whose name matches the supplied string, i.e. name=, name:contains= or name:exact=[parameter]
+     */
+    public SearchResult searchByName(FhirVersion fhirVersion, ResourceType resourceType, String theName, NameIndex.Match match) {
+    	return new SearchResult(fhirVersion, FileCache.findResourcesByName(fhirVersion, resourceType, theName, match));
+    }
+    
+    /**
+     * Latest versions of resources of the supplied type with the supplied canonical URL
+     */
+    public SearchResult searchByURL(FhirVersion fhirVersion, ResourceType resourceType, String theURL) {
+    	return new SearchResult(fhirVersion, FileCache.getLatestResourcesByUrl(fhirVersion, resourceType, theURL));
+    }
+    
     /**
      * This is the method to do a search based on name, ie to find where
      * name:contains=[parameter]
+     * Callers fetching several pages should use searchByName once instead.
      * 
      * @param theNamePart
      * @return 
@@ -111,18 +163,7 @@ public class FilesystemIF {
     public List<IBaseResource> getResourceMatchByName(FhirVersion fhirVersion, ResourceType resourceType,
     				String theNamePart, int theFromIndex, int theToIndex) {
         LOG.info("Getting " + resourceType.name() + " resources with name containing: " + theNamePart);
-        
-        List<IBaseResource> list = Lists.newArrayList();
-        List<ResourceMetadata> matchingIDs = getAllResourceIDforResourcesMatchingNamePattern(fhirVersion, resourceType, theNamePart);
-
-        int counter = 0;
-        for(ResourceMetadata entity : matchingIDs) {
-        	if (counter >= theFromIndex && counter < theToIndex) {
-        		list.add(getResourceByID(fhirVersion, entity.getResourceID()));
-        	}
-        	counter++;
-        }
-        return list;
+        return searchByName(fhirVersion, resourceType, theNamePart).getResources(theFromIndex, theToIndex);
     }
 
     /**
@@ -134,46 +175,27 @@ public class FilesystemIF {
      */
     public int getResourceCountByName(FhirVersion fhirVersion, ResourceType resourceType, String theNamePart) {
         LOG.info("Getting the count of " + resourceType.name() + " resources with name containing: " + theNamePart);
-        List<ResourceMetadata> matchingIDs = getAllResourceIDforResourcesMatchingNamePattern(fhirVersion, resourceType, theNamePart);
-        return matchingIDs.size();
+        return searchByName(fhirVersion, resourceType, theNamePart).size();
     }
 
 	public List<IBaseResource> getResourceMatchByURL(FhirVersion fhirVersion, ResourceType resourceType, String theURL,
 															int theFromIndex, int theToIndex) {
-		List<ResourceMetadata> resourceList = FileCache.getResourceList(fhirVersion);
-        List<IBaseResource> matches = Lists.newArrayList();
-        int counter = 0;
-        for (ResourceMetadata entry : resourceList) {
-        	if (entry.getUrl().equals(theURL) && entry.getResourceType().equals(resourceType)) {
-        		if (counter >= theFromIndex && counter < theToIndex) {
-        			matches.add(getResourceByID(fhirVersion, entry.getResourceID()));
-        		}
-        		counter++;
-        	}
-        }		
-		return matches;
+		return searchByURL(fhirVersion, resourceType, theURL).getResources(theFromIndex, theToIndex);
 	}
 
 	public int getResourceCountByURL(FhirVersion fhirVersion, ResourceType resourceType, String theURL) {
-		List<ResourceMetadata> resourceList = FileCache.getResourceList(fhirVersion);
-        int counter = 0;
-        for (ResourceMetadata entry : resourceList) {
-        	if (entry.getUrl().equals(theURL) && entry.getResourceType().equals(resourceType)) {
-        		counter++;
-        	}
-        }		
-		return counter;
+		return FileCache.getLatestResourcesByUrl(fhirVersion, resourceType, theURL).size();
 	}
 	
     /**
-     * Gets a full list of StructureDefinition objects. Not especially performant.
+     * Gets a page of the resources of the supplied type (latest versions).
      * 
      * @return 
      */
     public List<IBaseResource> getAllResourcesOfType(FhirVersion fhirVersion, ResourceType resourceType,
     													int theFromIndex, int theToIndex) {
         LOG.info("Getting all resources of type: " + resourceType.name());
-        return FileCache.getResources(fhirVersion, resourceType, theFromIndex, theToIndex);
+        return searchByType(fhirVersion, resourceType).getResources(theFromIndex, theToIndex);
     }
     
     /**
@@ -193,13 +215,7 @@ public class FilesystemIF {
     public List<ResourceMetadata> getExtensions()  {
     	LOG.info("Getting all Extensions");
         
-    	List<ResourceMetadata> result = Lists.newArrayList();
-    	
-    	for (FhirVersion fhirVersion : FhirVersion.getSupportedVersions()) {
-    		result.addAll(FileCache.getExtensions(fhirVersion));
-    	}
-    	
-    	return result;
+    	return FileCache.getSnapshot().getAggregates().getAllExtensions();
     }
     
     /**
@@ -208,7 +224,7 @@ public class FilesystemIF {
      * 
      * @return 
      */
-    public HashMap<String, List<ResourceMetadata>> getAllResourceNamesByBaseResource(ResourceType resourceType) {
+    public Map<String, List<ResourceMetadata>> getAllResourceNamesByBaseResource(ResourceType resourceType) {
         LOG.info("Getting all Resource Names by base resource");
         return FileCache.getGroupedNameList(resourceType);
     }
@@ -217,7 +233,7 @@ public class FilesystemIF {
      * Gets a full list of resource names grouped by the broad category of the resource
      * for the web view of /[ResourceType] requests.
      */
-	public HashMap<String, List<ResourceMetadata>> getAllResourceNamesByCategory(ResourceType resourceType) {
+	public Map<String, List<ResourceMetadata>> getAllResourceNamesByCategory(ResourceType resourceType) {
     	LOG.info("Getting all Resource Names by category");
         return FileCache.getGroupedNameList(resourceType);
 	}
@@ -230,30 +246,8 @@ public class FilesystemIF {
      * @return a list of IDs of matching resources
      */
     public List<ResourceMetadata> getAllResourceIDforResourcesMatchingNamePattern(FhirVersion fhirVersion, ResourceType resourceType, String theNamePart) {
-        LOG.info("Getting all StructureDefinition Names containing: " + theNamePart + " in their name");
-        
-        // Get full list of profiles first
-        List<ResourceMetadata> resourceList = FileCache.getResourceList(fhirVersion);
-        
-        // Now filter the list to those matching our criteria
-        List<ResourceMetadata> matches = Lists.newArrayList();
-        
-        String pattern = "(.*)" + theNamePart + "(.*)";
-        
-        for (ResourceMetadata entry : resourceList) {
-        	if (entry.getResourceType().equals(resourceType)) {
-	        	String resourceName = entry.getResourceName();
-	        	// Create a Pattern object
-	            Pattern r = Pattern.compile(pattern);
-	            // Now create matcher object.
-	            Matcher m = r.matcher(resourceName);
-	            if (m.find()) {
-	               matches.add(entry);
-	            }
-        	}
-        }
-        LOG.debug("Returning matches");
-        return matches;
+        LOG.info("Getting all " + resourceType.name() + " Names containing: " + theNamePart + " in their name");
+        return FileCache.findResourcesByName(fhirVersion, resourceType, theNamePart, NameIndex.Match.CONTAINS);
     }
     
 	public List<ResourceMetadata> getExamples(FhirVersion fhirVersion, String resourceTypeAndID) {
@@ -264,35 +258,11 @@ public class FilesystemIF {
 		return FileCache.getExampleByName(fhirVersion, resourceFilename);
 	}
 
-	public HashMap<String, Integer> getResourceTypeCounts() {
-		HashMap<String, Integer> results = new HashMap<String, Integer>();
-		for (FhirVersion fhirVersion : FhirVersion.getSupportedVersions()) {
-			List<ResourceMetadata> list = FileCache.getResourceList(fhirVersion);
-			for (ResourceMetadata entry : list) {
-				String type = entry.getResourceType().toString();
-				if (entry.isExtension()) {
-					type = "Extension";
-				}
-				if (results.containsKey(type)) {
-					Integer i = results.get(type);
-					results.put(type, i + 1);
-				} else {
-					results.put(type, 1);
-				}
-			}
-		}
-		return results;
+	public Map<String, Integer> getResourceTypeCounts() {
+		return FileCache.getResourceTypeCounts();
 	}
 	
 	public int getResourceCount(FhirVersion fhirVersion, ResourceType resourceType) {
-		int count = 0;
-		List<ResourceMetadata> list = FileCache.getResourceList(fhirVersion);
-		for (ResourceMetadata entry : list) {
-			ResourceType type = entry.getResourceType();
-			if (type == resourceType) {
-				count++;
-			}
-		}
-		return count;
+		return FileCache.getLatestResourcesOfType(fhirVersion, resourceType).size();
 	}
 }
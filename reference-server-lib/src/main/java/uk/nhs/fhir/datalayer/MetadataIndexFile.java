@@ -0,0 +1,348 @@
+package uk.nhs.fhir.datalayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+
+import uk.nhs.fhir.data.metadata.ArtefactType;
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.data.metadata.SupportingArtefact;
+import uk.nhs.fhir.data.metadata.VersionNumber;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * Saves what a FileCacher loaded from each file (with the fingerprints of those files) so that after a restart the
+ * server can answer requests straight away, before it has checked which files have changed.
+ * The format is only read back by the same version of this class - anything else is rejected and a full load is done instead.
+ */
+class MetadataIndexFile {
+
+	private static final int MAGIC = 0x46484958; // "FHIX"
+	private static final int FORMAT_VERSION = 1;
+
+	private final Path indexFile;
+
+	MetadataIndexFile(Path indexFile) {
+		this.indexFile = indexFile;
+	}
+
+	Path getPath() {
+		return indexFile;
+	}
+
+	boolean exists() {
+		return indexFile.toFile().isFile();
+	}
+
+	/**
+	 * Writes to a temporary file first, so a reader never sees a partly written index
+	 */
+	void write(Map<Path, FileLoadState<File>> copies, Map<Path, FileLoadState<ResourceMetadata>> resources,
+			Map<Path, FileLoadState<Map.Entry<String, ResourceMetadata>>> examples) throws IOException {
+		Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			writeStates(out, copies, MetadataIndexFile::writeFile);
+			writeStates(out, resources, MetadataIndexFile::writeMetadata);
+			writeStates(out, examples, MetadataIndexFile::writeExample);
+		}
+
+		Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Fills the supplied (empty) maps from the index
+	 * @throws IOException if the index can't be read, or was written in a different format
+	 */
+	void read(Map<Path, FileLoadState<File>> copies, Map<Path, FileLoadState<ResourceMetadata>> resources,
+			Map<Path, FileLoadState<Map.Entry<String, ResourceMetadata>>> examples) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(indexFile + " is not a metadata index");
+			}
+			int formatVersion = in.readInt();
+			if (formatVersion != FORMAT_VERSION) {
+				throw new IOException("Metadata index " + indexFile + " has format version " + formatVersion + ", expected " + FORMAT_VERSION);
+			}
+
+			readStates(in, copies, MetadataIndexFile::readFile);
+			readStates(in, resources, MetadataIndexFile::readMetadata);
+			readStates(in, examples, MetadataIndexFile::readExample);
+		}
+	}
+
+	private interface ValueWriter<T> {
+		void write(DataOutputStream out, T value) throws IOException;
+	}
+
+	private interface ValueReader<T> {
+		T read(DataInputStream in) throws IOException;
+	}
+
+	private static <T> void writeStates(DataOutputStream out, Map<Path, FileLoadState<T>> states, ValueWriter<T> valueWriter) throws IOException {
+		out.writeInt(states.size());
+		for (Map.Entry<Path, FileLoadState<T>> state : states.entrySet()) {
+			writeString(out, state.getKey().toString());
+
+			out.writeInt(state.getValue().getLoadedFiles().size());
+			for (FileLoadState.LoadedFile<T> loadedFile : state.getValue().getLoadedFiles()) {
+				writeFile(out, loadedFile.getFile());
+				writeFingerprint(out, loadedFile.getFingerprint());
+
+				FileLoadResult<T> result = loadedFile.getResult();
+				out.writeInt(result.getValues().size());
+				for (T value : result.getValues()) {
+					valueWriter.write(out, value);
+				}
+				writeStrings(out, result.getMessages());
+			}
+		}
+	}
+
+	private static <T> void readStates(DataInputStream in, Map<Path, FileLoadState<T>> states, ValueReader<T> valueReader) throws IOException {
+		int stateCount = in.readInt();
+		for (int i = 0; i < stateCount; i++) {
+			Path directory = Paths.get(readString(in));
+			FileLoadState<T> state = new FileLoadState<>();
+
+			int fileCount = in.readInt();
+			for (int j = 0; j < fileCount; j++) {
+				File file = readFile(in);
+				FileFingerprint fingerprint = readFingerprint(in);
+
+				FileLoadResult<T> result = new FileLoadResult<>();
+				int valueCount = in.readInt();
+				for (int k = 0; k < valueCount; k++) {
+					result.add(valueReader.read(in));
+				}
+				for (String message : readStrings(in)) {
+					result.addMessage(message);
+				}
+
+				state.restore(file, fingerprint, result);
+			}
+
+			states.put(directory, state);
+		}
+	}
+
+	private static void writeFingerprint(DataOutputStream out, FileFingerprint fingerprint) throws IOException {
+		out.writeLong(fingerprint.getLastModified());
+		out.writeLong(fingerprint.getLength());
+		writeHash(out, fingerprint.getArtefactListing());
+		writeHash(out, fingerprint.getContentHash());
+	}
+
+	private static FileFingerprint readFingerprint(DataInputStream in) throws IOException {
+		long lastModified = in.readLong();
+		long length = in.readLong();
+		HashCode artefactListing = readHash(in);
+		HashCode contentHash = readHash(in);
+		return new FileFingerprint(lastModified, length, artefactListing, contentHash);
+	}
+
+	private static void writeHash(DataOutputStream out, HashCode hash) throws IOException {
+		if (hash == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = hash.asBytes();
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static HashCode readHash(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return HashCode.fromBytes(bytes);
+	}
+
+	private static void writeExample(DataOutputStream out, Map.Entry<String, ResourceMetadata> example) throws IOException {
+		writeString(out, example.getKey());
+		writeMetadata(out, example.getValue());
+	}
+
+	private static Map.Entry<String, ResourceMetadata> readExample(DataInputStream in) throws IOException {
+		String profileResourceID = readString(in);
+		return Maps.immutableEntry(profileResourceID, readMetadata(in));
+	}
+
+	private static void writeMetadata(DataOutputStream out, ResourceMetadata metadata) throws IOException {
+		writeString(out, metadata.getResourceName());
+		writeFile(out, metadata.getResourceFile());
+		writeEnum(out, metadata.getResourceType());
+		out.writeBoolean(metadata.isExtension());
+		writeString(out, metadata.hasBaseType() ? metadata.getBaseType() : null);
+		writeString(out, metadata.getDisplayGroup());
+		out.writeBoolean(metadata.isExample());
+		writeString(out, metadata.getResourceID());
+		writeVersion(out, metadata.getVersionNo());
+		writeEnum(out, metadata.getStatus());
+		writeArtefacts(out, metadata.getArtefacts());
+		writeString(out, metadata.getExtensionCardinality());
+		writeStrings(out, metadata.getExtensionContexts());
+		writeString(out, metadata.getExtensionDescription());
+		writeEnum(out, metadata.getFhirVersion());
+		writeString(out, metadata.getUrl());
+	}
+
+	private static ResourceMetadata readMetadata(DataInputStream in) throws IOException {
+		String resourceName = readString(in);
+		File resourceFile = readFile(in);
+		ResourceType resourceType = readEnum(in, ResourceType.class);
+		boolean extension = in.readBoolean();
+		Optional<String> baseType = Optional.ofNullable(readString(in));
+		String displayGroup = readString(in);
+		boolean example = in.readBoolean();
+		String resourceID = readString(in);
+		VersionNumber versionNo = readVersion(in);
+		String status = readString(in);
+		List<SupportingArtefact> artefacts = readArtefacts(in);
+		String cardinality = readString(in);
+		List<String> extensionContexts = readStrings(in);
+		String extensionDescription = readString(in);
+		FhirVersion fhirVersion = readEnum(in, FhirVersion.class);
+		String url = readString(in);
+
+		return new ResourceMetadata(resourceName, resourceFile, resourceType, extension, baseType, displayGroup, example,
+			resourceID, versionNo, status, artefacts, cardinality, extensionContexts, extensionDescription, fhirVersion, url);
+	}
+
+	private static void writeVersion(DataOutputStream out, VersionNumber version) throws IOException {
+		out.writeBoolean(version != null);
+		if (version != null) {
+			out.writeInt(version.getMajor());
+			out.writeInt(version.getMinor());
+			out.writeInt(version.getPatch());
+		}
+	}
+
+	private static VersionNumber readVersion(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+
+		int major = in.readInt();
+		int minor = in.readInt();
+		int patch = in.readInt();
+		return new VersionNumber(major, minor, patch);
+	}
+
+	private static void writeArtefacts(DataOutputStream out, List<SupportingArtefact> artefacts) throws IOException {
+		if (artefacts == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(artefacts.size());
+			for (SupportingArtefact artefact : artefacts) {
+				writeFile(out, artefact.getFilename());
+				writeEnum(out, artefact.getArtefactType());
+			}
+		}
+	}
+
+	private static List<SupportingArtefact> readArtefacts(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			return null;
+		}
+
+		List<SupportingArtefact> artefacts = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			File filename = readFile(in);
+			artefacts.add(new SupportingArtefact(filename, readEnum(in, ArtefactType.class)));
+		}
+		return artefacts;
+	}
+
+	private static void writeFile(DataOutputStream out, File file) throws IOException {
+		writeString(out, file == null ? null : file.getPath());
+	}
+
+	private static File readFile(DataInputStream in) throws IOException {
+		String path = readString(in);
+		return path == null ? null : new File(path);
+	}
+
+	// Stored by name, so a reordered enum doesn't silently change the meaning of an old index
+	private static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+		writeString(out, value == null ? null : value.name());
+	}
+
+	private static <E extends Enum<E>> E readEnum(DataInputStream in, Class<E> enumClass) throws IOException {
+		String name = readString(in);
+		try {
+			return name == null ? null : Enum.valueOf(enumClass, name);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unknown " + enumClass.getSimpleName() + " in metadata index: " + name, e);
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+		if (strings == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(strings.size());
+			for (String string : strings) {
+				writeString(out, string);
+			}
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			return null;
+		}
+
+		List<String> strings = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			strings.add(readString(in));
+		}
+		return strings;
+	}
+
+	// Not writeUTF, which can't write strings over 64KB (e.g. long error messages)
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,84 @@
+package uk.nhs.fhir.datalayer;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the per-file work of a cache refresh on a bounded pool of threads.
+ * Results come back in the same order as the files were supplied, so anything merged from them is the same
+ * however the work happened to be scheduled.
+ */
+public class ParallelFileLoader implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(ParallelFileLoader.class.getName());
+
+	private final int parallelism;
+	// null when running single-threaded, in which case work is done on the calling thread
+	private final ExecutorService executor;
+
+	public ParallelFileLoader(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		this.executor =
+			this.parallelism > 1 ?
+				Executors.newFixedThreadPool(this.parallelism, new ThreadFactoryBuilder().setNameFormat("cache-loader-%d").setDaemon(true).build()) :
+				null;
+
+		LOG.info("Loading files using " + this.parallelism + " thread(s)");
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Applies the task to every file and returns the results in file order.
+	 * Tasks should deal with their own failures - anything thrown aborts the whole load.
+	 */
+	public <T> List<T> map(List<File> files, Function<File, T> task) {
+		List<T> results = Lists.newArrayListWithCapacity(files.size());
+
+		if (executor == null) {
+			for (File file : files) {
+				results.add(task.apply(file));
+			}
+			return results;
+		}
+
+		List<Future<T>> futures = Lists.newArrayListWithCapacity(files.size());
+		for (File file : files) {
+			futures.add(executor.submit(() -> task.apply(file)));
+		}
+
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			futures.forEach(future -> future.cancel(true));
+			throw new IllegalStateException("Interrupted while loading files", e);
+		} catch (ExecutionException e) {
+			futures.forEach(future -> future.cancel(true));
+			throw new IllegalStateException("Failed to load files", e.getCause());
+		}
+
+		return results;
+	}
+
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+}
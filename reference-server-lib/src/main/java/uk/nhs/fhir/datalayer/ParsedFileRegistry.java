@@ -0,0 +1,160 @@
+package uk.nhs.fhir.datalayer;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import com.google.common.collect.Maps;
+
+import uk.nhs.fhir.data.wrap.WrappedResource;
+import uk.nhs.fhir.load.FhirFileParser;
+import uk.nhs.fhir.load.FhirParsingFailedException;
+
+/**
+ * The outcome of parsing each file seen during one cache refresh, so that the pre-processing, resource and example
+ * stages share a single parse of each file rather than each parsing it again.
+ * Files copied during the refresh (e.g. into the versioned directories) share the parse of the file they were copied from.
+ * Only lives as long as the refresh, so that the parsed resources can be garbage collected afterwards.
+ */
+class ParsedFileRegistry {
+
+	private final FhirFileParser parser = new FhirFileParser();
+
+	private final ConcurrentMap<String, ParsedFile> parsedFiles = Maps.newConcurrentMap();
+	private final ConcurrentMap<String, String> copiedFrom = Maps.newConcurrentMap();
+
+	private final AtomicInteger filesParsed = new AtomicInteger(0);
+	private final AtomicInteger parsesReused = new AtomicInteger(0);
+
+	/**
+	 * Returns the result of parsing the file (or the file it was copied from), parsing it if nothing has asked for it yet.
+	 */
+	public ParsedFile parse(File file) {
+		String key = sourceKey(file);
+
+		ParsedFile parsed = parsedFiles.get(key);
+		if (parsed != null) {
+			parsesReused.incrementAndGet();
+			return parsed;
+		}
+
+		// Each stage hands a file to a single thread, so it won't normally be parsed twice at once. If it is, the first result wins.
+		parsed = ParsedFile.parse(parser, file);
+		filesParsed.incrementAndGet();
+
+		ParsedFile existing = parsedFiles.putIfAbsent(key, parsed);
+		return existing != null ? existing : parsed;
+	}
+
+	/**
+	 * Records that a file has been copied with its content unchanged, so the copy can use the parse of the original.
+	 */
+	public void recordCopy(File source, File copy) {
+		String copyKey = key(copy);
+		parsedFiles.remove(copyKey);
+		copiedFrom.put(copyKey, sourceKey(source));
+	}
+
+	private String sourceKey(File file) {
+		String key = key(file);
+		return copiedFrom.getOrDefault(key, key);
+	}
+
+	private static String key(File file) {
+		return file.getAbsoluteFile().toPath().normalize().toString();
+	}
+
+	/**
+	 * Number of distinct files which have been parsed
+	 */
+	public int getFilesParsed() {
+		return filesParsed.get();
+	}
+
+	/**
+	 * Number of times a previous parse was used instead of parsing a file again
+	 */
+	public int getParsesReused() {
+		return parsesReused.get();
+	}
+
+	/**
+	 * Number of times file content has been run through a HAPI parser (a file may be tried against more than one FHIR version)
+	 */
+	public int getXmlParses() {
+		return parser.getParseCount();
+	}
+
+	@Override
+	public String toString() {
+		return "ParsedFileRegistry [filesParsed=" + getFilesParsed() + ", parsesReused=" + getParsesReused() + ", xmlParses=" + getXmlParses() + "]";
+	}
+
+	/**
+	 * The resource parsed from a file, or the exception thrown trying to parse it.
+	 * The resource is shared between stages, so must not be modified.
+	 */
+	public static class ParsedFile {
+		private final IBaseResource resource;
+		private final FhirParsingFailedException parsingFailure;
+		private final RuntimeException runtimeFailure;
+
+		private WrappedResource<?> wrappedResource = null;
+		private RuntimeException wrappingFailure = null;
+
+		private ParsedFile(IBaseResource resource, FhirParsingFailedException parsingFailure, RuntimeException runtimeFailure) {
+			this.resource = resource;
+			this.parsingFailure = parsingFailure;
+			this.runtimeFailure = runtimeFailure;
+		}
+
+		static ParsedFile parse(FhirFileParser parser, File file) {
+			try {
+				return new ParsedFile(parser.parseFile(file), null, null);
+			} catch (FhirParsingFailedException e) {
+				return new ParsedFile(null, e, null);
+			} catch (RuntimeException e) {
+				return new ParsedFile(null, null, e);
+			}
+		}
+
+		/**
+		 * @throws FhirParsingFailedException or a RuntimeException - whatever parsing the file threw
+		 */
+		public IBaseResource getResource() throws FhirParsingFailedException {
+			if (parsingFailure != null) {
+				throw parsingFailure;
+			} else if (runtimeFailure != null) {
+				throw runtimeFailure;
+			} else {
+				return resource;
+			}
+		}
+
+		public boolean isSupported() {
+			return resource != null
+			  && FhirFileParser.isSupported(resource);
+		}
+
+		/**
+		 * @throws FhirParsingFailedException or a RuntimeException - if the file couldn't be parsed, or the resource couldn't be wrapped
+		 */
+		public synchronized WrappedResource<?> getWrappedResource() throws FhirParsingFailedException {
+			if (wrappedResource == null && wrappingFailure == null) {
+				try {
+					wrappedResource = WrappedResource.fromBaseResource(getResource());
+				} catch (RuntimeException e) {
+					wrappingFailure = e;
+				}
+			}
+
+			if (wrappingFailure != null) {
+				throw wrappingFailure;
+			} else {
+				return wrappedResource;
+			}
+		}
+	}
+}
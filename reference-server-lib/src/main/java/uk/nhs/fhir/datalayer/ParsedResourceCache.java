@@ -0,0 +1,140 @@
+package uk.nhs.fhir.datalayer;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import uk.nhs.fhir.metrics.ServerMetrics;
+import uk.nhs.fhir.util.FHIRUtils;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * Bounded, least-recently-used cache of parsed resources, so that frequently requested resources are not
+ * re-read and re-parsed from disk on every request.
+ * Entries are keyed on file path, modification time and size, so a file which is replaced on disk is parsed again.
+ * Weighted by the size of the source file so that large ValueSets etc. count for more than small extensions.
+ *
+ * Resources returned by get() are shared between requests and must not be modified - use getCopy() instead.
+ */
+public class ParsedResourceCache {
+	private static final Logger LOG = LoggerFactory.getLogger(ParsedResourceCache.class.getName());
+
+	private final Cache<ParsedResourceKey, IBaseResource> cache;
+
+	public ParsedResourceCache(long maxWeightBytes) {
+		this.cache = CacheBuilder.newBuilder()
+			.maximumWeight(maxWeightBytes)
+			.weigher((ParsedResourceKey key, IBaseResource resource) -> key.getWeight())
+			.recordStats()
+			.build();
+
+		LOG.info("Created parsed resource cache with maximum weight " + maxWeightBytes + " bytes");
+	}
+
+	/**
+	 * Returns a parsed resource which may be shared with other requests. Callers must not modify it.
+	 */
+	public IBaseResource get(FhirVersion fhirVersion, File file) {
+		ParsedResourceKey key = new ParsedResourceKey(fhirVersion, file);
+
+		IBaseResource resource = cache.getIfPresent(key);
+		if (resource == null) {
+			// Failed loads return null, which cannot be cached - they will be retried on the next request
+			resource = FHIRUtils.loadResourceFromFile(fhirVersion, file);
+			ServerMetrics.getInstance().recordParses(ServerMetrics.PARSE_PHASE_REQUEST, 1);
+			if (resource != null) {
+				cache.put(key, resource);
+			}
+		}
+
+		return resource;
+	}
+
+	/**
+	 * Returns a private copy of the parsed resource which the caller is free to modify.
+	 */
+	public IBaseResource getCopy(FhirVersion fhirVersion, File file) {
+		return FHIRUtils.copyResource(fhirVersion, get(fhirVersion, file));
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Drops any versions of these files
+	 */
+	public void invalidate(Collection<File> files) {
+		Set<String> paths = files.stream().map(File::getAbsolutePath).collect(Collectors.toSet());
+		cache.asMap().keySet().removeIf(key -> paths.contains(key.getPath()));
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = getStats();
+		return "ParsedResourceCache [size=" + size() + ", hits=" + stats.hitCount() + ", misses=" + stats.missCount()
+			+ ", evictions=" + stats.evictionCount() + "]";
+	}
+}
+
+class ParsedResourceKey {
+	private final FhirVersion fhirVersion;
+	private final String path;
+	private final long lastModified;
+	private final long length;
+
+	ParsedResourceKey(FhirVersion fhirVersion, File file) {
+		this.fhirVersion = fhirVersion;
+		this.path = file.getAbsolutePath();
+		this.lastModified = file.lastModified();
+		this.length = file.length();
+	}
+
+	String getPath() {
+		return path;
+	}
+
+	int getWeight() {
+		// Guava weights are ints. Always count for something, even if the file has disappeared.
+		return (int)Math.max(1, Math.min(Integer.MAX_VALUE, length));
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(fhirVersion, path, lastModified, length);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ParsedResourceKey)) {
+			return false;
+		}
+
+		ParsedResourceKey other = (ParsedResourceKey) obj;
+		return fhirVersion == other.fhirVersion
+		  && lastModified == other.lastModified
+		  && length == other.length
+		  && path.equals(other.path);
+	}
+}
@@ -0,0 +1,167 @@
+package uk.nhs.fhir.datalayer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Watches the resource directories and runs a refresh once changes have stopped arriving, so that new and updated
+ * files are picked up without needing a call to /InvalidateCache.
+ * The watch only says that something has changed - the refresh itself works out which files need loading again,
+ * so nothing is missed if events are dropped or the platform doesn't report them promptly.
+ * The versioned directories are not watched, since they are written to by the refresh itself.
+ */
+public class ResourceFileWatcher implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(ResourceFileWatcher.class.getName());
+
+	private static final String VERSIONED_DIRECTORY_NAME = "versioned";
+
+	// Wait this long after the last change before refreshing, so a batch of files being written is picked up in one go
+	private static final long QUIET_PERIOD_MILLIS = 1000;
+
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> watchedDirectories = Maps.newConcurrentMap();
+	private final BooleanSupplier refresh;
+	private final Thread thread;
+
+	/**
+	 * @param refresh runs a refresh, returning false if it couldn't because one was already running
+	 */
+	public ResourceFileWatcher(List<Path> roots, BooleanSupplier refresh) throws IOException {
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.refresh = refresh;
+
+		for (Path root : roots) {
+			if (root.toFile().isDirectory()) {
+				registerTree(root);
+			} else {
+				LOG.warn("Not watching " + root + " since it is not a directory");
+			}
+		}
+
+		this.thread = new Thread(this::watch, "ResourceFileWatcher");
+		this.thread.setDaemon(true);
+	}
+
+	public void start() {
+		LOG.info("Watching " + watchedDirectories.size() + " directories for resource changes");
+		thread.start();
+	}
+
+	@Override
+	public void close() throws IOException {
+		thread.interrupt();
+		watchService.close();
+	}
+
+	private void watch() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				boolean changed = handleEvents(watchService.take());
+
+				WatchKey key;
+				while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					changed |= handleEvents(key);
+				}
+
+				if (!changed) {
+					continue;
+				}
+
+				LOG.info("Resource files changed - refreshing cache");
+				try {
+					while (!refresh.getAsBoolean()) {
+						// Another refresh started before this one could. It may not have seen these changes, so go again once it finishes.
+						Thread.sleep(QUIET_PERIOD_MILLIS);
+					}
+				} catch (RuntimeException e) {
+					LOG.error("Cache refresh failed - will try again when more changes are seen", e);
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			LOG.info("Stopped watching for resource changes");
+		} catch (RuntimeException e) {
+			LOG.error("Stopped watching for resource changes after error", e);
+		}
+	}
+
+	/**
+	 * @return whether any of the events might need a refresh
+	 */
+	private boolean handleEvents(WatchKey key) {
+		Path directory = watchedDirectories.get(key);
+		boolean changed = false;
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				LOG.debug("Missed some file changes - the refresh will find them");
+				changed = true;
+				continue;
+			}
+
+			if (event.context().toString().equals(VERSIONED_DIRECTORY_NAME)) {
+				// Created by the refresh itself
+				continue;
+			}
+
+			changed = true;
+
+			if (event.kind() == ENTRY_CREATE
+			  && directory != null) {
+				// New directories (e.g. artefacts for a new resource) need watching too
+				Path created = directory.resolve((Path)event.context());
+				if (Files.isDirectory(created)) {
+					try {
+						registerTree(created);
+					} catch (IOException e) {
+						LOG.error("Unable to watch new directory " + created, e);
+					}
+				}
+			}
+		}
+
+		if (!key.reset()) {
+			watchedDirectories.remove(key);
+		}
+
+		return changed;
+	}
+
+	private void registerTree(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if (dir.getFileName() != null
+				  && dir.getFileName().toString().equals(VERSIONED_DIRECTORY_NAME)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+
+				watchedDirectories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -0,0 +1,49 @@
+package uk.nhs.fhir.datalayer;
+
+import java.util.List;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * The metadata of every resource matching a search, in result order. The search is run once when this is created,
+ * so the total and each page of results can then be served without filtering the cache again.
+ * Only the resources within a requested page are loaded.
+ */
+public class SearchResult {
+
+	private final FhirVersion fhirVersion;
+	private final ImmutableList<ResourceMetadata> matches;
+
+	public SearchResult(FhirVersion fhirVersion, List<ResourceMetadata> matches) {
+		this.fhirVersion = fhirVersion;
+		this.matches = ImmutableList.copyOf(matches);
+	}
+
+	public int size() {
+		return matches.size();
+	}
+
+	public List<ResourceMetadata> getMatches() {
+		return matches;
+	}
+
+	/**
+	 * Loads the matching resources in the range [fromIndex, toIndex). Indexes beyond the end of the results are ignored.
+	 */
+	public List<IBaseResource> getResources(int fromIndex, int toIndex) {
+		int from = Math.max(0, fromIndex);
+		int to = Math.min(matches.size(), toIndex);
+
+		List<IBaseResource> resources = Lists.newArrayList();
+		for (int i = from; i < to; i++) {
+			resources.add(FileCache.getParsedResourceCache().get(fhirVersion, matches.get(i).getResourceFile()));
+		}
+		return resources;
+	}
+}
@@ -0,0 +1,235 @@
+package uk.nhs.fhir.datalayer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import uk.nhs.fhir.enums.MimeType;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * Bounded cache of resources which have already been encoded to JSON or XML, so that repeated reads of the same
+ * resource can be sent without parsing or encoding anything.
+ * Entries are tagged with the cache generation they were built from, and the whole cache is dropped as soon
+ * as a newer generation is published.
+ */
+public class SerialisedResourceCache {
+	private static final Logger LOG = LoggerFactory.getLogger(SerialisedResourceCache.class.getName());
+
+	private final Cache<SerialisedResourceKey, GenerationTaggedResource> cache;
+	private final LongSupplier currentGenerationSupplier;
+	private volatile long generation;
+
+	/**
+	 * @param currentGenerationSupplier reports the generation of the data the cached encodings were made from (normally FileCache::getSnapshotGeneration)
+	 */
+	public SerialisedResourceCache(long maxWeightBytes, LongSupplier currentGenerationSupplier) {
+		this.cache = CacheBuilder.newBuilder()
+			.maximumWeight(maxWeightBytes)
+			.weigher((SerialisedResourceKey key, GenerationTaggedResource value) -> value.resource.getWeight())
+			.recordStats()
+			.build();
+		this.currentGenerationSupplier = currentGenerationSupplier;
+		this.generation = currentGenerationSupplier.getAsLong();
+
+		LOG.info("Created serialised resource cache with maximum weight " + maxWeightBytes + " bytes");
+	}
+
+	/**
+	 * Returns the cached encoding for the key, calling the encoder to create it if it is not already present
+	 * or was encoded from an older generation.
+	 * Returns null (and caches nothing) if the encoder returns null.
+	 */
+	public SerialisedResource get(SerialisedResourceKey key, Supplier<SerialisedResource> encoder) {
+		// Read before anything is encoded, so an encoding is never tagged with a newer generation than its data
+		long currentGeneration = currentGenerationSupplier.getAsLong();
+		checkGeneration(currentGeneration);
+
+		try {
+			GenerationTaggedResource tagged = cache.get(key, () -> encode(encoder, currentGeneration));
+			if (tagged.generation < currentGeneration) {
+				// Encoded from older data, and stored after the cache was cleared for this generation
+				cache.invalidate(key);
+				tagged = cache.get(key, () -> encode(encoder, currentGeneration));
+			}
+			return tagged.resource;
+		} catch (InvalidCacheLoadException e) {
+			return null;
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new IllegalStateException("Failed to encode resource " + key.toString(), e.getCause());
+		}
+	}
+
+	// Returning null tells the cache not to store anything
+	private static GenerationTaggedResource encode(Supplier<SerialisedResource> encoder, long generation) {
+		SerialisedResource resource = encoder.get();
+		return resource == null ? null : new GenerationTaggedResource(resource, generation);
+	}
+
+	// Drops everything at once to free the memory. Entries are also checked individually, since encodings
+	// which were started before this may still be stored afterwards.
+	private void checkGeneration(long currentGeneration) {
+		if (currentGeneration > generation) {
+			synchronized (this) {
+				if (currentGeneration > generation) {
+					LOG.info("Clearing serialised resources for cache generation " + currentGeneration + ": " + toString());
+					cache.invalidateAll();
+					generation = currentGeneration;
+				}
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = getStats();
+		return "SerialisedResourceCache [generation=" + generation + ", size=" + size() + ", hits=" + stats.hitCount()
+			+ ", misses=" + stats.missCount() + ", evictions=" + stats.evictionCount() + "]";
+	}
+
+	/**
+	 * Identifies one encoding of one version of a resource.
+	 * The server base is included because HAPI uses it to shorten references when encoding.
+	 */
+	public static class SerialisedResourceKey {
+		private final FhirVersion fhirVersion;
+		private final String resourcePath;
+		private final MimeType mimeType;
+		private final boolean prettyPrint;
+		private final boolean textStripped;
+		private final String serverBase;
+
+		public SerialisedResourceKey(FhirVersion fhirVersion, File resourceFile, MimeType mimeType, boolean prettyPrint,
+				boolean textStripped, String serverBase) {
+			this.fhirVersion = fhirVersion;
+			this.resourcePath = resourceFile.getAbsolutePath();
+			this.mimeType = mimeType;
+			this.prettyPrint = prettyPrint;
+			this.textStripped = textStripped;
+			this.serverBase = Objects.toString(serverBase, "");
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(fhirVersion, resourcePath, mimeType, prettyPrint, textStripped, serverBase);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof SerialisedResourceKey)) {
+				return false;
+			}
+
+			SerialisedResourceKey other = (SerialisedResourceKey) obj;
+			return fhirVersion == other.fhirVersion
+			  && mimeType == other.mimeType
+			  && prettyPrint == other.prettyPrint
+			  && textStripped == other.textStripped
+			  && resourcePath.equals(other.resourcePath)
+			  && serverBase.equals(other.serverBase);
+		}
+
+		@Override
+		public String toString() {
+			return fhirVersion + " " + resourcePath + " (" + mimeType + (prettyPrint ? ", pretty" : "") + (textStripped ? ", no text" : "") + ")";
+		}
+	}
+
+	private static class GenerationTaggedResource {
+		private final SerialisedResource resource;
+		private final long generation;
+
+		GenerationTaggedResource(SerialisedResource resource, long generation) {
+			this.resource = resource;
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * A resource encoded as UTF-8, with the fully qualified id it is sent with (null if it has none).
+	 * The gzipped form is built the first time a client asks for it and kept alongside.
+	 */
+	public static class SerialisedResource {
+		private final String content;
+		private final String location;
+		private final byte[] bytes;
+		private volatile byte[] gzippedBytes = null;
+
+		public SerialisedResource(String content) {
+			this(content, null);
+		}
+
+		public SerialisedResource(String content, String location) {
+			this.content = content;
+			this.location = location;
+			this.bytes = content.getBytes(StandardCharsets.UTF_8);
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		public String getLocation() {
+			return location;
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		public byte[] getGzippedBytes() {
+			byte[] gzipped = gzippedBytes;
+			if (gzipped == null) {
+				gzipped = gzip(bytes);
+				gzippedBytes = gzipped;
+			}
+			return gzipped;
+		}
+
+		int getWeight() {
+			// The String and the byte array each hold a copy of the content. Allow for the gzipped copy too.
+			return (int)Math.min(Integer.MAX_VALUE, 3L * bytes.length + 1);
+		}
+
+		private static byte[] gzip(byte[] uncompressed) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(uncompressed.length / 4 + 32);
+			try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+				gzipOut.write(uncompressed);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return out.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package uk.nhs.fhir.datalayer;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.datalayer.collections.ResourceEntityWithMultipleVersions;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * Summaries of a whole snapshot for the list pages, the extensions registry and the home page.
+ * Built once per snapshot (see FileCacheSnapshot.getAggregates()) rather than by scanning every resource for each request.
+ */
+public class SnapshotAggregates {
+
+	// The order the list pages show resources in
+	private static final Comparator<ResourceMetadata> BY_LOWER_CASE_NAME = Comparator.comparing(r -> r.getResourceName().toLowerCase());
+
+	private static final String EXTENSION_COUNT_KEY = "Extension";
+
+	private final ImmutableMap<ResourceType, ImmutableMap<String, ImmutableList<ResourceMetadata>>> groupedByType;
+	private final ImmutableMap<FhirVersion, ImmutableList<ResourceMetadata>> extensionsByFhirVersion;
+	private final ImmutableList<ResourceMetadata> allExtensions;
+	private final ImmutableMap<String, Integer> resourceTypeCounts;
+
+	SnapshotAggregates(FileCacheSnapshot snapshot) {
+		Map<ResourceType, Map<String, List<ResourceMetadata>>> grouped = Maps.newEnumMap(ResourceType.class);
+		Map<FhirVersion, List<ResourceMetadata>> extensions = Maps.newEnumMap(FhirVersion.class);
+		Map<String, Integer> counts = Maps.newHashMap();
+
+		for (FhirVersion fhirVersion : FhirVersion.getSupportedVersions()) {
+			List<ResourceMetadata> extensionsForVersion = extensions.computeIfAbsent(fhirVersion, v -> Lists.newArrayList());
+
+			for (ResourceEntityWithMultipleVersions entity : snapshot.getResourceIndex(fhirVersion).getAll()) {
+				if (entity == null) {
+					continue;
+				}
+
+				ResourceMetadata latest = entity.getLatest();
+				if (latest.isExtension()) {
+					extensionsForVersion.add(latest);
+					counts.merge(EXTENSION_COUNT_KEY, 1, Integer::sum);
+				} else {
+					grouped.computeIfAbsent(latest.getResourceType(), type -> Maps.newHashMap())
+						.computeIfAbsent(Strings.nullToEmpty(latest.getDisplayGroup()), group -> Lists.newArrayList())
+						.add(latest);
+					counts.merge(latest.getResourceType().toString(), 1, Integer::sum);
+				}
+			}
+		}
+
+		ImmutableMap.Builder<ResourceType, ImmutableMap<String, ImmutableList<ResourceMetadata>>> groupedBuilder = ImmutableMap.builder();
+		for (Map.Entry<ResourceType, Map<String, List<ResourceMetadata>>> groupsForType : grouped.entrySet()) {
+			ImmutableMap.Builder<String, ImmutableList<ResourceMetadata>> groupsBuilder = ImmutableMap.builder();
+			for (Map.Entry<String, List<ResourceMetadata>> group : groupsForType.getValue().entrySet()) {
+				groupsBuilder.put(group.getKey(), ImmutableList.sortedCopyOf(BY_LOWER_CASE_NAME, group.getValue()));
+			}
+			groupedBuilder.put(groupsForType.getKey(), groupsBuilder.build());
+		}
+		this.groupedByType = groupedBuilder.build();
+
+		ImmutableMap.Builder<FhirVersion, ImmutableList<ResourceMetadata>> extensionsBuilder = ImmutableMap.builder();
+		ImmutableList.Builder<ResourceMetadata> allExtensionsBuilder = ImmutableList.builder();
+		for (Map.Entry<FhirVersion, List<ResourceMetadata>> extensionsForVersion : extensions.entrySet()) {
+			ImmutableList<ResourceMetadata> sorted = ImmutableList.sortedCopyOf(ResourceMetadata.BY_RESOURCE_NAME, extensionsForVersion.getValue());
+			extensionsBuilder.put(extensionsForVersion.getKey(), sorted);
+			allExtensionsBuilder.addAll(sorted);
+		}
+		this.extensionsByFhirVersion = extensionsBuilder.build();
+		this.allExtensions = allExtensionsBuilder.build();
+
+		this.resourceTypeCounts = ImmutableMap.copyOf(counts);
+	}
+
+	/**
+	 * Latest versions of the resources of this type (excluding extensions) for all FHIR versions, grouped by display group
+	 * and sorted by name within each group
+	 */
+	public Map<String, List<ResourceMetadata>> getGroupedResources(ResourceType resourceType) {
+		return ImmutableMap.copyOf(groupedByType.getOrDefault(resourceType, ImmutableMap.of()));
+	}
+
+	/**
+	 * Latest versions of all extensions, sorted by name
+	 */
+	public List<ResourceMetadata> getExtensions(FhirVersion fhirVersion) {
+		return extensionsByFhirVersion.getOrDefault(fhirVersion, ImmutableList.of());
+	}
+
+	/**
+	 * Latest versions of all extensions for all FHIR versions, sorted by name within each FHIR version
+	 */
+	public List<ResourceMetadata> getAllExtensions() {
+		return allExtensions;
+	}
+
+	/**
+	 * Number of resources of each type for all FHIR versions, keyed by type name, with extensions counted under "Extension"
+	 */
+	public Map<String, Integer> getResourceTypeCounts() {
+		return resourceTypeCounts;
+	}
+}
@@ -6,18 +6,18 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import uk.nhs.fhir.data.metadata.ResourceMetadata;
 import uk.nhs.fhir.data.metadata.ResourceType;
 import uk.nhs.fhir.data.metadata.VersionNumber;
-import uk.nhs.fhir.data.wrap.WrappedResource;
-import uk.nhs.fhir.load.FhirFileParser;
 import uk.nhs.fhir.load.FileLoader;
 import uk.nhs.fhir.load.XmlFileFinder;
 import uk.nhs.fhir.util.AbstractFhirFileLocator;
@@ -29,7 +29,6 @@ public class VersionedFilePreprocessor {
 	private static final Logger LOG = LoggerFactory.getLogger(VersionedFilePreprocessor.class.getName());
 
 	private static final XmlFileFinder resourceFileFinder = new XmlFileFinder();
-	private static final FhirFileParser parser = new FhirFileParser();
 
 	private AbstractFhirFileLocator fhirFileLocator;  
 	
@@ -41,35 +40,43 @@ public class VersionedFilePreprocessor {
 		this.fhirFileLocator = versionedFileLocator;
 	}
 
-	protected void copyFHIRResourcesIntoVersionedDirectory(FhirVersion fhirVersion, ResourceType resourceType) throws IOException {
+	protected List<File> findSourceFiles(FhirVersion fhirVersion, ResourceType resourceType) {
+        String resourcePath = fhirFileLocator.getSourcePathForResourceType(resourceType, fhirVersion).toString();
+		return resourceFileFinder.findFiles(resourcePath);
+	}
+
+	/**
+	 * Copies the supplied source files into the versioned directory, under names made from their IDs and versions.
+	 * @return the copy made of each file (if any), in the same order as the files were supplied
+	 */
+	protected List<FileLoadResult<File>> copyFHIRResourcesIntoVersionedDirectory(FhirVersion fhirVersion, ResourceType resourceType, 
+			List<File> fileList, ParallelFileLoader loader, ParsedFileRegistry parsedFiles) throws IOException {
 		logStart(fhirVersion, resourceType);
 		
 		String outputDirectory = ensureVersionedFolderExists(fhirVersion, resourceType);
 		
         String resourcePath = fhirFileLocator.getSourcePathForResourceType(resourceType, fhirVersion).toString();
         
-        String logMessage = "Copying resources from root " + resourcePath + " to versioned directory " + outputDirectory; 
+        String logMessage = "Copying " + fileList.size() + " resources from root " + resourcePath + " to versioned directory " + outputDirectory; 
         LOG.info(logMessage);
         addMessage(logMessage);
         
-		List<File> fileList = resourceFileFinder.findFiles(resourcePath);
+        List<FileLoadResult<File>> copies = Lists.newArrayListWithCapacity(fileList.size());
+		
+		// Parsing is the slow part, so do that in parallel. Copying is done in order afterwards, so if two files 
+		// have the same ID and version, the same one wins each time.
+		List<Optional<ResourceMetadata>> parsedMetadata = loader.map(fileList, thisFile -> parseMetadata(resourceType, thisFile, parsedFiles));
         
-        for (File thisFile : fileList) {
+        for (int i = 0; i < fileList.size(); i++) {
+        	File thisFile = fileList.get(i);
+        	Optional<ResourceMetadata> newEntity = parsedMetadata.get(i);
+        	
+        	FileLoadResult<File> copy = new FileLoadResult<>();
+        	copies.add(copy);
+        	
             if (thisFile.isFile()) {
-                LOG.debug("Pre-processing " + resourceType + " resource from file: " + thisFile.getName());
-                
-                String resourceID = null;
-                VersionNumber versionNo = null; 
-                		
-                try {
-                	ResourceMetadata newEntity = WrappedResource.fromBaseResource(parser.parseFile(thisFile)).getMetadata(thisFile);
-                	resourceID = newEntity.getResourceID();
-                	versionNo = newEntity.getVersionNo();
-                	
-                } catch (Exception ex) {
-                	LOG.error("Unable to load FHIR resource from file: "+thisFile.getAbsolutePath() + " error: " + ex.getMessage() + " - IGNORING");
-                	ex.printStackTrace();
-                }
+                String resourceID = newEntity.map(ResourceMetadata::getResourceID).orElse(null);
+                VersionNumber versionNo = newEntity.map(ResourceMetadata::getVersionNo).orElse(null);
                 
                 if (versionNo == null) {
                 	addMessage("[!] FAILED to load: " + thisFile.getName() + " (" + resourceType + ") - Version number was missing or invalid");
@@ -85,6 +92,8 @@ public class VersionedFilePreprocessor {
                 	addMessage("  - Copying new " + resourceType + " into versioned directory with new filename: " + newFilename);
                 	File newFile = new File(outputDirectory + File.separator + newFilename);
                 	FileUtils.copyFile(thisFile, newFile);
+                	parsedFiles.recordCopy(thisFile, newFile);
+                	copy.add(newFile);
                 	
                 	// And also copy other resources (diffs, details, bindings, etc).
                 	copyOtherResources(thisFile.toPath(), newFile.toPath());
@@ -94,8 +103,26 @@ public class VersionedFilePreprocessor {
         
         addMessage("Finished pre-processing " + resourceType + " files from disk.");
         addMessage("--------------------------------------------------------------------------------------");
+        
+        return copies;
     }
 
+	private Optional<ResourceMetadata> parseMetadata(ResourceType resourceType, File thisFile, ParsedFileRegistry parsedFiles) {
+		if (!thisFile.isFile()) {
+			return Optional.empty();
+		}
+		
+		LOG.debug("Pre-processing " + resourceType + " resource from file: " + thisFile.getName());
+		
+		try {
+			return Optional.of(parsedFiles.parse(thisFile).getWrappedResource().getMetadata(thisFile));
+		} catch (Exception ex) {
+        	LOG.error("Unable to load FHIR resource from file: "+thisFile.getAbsolutePath() + " error: " + ex.getMessage() + " - IGNORING");
+        	ex.printStackTrace();
+        	return Optional.empty();
+        }
+	}
+
 	private void logStart(FhirVersion fhirVersion, ResourceType resourceType) {
 		//profileLoadMessages.clear();
 		LOG.debug("Starting pre-processor to convert files into versioned files prior to loading into the server for " + fhirVersion);
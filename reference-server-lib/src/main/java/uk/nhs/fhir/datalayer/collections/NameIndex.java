@@ -0,0 +1,161 @@
+package uk.nhs.fhir.datalayer.collections;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+
+/**
+ * Immutable name lookups over a list of resources, supporting the FHIR string search modifiers.
+ * Every substring of up to MAX_GRAM characters of each (lower-cased) name is indexed, so a search term
+ * is either looked up directly or narrowed down to the resources containing its rarest trigram before
+ * checking them. Search terms are always treated as literal text.
+ */
+public class NameIndex {
+
+	public enum Match {
+		// name=[value] - case-insensitive, name starts with value
+		STARTS_WITH,
+		// name:contains=[value] - case-insensitive, name contains value anywhere
+		CONTAINS,
+		// name:exact=[value] - case-sensitive, whole name matches
+		EXACT;
+	}
+
+	public static final NameIndex EMPTY = new NameIndex(ImmutableList.of());
+
+	private static final int MAX_GRAM = 3;
+
+	private final ImmutableList<ResourceMetadata> resources;
+	private final String[] lowerCaseNames;
+	private final ImmutableMap<String, int[]> positionsByGram;
+	private final ImmutableListMultimap<String, ResourceMetadata> resourcesByName;
+
+	public NameIndex(List<ResourceMetadata> resources) {
+		this.resources = ImmutableList.copyOf(resources);
+		this.lowerCaseNames = new String[this.resources.size()];
+
+		Map<String, List<Integer>> positions = Maps.newHashMap();
+		ImmutableListMultimap.Builder<String, ResourceMetadata> byName = ImmutableListMultimap.builder();
+
+		for (int i = 0; i < this.resources.size(); i++) {
+			String name = this.resources.get(i).getResourceName();
+			if (name == null) {
+				continue;
+			}
+
+			byName.put(name, this.resources.get(i));
+
+			String lowerCaseName = lowerCase(name);
+			lowerCaseNames[i] = lowerCaseName;
+
+			for (String gram : grams(lowerCaseName)) {
+				positions.computeIfAbsent(gram, key -> Lists.newArrayList()).add(i);
+			}
+		}
+
+		ImmutableMap.Builder<String, int[]> positionsBuilder = ImmutableMap.builder();
+		for (Map.Entry<String, List<Integer>> gramPositions : positions.entrySet()) {
+			positionsBuilder.put(gramPositions.getKey(), Ints.toArray(gramPositions.getValue()));
+		}
+		this.positionsByGram = positionsBuilder.build();
+		this.resourcesByName = byName.build();
+	}
+
+	/**
+	 * @return matching resources, in the order they were supplied to the index
+	 */
+	public List<ResourceMetadata> find(String searchTerm, Match match) {
+		if (searchTerm == null) {
+			return ImmutableList.of();
+		}
+
+		switch (match) {
+			case EXACT:
+				return resourcesByName.get(searchTerm);
+			case STARTS_WITH:
+				return findContaining(lowerCase(searchTerm), true);
+			case CONTAINS:
+				return findContaining(lowerCase(searchTerm), false);
+			default:
+				throw new IllegalStateException("Unhandled name match type " + match.toString());
+		}
+	}
+
+	private List<ResourceMetadata> findContaining(String lowerCaseTerm, boolean mustStartWith) {
+		if (lowerCaseTerm.isEmpty()) {
+			return withNames();
+		}
+
+		int[] candidates = candidatePositions(lowerCaseTerm);
+
+		ImmutableList.Builder<ResourceMetadata> matches = ImmutableList.builder();
+		for (int position : candidates) {
+			String lowerCaseName = lowerCaseNames[position];
+			boolean isMatch =
+				mustStartWith ?
+					lowerCaseName.startsWith(lowerCaseTerm) :
+					(lowerCaseTerm.length() <= MAX_GRAM || lowerCaseName.contains(lowerCaseTerm));
+
+			if (isMatch) {
+				matches.add(resources.get(position));
+			}
+		}
+		return matches.build();
+	}
+
+	/**
+	 * Positions of all resources whose names might contain the term. Exact for terms of up to MAX_GRAM characters.
+	 */
+	private int[] candidatePositions(String lowerCaseTerm) {
+		if (lowerCaseTerm.length() <= MAX_GRAM) {
+			return positionsByGram.getOrDefault(lowerCaseTerm, new int[0]);
+		}
+
+		int[] rarest = null;
+		for (int start = 0; start + MAX_GRAM <= lowerCaseTerm.length(); start++) {
+			int[] positions = positionsByGram.get(lowerCaseTerm.substring(start, start + MAX_GRAM));
+			if (positions == null) {
+				return new int[0];
+			}
+			if (rarest == null || positions.length < rarest.length) {
+				rarest = positions;
+			}
+		}
+		return rarest;
+	}
+
+	private List<ResourceMetadata> withNames() {
+		ImmutableList.Builder<ResourceMetadata> named = ImmutableList.builder();
+		for (int i = 0; i < resources.size(); i++) {
+			if (lowerCaseNames[i] != null) {
+				named.add(resources.get(i));
+			}
+		}
+		return named.build();
+	}
+
+	private static Set<String> grams(String lowerCaseName) {
+		Set<String> grams = Sets.newHashSet();
+		for (int start = 0; start < lowerCaseName.length(); start++) {
+			for (int end = start + 1; end <= Math.min(lowerCaseName.length(), start + MAX_GRAM); end++) {
+				grams.add(lowerCaseName.substring(start, end));
+			}
+		}
+		return grams;
+	}
+
+	private static String lowerCase(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,136 @@
+package uk.nhs.fhir.datalayer.collections;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.data.metadata.ResourceType;
+
+/**
+ * Immutable lookup tables over the resources cached for a single FHIR version.
+ * Built once when the cache is refreshed, so that requests can find resources by ID, name or URL
+ * without copying or scanning the full resource list.
+ */
+public class ResourceIndex {
+
+	public static final ResourceIndex EMPTY = new ResourceIndex(ImmutableList.of());
+
+	private final ImmutableList<ResourceEntityWithMultipleVersions> entities;
+	private final ImmutableListMultimap<ResourceType, ResourceEntityWithMultipleVersions> entitiesByType;
+	private final ImmutableListMultimap<ResourceType, ResourceMetadata> latestByType;
+	private final ImmutableTable<ResourceType, String, ResourceEntityWithMultipleVersions> entitiesById;
+	private final ImmutableTable<ResourceType, String, ResourceEntityWithMultipleVersions> entitiesByName;
+	private final ImmutableTable<ResourceType, String, ImmutableList<ResourceMetadata>> latestByUrl;
+	private final ImmutableMap<ResourceType, NameIndex> nameIndexByType;
+
+	public ResourceIndex(List<ResourceEntityWithMultipleVersions> entities) {
+		this.entities = ImmutableList.copyOf(entities);
+
+		ImmutableListMultimap.Builder<ResourceType, ResourceEntityWithMultipleVersions> byType = ImmutableListMultimap.builder();
+		ImmutableListMultimap.Builder<ResourceType, ResourceMetadata> latestOfType = ImmutableListMultimap.builder();
+		Table<ResourceType, String, ResourceEntityWithMultipleVersions> byId = Tables.newCustomTable(Maps.newLinkedHashMap(), Maps::newLinkedHashMap);
+		Table<ResourceType, String, ResourceEntityWithMultipleVersions> byName = Tables.newCustomTable(Maps.newLinkedHashMap(), Maps::newLinkedHashMap);
+		Table<ResourceType, String, ImmutableList.Builder<ResourceMetadata>> byUrl = Tables.newCustomTable(Maps.newLinkedHashMap(), Maps::newLinkedHashMap);
+
+		for (ResourceEntityWithMultipleVersions entity : this.entities) {
+			ResourceType resourceType = entity.getResourceType();
+			byType.put(resourceType, entity);
+			latestOfType.put(resourceType, entity.getLatest());
+
+			// FileCacher merges versions with the same type and ID into a single entity, so IDs are unique here
+			if (entity.getResourceID() != null) {
+				byId.put(resourceType, entity.getResourceID(), entity);
+			}
+
+			// Name lookups have always returned the first entry with a matching name
+			if (entity.getResourceName() != null
+			  && !byName.contains(resourceType, entity.getResourceName())) {
+				byName.put(resourceType, entity.getResourceName(), entity);
+			}
+
+			String url = entity.getLatest().getUrl();
+			if (url != null) {
+				if (!byUrl.contains(resourceType, url)) {
+					byUrl.put(resourceType, url, ImmutableList.builder());
+				}
+				byUrl.get(resourceType, url).add(entity.getLatest());
+			}
+		}
+
+		this.entitiesByType = byType.build();
+		this.latestByType = latestOfType.build();
+		this.entitiesById = ImmutableTable.copyOf(byId);
+		this.entitiesByName = ImmutableTable.copyOf(byName);
+
+		ImmutableTable.Builder<ResourceType, String, ImmutableList<ResourceMetadata>> latestByUrlBuilder = ImmutableTable.builder();
+		for (Table.Cell<ResourceType, String, ImmutableList.Builder<ResourceMetadata>> cell : byUrl.cellSet()) {
+			latestByUrlBuilder.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue().build());
+		}
+		this.latestByUrl = latestByUrlBuilder.build();
+
+		ImmutableMap.Builder<ResourceType, NameIndex> nameIndexBuilder = ImmutableMap.builder();
+		for (ResourceType resourceType : latestByType.keySet()) {
+			nameIndexBuilder.put(resourceType, new NameIndex(latestByType.get(resourceType)));
+		}
+		this.nameIndexByType = nameIndexBuilder.build();
+	}
+
+	public List<ResourceEntityWithMultipleVersions> getAll() {
+		return entities;
+	}
+
+	public List<ResourceEntityWithMultipleVersions> getAllOfType(ResourceType resourceType) {
+		return entitiesByType.get(resourceType);
+	}
+
+	/**
+	 * @return the latest version of each resource of the supplied type, in load order
+	 */
+	public List<ResourceMetadata> getLatestOfType(ResourceType resourceType) {
+		return latestByType.get(resourceType);
+	}
+
+	public ResourceEntityWithMultipleVersions getById(ResourceType resourceType, String resourceID) {
+		if (resourceType == null || resourceID == null) {
+			return null;
+		}
+		return entitiesById.get(resourceType, resourceID);
+	}
+
+	public ResourceEntityWithMultipleVersions getByName(ResourceType resourceType, String resourceName) {
+		if (resourceType == null || resourceName == null) {
+			return null;
+		}
+		return entitiesByName.get(resourceType, resourceName);
+	}
+
+	/**
+	 * @return the latest versions of resources of the supplied type whose names match the search term, in load order
+	 */
+	public List<ResourceMetadata> findByName(ResourceType resourceType, String searchTerm, NameIndex.Match match) {
+		if (resourceType == null) {
+			return ImmutableList.of();
+		}
+		return nameIndexByType.getOrDefault(resourceType, NameIndex.EMPTY).find(searchTerm, match);
+	}
+
+	/**
+	 * @return the latest versions of resources of the supplied type which have the supplied URL, in load order
+	 */
+	public List<ResourceMetadata> getLatestByUrl(ResourceType resourceType, String url) {
+		if (resourceType == null || url == null) {
+			return ImmutableList.of();
+		}
+
+		ImmutableList<ResourceMetadata> matches = latestByUrl.get(resourceType, url);
+		return matches == null ? ImmutableList.of() : matches;
+	}
+
+}
@@ -65,7 +65,10 @@ public class CORSInterceptor extends InterceptorAdapter {
 		return super.outgoingResponse(theRequestDetails, theResponseObject, theServletRequest, theServletResponse);
 	}
 	
-	protected void addCORSResponseHeaders(HttpServletResponse resp) {
+	/**
+	 * Also used for responses which are sent without going through HAPI's usual response handling
+	 */
+	public static void addCORSResponseHeaders(HttpServletResponse resp) {
 		resp.addHeader("Access-Control-Allow-Origin", "*");
 		resp.addHeader("Access-Control-Expose-Headers", "Content-Location,Location");
 	}
@@ -0,0 +1,31 @@
+package uk.nhs.fhir.interceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import uk.nhs.fhir.util.ServletUtils;
+
+/**
+ * Adds a header to HAPI responses reporting which generation of the resource cache they were served from
+ */
+public class CacheGenerationInterceptor extends InterceptorAdapter {
+
+	@Override
+	public boolean outgoingResponse(RequestDetails theRequestDetails, IBaseResource theResponseObject,
+			HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) {
+		ServletUtils.addCacheGenerationHeader(theServletResponse);
+		return super.outgoingResponse(theRequestDetails, theResponseObject, theServletRequest, theServletResponse);
+	}
+
+	@Override
+	public boolean outgoingResponse(RequestDetails theRequestDetails, HttpServletRequest theServletRequest,
+			HttpServletResponse theServletResponse) throws AuthenticationException {
+		ServletUtils.addCacheGenerationHeader(theServletResponse);
+		return super.outgoingResponse(theRequestDetails, theServletRequest, theServletResponse);
+	}
+}
@@ -49,7 +49,7 @@ public class ConformanceInterceptor extends InterceptorAdapter {
     		String baseURL = theRequestDetails.getServerBaseForRequest();
     		String wrappedContent = renderConformance(theResponseObject, mimeType, baseURL);
 
-    		ServletUtils.setResponseContentForSuccess(theServletResponse, "text/html", wrappedContent);
+    		ServletUtils.setResponseContentForSuccess(theServletRequest, theServletResponse, "text/html", wrappedContent);
     		return false;
 		} else {
 			return true;
@@ -0,0 +1,60 @@
+package uk.nhs.fhir.interceptor;
+
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.metrics.RequestTimer;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * Labels the request's timing with the FHIR operation HAPI has matched it to (e.g. fhir_read, fhir_search_type) and its resource type.
+ * Must be registered before any interceptor which may answer the request itself (e.g. SerialisedResourceInterceptor).
+ */
+public class MetricsInterceptor extends InterceptorAdapter {
+
+	private static final String ROUTE_PREFIX = "fhir_";
+
+	private final FhirVersion fhirVersion;
+
+	public MetricsInterceptor(FhirVersion fhirVersion) {
+		this.fhirVersion = fhirVersion;
+	}
+
+	@Override
+	public boolean incomingRequestPostProcessed(RequestDetails theRequestDetails, HttpServletRequest theRequest,
+			HttpServletResponse theResponse) throws AuthenticationException {
+		RestOperationTypeEnum operation = theRequestDetails.getRestOperationType();
+		if (operation != null) {
+			String route = ROUTE_PREFIX + operation.getCode().replace('-', '_').toLowerCase(Locale.UK);
+			
+			ResourceType resourceType = knownResourceType(theRequestDetails.getResourceName());
+			if (resourceType != null) {
+				RequestTimer.setRoute(theRequest, route, resourceType);
+			} else {
+				RequestTimer.setRoute(theRequest, route);
+			}
+		}
+
+		return true;
+	}
+
+	// Only types the server serves, so that labels can't be made up by whoever sends the request
+	private ResourceType knownResourceType(String resourceName) {
+		if (resourceName != null) {
+			for (ResourceType type : ResourceType.typesForFhirVersion(fhirVersion)) {
+				if (type.getHAPIName().equals(resourceName)) {
+					return type;
+				}
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,184 @@
+package uk.nhs.fhir.interceptor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.RestfulServerUtils.ResponseEncoding;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.datalayer.FileCache;
+import uk.nhs.fhir.datalayer.FilesystemIF;
+import uk.nhs.fhir.datalayer.SerialisedResourceCache.SerialisedResource;
+import uk.nhs.fhir.datalayer.SerialisedResourceCache.SerialisedResourceKey;
+import uk.nhs.fhir.enums.MimeType;
+import uk.nhs.fhir.util.ConditionalGet;
+import uk.nhs.fhir.util.FhirContexts;
+import uk.nhs.fhir.util.FhirVersion;
+import uk.nhs.fhir.util.ServletUtils;
+import uk.nhs.fhir.util.text.FhirTextSectionHelpers;
+
+/**
+ * Answers plain reads (GET [type]/[id] and GET [type]/[id]/_history/[version]) from the serialised resource cache,
+ * so that repeat requests for a resource are sent without being parsed or encoded again.
+ * Anything this doesn't recognise (searches, _summary, _elements etc.) is left for HAPI to handle as normal.
+ * Output matches ResourceProvider.getResourceById, which also strips the text section.
+ * Sends a strong ETag and Last-Modified for the resource file, and a 304 when the client already has the current content.
+ * Location (and Content-Location before STU3) headers are sent as HAPI would for a read.
+ */
+public class SerialisedResourceInterceptor extends InterceptorAdapter {
+	private static final Logger LOG = LoggerFactory.getLogger(SerialisedResourceInterceptor.class.getName());
+
+	private static final Set<RestOperationTypeEnum> CACHED_OPERATIONS = ImmutableSet.of(RestOperationTypeEnum.READ, RestOperationTypeEnum.VREAD);
+	private static final Set<String> CACHED_PARAMETERS = ImmutableSet.of(Constants.PARAM_FORMAT, Constants.PARAM_PRETTY);
+
+	private final FhirVersion fhirVersion;
+	private final FilesystemIF dataSource;
+
+	public SerialisedResourceInterceptor(FhirVersion fhirVersion, FilesystemIF dataSource) {
+		this.fhirVersion = fhirVersion;
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	public boolean incomingRequestPostProcessed(RequestDetails theRequestDetails, HttpServletRequest theRequest,
+			HttpServletResponse theResponse) throws AuthenticationException {
+		if (!isPlainRead(theRequestDetails)) {
+			return true;
+		}
+
+		IIdType requestId = theRequestDetails.getId();
+		ResourceMetadata metadata = dataSource.getResourceEntityByID(fhirVersion,
+			new IdDt(theRequestDetails.getResourceName(), requestId.getIdPart(), requestId.getVersionIdPart()));
+		if (metadata == null) {
+			// Let HAPI produce its usual 404
+			return true;
+		}
+
+		ResponseEncoding responseEncoding = RestfulServerUtils.determineResponseEncodingWithDefault(theRequestDetails);
+		MimeType mimeType = toMimeType(responseEncoding.getEncoding());
+		if (mimeType == MimeType.UNKNOWN_MIME) {
+			return true;
+		}
+
+		boolean prettyPrint = RestfulServerUtils.prettyPrintResponse(theRequestDetails.getServer(), theRequestDetails);
+		SerialisedResourceKey key = new SerialisedResourceKey(fhirVersion, metadata.getResourceFile(), mimeType, prettyPrint, true, theRequestDetails.getFhirServerBase());
+
+		// Checked before anything is parsed or encoded. Gzipped content is a different representation, so needs a different tag.
+		ConditionalGet validators = ConditionalGet.forContentBuiltFromFile(metadata.getResourceFile(),
+			"fhir", mimeType, prettyPrint, theRequestDetails.getFhirServerBase(), responseEncoding.getResourceContentType(), theRequestDetails.isRespondGzip());
+		if (validators.respondIfNotModified(theRequest, theResponse)) {
+			CORSInterceptor.addCORSResponseHeaders(theResponse);
+			ServletUtils.addCacheGenerationHeader(theResponse);
+			return false;
+		}
+
+		SerialisedResource serialised = FileCache.getSerialisedResourceCache().get(key, () -> encode(theRequestDetails, metadata));
+		if (serialised == null) {
+			return true;
+		}
+
+		CORSInterceptor.addCORSResponseHeaders(theResponse);
+		ServletUtils.addCacheGenerationHeader(theResponse);
+		validators.addHeaders(theResponse);
+		try {
+			writeResponse(theRequestDetails, theResponse, responseEncoding, serialised);
+		} catch (IOException e) {
+			LOG.error("Failed to write cached response for " + key.toString(), e);
+		}
+
+		return false;
+	}
+
+	private boolean isPlainRead(RequestDetails theRequestDetails) {
+		return theRequestDetails.getRequestType() == RequestTypeEnum.GET
+		  && CACHED_OPERATIONS.contains(theRequestDetails.getRestOperationType())
+		  && theRequestDetails.getId() != null
+		  && theRequestDetails.getId().hasIdPart()
+		  && CACHED_PARAMETERS.containsAll(theRequestDetails.getParameters().keySet());
+	}
+
+	private static MimeType toMimeType(EncodingEnum encoding) {
+		if (encoding == EncodingEnum.JSON) {
+			return MimeType.JSON;
+		} else if (encoding == EncodingEnum.XML) {
+			return MimeType.XML;
+		} else {
+			return MimeType.UNKNOWN_MIME;
+		}
+	}
+
+	private SerialisedResource encode(RequestDetails theRequestDetails, ResourceMetadata metadata) {
+		IBaseResource resource = FileCache.getParsedResourceCache().getCopy(fhirVersion, metadata.getResourceFile());
+		if (resource == null) {
+			return null;
+		}
+
+		return serialise(theRequestDetails, resource);
+	}
+
+	// Takes ownership of the resource, which has its text section removed
+	SerialisedResource serialise(RequestDetails theRequestDetails, IBaseResource resource) {
+		FhirTextSectionHelpers.forVersion(fhirVersion).removeTextSection(resource);
+
+		// Use the same parser configuration HAPI would, so cached responses match uncached ones
+		FhirContext fhirContext = FhirContexts.forVersion(fhirVersion);
+		IParser parser = RestfulServerUtils.getNewParser(fhirContext, fhirContext.getVersion().getVersion(), theRequestDetails);
+
+		// The full id HAPI sends with every read (see RestfulServerUtils.streamResponseAsResource)
+		IIdType location = resource.getIdElement() == null ? null :
+			RestfulServerUtils.fullyQualifyResourceIdOrReturnNull(theRequestDetails.getServer(), resource, theRequestDetails.getFhirServerBase(), resource.getIdElement());
+
+		return new SerialisedResource(parser.encodeResourceToString(resource), location == null ? null : location.getValue());
+	}
+
+	// Writes what HAPI would for the same read
+	void writeResponse(RequestDetails theRequestDetails, HttpServletResponse theResponse,
+			ResponseEncoding responseEncoding, SerialisedResource serialised) throws IOException {
+		theResponse.setStatus(Constants.STATUS_HTTP_200_OK);
+		theResponse.setContentType(responseEncoding.getResourceContentType());
+		theResponse.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+
+		String location = serialised.getLocation();
+		if (location != null) {
+			if (FhirContexts.forVersion(fhirVersion).getVersion().getVersion().isOlderThan(FhirVersionEnum.DSTU3)) {
+				theResponse.addHeader(Constants.HEADER_CONTENT_LOCATION, location);
+			}
+			theResponse.addHeader(Constants.HEADER_LOCATION, location);
+		}
+
+		byte[] content;
+		if (theRequestDetails.isRespondGzip()) {
+			theResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+			content = serialised.getGzippedBytes();
+		} else {
+			content = serialised.getBytes();
+		}
+
+		theResponse.setContentLength(content.length);
+		try (OutputStream out = theResponse.getOutputStream()) {
+			out.write(content);
+		}
+	}
+}
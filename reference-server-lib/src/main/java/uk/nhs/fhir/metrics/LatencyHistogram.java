@@ -0,0 +1,87 @@
+package uk.nhs.fhir.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations into fixed buckets, in the form Prometheus expects for a histogram.
+ * Recording is a short scan of the bucket bounds and two LongAdder increments, so it is cheap enough for every request.
+ * Buckets are counted individually and only made cumulative when they are read.
+ */
+public class LatencyHistogram {
+
+	// Upper bounds in seconds, from half a millisecond (a cached page) up to a full cache refresh
+	static final double[] BUCKET_SECONDS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120};
+
+	private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+	private static final String[] BUCKET_LABELS = new String[BUCKET_SECONDS.length];
+	static {
+		for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+			BUCKET_NANOS[i] = (long)(BUCKET_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+			BUCKET_LABELS[i] = BigDecimal.valueOf(BUCKET_SECONDS[i]).toPlainString();
+		}
+	}
+
+	// One more than the bounds, for anything slower than the last one
+	private final LongAdder[] buckets = new LongAdder[BUCKET_NANOS.length + 1];
+	private final LongAdder sumNanos = new LongAdder();
+
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	public void observe(long nanos) {
+		int bucket = 0;
+		while (bucket < BUCKET_NANOS.length
+		  && nanos > BUCKET_NANOS[bucket]) {
+			bucket++;
+		}
+
+		buckets[bucket].increment();
+		sumNanos.add(nanos);
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : buckets) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	public long getSumNanos() {
+		return sumNanos.sum();
+	}
+
+	public double getMeanMillis() {
+		long count = getCount();
+		return count == 0 ? 0.0 : (double)getSumNanos() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Number of observations no slower than each bound, with the total for +Inf as the last element
+	 */
+	public long[] getCumulativeCounts() {
+		long[] cumulative = new long[buckets.length];
+		long total = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			total += buckets[i].sum();
+			cumulative[i] = total;
+		}
+		return cumulative;
+	}
+
+	/**
+	 * The le label for each bound, in the same order as getCumulativeCounts() (excluding +Inf)
+	 */
+	static String bucketLabel(int bucket) {
+		return BUCKET_LABELS[bucket];
+	}
+
+	static int boundCount() {
+		return BUCKET_LABELS.length;
+	}
+}
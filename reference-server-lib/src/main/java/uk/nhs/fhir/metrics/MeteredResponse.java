@@ -0,0 +1,126 @@
+package uk.nhs.fhir.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Counts what is written to the response body. Text written through getWriter() is counted in characters, which is
+ * the same as bytes for the mostly ASCII content the server sends.
+ * Only used by the thread handling the request.
+ */
+class MeteredResponse extends HttpServletResponseWrapper {
+
+	private CountingOutputStream outputStream = null;
+	private CountingWriter countingWriter = null;
+	private PrintWriter writer = null;
+
+	MeteredResponse(HttpServletResponse response) {
+		super(response);
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (outputStream == null) {
+			outputStream = new CountingOutputStream(super.getOutputStream());
+		}
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			countingWriter = new CountingWriter(super.getWriter());
+			writer = new PrintWriter(countingWriter);
+		}
+		return writer;
+	}
+
+	long getBytesWritten() {
+		return (outputStream == null ? 0 : outputStream.count)
+			+ (countingWriter == null ? 0 : countingWriter.count);
+	}
+
+	private static class CountingOutputStream extends ServletOutputStream {
+		private final ServletOutputStream delegate;
+		private long count = 0;
+
+		CountingOutputStream(ServletOutputStream delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			delegate.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			delegate.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			delegate.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+
+		@Override
+		public boolean isReady() {
+			return delegate.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			delegate.setWriteListener(writeListener);
+		}
+	}
+
+	private static class CountingWriter extends Writer {
+		private final Writer delegate;
+		private long count = 0;
+
+		CountingWriter(Writer delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			delegate.write(c);
+			count++;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			delegate.write(cbuf, off, len);
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			delegate.write(str, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			delegate.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+	}
+}
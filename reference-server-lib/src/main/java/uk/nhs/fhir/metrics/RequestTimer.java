@@ -0,0 +1,78 @@
+package uk.nhs.fhir.metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import uk.nhs.fhir.data.metadata.ResourceType;
+
+/**
+ * Times a request from the first servlet which sees it until that servlet returns, and counts the bytes sent in the response.
+ * Requests are often forwarded between servlets (e.g. from the HAPI servlet to the browser servlet and back), so only the
+ * first timer started for a request records anything. The servlets which handle the request label it with setRoute() as they
+ * work out what it is for - the last label set is the one recorded.
+ */
+public class RequestTimer {
+
+	private static final String TIMER_ATTRIBUTE = RequestTimer.class.getName();
+	private static final String ROUTE_ATTRIBUTE = RequestTimer.class.getName() + ".route";
+	private static final String RESOURCE_TYPE_ATTRIBUTE = RequestTimer.class.getName() + ".resourceType";
+
+	public static final String UNKNOWN_ROUTE = "unknown";
+	public static final String NO_RESOURCE_TYPE = "none";
+
+	/**
+	 * The response returned by getResponse() should be used from then on, so that what is written to it is counted
+	 */
+	public static RequestTimer start(HttpServletRequest request, HttpServletResponse response) {
+		if (request.getAttribute(TIMER_ATTRIBUTE) != null) {
+			// Already being timed by a servlet which forwarded it here
+			return new RequestTimer(null, response, 0);
+		}
+
+		RequestTimer timer = new RequestTimer(request, new MeteredResponse(response), System.nanoTime());
+		request.setAttribute(TIMER_ATTRIBUTE, timer);
+		return timer;
+	}
+
+	public static void setRoute(HttpServletRequest request, String route) {
+		request.setAttribute(ROUTE_ATTRIBUTE, route);
+		request.removeAttribute(RESOURCE_TYPE_ATTRIBUTE);
+	}
+
+	public static void setRoute(HttpServletRequest request, String route, ResourceType resourceType) {
+		request.setAttribute(ROUTE_ATTRIBUTE, route);
+		request.setAttribute(RESOURCE_TYPE_ATTRIBUTE, resourceType.getDisplayName());
+	}
+
+	private final HttpServletRequest request;
+	private final HttpServletResponse response;
+	private final long startNanos;
+
+	private RequestTimer(HttpServletRequest request, HttpServletResponse response, long startNanos) {
+		this.request = request;
+		this.response = response;
+		this.startNanos = startNanos;
+	}
+
+	public HttpServletResponse getResponse() {
+		return response;
+	}
+
+	/**
+	 * Records the request, unless another servlet is timing it
+	 */
+	public void finish() {
+		if (request == null) {
+			return;
+		}
+
+		long nanos = System.nanoTime() - startNanos;
+		Object route = request.getAttribute(ROUTE_ATTRIBUTE);
+		Object resourceType = request.getAttribute(RESOURCE_TYPE_ATTRIBUTE);
+		ServerMetrics.getInstance().recordRequest(
+			route != null ? route.toString() : UNKNOWN_ROUTE,
+			resourceType != null ? resourceType.toString() : NO_RESOURCE_TYPE,
+			nanos,
+			((MeteredResponse)response).getBytesWritten());
+	}
+}
@@ -0,0 +1,288 @@
+package uk.nhs.fhir.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+
+/**
+ * Counters and timings for the server as a whole: request latencies by route and resource type, bytes sent, resource parses,
+ * cache refreshes and the hit rates of the server's caches.
+ * Recording only touches LongAdders in maps which stop growing once each route has been seen, so it is safe on every request.
+ * Cache statistics are read from the caches themselves whenever the metrics are read.
+ *
+ * Read by the /metrics endpoint (Prometheus text format) and over JMX as {@value #OBJECT_NAME}.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+	private static final Logger LOG = LoggerFactory.getLogger(ServerMetrics.class.getName());
+
+	public static final String OBJECT_NAME = "uk.nhs.fhir:type=ServerMetrics";
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+	public static final String PARSE_PHASE_REFRESH = "refresh";
+	public static final String PARSE_PHASE_REQUEST = "request";
+
+	private static final String REFRESH_FULL = "full";
+	private static final String REFRESH_INCREMENTAL = "incremental";
+
+	private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+	public static ServerMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	// route -> resource type -> latency
+	private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> requestLatencies = Maps.newConcurrentMap();
+	private final ConcurrentMap<String, LongAdder> bytesServed = Maps.newConcurrentMap();
+	private final ConcurrentMap<String, LongAdder> parses = Maps.newConcurrentMap();
+	private final ConcurrentMap<String, LatencyHistogram> refreshDurations = Maps.newConcurrentMap();
+	private final LongAdder refreshFailures = new LongAdder();
+	private volatile long lastRefreshNanos = 0;
+	private final ConcurrentMap<String, CacheSource> caches = Maps.newConcurrentMap();
+
+	ServerMetrics() {}
+
+	public void recordRequest(String route, String resourceType, long nanos, long bytes) {
+		ConcurrentMap<String, LatencyHistogram> byResourceType = get(requestLatencies, route, Maps::newConcurrentMap);
+		get(byResourceType, resourceType, LatencyHistogram::new).observe(nanos);
+		get(bytesServed, route, LongAdder::new).add(bytes);
+	}
+
+	public void recordParses(String phase, long count) {
+		get(parses, phase, LongAdder::new).add(count);
+	}
+
+	public void recordRefresh(boolean incremental, long nanos) {
+		get(refreshDurations, incremental ? REFRESH_INCREMENTAL : REFRESH_FULL, LatencyHistogram::new).observe(nanos);
+		lastRefreshNanos = nanos;
+	}
+
+	public void recordRefreshFailure() {
+		refreshFailures.increment();
+	}
+
+	/**
+	 * Reports a cache's statistics alongside the other metrics. Registering another cache with the same name replaces it.
+	 * @param name short, lower case name for the cache, e.g. parsed_resources
+	 */
+	public void registerCache(String name, Supplier<CacheStats> stats, LongSupplier size) {
+		caches.put(name, new CacheSource(stats, size));
+	}
+
+	// Avoids computeIfAbsent when the entry is already there, as in Java 8 it can lock even then
+	private static <T> T get(ConcurrentMap<String, T> map, String key, Supplier<T> newValue) {
+		T value = map.get(key);
+		if (value == null) {
+			value = map.computeIfAbsent(key, k -> newValue.get());
+		}
+		return value;
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text exposition format (version 0.0.4)
+	 */
+	public void writePrometheus(Appendable out) throws IOException {
+		writeHeader(out, "fhir_http_request_duration_seconds", "histogram", "Time taken to answer requests, by route and resource type");
+		for (Map.Entry<String, ConcurrentMap<String, LatencyHistogram>> route : new TreeMap<>(requestLatencies).entrySet()) {
+			for (Map.Entry<String, LatencyHistogram> resourceType : new TreeMap<>(route.getValue()).entrySet()) {
+				writeHistogram(out, "fhir_http_request_duration_seconds",
+					"route=\"" + escape(route.getKey()) + "\",resource_type=\"" + escape(resourceType.getKey()) + "\"", resourceType.getValue());
+			}
+		}
+
+		writeHeader(out, "fhir_http_response_bytes_total", "counter", "Bytes written in response bodies, by route");
+		for (Map.Entry<String, LongAdder> route : new TreeMap<>(bytesServed).entrySet()) {
+			writeSample(out, "fhir_http_response_bytes_total", "route=\"" + escape(route.getKey()) + "\"", route.getValue().sum());
+		}
+
+		writeHeader(out, "fhir_resource_parses_total", "counter", "Resource files run through a FHIR parser, during cache refreshes or to answer requests");
+		for (Map.Entry<String, LongAdder> phase : new TreeMap<>(parses).entrySet()) {
+			writeSample(out, "fhir_resource_parses_total", "phase=\"" + escape(phase.getKey()) + "\"", phase.getValue().sum());
+		}
+
+		writeHeader(out, "fhir_cache_refresh_duration_seconds", "histogram", "Time taken to refresh the resource cache from the filesystem");
+		for (Map.Entry<String, LatencyHistogram> type : new TreeMap<>(refreshDurations).entrySet()) {
+			writeHistogram(out, "fhir_cache_refresh_duration_seconds", "type=\"" + escape(type.getKey()) + "\"", type.getValue());
+		}
+
+		writeHeader(out, "fhir_cache_refresh_failures_total", "counter", "Resource cache refreshes which failed part way through");
+		writeSample(out, "fhir_cache_refresh_failures_total", "", refreshFailures.sum());
+
+		Map<String, CacheSource> sortedCaches = new TreeMap<>(caches);
+		// Read each cache's statistics once, so the different counts agree with each other
+		Map<String, CacheStats> stats = new TreeMap<>(Maps.transformValues(sortedCaches, source -> source.stats.get()));
+
+		writeHeader(out, "fhir_cache_size", "gauge", "Entries currently held in each cache");
+		for (Map.Entry<String, CacheSource> cache : sortedCaches.entrySet()) {
+			writeSample(out, "fhir_cache_size", cacheLabel(cache.getKey()), cache.getValue().size.getAsLong());
+		}
+		writeHeader(out, "fhir_cache_hits_total", "counter", "Lookups answered from each cache");
+		for (Map.Entry<String, CacheStats> cache : stats.entrySet()) {
+			writeSample(out, "fhir_cache_hits_total", cacheLabel(cache.getKey()), cache.getValue().hitCount());
+		}
+		writeHeader(out, "fhir_cache_misses_total", "counter", "Lookups which had to load or build the value");
+		for (Map.Entry<String, CacheStats> cache : stats.entrySet()) {
+			writeSample(out, "fhir_cache_misses_total", cacheLabel(cache.getKey()), cache.getValue().missCount());
+		}
+		writeHeader(out, "fhir_cache_evictions_total", "counter", "Entries dropped from each cache to stay within its bounds");
+		for (Map.Entry<String, CacheStats> cache : stats.entrySet()) {
+			writeSample(out, "fhir_cache_evictions_total", cacheLabel(cache.getKey()), cache.getValue().evictionCount());
+		}
+		writeHeader(out, "fhir_cache_hit_ratio", "gauge", "Proportion of lookups answered from each cache since the server started");
+		for (Map.Entry<String, CacheStats> cache : stats.entrySet()) {
+			writeSample(out, "fhir_cache_hit_ratio", cacheLabel(cache.getKey()), cache.getValue().hitRate());
+		}
+	}
+
+	private static void writeHeader(Appendable out, String name, String type, String help) throws IOException {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void writeHistogram(Appendable out, String name, String labels, LatencyHistogram histogram) throws IOException {
+		String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+		long[] cumulative = histogram.getCumulativeCounts();
+		for (int i = 0; i < LatencyHistogram.boundCount(); i++) {
+			writeSample(out, name + "_bucket", labelPrefix + "le=\"" + LatencyHistogram.bucketLabel(i) + "\"", cumulative[i]);
+		}
+		long count = cumulative[cumulative.length - 1];
+		writeSample(out, name + "_bucket", labelPrefix + "le=\"+Inf\"", count);
+		writeSample(out, name + "_sum", labels, (double)histogram.getSumNanos() / TimeUnit.SECONDS.toNanos(1));
+		writeSample(out, name + "_count", labels, count);
+	}
+
+	private static void writeSample(Appendable out, String name, String labels, long value) throws IOException {
+		writeSampleName(out, name, labels).append(Long.toString(value)).append('\n');
+	}
+
+	private static void writeSample(Appendable out, String name, String labels, double value) throws IOException {
+		writeSampleName(out, name, labels).append(Double.isNaN(value) ? "NaN" : Double.toString(value)).append('\n');
+	}
+
+	private static Appendable writeSampleName(Appendable out, String name, String labels) throws IOException {
+		out.append(name);
+		if (!labels.isEmpty()) {
+			out.append('{').append(labels).append('}');
+		}
+		return out.append(' ');
+	}
+
+	private static String cacheLabel(String cache) {
+		return "cache=\"" + escape(cache) + "\"";
+	}
+
+	static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	public void registerMBean() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			// e.g. a second copy of the server in the same JVM. It will still serve /metrics.
+			LOG.warn("Metrics MBean " + OBJECT_NAME + " is already registered");
+		} catch (JMException e) {
+			LOG.error("Unable to register metrics MBean " + OBJECT_NAME, e);
+		}
+	}
+
+	public void unregisterMBean() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			LOG.error("Unable to unregister metrics MBean " + OBJECT_NAME, e);
+		}
+	}
+
+	@Override
+	public Map<String, Long> getRequestCounts() {
+		Map<String, Long> counts = Maps.newTreeMap();
+		requestLatencies.forEach((route, byResourceType) ->
+			byResourceType.forEach((resourceType, histogram) -> counts.put(route + " " + resourceType, histogram.getCount())));
+		return counts;
+	}
+
+	@Override
+	public Map<String, Double> getMeanRequestMillis() {
+		Map<String, Double> means = Maps.newTreeMap();
+		requestLatencies.forEach((route, byResourceType) ->
+			byResourceType.forEach((resourceType, histogram) -> means.put(route + " " + resourceType, histogram.getMeanMillis())));
+		return means;
+	}
+
+	@Override
+	public Map<String, Long> getBytesServed() {
+		return sums(bytesServed);
+	}
+
+	@Override
+	public Map<String, Long> getParseCounts() {
+		return sums(parses);
+	}
+
+	private static Map<String, Long> sums(Map<String, LongAdder> adders) {
+		Map<String, Long> sums = Maps.newTreeMap();
+		adders.forEach((key, adder) -> sums.put(key, adder.sum()));
+		return sums;
+	}
+
+	@Override
+	public Map<String, Long> getCacheSizes() {
+		Map<String, Long> sizes = Maps.newTreeMap();
+		caches.forEach((name, source) -> sizes.put(name, source.size.getAsLong()));
+		return sizes;
+	}
+
+	@Override
+	public Map<String, Double> getCacheHitRatios() {
+		Map<String, Double> ratios = Maps.newTreeMap();
+		caches.forEach((name, source) -> ratios.put(name, source.stats.get().hitRate()));
+		return ratios;
+	}
+
+	@Override
+	public long getRefreshCount() {
+		return refreshDurations.values().stream().mapToLong(LatencyHistogram::getCount).sum();
+	}
+
+	@Override
+	public long getRefreshFailures() {
+		return refreshFailures.sum();
+	}
+
+	@Override
+	public double getLastRefreshMillis() {
+		return (double)lastRefreshNanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static class CacheSource {
+		private final Supplier<CacheStats> stats;
+		private final LongSupplier size;
+
+		CacheSource(Supplier<CacheStats> stats, LongSupplier size) {
+			this.stats = stats;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package uk.nhs.fhir.metrics;
+
+import java.util.Map;
+
+/**
+ * The server's metrics as seen through JMX (e.g. in JConsole). Requests are keyed by "route resourceType".
+ */
+public interface ServerMetricsMXBean {
+
+	Map<String, Long> getRequestCounts();
+
+	Map<String, Double> getMeanRequestMillis();
+
+	Map<String, Long> getBytesServed();
+
+	Map<String, Long> getParseCounts();
+
+	Map<String, Long> getCacheSizes();
+
+	Map<String, Double> getCacheHitRatios();
+
+	long getRefreshCount();
+
+	long getRefreshFailures();
+
+	double getLastRefreshMillis();
+}
@@ -27,7 +27,9 @@ import org.slf4j.LoggerFactory;
 
 import uk.nhs.fhir.data.metadata.ResourceMetadata;
 import uk.nhs.fhir.datalayer.SharedDataSource;
+import uk.nhs.fhir.page.rendered.SnapshotPageCache;
 import uk.nhs.fhir.resourcehandlers.ResourceWebHandler;
+import uk.nhs.fhir.util.ConditionalGet;
 import uk.nhs.fhir.util.ServletUtils;
 
 public class ExtensionsListRenderer {
@@ -42,10 +44,16 @@ public class ExtensionsListRenderer {
 		LOG.debug("Requested URL: " + req.getRequestURL());
 		
 		String baseUrl = req.getContextPath();
-		List<ResourceMetadata> extensions = extensionsListProvider.getExtensions();
-		ExtensionsListPageTemplate extensionsPage = new ExtensionsListPageTemplate(baseUrl, extensions);
-		String renderedExtensionsPage = extensionsPage.getHtml(EXTENSIONS_CRAWLER_DESCRIPTION);
+		if (ConditionalGet.forSnapshot("extensions", baseUrl).respondIfNotModified(req, resp)) {
+			return;
+		}
 		
-		ServletUtils.setResponseContentForSuccess(resp, "text/html", renderedExtensionsPage);
+		String renderedExtensionsPage = SnapshotPageCache.getInstance().get(() -> {
+			List<ResourceMetadata> extensions = extensionsListProvider.getExtensions();
+			ExtensionsListPageTemplate extensionsPage = new ExtensionsListPageTemplate(baseUrl, extensions);
+			return extensionsPage.getHtml(EXTENSIONS_CRAWLER_DESCRIPTION);
+		}, "extensions", baseUrl);
+		
+		ServletUtils.setResponseContentForSuccess(req, resp, "text/html", renderedExtensionsPage);
 	}
 }
@@ -1,6 +1,6 @@
 package uk.nhs.fhir.page.home;
 
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 import org.apache.velocity.VelocityContext;
@@ -8,9 +8,9 @@ import org.apache.velocity.VelocityContext;
 import uk.nhs.fhir.page.VelocityTemplate;
 
 public class HomePageTemplate extends VelocityTemplate {
-	private final HashMap<String, Integer> resourceCounts;
+	private final Map<String, Integer> resourceCounts;
 
-	public HomePageTemplate(String baseUrl, HashMap<String, Integer> resourceCounts) {
+	public HomePageTemplate(String baseUrl, Map<String, Integer> resourceCounts) {
 		super("home.vm", Optional.empty(), Optional.empty());
 		this.resourceCounts = resourceCounts;
 	}
@@ -1,9 +1,9 @@
 package uk.nhs.fhir.page.home;
 
-import java.util.HashMap;
+import java.util.Map;
 
 public interface ResourceCountsProvider {
 
-	HashMap<String, Integer> getResourceTypeCounts();
+	Map<String, Integer> getResourceTypeCounts();
 
 }
\ No newline at end of file
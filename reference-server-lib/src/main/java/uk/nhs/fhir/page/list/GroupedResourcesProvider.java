@@ -1,13 +1,13 @@
 package uk.nhs.fhir.page.list;
 
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import uk.nhs.fhir.data.metadata.ResourceMetadata;
 import uk.nhs.fhir.data.metadata.ResourceType;
 
 public interface GroupedResourcesProvider {
 
-	HashMap<String, List<ResourceMetadata>> getAGroupedListOfResources(ResourceType resourceType);
+	Map<String, List<ResourceMetadata>> getAGroupedListOfResources(ResourceType resourceType);
 
 }
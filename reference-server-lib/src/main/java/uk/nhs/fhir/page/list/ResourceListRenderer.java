@@ -1,7 +1,7 @@
 package uk.nhs.fhir.page.list;
 
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import uk.nhs.fhir.data.metadata.ResourceMetadata;
@@ -24,7 +24,7 @@ public class ResourceListRenderer {
     public String renderResourceList(RequestDetails theRequestDetails, ResourceType resourceType) {
     	
     	// We want to show a grouped list of resources of a specific type (e.g. StructureDefinitions)
-    	HashMap<String, List<ResourceMetadata>> groupedResources = groupedResourcesProvider.getAGroupedListOfResources(resourceType);
+    	Map<String, List<ResourceMetadata>> groupedResources = groupedResourcesProvider.getAGroupedListOfResources(resourceType);
     	
     	return new ResourceListTemplate(resourceType, groupedResources).getHtml("FHIR Server full " + resourceType.getDisplayName() + " list");
 	}
@@ -9,23 +9,26 @@ import java.util.TreeMap;
 
 import org.apache.velocity.VelocityContext;
 
+import com.google.common.collect.Ordering;
+
 import uk.nhs.fhir.data.metadata.ResourceMetadata;
 import uk.nhs.fhir.data.metadata.ResourceType;
 import uk.nhs.fhir.page.VelocityTemplate;
 
 public class ResourceListTemplate extends VelocityTemplate {
+	private static final Comparator<ResourceMetadata> BY_LOWER_CASE_NAME = Comparator.comparing(r -> r.getResourceName().toLowerCase());
+	
 	// We want to show a grouped list of resources of a specific type (e.g. StructureDefinitions)
 	private final SortedMap<String, List<ResourceMetadata>> sortedGroupedResources;
 	
 	public ResourceListTemplate(ResourceType resourceType, Map<String, List<ResourceMetadata>> groupedResources) {
 		super("list.vm", Optional.of(resourceType), Optional.empty());
 
-		for (List<ResourceMetadata> resourceList : groupedResources.values()) {
-			resourceList.sort(Comparator.comparing(r -> r.getResourceName().toLowerCase()));
-		}
-		
     	SortedMap<String, List<ResourceMetadata>> sortedGroupedResources = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-    	sortedGroupedResources.putAll(groupedResources);
+		for (Map.Entry<String, List<ResourceMetadata>> group : groupedResources.entrySet()) {
+			// The lists may be shared, so are sorted into copies
+			sortedGroupedResources.put(group.getKey(), Ordering.from(BY_LOWER_CASE_NAME).immutableSortedCopy(group.getValue()));
+		}
 		this.sortedGroupedResources = sortedGroupedResources;
 	}
 
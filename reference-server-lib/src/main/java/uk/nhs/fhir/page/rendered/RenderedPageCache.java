@@ -0,0 +1,268 @@
+package uk.nhs.fhir.page.rendered;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.util.FhirVersion;
+
+/**
+ * Bounded cache of the HTML pages shown to browsers for single resources.
+ * Pages only change when the file cache is refreshed, so each page is tagged with the cache generation it was rendered from
+ * and is rendered again once a newer generation is published.
+ * Counts how often each page is requested, so that the most popular pages can be rendered again straight after a refresh
+ * (see scheduleWarmUp()) rather than by the first user to ask for them.
+ */
+public class RenderedPageCache {
+	private static final Logger LOG = LoggerFactory.getLogger(RenderedPageCache.class.getName());
+
+	// Only needed to pick pages to warm up, so stop counting new pages rather than let the counts grow without limit
+	private static final int MAX_COUNTED_PAGES = 10000;
+
+	private final Cache<RenderedPageKey, RenderedPage> cache;
+	private final LongSupplier currentGenerationSupplier;
+	private final Function<RenderedPageKey, String> renderer;
+	private final int warmUpCount;
+	private final Map<RenderedPageKey, LongAdder> requestCounts = Maps.newConcurrentMap();
+	private final AtomicBoolean warmUpPending = new AtomicBoolean(false);
+	private final ExecutorService warmUpExecutor =
+		Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("page-warm-up-%d").setDaemon(true).build());
+
+	/**
+	 * @param warmUpCount how many of the most requested pages to render after each refresh
+	 * @param currentGenerationSupplier reports the generation of the data pages are rendered from (normally FileCache::getSnapshotGeneration)
+	 * @param renderer renders the page for a key, returning null if there is no longer a resource to render
+	 */
+	public RenderedPageCache(long maxWeightBytes, int warmUpCount, LongSupplier currentGenerationSupplier, Function<RenderedPageKey, String> renderer) {
+		this.cache = CacheBuilder.newBuilder()
+			.maximumWeight(maxWeightBytes)
+			.weigher((RenderedPageKey key, RenderedPage value) -> value.getWeight())
+			.recordStats()
+			.build();
+		this.warmUpCount = warmUpCount;
+		this.currentGenerationSupplier = currentGenerationSupplier;
+		this.renderer = renderer;
+
+		LOG.info("Created rendered page cache with maximum weight " + maxWeightBytes + " bytes, warming up " + warmUpCount + " pages after each refresh");
+	}
+
+	/**
+	 * Returns the page for the key, rendering it if it isn't cached or was rendered from an older generation.
+	 * Returns null (and caches nothing) if the renderer returns null.
+	 */
+	public String get(RenderedPageKey key) {
+		String html = getPage(key);
+
+		if (html != null
+		  && (requestCounts.size() < MAX_COUNTED_PAGES || requestCounts.containsKey(key))) {
+			requestCounts.computeIfAbsent(key, k -> new LongAdder()).increment();
+		}
+
+		return html;
+	}
+
+	private String getPage(RenderedPageKey key) {
+		long generation = currentGenerationSupplier.getAsLong();
+
+		try {
+			RenderedPage page = cache.get(key, () -> render(key, generation));
+			if (page.getGeneration() < generation) {
+				// Rendered from data which has since been replaced
+				cache.invalidate(key);
+				page = cache.get(key, () -> render(key, generation));
+			}
+			return page.getHtml();
+		} catch (InvalidCacheLoadException e) {
+			return null;
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new IllegalStateException("Failed to render page " + key.toString(), e.getCause());
+		}
+	}
+
+	// Returning null tells the cache not to store anything
+	private RenderedPage render(RenderedPageKey key, long generation) {
+		String html = renderer.apply(key);
+		return html == null ? null : new RenderedPage(html, generation);
+	}
+
+	/**
+	 * Starts rendering the most requested pages in the background, unless that is already waiting to happen.
+	 * Intended to be called whenever a new cache generation is published.
+	 */
+	public void scheduleWarmUp() {
+		if (warmUpCount > 0
+		  && warmUpPending.compareAndSet(false, true)) {
+			warmUpExecutor.execute(this::warmUp);
+		}
+	}
+
+	/**
+	 * Stops any warm up. Pages can still be rendered and cached on request.
+	 */
+	public void shutdown() {
+		warmUpExecutor.shutdownNow();
+	}
+
+	private void warmUp() {
+		// Cleared first, so a refresh published while this is running gets its own warm up
+		warmUpPending.set(false);
+		long start = System.currentTimeMillis();
+
+		List<RenderedPageKey> mostRequested =
+			requestCounts.entrySet()
+				.stream()
+				.sorted(Comparator.comparing((Map.Entry<RenderedPageKey, LongAdder> entry) -> entry.getValue().sum()).reversed())
+				.limit(warmUpCount)
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toList());
+
+		int rendered = 0;
+		for (RenderedPageKey key : mostRequested) {
+			try {
+				if (getPage(key) != null) {
+					rendered++;
+				} else {
+					// The resource has gone
+					requestCounts.remove(key);
+				}
+			} catch (RuntimeException e) {
+				LOG.warn("Failed to warm up page " + key, e);
+				requestCounts.remove(key);
+			}
+		}
+
+		LOG.info("Warmed up " + rendered + " pages in " + (System.currentTimeMillis() - start) + "ms: " + toString());
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = getStats();
+		return "RenderedPageCache [size=" + size() + ", hits=" + stats.hitCount() + ", misses=" + stats.missCount()
+			+ ", evictions=" + stats.evictionCount() + "]";
+	}
+
+	/**
+	 * Identifies the page for one version of a resource.
+	 * The base URL is included because the page's links are built from it.
+	 */
+	public static class RenderedPageKey {
+		private final FhirVersion fhirVersion;
+		private final ResourceType resourceType;
+		private final String id;
+		private final String version;
+		private final String baseURL;
+
+		/**
+		 * @param version null for the latest version
+		 */
+		public RenderedPageKey(FhirVersion fhirVersion, ResourceType resourceType, String id, String version, String baseURL) {
+			this.fhirVersion = fhirVersion;
+			this.resourceType = resourceType;
+			this.id = id;
+			this.version = version;
+			this.baseURL = Objects.toString(baseURL, "");
+		}
+
+		public FhirVersion getFhirVersion() {
+			return fhirVersion;
+		}
+
+		public ResourceType getResourceType() {
+			return resourceType;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getVersion() {
+			return version;
+		}
+
+		public String getBaseURL() {
+			return baseURL;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(fhirVersion, resourceType, id, version, baseURL);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof RenderedPageKey)) {
+				return false;
+			}
+
+			RenderedPageKey other = (RenderedPageKey) obj;
+			return fhirVersion == other.fhirVersion
+			  && resourceType == other.resourceType
+			  && id.equals(other.id)
+			  && Objects.equals(version, other.version)
+			  && baseURL.equals(other.baseURL);
+		}
+
+		@Override
+		public String toString() {
+			return baseURL + "/" + resourceType.getHAPIName() + "/" + id + (version == null ? "" : "/_history/" + version) + " (" + fhirVersion + ")";
+		}
+	}
+
+	private static class RenderedPage {
+		private final String html;
+		private final long generation;
+
+		RenderedPage(String html, long generation) {
+			this.html = html;
+			this.generation = generation;
+		}
+
+		String getHtml() {
+			return html;
+		}
+
+		long getGeneration() {
+			return generation;
+		}
+
+		int getWeight() {
+			return (int)Math.min(Integer.MAX_VALUE, 2L * html.length() + 1);
+		}
+	}
+}
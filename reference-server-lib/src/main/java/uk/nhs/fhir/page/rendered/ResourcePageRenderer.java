@@ -15,8 +15,13 @@ import uk.nhs.fhir.data.metadata.SupportingArtefact;
 import uk.nhs.fhir.data.metadata.VersionNumber;
 import uk.nhs.fhir.data.wrap.WrappedResource;
 import uk.nhs.fhir.data.wrap.WrappedStructureDefinition;
+import uk.nhs.fhir.datalayer.FileCache;
 import uk.nhs.fhir.datalayer.collections.ResourceEntityWithMultipleVersions;
+import uk.nhs.fhir.page.rendered.RenderedPageCache.RenderedPageKey;
 import uk.nhs.fhir.resourcehandlers.ResourceWebHandler;
+import uk.nhs.fhir.servlet.SharedServletContext;
+import uk.nhs.fhir.util.FhirContexts;
+import uk.nhs.fhir.util.FhirServerProperties;
 import uk.nhs.fhir.util.FhirVersion;
 import uk.nhs.fhir.util.text.FhirTextSectionHelpers;
 
@@ -25,16 +30,70 @@ public class ResourcePageRenderer {
 	private static final Logger LOG = LoggerFactory.getLogger(ResourcePageRenderer.class.getName());
 	
 	private final ResourceWebHandler resourceWebHandler;
+	private final RenderedPageCache pageCache;
+	private final Runnable warmUpListener;
 	
 	public ResourcePageRenderer(ResourceWebHandler resourceWebHandler) {
 		this.resourceWebHandler = resourceWebHandler;
+		
+		long maxBytes = SharedServletContext.initialised() ? 
+			SharedServletContext.getProperties().getRenderedPageCacheMaxBytes() : 
+			FhirServerProperties.DEFAULT_RENDERED_PAGE_CACHE_MAX_BYTES;
+		int warmUpCount = SharedServletContext.initialised() ? 
+			SharedServletContext.getProperties().getRenderedPageWarmUpCount() : 
+			FhirServerProperties.DEFAULT_RENDERED_PAGE_WARM_UP_COUNT;
+		this.pageCache = new RenderedPageCache(maxBytes, warmUpCount, FileCache::getSnapshotGeneration, this::renderPage);
+		
+		// kept so that the same listener can be removed again
+		this.warmUpListener = pageCache::scheduleWarmUp;
+		FileCache.addSnapshotListener(warmUpListener);
+	}
+	
+	/**
+	 * Stops warming up the page cache after each refresh, so that the renderer can be released (e.g. when the servlet is destroyed)
+	 */
+	public void close() {
+		FileCache.removeSnapshotListener(warmUpListener);
+		pageCache.shutdown();
+	}
+	
+	public RenderedPageCache getPageCache() {
+		return pageCache;
 	}
     
 	/**
      * Code used to display a single resource as HTML when requested by a
-     * browser.
+     * browser. Pages are cached until the next cache refresh.
+     */
+    public String renderSingleResource(FhirVersion fhirVersion, String baseURL, IIdType resourceID, ResourceType resourceType) {
+    	return pageCache.get(new RenderedPageKey(fhirVersion, resourceType, resourceID.getIdPart(), resourceID.getVersionIdPart(), baseURL));
+    }
+    
+    /**
+     * Renders a page for the cache. Returns null if the resource (or requested version) doesn't exist.
      */
-    public String renderSingleResource(FhirVersion fhirVersion, String baseURL, IIdType resourceID, String resourceName, ResourceType resourceType) {
+    private String renderPage(RenderedPageKey key) {
+    	IIdType resourceID = FhirContexts.forVersion(key.getFhirVersion()).getVersion().newIdType();
+    	resourceID.setParts(null, key.getResourceType().getHAPIName(), key.getId(), key.getVersion());
+    	
+    	ResourceEntityWithMultipleVersions entity = resourceWebHandler.getVersionsForID(key.getFhirVersion(), resourceID);
+    	if (entity == null) {
+    		return null;
+    	}
+    	
+    	ResourceMetadata resourceMetadata = 
+    		key.getVersion() == null ?
+    			entity.getLatest() :
+    			VersionNumber.parse(key.getVersion()).map(entity::getSpecificVersion).orElse(null);
+    	if (resourceMetadata == null) {
+    		return null;
+    	}
+    	
+    	return renderPage(key.getFhirVersion(), key.getBaseURL(), resourceID, resourceMetadata.getResourceName(), key.getResourceType(), entity, resourceMetadata);
+    }
+    
+    private String renderPage(FhirVersion fhirVersion, String baseURL, IIdType resourceID, String resourceName, ResourceType resourceType,
+    		ResourceEntityWithMultipleVersions entity, ResourceMetadata resourceMetadata) {
     	IBaseResource resource = resourceWebHandler.getResourceByID(fhirVersion, resourceID);
     	WrappedResource<?> wrappedResource = WrappedResource.fromBaseResource(resource);
     	if (wrappedResource instanceof WrappedStructureDefinition) {
@@ -44,12 +103,8 @@ public class ResourcePageRenderer {
     	}
 
     	// List of versions
-    	ResourceEntityWithMultipleVersions entity = resourceWebHandler.getVersionsForID(fhirVersion, resourceID);
     	Map<VersionNumber, ResourceMetadata> versionsList = entity.getVersionList();
 
-    	// Resource metadata
-    	ResourceMetadata resourceMetadata = resourceWebHandler.getResourceEntityByID(fhirVersion, resourceID);
-
     	// Check if we have a nice metadata table from the renderer
     	Optional<SupportingArtefact> metadataArtefact = 
 			resourceMetadata.getArtefacts()
@@ -0,0 +1,85 @@
+package uk.nhs.fhir.page.rendered;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import uk.nhs.fhir.datalayer.FileCache;
+import uk.nhs.fhir.metrics.ServerMetrics;
+
+/**
+ * Cache of the pages built from the cached resources as a whole (the list pages, the extensions registry and the home page).
+ * There are only a few of these, and they only change when the file cache is refreshed, so each is rendered once per cache generation.
+ */
+public class SnapshotPageCache {
+
+	private static final int MAX_PAGES = 500;
+
+	private static final SnapshotPageCache INSTANCE = new SnapshotPageCache(FileCache::getSnapshotGeneration);
+
+	static {
+		ServerMetrics.getInstance().registerCache("snapshot_pages", INSTANCE::getStats, INSTANCE::size);
+	}
+
+	public static SnapshotPageCache getInstance() {
+		return INSTANCE;
+	}
+
+	private final Cache<List<Object>, GenerationTaggedPage> cache = CacheBuilder.newBuilder().maximumSize(MAX_PAGES).recordStats().build();
+	private final LongSupplier currentGenerationSupplier;
+
+	SnapshotPageCache(LongSupplier currentGenerationSupplier) {
+		this.currentGenerationSupplier = currentGenerationSupplier;
+	}
+
+	/**
+	 * Returns the page, rendering it if it isn't cached or was rendered from an older generation
+	 * @param key identifies the page, e.g. its name and anything which changes its content
+	 */
+	public String get(Supplier<String> renderer, Object... key) {
+		List<Object> cacheKey = Arrays.asList(key);
+		long generation = currentGenerationSupplier.getAsLong();
+
+		try {
+			GenerationTaggedPage page = cache.get(cacheKey, () -> new GenerationTaggedPage(renderer.get(), generation));
+			if (page.generation < generation) {
+				cache.invalidate(cacheKey);
+				page = cache.get(cacheKey, () -> new GenerationTaggedPage(renderer.get(), generation));
+			}
+			return page.html;
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new IllegalStateException("Failed to render page " + cacheKey, e.getCause());
+		}
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = getStats();
+		return "SnapshotPageCache [size=" + size() + ", hits=" + stats.hitCount() + ", misses=" + stats.missCount() + "]";
+	}
+
+	private static class GenerationTaggedPage {
+		private final String html;
+		private final long generation;
+
+		GenerationTaggedPage(String html, long generation) {
+			this.html = html;
+			this.generation = generation;
+		}
+	}
+}
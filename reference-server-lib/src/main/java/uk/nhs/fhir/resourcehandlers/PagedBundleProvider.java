@@ -8,9 +8,14 @@ import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import uk.nhs.fhir.data.metadata.ResourceType;
 import uk.nhs.fhir.datalayer.FilesystemIF;
+import uk.nhs.fhir.datalayer.SearchResult;
+import uk.nhs.fhir.datalayer.collections.NameIndex;
 import uk.nhs.fhir.util.FhirVersion;
 
 public class PagedBundleProvider implements IBundleProvider {
@@ -20,16 +25,19 @@ public class PagedBundleProvider implements IBundleProvider {
 	public static final int SEARCH_BY_TYPE = 1;
 	public static final int SEARCH_BY_NAME = 2;
 	public static final int SEARCH_BY_URL = 3;
+	public static final int SEARCH_BY_NAME_CONTAINS = 4;
+	public static final int SEARCH_BY_NAME_EXACT = 5;
 	
 	private int searchType = 0;
 	private FilesystemIF dataSource = null;
 	private FhirVersion fhirVersion = null;
 	private ResourceType resourceType = null;
 	private String searchParam = null;
+	private SearchResultPagingProvider pagingProvider = null;
 	
 	public PagedBundleProvider(int searchType, FilesystemIF dataSource,
 									FhirVersion fhirVersion, ResourceType resourceType,
-									String searchParam) {
+									String searchParam, SearchResultPagingProvider pagingProvider) {
 		this.searchType = searchType;
 		this.dataSource = dataSource;
 		this.fhirVersion = fhirVersion;
@@ -38,34 +46,89 @@ public class PagedBundleProvider implements IBundleProvider {
 		if (this.searchParam == null) {
 			this.searchParam = "";
 		}
+		this.pagingProvider = pagingProvider;
 	}
 	
 	public PagedBundleProvider(int searchType, FilesystemIF dataSource,
-									FhirVersion fhirVersion, ResourceType resourceType) {
+									FhirVersion fhirVersion, ResourceType resourceType,
+									SearchResultPagingProvider pagingProvider) {
 		this.searchType = searchType;
 		this.dataSource = dataSource;
 		this.fhirVersion = fhirVersion;
 		this.resourceType = resourceType;
 		this.searchParam = null;
+		this.pagingProvider = pagingProvider;
 	}
 	
-	@Override
-	public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
-		
-		LOG.debug("Paging results provider - getResources method called for index " + theFromIndex + " to " + theToIndex);
+	/**
+	 * A search which has already run, as kept by the paging provider
+	 */
+	PagedBundleProvider(String searchId, SearchResult searchResult) {
+		this.searchResult = searchResult;
+		this.storedSearch = this;
+		this.searchId = searchId;
+	}
+	
+	// HAPI keeps hold of this provider between pages, so the search only needs to run once per query
+	private SearchResult searchResult = null;
+	
+	// Where the paging provider keeps the result, if it ran the search
+	private PagedBundleProvider storedSearch = null;
+	private String searchId = null;
+	
+	private synchronized SearchResult getSearchResult() {
+		if (searchResult == null) {
+			if (pagingProvider != null) {
+				storedSearch = pagingProvider.search(getQuery(), this::runSearch);
+				searchResult = storedSearch.getSearchResult();
+			} else {
+				searchResult = runSearch();
+			}
+			
+			LOG.debug("Paging results provider - search found " + searchResult.size() + " results");
+		}
 		
+		return searchResult;
+	}
+	
+	private SearchResult runSearch() {
 		switch(searchType) {
 		case SEARCH_BY_TYPE:
-			return dataSource.getAllResourcesOfType(this.fhirVersion, this.resourceType,
-															theFromIndex, theToIndex);
+			return dataSource.searchByType(this.fhirVersion, this.resourceType);
 		case SEARCH_BY_NAME:
-			return dataSource.getResourceMatchByName(this.fhirVersion, this.resourceType, this.searchParam,
-															theFromIndex, theToIndex);
+			return dataSource.searchByName(this.fhirVersion, this.resourceType, this.searchParam, NameIndex.Match.STARTS_WITH);
+		case SEARCH_BY_NAME_CONTAINS:
+			return dataSource.searchByName(this.fhirVersion, this.resourceType, this.searchParam, NameIndex.Match.CONTAINS);
+		case SEARCH_BY_NAME_EXACT:
+			return dataSource.searchByName(this.fhirVersion, this.resourceType, this.searchParam, NameIndex.Match.EXACT);
 		case SEARCH_BY_URL:
-			return dataSource.getResourceMatchByURL(this.fhirVersion, this.resourceType, this.searchParam,
-															theFromIndex, theToIndex);
+			return dataSource.searchByURL(this.fhirVersion, this.resourceType, this.searchParam);
+		default:
+			return new SearchResult(this.fhirVersion, Lists.newArrayList());
 		}
-		return null;
+	}
+	
+	/**
+	 * Identifies the search, so that the same search made again can share its result
+	 */
+	String getQuery() {
+		return fhirVersion + "|" + resourceType + "|" + searchType + "|" + Strings.nullToEmpty(searchParam);
+	}
+	
+	synchronized PagedBundleProvider getStoredSearch() {
+		return storedSearch;
+	}
+	
+	String getSearchId() {
+		return searchId;
+	}
+	
+	@Override
+	public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+		
+		LOG.debug("Paging results provider - getResources method called for index " + theFromIndex + " to " + theToIndex);
+		
+		return getSearchResult().getResources(theFromIndex, theToIndex);
 	}
 
 	@Override
@@ -78,15 +141,7 @@ public class PagedBundleProvider implements IBundleProvider {
 		
 		LOG.debug("Paging results provider - size() method called");
 		
-		switch(searchType) {
-		case SEARCH_BY_TYPE:
-			return dataSource.getResourceCount(this.fhirVersion, this.resourceType);
-		case SEARCH_BY_NAME:
-			return dataSource.getResourceCountByName(this.fhirVersion, this.resourceType, this.searchParam);
-		case SEARCH_BY_URL:
-			return dataSource.getResourceCountByURL(this.fhirVersion, this.resourceType, this.searchParam);
-		}
-		return 0;
+		return getSearchResult().size();
 	}
 
 	@Override
@@ -25,12 +25,15 @@ public class ResourceProvider implements IResourceProvider {
     protected final ResourceType resourceType;
     protected final FhirVersion fhirVersion;
     protected final Class<? extends IBaseResource> fhirClass;
+    protected final SearchResultPagingProvider pagingProvider;
 
-    public ResourceProvider(FilesystemIF dataSource, ResourceType resourceType, FhirVersion fhirVersion, Class<? extends IBaseResource> fhirClass) {
+    public ResourceProvider(FilesystemIF dataSource, ResourceType resourceType, FhirVersion fhirVersion, Class<? extends IBaseResource> fhirClass,
+    		SearchResultPagingProvider pagingProvider) {
     	this.dataSource = dataSource;
         this.resourceType = resourceType;
         this.fhirVersion = fhirVersion;
         this.fhirClass = fhirClass;
+        this.pagingProvider = pagingProvider;
         LOG.debug("Created StrutureDefinitionProvider handler to respond to requests for StrutureDefinition resource types.");
     }
     
@@ -46,6 +49,8 @@ public class ResourceProvider implements IResourceProvider {
     
     /**
      * Search by name, so will respond to queries of the form: /StructureDefinition?name:contains=blah
+     * Follows the FHIR string search rules: name= matches the start of the name and name:contains= any part 
+     * (both ignoring case), and name:exact= the whole name.
      *
      * @param theNamePart
      * @return
@@ -53,8 +58,14 @@ public class ResourceProvider implements IResourceProvider {
     @Search
 	public IBundleProvider searchByName(@RequiredParam(name = "name") StringParam theNamePart) {
     	LOG.debug("Request for resources matching name: " + theNamePart);
-    	return new PagedBundleProvider(PagedBundleProvider.SEARCH_BY_NAME, dataSource,
-										fhirVersion, resourceType, theNamePart.getValue());
+    	
+    	int searchType = 
+    		theNamePart.isExact() ? PagedBundleProvider.SEARCH_BY_NAME_EXACT :
+    		theNamePart.isContains() ? PagedBundleProvider.SEARCH_BY_NAME_CONTAINS :
+    		PagedBundleProvider.SEARCH_BY_NAME;
+    	
+    	return new PagedBundleProvider(searchType, dataSource,
+										fhirVersion, resourceType, theNamePart.getValue(), pagingProvider);
     }
     
     /**
@@ -68,7 +79,7 @@ public class ResourceProvider implements IResourceProvider {
     public IBundleProvider searchByURL(@RequiredParam(name = "url") StringParam theURL) {
     	LOG.debug("Request for resources matching URL: " + theURL);
     	return new PagedBundleProvider(PagedBundleProvider.SEARCH_BY_URL, dataSource,
-    									fhirVersion, resourceType, theURL.getValue());
+    									fhirVersion, resourceType, theURL.getValue(), pagingProvider);
     }
 
     /**
@@ -80,7 +91,7 @@ public class ResourceProvider implements IResourceProvider {
     public IBundleProvider getAllResources() {
         LOG.debug("Request for ALL resources");
         return new PagedBundleProvider(PagedBundleProvider.SEARCH_BY_TYPE, dataSource,
-        								fhirVersion, resourceType);
+        								fhirVersion, resourceType, pagingProvider);
     }
 
     /**
@@ -94,7 +105,8 @@ public class ResourceProvider implements IResourceProvider {
      */
     @Read(version=true)
     public IBaseResource getResourceById(@IdParam IIdType theId) {
-        IBaseResource resource = dataSource.getResourceByID(fhirVersion, theId);
+        // We strip the text section, so need our own copy of the cached resource
+        IBaseResource resource = dataSource.getResourceCopyByID(fhirVersion, theId);
         FhirTextSectionHelpers.forVersion(fhirVersion).removeTextSection(resource);
 		return resource;
     }
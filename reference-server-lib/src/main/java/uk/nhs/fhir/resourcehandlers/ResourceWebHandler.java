@@ -15,8 +15,8 @@
  */
 package uk.nhs.fhir.resourcehandlers;
 
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
@@ -49,7 +49,7 @@ public class ResourceWebHandler implements ResourceCountsProvider, ExtensionsLis
         LOG.debug("Created ResourceWebHandler handler to respond to requests for Profile resource types from a browser.");
     }
     
-    public HashMap<String, List<ResourceMetadata>> getAGroupedListOfResources(ResourceType resourceType) {
+    public Map<String, List<ResourceMetadata>> getAGroupedListOfResources(ResourceType resourceType) {
         LOG.debug("Called: ResourceWebHandler.getAGroupedListOfResources()");
         
         if (FhirBrowserRequestServlet.isIndexedType(resourceType)) {
@@ -104,7 +104,7 @@ public class ResourceWebHandler implements ResourceCountsProvider, ExtensionsLis
         return examples;
     }
     
-    public HashMap<String,Integer> getResourceTypeCounts() {
+    public Map<String,Integer> getResourceTypeCounts() {
     	return myDataSource.getResourceTypeCounts();
     }
 
@@ -0,0 +1,203 @@
+package uk.nhs.fhir.resourcehandlers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.BasePagingProvider;
+import uk.nhs.fhir.datalayer.FileCache;
+import uk.nhs.fhir.datalayer.SearchResult;
+import uk.nhs.fhir.metrics.ServerMetrics;
+import uk.nhs.fhir.servlet.SharedServletContext;
+import uk.nhs.fhir.util.FhirServerProperties;
+
+/**
+ * Keeps search results between the pages HAPI serves from them. Searches are stored under an ID made from the query and
+ * the cache generation they ran against, so the same search run again (or at the same time) before the next cache refresh
+ * shares the stored result rather than filtering the cache again.
+ * Bounded by the number of searches, an estimate of the memory they hold, and how long since each was last used.
+ */
+public class SearchResultPagingProvider extends BasePagingProvider {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SearchResultPagingProvider.class.getName());
+
+	// Rough size of a match (its share of the result list, plus any metadata only kept alive by an old result)
+	static final int BYTES_PER_MATCH = 256;
+	static final int BYTES_PER_SEARCH = 1024;
+
+	private static SearchResultPagingProvider instance = null;
+
+	/**
+	 * The provider shared by the HAPI servlets for each FHIR version, sized from the server properties
+	 */
+	public static synchronized SearchResultPagingProvider getInstance() {
+		if (instance == null) {
+			boolean configured = SharedServletContext.initialised();
+			FhirServerProperties properties = configured ? SharedServletContext.getProperties() : null;
+
+			instance = new SearchResultPagingProvider(
+				configured ? properties.getPagingMaxSearches() : FhirServerProperties.DEFAULT_PAGING_MAX_SEARCHES,
+				configured ? properties.getPagingMaxBytes() : FhirServerProperties.DEFAULT_PAGING_MAX_BYTES,
+				configured ? properties.getPagingSearchTtlSeconds() : FhirServerProperties.DEFAULT_PAGING_SEARCH_TTL_SECONDS,
+				FileCache::getSnapshotGeneration);
+
+			if (configured) {
+				instance.setDefaultPageSize(properties.getDefaultPageSize());
+				instance.setMaximumPageSize(properties.getMaxPageSize());
+			}
+
+			ServerMetrics.getInstance().registerCache("searches", instance::getStats, instance::size);
+		}
+
+		return instance;
+	}
+
+	private final Cache<String, IBundleProvider> searches;
+	private final LongSupplier currentGenerationSupplier;
+	private final long maxSearches;
+	private final long maxBytes;
+
+	private final LongAdder searchesRun = new LongAdder();
+	private final LongAdder searchesShared = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expiredPageRequests = new LongAdder();
+
+	SearchResultPagingProvider(long maxSearches, long maxBytes, long ttlSeconds, LongSupplier currentGenerationSupplier) {
+		this.maxSearches = maxSearches;
+		this.maxBytes = maxBytes;
+		this.currentGenerationSupplier = currentGenerationSupplier;
+
+		// Guava can't bound both the count and the weight, so each search weighs at least its share of the budget,
+		// which stops more than maxSearches being held however small they are. A single segment keeps both bounds exact.
+		int minWeight = (int)Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / Math.max(1, maxSearches)));
+
+		this.searches = CacheBuilder.newBuilder()
+			.concurrencyLevel(1)
+			.maximumWeight(maxBytes)
+			.weigher((String searchId, IBundleProvider results) -> Math.max(minWeight, estimateBytes(results)))
+			.expireAfterAccess(ttlSeconds, TimeUnit.SECONDS)
+			.removalListener(notification -> {
+				if (notification.wasEvicted()) {
+					evictions.increment();
+				}
+			})
+			.recordStats()
+			.build();
+	}
+
+	/**
+	 * Returns the result of the query against the current cache generation, only running the search if it isn't already stored.
+	 * Concurrent calls for the same query wait for a single search.
+	 * @param query identifies the search, including the FHIR version and resource type
+	 */
+	PagedBundleProvider search(String query, Supplier<SearchResult> search) {
+		String searchId = searchId(query, currentGenerationSupplier.getAsLong());
+
+		PagedBundleProvider[] ranHere = new PagedBundleProvider[1];
+		try {
+			IBundleProvider stored = searches.get(searchId, () -> {
+				searchesRun.increment();
+				ranHere[0] = new PagedBundleProvider(searchId, search.get());
+				return ranHere[0];
+			});
+
+			if (stored instanceof PagedBundleProvider) {
+				if (stored != ranHere[0]) {
+					searchesShared.increment();
+				}
+				return (PagedBundleProvider)stored;
+			} else {
+				// A foreign provider can't have a query ID, but don't rely on it
+				throw new IllegalStateException("Search " + searchId + " is not a query result");
+			}
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new IllegalStateException("Search failed for " + query, e.getCause());
+		}
+	}
+
+	@Override
+	public String storeResultList(IBundleProvider results) {
+		if (results instanceof PagedBundleProvider) {
+			PagedBundleProvider paged = (PagedBundleProvider)results;
+			PagedBundleProvider stored = paged.getStoredSearch();
+			if (stored != null) {
+				// Normally still stored from when the search ran, but it may have been evicted since
+				if (searches.asMap().putIfAbsent(stored.getSearchId(), stored) == null) {
+					LOG.debug("Stored search " + stored.getSearchId() + " again after it was evicted");
+				}
+				return stored.getSearchId();
+			}
+		}
+
+		String searchId = UUID.randomUUID().toString();
+		searches.put(searchId, results);
+		return searchId;
+	}
+
+	@Override
+	public IBundleProvider retrieveResultList(String searchId) {
+		IBundleProvider results = searches.getIfPresent(searchId);
+		if (results == null) {
+			expiredPageRequests.increment();
+			LOG.debug("Page requested for unknown or expired search " + searchId);
+		}
+		return results;
+	}
+
+	static String searchId(String query, long generation) {
+		return generation + "-" + Hashing.murmur3_128().hashString(query, StandardCharsets.UTF_8);
+	}
+
+	private static int estimateBytes(IBundleProvider results) {
+		Integer size = results.size();
+		long bytes = BYTES_PER_SEARCH + (size == null ? 0L : (long)size * BYTES_PER_MATCH);
+		return (int)Math.min(Integer.MAX_VALUE, bytes);
+	}
+
+	public CacheStats getStats() {
+		return searches.stats();
+	}
+
+	public long getSearchesRun() {
+		return searchesRun.sum();
+	}
+
+	public long getSearchesShared() {
+		return searchesShared.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getExpiredPageRequests() {
+		return expiredPageRequests.sum();
+	}
+
+	public long size() {
+		return searches.size();
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = getStats();
+		return "SearchResultPagingProvider [size=" + searches.size() + "/" + maxSearches + ", maxBytes=" + maxBytes
+			+ ", hits=" + stats.hitCount() + ", misses=" + stats.missCount() + ", searchesRun=" + getSearchesRun()
+			+ ", searchesShared=" + getSearchesShared() + ", evictions=" + getEvictions()
+			+ ", expiredPageRequests=" + getExpiredPageRequests() + "]";
+	}
+}
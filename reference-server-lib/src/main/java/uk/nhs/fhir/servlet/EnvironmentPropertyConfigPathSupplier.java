@@ -9,10 +9,17 @@ public class EnvironmentPropertyConfigPathSupplier implements ConfigPathSupplier
 	private static final Logger LOG = LoggerFactory.getLogger(EnvironmentPropertyConfigPathSupplier.class);
 	
 	private static final String DEFAULT_PROPERTY_FILE = "fhirserver.config.properties";
+	private static final String CONFIG_FILE = "CONFIG_FILE";
 	
+	/**
+	 * The CONFIG_FILE environment variable, or system property of the same name (e.g. for benchmarks, which can't set the environment)
+	 */
 	@Override
 	public String get() {
-		String envConfigFile = System.getenv("CONFIG_FILE");
+		String envConfigFile = System.getenv(CONFIG_FILE);
+		if (Strings.isNullOrEmpty(envConfigFile)) {
+			envConfigFile = System.getProperty(CONFIG_FILE);
+		}
 		
 		if (!Strings.isNullOrEmpty(envConfigFile)) {
 			LOG.info("Using custom configuration from: " + envConfigFile);
@@ -16,7 +16,7 @@
 package uk.nhs.fhir.servlet;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -30,7 +30,9 @@ import org.slf4j.LoggerFactory;
 import uk.nhs.fhir.datalayer.SharedDataSource;
 import uk.nhs.fhir.page.home.HomePageTemplate;
 import uk.nhs.fhir.page.home.ResourceCountsProvider;
+import uk.nhs.fhir.page.rendered.SnapshotPageCache;
 import uk.nhs.fhir.resourcehandlers.ResourceWebHandler;
+import uk.nhs.fhir.util.ConditionalGet;
 import uk.nhs.fhir.util.ServletUtils;
 
 @WebServlet(urlPatterns = {"/index.html"}, displayName = "FHIR Server Home Page", loadOnStartup = 4)
@@ -50,10 +52,16 @@ public class IndexServlet extends HttpServlet {
 		String baseUrl = request.getContextPath();
 		
 		try {
-	    	HashMap<String, Integer> resourceCounts = resourceCountsProvider.getResourceTypeCounts();
-			String content = new HomePageTemplate(baseUrl, resourceCounts).getHtml(INDEX_CRAWLER_DESCRIPTION);
+			if (ConditionalGet.forSnapshot("home", baseUrl).respondIfNotModified(request, response)) {
+				return;
+			}
+			
+			String content = SnapshotPageCache.getInstance().get(() -> {
+		    	Map<String, Integer> resourceCounts = resourceCountsProvider.getResourceTypeCounts();
+				return new HomePageTemplate(baseUrl, resourceCounts).getHtml(INDEX_CRAWLER_DESCRIPTION);
+			}, "home", baseUrl);
 	    	
-			ServletUtils.setResponseContentForSuccess(response, "text/html", content);
+			ServletUtils.setResponseContentForSuccess(request, response, "text/html", content);
 		} catch (Exception e) {
 			SharedServletContext.getErrorHandler().handleError(e, request, response);
 		}
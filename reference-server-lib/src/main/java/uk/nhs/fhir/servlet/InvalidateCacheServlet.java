@@ -19,7 +19,12 @@ public class InvalidateCacheServlet extends HttpServlet {
 		if (request.getRemoteHost().equals("127.0.0.1")
 		  || request.getRemoteHost().equals("0:0:0:0:0:0:0:1")
 		  || request.getRemoteHost().equals("localhost")) {
-			FilesystemIF.invalidateCache();
+			// Only reload what has changed, unless asked to start again from scratch with ?full=true
+			if (Boolean.parseBoolean(request.getParameter("full"))) {
+				FilesystemIF.invalidateCache();
+			} else {
+				FilesystemIF.refreshChangedResources();
+			}
 		} else {
 			response.sendError(403, "Only available on local machine");
 		}
@@ -0,0 +1,30 @@
+package uk.nhs.fhir.servlet;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import uk.nhs.fhir.metrics.ServerMetrics;
+import uk.nhs.fhir.util.ServletUtils;
+
+/**
+ * The server's metrics in Prometheus text format, for scraping. Requests for this page aren't timed themselves.
+ */
+@SuppressWarnings("serial")
+@WebServlet(urlPatterns = {"/metrics"}, displayName = "FHIR Server Metrics", loadOnStartup = 4)
+public class MetricsServlet extends HttpServlet {
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		StringWriter metrics = new StringWriter();
+		ServerMetrics.getInstance().writePrometheus(metrics);
+		
+		response.setHeader("Cache-Control", "no-cache");
+		ServletUtils.setResponseContentForSuccess(request, response, ServerMetrics.CONTENT_TYPE, metrics.toString());
+	}
+}
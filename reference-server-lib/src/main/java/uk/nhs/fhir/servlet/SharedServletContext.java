@@ -1,16 +1,27 @@
 package uk.nhs.fhir.servlet;
 
+import java.io.IOException;
+
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.nhs.fhir.datalayer.FileCache;
 import uk.nhs.fhir.datalayer.FilesystemIF;
+import uk.nhs.fhir.datalayer.ResourceFileWatcher;
+import uk.nhs.fhir.metrics.ServerMetrics;
 import uk.nhs.fhir.util.FhirServerProperties;
 
 @WebListener
 public class SharedServletContext implements ServletContextListener {
+	private static final Logger LOG = LoggerFactory.getLogger(SharedServletContext.class.getName());
+	
 	private static ServletContext sharedContext = null; 
+	private static volatile ResourceFileWatcher resourceFileWatcher = null;
 	
 	public static FhirServerProperties getProperties() {
 		return (FhirServerProperties) sharedContext.getAttribute(FhirServerProperties.SERVLET_CONTEXT_PROPERTY_PROPERTIES);
@@ -21,7 +32,17 @@ public class SharedServletContext implements ServletContextListener {
 	}
 
 	@Override
-	public void contextDestroyed(ServletContextEvent destroyedEvent) {}
+	public void contextDestroyed(ServletContextEvent destroyedEvent) {
+		ServerMetrics.getInstance().unregisterMBean();
+		
+		if (resourceFileWatcher != null) {
+			try {
+				resourceFileWatcher.close();
+			} catch (IOException e) {
+				LOG.error("Error stopping resource file watcher", e);
+			}
+		}
+	}
 
 	@Override
 	public void contextInitialized(ServletContextEvent initializedEvent) {
@@ -37,6 +58,7 @@ public class SharedServletContext implements ServletContextListener {
 	}
 
 	private void postContextInitialised() {
+		ServerMetrics.getInstance().registerMBean();
 		cacheResourcesAsync();
 	}
 
@@ -45,7 +67,15 @@ public class SharedServletContext implements ServletContextListener {
 		new Thread(
 			new Runnable() {
 				public void run() {
-					FilesystemIF.invalidateCache();
+					FilesystemIF.loadCache();
+					
+					if (getProperties().getWatchResourceFiles()) {
+						try {
+							resourceFileWatcher = FileCache.watchForChanges();
+						} catch (IOException e) {
+							LOG.error("Unable to watch for resource file changes - use /InvalidateCache to reload them", e);
+						}
+					}
 				}
 			}, "InitServerCache").start();
 	}
@@ -13,12 +13,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.nhs.fhir.servlethelpers.ServletStreamRawFile;
+import uk.nhs.fhir.servlethelpers.StaticAssetCache;
 
 @SuppressWarnings("serial")
 @WebServlet(urlPatterns = {"/favicon.ico", "/images/*", "/js/*", "/style/*"}, displayName = "Static content Servlet", loadOnStartup = 1)
 public class StaticContentServlet extends HttpServlet {
 	private static Logger LOG = LoggerFactory.getLogger(StaticContentServlet.class.getName());
 	
+	@Override
+	public void init() throws ServletException {
+		StaticAssetCache.getInstance().preload();
+	}
+	
 	@Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
@@ -39,13 +45,13 @@ public class StaticContentServlet extends HttpServlet {
 		
 		if(requestedPath.endsWith(".css")) {
             // Stylesheets
-        	ServletStreamRawFile.streamRawFileFromClasspath(response, "text/css", request.getRequestURI());
+        	ServletStreamRawFile.streamRawFileFromClasspath(request, response, "text/css", request.getRequestURI());
         } else if (requestedPath.endsWith("favicon.ico")) {
         	// favicon.ico
-        	ServletStreamRawFile.streamRawFileFromClasspath(response, "image/x-icon", SharedServletContext.getProperties().getFaviconPath());
+        	ServletStreamRawFile.streamRawFileFromClasspath(request, response, "image/x-icon", SharedServletContext.getProperties().getFaviconPath());
         } else if (requestedPath.startsWith("/images/") || request.getRequestURI().startsWith("/js/")) {
         	// Image and JS files
-        	ServletStreamRawFile.streamRawFileFromClasspath(response, null, request.getRequestURI());
+        	ServletStreamRawFile.streamRawFileFromClasspath(request, response, null, request.getRequestURI());
         } 
 	}
 }
@@ -1,7 +1,6 @@
 package uk.nhs.fhir.servlet.browser;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -15,7 +14,6 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,15 +30,20 @@ import ca.uhn.fhir.util.UrlUtil;
 import uk.nhs.fhir.data.metadata.ResourceMetadata;
 import uk.nhs.fhir.data.metadata.ResourceType;
 import uk.nhs.fhir.datalayer.DataLoaderMessages;
+import uk.nhs.fhir.datalayer.FileCache;
 import uk.nhs.fhir.datalayer.FilesystemIF;
 import uk.nhs.fhir.datalayer.SharedDataSource;
 import uk.nhs.fhir.enums.ClientType;
 import uk.nhs.fhir.enums.MimeType;
+import uk.nhs.fhir.metrics.RequestTimer;
+import uk.nhs.fhir.metrics.ServerMetrics;
 import uk.nhs.fhir.page.extensions.ExtensionsListRenderer;
 import uk.nhs.fhir.page.list.ResourceListTemplate;
 import uk.nhs.fhir.page.rendered.ResourcePageRenderer;
+import uk.nhs.fhir.page.rendered.SnapshotPageCache;
 import uk.nhs.fhir.page.searchresults.SearchResultsTemplate;
 import uk.nhs.fhir.resourcehandlers.ResourceWebHandler;
+import uk.nhs.fhir.resourcehandlers.SearchResultPagingProvider;
 import uk.nhs.fhir.servlet.FhirResourceNotFoundException;
 import uk.nhs.fhir.servlet.RequestIdMissingException;
 import uk.nhs.fhir.servlet.SharedServletContext;
@@ -50,6 +53,7 @@ import uk.nhs.fhir.servlethelpers.RawResourceRenderer;
 import uk.nhs.fhir.servlethelpers.ServletStreamArtefact;
 import uk.nhs.fhir.servlethelpers.ServletStreamExample;
 import uk.nhs.fhir.servlethelpers.ServletStreamRawFile;
+import uk.nhs.fhir.util.ConditionalGet;
 import uk.nhs.fhir.util.FhirContexts;
 import uk.nhs.fhir.util.FhirVersion;
 import uk.nhs.fhir.util.ServletUtils;
@@ -85,10 +89,17 @@ public class FhirBrowserRequestServlet extends HttpServlet {
 		data = new ResourceWebHandler(dataSource);
 		myRawResourceRenderer = new RawResourceRenderer();
 		myResourcePageRenderer = new ResourcePageRenderer(data);
+		ServerMetrics.getInstance().registerCache("rendered_pages", myResourcePageRenderer.getPageCache()::getStats, myResourcePageRenderer.getPageCache()::size);
 		myArtefactStreamer = new ServletStreamArtefact(dataSource);
 		exampleStreamer = new ServletStreamExample(dataSource);
 	}
 	
+	@Override
+	public void destroy() {
+		myResourcePageRenderer.close();
+		super.destroy();
+	}
+	
 	private RequestDispatcher getDelegateDispatcher(FhirVersion fhirVersion) {
 		String delegateName = delegateServletNames.get(fhirVersion);
 		RequestDispatcher dispatcher = getServletContext().getNamedDispatcher(delegateName);
@@ -101,11 +112,16 @@ public class FhirBrowserRequestServlet extends HttpServlet {
 	}
 	
 	@Override
-	protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+	protected void service(HttpServletRequest request, HttpServletResponse unmeteredResponse) throws ServletException, IOException {
+		RequestTimer timer = RequestTimer.start(request, unmeteredResponse);
+		HttpServletResponse response = timer.getResponse();
+		
 		try {
 			serviceMaybeThrow(request, response);
 		} catch (Exception e) {
 			SharedServletContext.getErrorHandler().handleError(e, request, response);
+		} finally {
+			timer.finish();
 		}
 	}
 	
@@ -116,16 +132,19 @@ public class FhirBrowserRequestServlet extends HttpServlet {
 
     	if (request.getRequestURI().endsWith(".css")) {
             // Stylesheets
-        	ServletStreamRawFile.streamRawFileFromClasspath(response, "text/css", request.getRequestURI());
+        	RequestTimer.setRoute(request, "static");
+        	ServletStreamRawFile.streamRawFileFromClasspath(request, response, "text/css", request.getRequestURI());
         	return;
         } else if (request.getRequestURI().endsWith("favicon.ico")) {
         	// favicon.ico
-        	ServletStreamRawFile.streamRawFileFromClasspath(response, "image/x-icon", SharedServletContext.getProperties().getFaviconPath());
+        	RequestTimer.setRoute(request, "static");
+        	ServletStreamRawFile.streamRawFileFromClasspath(request, response, "image/x-icon", SharedServletContext.getProperties().getFaviconPath());
         	return;
         } else if (request.getRequestURI().startsWith("/images/") 
           || request.getRequestURI().startsWith("/js/")) {
         	// Image and JS files
-        	ServletStreamRawFile.streamRawFileFromClasspath(response, null, request.getRequestURI());
+        	RequestTimer.setRoute(request, "static");
+        	ServletStreamRawFile.streamRawFileFromClasspath(request, response, null, request.getRequestURI());
         	return;
         }
     	
@@ -171,12 +190,19 @@ public class FhirBrowserRequestServlet extends HttpServlet {
 		}
 		
 		if (fullUri.equals("/dataLoadStatusReport")) {
-        	String profileLoadMessages = DataLoaderMessages.getProfileLoadMessages();
-			ServletUtils.setResponseContentForSuccess(response, "text/plain", profileLoadMessages);
+			RequestTimer.setRoute(request, "status");
+        	String profileLoadMessages = DataLoaderMessages.getProfileLoadMessages()
+        		+ "\n" + FileCache.getParsedResourceCache().toString()
+        		+ "\n" + FileCache.getSerialisedResourceCache().toString()
+        		+ "\n" + myResourcePageRenderer.getPageCache().toString()
+        		+ "\n" + SnapshotPageCache.getInstance().toString()
+        		+ "\n" + SearchResultPagingProvider.getInstance().toString();
+			ServletUtils.setResponseContentForSuccess(request, response, "text/plain", profileLoadMessages);
 			return;
         }
 		
 		if (fullUri.equals("/Extensions")) {
+			RequestTimer.setRoute(request, "list", ResourceType.EXTENSION);
         	try {
 				ExtensionsListRenderer.loadExtensions(request, response);
 			} catch (ServletException | IOException e) {
@@ -202,6 +228,7 @@ public class FhirBrowserRequestServlet extends HttpServlet {
 		}
 		
 		if (uriAfterBase.startsWith("/artefact")) {
+			RequestTimer.setRoute(request, "artefact");
         	try {
 				myArtefactStreamer.streamArtefact(request, response, requestVersion);
 			} catch (IOException e) {
@@ -211,8 +238,9 @@ public class FhirBrowserRequestServlet extends HttpServlet {
         }
 		
 		if (uriAfterBase.startsWith("/Examples/")) {
+			RequestTimer.setRoute(request, "example", ResourceType.EXAMPLES);
         	try {
-				exampleStreamer.streamExample(uriAfterBase, response, requestVersion, myRawResourceRenderer);
+				exampleStreamer.streamExample(uriAfterBase, request, response, requestVersion, myRawResourceRenderer);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -224,6 +252,7 @@ public class FhirBrowserRequestServlet extends HttpServlet {
 		// Pages that display a list of resources, whether as an index or the results of a search
 		for (ResourceType type : INDEXED_TYPES) {
 			if (uriAfterBase.equals("/" + type.getHAPIName())) {
+				RequestTimer.setRoute(request, "list", type);
 				if (uriAfterBase.equals(fullUri)) {
 					showListPage(requestVersion, request, response, type, params);
 				} else {
@@ -252,6 +281,7 @@ public class FhirBrowserRequestServlet extends HttpServlet {
     	LOG.debug("Detecting type of resource: " + typeInRequest);
     	
 		ResourceType resourceType = ResourceType.getTypeFromHAPIName(typeInRequest);
+		RequestTimer.setRoute(request, "page", resourceType);
 		
         LOG.info("Request received - operation: " + requestOperation.orElse("[None]") + ", type: " + resourceType.toString());
         
@@ -268,8 +298,6 @@ public class FhirBrowserRequestServlet extends HttpServlet {
                 throw new FhirResourceNotFoundException(requestVersion, typeInRequest, requestId.get().getIdPart(), Optional.ofNullable(requestId.get().getVersionIdPart()));
     		}
     		
-    		String resourceName = resourceEntityByID.getResourceName();
-
         	String[] formatParams = params.get("_format");
         	String formatParam = "";
         	if (formatParams != null
@@ -280,15 +308,27 @@ public class FhirBrowserRequestServlet extends HttpServlet {
         	MimeType mimeType = MimeType.getTypeFromHeader(formatParam);
             LOG.debug("Format to return to browser: " + mimeType.toString());
             
+            if (mimeType == MimeType.XML || mimeType == MimeType.JSON) {
+            	RequestTimer.setRoute(request, "raw", resourceType);
+            }
+            
+            // Raw views only depend on the resource file. Pages also list other versions and examples.
+            ConditionalGet validators = 
+            	(mimeType == MimeType.XML || mimeType == MimeType.JSON) ?
+            		ConditionalGet.forContentBuiltFromFile(resourceEntityByID.getResourceFile(), "raw", mimeType, resourceType) :
+            		ConditionalGet.forSnapshot("page", requestVersion, serverBase, resourceType, requestId.get().getIdPart(), requestId.get().getVersionIdPart());
+            if (validators.respondIfNotModified(request, response)) {
+            	return;
+            }
+            
             switch(mimeType) {
 	            case XML:
 	            case JSON:
-	            	IBaseResource resource = data.getResourceByID(requestVersion, requestId.get());
-	                content = myRawResourceRenderer.renderSingleWrappedRAWResourceWithoutText(resource, requestVersion, resourceName, resourceType, serverBase, mimeType);
+	                content = myRawResourceRenderer.renderSingleWrappedRAWResourceWithoutText(resourceEntityByID, requestVersion, resourceType, mimeType);
 	                break;
 	            case UNKNOWN_MIME:
 	        	default:
-	                content = myResourcePageRenderer.renderSingleResource(requestVersion, serverBase, requestId.get(), resourceName, resourceType);
+	                content = myResourcePageRenderer.renderSingleResource(requestVersion, serverBase, requestId.get(), resourceType);
             }
         } else {
         	String operation = requestOperation.get();
@@ -299,7 +339,7 @@ public class FhirBrowserRequestServlet extends HttpServlet {
         	}
         }
 
-        ServletUtils.setResponseContentForSuccess(response, "text/html", content);
+        ServletUtils.setResponseContentForSuccess(request, response, "text/html", content);
 	}
 	
 	private static final Set<String> KNOWN_OPERATIONS = ImmutableSet.copyOf(Lists.newArrayList("$validate", "$meta", "$meta-add", "$meta-delete", "$document", "$translate", "$closure",
@@ -310,8 +350,17 @@ public class FhirBrowserRequestServlet extends HttpServlet {
 
 	private void showListPage(FhirVersion version, HttpServletRequest request, HttpServletResponse response, ResourceType resourceType,
 			Map<String, String[]> params) {
+		if (ConditionalGet.forSnapshot("list", version, resourceType, request.getQueryString()).respondIfNotModified(request, response)) {
+			return;
+		}
+		
 		String content;
 		// We are showing a list of matching resources for the specified name query
+		if (params.containsKey("name")
+		  || params.containsKey("name:contains")) {
+			RequestTimer.setRoute(request, "search", resourceType);
+		}
+		
 		if (params.containsKey("name")) {
 			List<ResourceMetadata> list = data.getAllNames(version, resourceType, params.get("name")[0]);
 			content = new SearchResultsTemplate(resourceType, list).getHtml("FHIR Server: " + resourceType.getDisplayName() + " search results");
@@ -320,11 +369,13 @@ public class FhirBrowserRequestServlet extends HttpServlet {
         	content = new SearchResultsTemplate(resourceType, list).getHtml("FHIR Server: " + resourceType.getDisplayName() + " search results");
         } else {
         	// We want to show a grouped list of resources of a specific type (e.g. StructureDefinitions)
-        	HashMap<String, List<ResourceMetadata>> groupedResources = data.getAGroupedListOfResources(resourceType);
-        	content = new ResourceListTemplate(resourceType, groupedResources).getHtml("FHIR Server: Full " + resourceType.getDisplayName() + " list");
+        	content = SnapshotPageCache.getInstance().get(() -> {
+	        	Map<String, List<ResourceMetadata>> groupedResources = data.getAGroupedListOfResources(resourceType);
+	        	return new ResourceListTemplate(resourceType, groupedResources).getHtml("FHIR Server: Full " + resourceType.getDisplayName() + " list");
+        	}, "list", resourceType);
         }
 		
-		ServletUtils.setResponseContentForSuccess(response, "text/html", content);
+		ServletUtils.setResponseContentForSuccess(request, response, "text/html", content);
 	}
 
 	private void delegateToAppropriateFhirServlet(HttpServletRequest request, HttpServletResponse response) {
@@ -16,7 +16,6 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 
-import ca.uhn.fhir.rest.server.FifoMemoryPagingProvider;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.RestfulServer;
 import uk.nhs.fhir.data.metadata.ResourceType;
@@ -24,8 +23,13 @@ import uk.nhs.fhir.datalayer.FilesystemIF;
 import uk.nhs.fhir.datalayer.SharedDataSource;
 import uk.nhs.fhir.enums.ClientType;
 import uk.nhs.fhir.interceptor.CORSInterceptor;
+import uk.nhs.fhir.interceptor.CacheGenerationInterceptor;
 import uk.nhs.fhir.interceptor.ConformanceInterceptor;
+import uk.nhs.fhir.interceptor.MetricsInterceptor;
+import uk.nhs.fhir.interceptor.SerialisedResourceInterceptor;
+import uk.nhs.fhir.metrics.RequestTimer;
 import uk.nhs.fhir.resourcehandlers.ResourceProvider;
+import uk.nhs.fhir.resourcehandlers.SearchResultPagingProvider;
 import uk.nhs.fhir.servlet.IndexServlet;
 import uk.nhs.fhir.servlet.SharedServletContext;
 import uk.nhs.fhir.servlet.browser.FhirBrowserRequestServlet;
@@ -54,13 +58,16 @@ public abstract class HapiRequestHandler extends RestfulServer {
 	private final Set<String> browserRequestsHandledByHapi = ImmutableSet.of("/metadata", "/STU3/metadata");
 	
 	@Override
-	protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+	protected void service(HttpServletRequest request, HttpServletResponse unmeteredResponse) throws ServletException, IOException {
 		String requestURI = request.getRequestURI();
+		RequestTimer timer = RequestTimer.start(request, unmeteredResponse);
+		HttpServletResponse response = timer.getResponse();
 		
 		try {
 			if ((requestURI.equals("") || requestURI.equals("/"))
 			  && Strings.isNullOrEmpty(request.getQueryString())) {
 	    		// delegate to index page servlet
+				RequestTimer.setRoute(request, "index");
 				RequestDispatcher rd = getServletContext().getNamedDispatcher(IndexServlet.class.getName());
 				try {
 					rd.forward(request, response);
@@ -73,10 +80,14 @@ public abstract class HapiRequestHandler extends RestfulServer {
 				
 				getServletContext().getNamedDispatcher(FhirBrowserRequestServlet.BROWSER_SERVLET_NAME).forward(request, response);;
 			} else {
+				// Narrowed down by MetricsInterceptor once HAPI has worked out what the request is
+				RequestTimer.setRoute(request, "fhir");
 				super.service(request, response);
 			}
 		} catch (Exception e) {
 			SharedServletContext.getErrorHandler().handleError(e, request, response);
+		} finally {
+			timer.finish();
 		}
 	}
 	
@@ -88,15 +99,16 @@ public abstract class HapiRequestHandler extends RestfulServer {
     }
 	
 	private void addInterceptors() {
+		// First, so that requests answered by later interceptors are still labelled
+		registerInterceptor(new MetricsInterceptor(fhirVersion));
 		registerInterceptor(new ConformanceInterceptor(fhirVersion));
 		registerInterceptor(new CORSInterceptor());
+		registerInterceptor(new CacheGenerationInterceptor());
+		registerInterceptor(new SerialisedResourceInterceptor(fhirVersion, dataSource));
 	}
 
 	private void addPagingProvider() {
-        FifoMemoryPagingProvider pp = new FifoMemoryPagingProvider(10);
-        pp.setDefaultPageSize(SharedServletContext.getProperties().getDefaultPageSize());
-        pp.setMaximumPageSize(SharedServletContext.getProperties().getMaxPageSize());
-        setPagingProvider(pp);
+        setPagingProvider(SearchResultPagingProvider.getInstance());
 	}
 
 	private void setResourceProviders() {
@@ -107,6 +119,6 @@ public abstract class HapiRequestHandler extends RestfulServer {
 	}
 	
 	protected IResourceProvider createResourceProvider(ResourceType resourceType, Class<? extends IBaseResource> clazz) {
-		return new ResourceProvider(dataSource, resourceType, fhirVersion, clazz);
+		return new ResourceProvider(dataSource, resourceType, fhirVersion, clazz, SearchResultPagingProvider.getInstance());
 	}
 }
@@ -0,0 +1,80 @@
+package uk.nhs.fhir.servlethelpers;
+
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import uk.nhs.fhir.metrics.ServerMetrics;
+import uk.nhs.fhir.servlet.SharedServletContext;
+import uk.nhs.fhir.util.FhirServerProperties;
+import uk.nhs.fhir.util.XmlHighlighter;
+
+/**
+ * Bounded cache of syntax highlighted XML for the raw and example views, so large resources aren't indented and highlighted for every request.
+ * Keyed by the size and modification time of the file the XML was built from, so a changed file is highlighted again.
+ */
+public class HighlightedXmlCache {
+
+	private static volatile HighlightedXmlCache instance = null;
+
+	private static HighlightedXmlCache getInstance() {
+		if (instance == null) {
+			initInstance();
+		}
+		return instance;
+	}
+
+	private static synchronized void initInstance() {
+		if (instance == null) {
+			long maxBytes = SharedServletContext.initialised() ? 
+				SharedServletContext.getProperties().getHighlightedXmlCacheMaxBytes() : 
+				FhirServerProperties.DEFAULT_HIGHLIGHTED_XML_CACHE_MAX_BYTES;
+			HighlightedXmlCache cache = new HighlightedXmlCache(maxBytes);
+			ServerMetrics.getInstance().registerCache("highlighted_xml", cache::getStats, cache::size);
+			instance = cache;
+		}
+	}
+
+	private final Cache<String, String> cache;
+
+	HighlightedXmlCache(long maxWeightBytes) {
+		this.cache = CacheBuilder.newBuilder()
+			.maximumWeight(maxWeightBytes)
+			// Each character takes 2 bytes
+			.weigher((String key, String html) -> (int)Math.min(Integer.MAX_VALUE, 2L * html.length() + 1))
+			.recordStats()
+			.build();
+	}
+
+	/**
+	 * @param sourceFile the file the XML was built from
+	 * @param variant anything else which changes the XML, e.g. how it was built
+	 * @param xml supplies the XML to highlight, if it isn't already cached
+	 */
+	public static String get(File sourceFile, String variant, Supplier<String> xml) {
+		return getInstance().getHighlighted(sourceFile, variant, xml);
+	}
+
+	String getHighlighted(File sourceFile, String variant, Supplier<String> xml) {
+		String key = variant + "|" + sourceFile.getAbsolutePath() + "|" + sourceFile.length() + "|" + sourceFile.lastModified();
+
+		try {
+			return cache.get(key, () -> XmlHighlighter.highlight(xml.get()));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new IllegalStateException("Failed to highlight XML from " + sourceFile.getAbsolutePath(), e.getCause());
+		}
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+}
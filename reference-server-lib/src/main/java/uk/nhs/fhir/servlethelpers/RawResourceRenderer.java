@@ -8,7 +8,11 @@ import java.util.Optional;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import ca.uhn.fhir.context.FhirContext;
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
 import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.datalayer.FileCache;
+import uk.nhs.fhir.datalayer.SerialisedResourceCache.SerialisedResource;
+import uk.nhs.fhir.datalayer.SerialisedResourceCache.SerialisedResourceKey;
 import uk.nhs.fhir.enums.MimeType;
 import uk.nhs.fhir.page.raw.RawResourceTemplate;
 import uk.nhs.fhir.util.FhirContexts;
@@ -17,10 +21,42 @@ import uk.nhs.fhir.util.text.FhirTextSectionHelpers;
 
 public class RawResourceRenderer {
 
-    public String renderSingleWrappedRAWResourceWithoutText(IBaseResource resource, FhirVersion fhirVersion, String resourceName, ResourceType resourceType, String baseURL, MimeType mimeType) {
-        resource = FhirTextSectionHelpers.forVersion(fhirVersion).removeTextSection(resource);
-        
-        return renderSingleWrappedRAWResource(resource, fhirVersion, Optional.of(resourceName), resourceType, baseURL, mimeType);
+    /**
+     * Renders the resource with its text section removed, reusing the encoded form from the serialised resource cache where possible
+     */
+    public String renderSingleWrappedRAWResourceWithoutText(ResourceMetadata metadata, FhirVersion fhirVersion, ResourceType resourceType, MimeType mimeType) {
+    	String rawResource = (mimeType == JSON) ?
+    		getSerialisedWithoutText(metadata, fhirVersion, mimeType) :
+    		HighlightedXmlCache.get(metadata.getResourceFile(), "raw " + fhirVersion, () -> getSerialisedWithoutText(metadata, fhirVersion, mimeType));
+    	
+    	String resourceName = metadata.getResourceName();
+    	return new RawResourceTemplate(Optional.of(resourceType), Optional.of(resourceName), rawResource, mimeType).getHtml("FHIR Server: Raw resource (" + resourceName + ")");
+    }
+    
+    private String getSerialisedWithoutText(ResourceMetadata metadata, FhirVersion fhirVersion, MimeType mimeType) {
+    	SerialisedResourceKey key = new SerialisedResourceKey(fhirVersion, metadata.getResourceFile(), mimeType, true, true, null);
+    	SerialisedResource serialised = FileCache.getSerialisedResourceCache().get(key, () -> encodeWithoutText(metadata, fhirVersion, mimeType));
+    	if (serialised == null) {
+    		throw new IllegalStateException("Failed to load resource from " + metadata.getResourceFile().getAbsolutePath());
+    	}
+    	
+    	return serialised.getContent();
+    }
+    
+    private SerialisedResource encodeWithoutText(ResourceMetadata metadata, FhirVersion fhirVersion, MimeType mimeType) {
+    	IBaseResource resource = FileCache.getParsedResourceCache().getCopy(fhirVersion, metadata.getResourceFile());
+    	if (resource == null) {
+    		return null;
+    	}
+    	
+    	FhirTextSectionHelpers.forVersion(fhirVersion).removeTextSection(resource);
+    	
+    	FhirContext fhirContext = FhirContexts.forVersion(fhirVersion);
+    	String encoded = (mimeType == JSON) ? 
+    		getResourceAsJSON(resource, fhirContext) : 
+    		fhirContext.newXmlParser().setPrettyPrint(true).encodeResourceToString(resource);
+    	
+    	return new SerialisedResource(encoded);
     }
     
     public String renderSingleWrappedRAWResource(IBaseResource resource, FhirVersion fhirVersion, Optional<String> resourceName, ResourceType resourceType, String baseURL, MimeType mimeType) {
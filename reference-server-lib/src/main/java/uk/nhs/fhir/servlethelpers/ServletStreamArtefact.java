@@ -59,7 +59,7 @@ public class ServletStreamArtefact {
     			if (artefact.getArtefactType().name().equals(artefactType)) {
     				// We've found a matching artefact - stream it back
     				File srcFile = artefact.getFilename();
-    			    ServletUtils.setResponseContentForSuccess(response, "text/html", srcFile);
+    			    ServletUtils.sendFile(request, response, "text/html", srcFile);
     			    return;
     			}
     		}
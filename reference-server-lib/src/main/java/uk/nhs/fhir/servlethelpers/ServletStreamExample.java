@@ -1,12 +1,11 @@
 package uk.nhs.fhir.servlethelpers;
 
-import static uk.nhs.fhir.util.ServletUtils.syntaxHighlight;
-
 import java.io.File;
 import java.io.IOException;
 import java.util.Locale;
 import java.util.Optional;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
@@ -18,6 +17,7 @@ import uk.nhs.fhir.datalayer.FilesystemIF;
 import uk.nhs.fhir.enums.MimeType;
 import uk.nhs.fhir.load.FileLoader;
 import uk.nhs.fhir.page.raw.RawResourceTemplate;
+import uk.nhs.fhir.util.ConditionalGet;
 import uk.nhs.fhir.util.FhirVersion;
 import uk.nhs.fhir.util.ServletUtils;
 
@@ -30,7 +30,7 @@ public class ServletStreamExample {
 		this.dataSource = dataSource;
 	}
 	
-	public void streamExample(String uriAfterBase, HttpServletResponse response,
+	public void streamExample(String uriAfterBase, HttpServletRequest request, HttpServletResponse response,
 			FhirVersion fhirVersion, RawResourceRenderer myRawResourceRenderer) throws IOException {
     	
 		// Parse the URL
@@ -41,34 +41,42 @@ public class ServletStreamExample {
 		if (exampleEntity.isPresent()) {
 			// We've found a matching example - stream it back
 			File srcFile = exampleEntity.get().getResourceFile();
+			if (ConditionalGet.forContentBuiltFromFile(srcFile, "example", exampleName).respondIfNotModified(request, response)) {
+				return;
+			}
 			
-			String fileContent = FileLoader.loadFile(srcFile);
+			String fileContent;
 			MimeType mimeType = null;
 			
-			// Indent XML
 			if (srcFile.getName().toLowerCase(Locale.UK).endsWith("xml")) {
 				mimeType = MimeType.XML;
-				try {
-					String prettyPrinted = ServletUtils.prettyPrintXML(fileContent);
-					fileContent = prettyPrinted;
-				} catch (Exception e) {
-					LOG.warn("Unable to pretty-print XML example: " + srcFile.getName());
-					e.printStackTrace();
-				}
-				// Pretty print XML
-				fileContent = syntaxHighlight(fileContent);
+				// Indent and highlight XML
+				fileContent = HighlightedXmlCache.get(srcFile, "example", () -> prettyPrint(srcFile));
 			} else if (srcFile.getName().toLowerCase(Locale.UK).endsWith("json")) {
 				mimeType = MimeType.JSON;
+				fileContent = FileLoader.loadFile(srcFile);
 			} else {
 				mimeType = MimeType.UNKNOWN_MIME;
+				fileContent = FileLoader.loadFile(srcFile);
 			}
 			
 			String wrappedContent = new RawResourceTemplate(Optional.of(ResourceType.EXAMPLES), Optional.of(exampleName), fileContent, mimeType).getHtml("FHIR Server: Example resource (" + exampleEntity.get().getResourceName() + ")" );
 			
-			ServletUtils.setResponseContentForSuccess(response, "text/html", wrappedContent);
+			ServletUtils.setResponseContentForSuccess(request, response, "text/html", wrappedContent);
 		} else {
 			LOG.error("Unable to find example: " + exampleName + ", FhirVersion=" + fhirVersion);
 			response.setStatus(404);
 		}
 	}
+	
+	private String prettyPrint(File srcFile) {
+		String fileContent = FileLoader.loadFile(srcFile);
+		try {
+			return ServletUtils.prettyPrintXML(fileContent);
+		} catch (Exception e) {
+			LOG.warn("Unable to pretty-print XML example: " + srcFile.getName());
+			e.printStackTrace();
+			return fileContent;
+		}
+	}
 }
@@ -1,46 +1,68 @@
 package uk.nhs.fhir.servlethelpers;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintWriter;
-import java.net.URLConnection;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.nhs.fhir.servlethelpers.StaticAssetCache.StaticAsset;
+import uk.nhs.fhir.util.ConditionalGet;
+import uk.nhs.fhir.util.ServletUtils;
+
 public class ServletStreamRawFile {
-	
+
 	private static final Logger LOG = LoggerFactory.getLogger(ServletStreamRawFile.class.getName());
-	
-	public static void streamRawFileFromClasspath(HttpServletResponse response, String mimeType, String filename) {
+
+	// Pages which ask for an asset with a version parameter (e.g. /style/style.css?v=2) will change the parameter when the asset changes
+	private static final String VERSION_PARAMETER = "v";
+	private static final String CACHE_CONTROL_VERSIONED = "public, max-age=31536000, immutable";
+	// The templates link to assets without a version, so browsers must check them on every use or keep stale copies after
+	// a redeploy. The check is answered with a 304 from the validators, so is cheap.
+	private static final String CACHE_CONTROL_UNVERSIONED = "public, no-cache";
+
+	public static void streamRawFileFromClasspath(HttpServletRequest request, HttpServletResponse response, String mimeType, String filename) {
     	//LOG.info("Streaming raw file from classpath: " + filename);
 
     	try {
+    		StaticAsset asset = StaticAssetCache.getInstance().get(filename);
+    		if (asset == null) {
+    			LOG.error("Error streaming raw file to requestor: " + filename + " - not found");
+    			response.setStatus(404);
+    			return;
+    		}
+
+    		boolean gzip = asset.hasGzipped()
+    		  && ServletUtils.acceptsGzip(request);
+
+    		response.setHeader("Cache-Control",
+    			request.getParameter(VERSION_PARAMETER) != null ? CACHE_CONTROL_VERSIONED : CACHE_CONTROL_UNVERSIONED);
+    		if (asset.hasGzipped()) {
+    			response.setHeader(ServletUtils.HEADER_VARY, ServletUtils.HEADER_ACCEPT_ENCODING);
+    		}
+
+    		ConditionalGet validators = gzip ? asset.getGzippedValidators() : asset.getValidators();
+    		if (validators.respondIfNotModified(request, response)) {
+    			return;
+    		}
+
 	    	response.setStatus(200);
-			
+
 			if (mimeType == null) {
-				if (filename.endsWith(".js")) {
-					mimeType = "application/javascript";
-					LOG.debug("Using Javascript mimeType: " + mimeType);
-				} else {
-					// Now, try to guess from the file extension
-					mimeType = URLConnection.guessContentTypeFromName(filename);
-					LOG.debug("Detected mimeType using guessContentTypeFromName: " + mimeType);
-				}
+				mimeType = asset.getContentType();
+				LOG.debug("Detected mimeType from file name: " + mimeType);
 			}
-			
+
 			response.setContentType(mimeType);
-			
-			PrintWriter outputStream = response.getWriter();
-	        try (InputStream is = ServletStreamRawFile.class.getResourceAsStream(filename)) {
-		        int b = is.read();
-		        while (b != -1) {
-		        	outputStream.write(b);
-		        	b = is.read();
-		        }
-	        }
+
+			byte[] content = gzip ? asset.getGzipped() : asset.getContent();
+			if (gzip) {
+				response.setHeader(ServletUtils.HEADER_CONTENT_ENCODING, ServletUtils.GZIP);
+			}
+			response.setContentLength(content.length);
+			response.getOutputStream().write(content);
     	} catch (IOException | RuntimeException e) {
     		LOG.error("Error streaming raw file to requestor: " + filename + " - error: " + e.getMessage());
     		response.setStatus(404);
@@ -0,0 +1,237 @@
+package uk.nhs.fhir.servlethelpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+import uk.nhs.fhir.util.ConditionalGet;
+
+/**
+ * Holds the stylesheets, scripts and images bundled with the server in memory, so that they don't have to be read from
+ * the classpath for each request. They don't change while the server is running, so are read (and where worthwhile, gzipped) once.
+ */
+public class StaticAssetCache {
+	private static final Logger LOG = LoggerFactory.getLogger(StaticAssetCache.class.getName());
+
+	// Classpath directories served by StaticContentServlet
+	private static final List<String> PRELOADED_DIRECTORIES = ImmutableList.of("/style", "/images", "/js");
+
+	// Only keep a gzipped copy if it saves at least this fraction of the size (images are already compressed, for example)
+	private static final double MAX_GZIPPED_FRACTION = 0.9;
+
+	private static final StaticAssetCache INSTANCE = new StaticAssetCache(StaticAssetCache.class);
+
+	public static StaticAssetCache getInstance() {
+		return INSTANCE;
+	}
+
+	private final Class<?> loader;
+	// Only holds assets which exist, so is bounded by what is on the classpath
+	private final Map<String, StaticAsset> assets = Maps.newConcurrentMap();
+
+	StaticAssetCache(Class<?> loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * Reads everything in the static content directories, so that the first requests for them don't have to.
+	 */
+	public void preload() {
+		long start = System.currentTimeMillis();
+		long bytes = 0;
+
+		for (String directory : PRELOADED_DIRECTORIES) {
+			for (String name : listResources(directory)) {
+				StaticAsset asset = get(name);
+				if (asset != null) {
+					bytes += asset.getContent().length;
+				}
+			}
+		}
+
+		LOG.info("Preloaded " + assets.size() + " static assets (" + bytes + " bytes) in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * @param name absolute classpath name, e.g. /style/style.css
+	 * @return null if there is no such resource
+	 */
+	public StaticAsset get(String name) {
+		StaticAsset asset = assets.get(name);
+		if (asset != null) {
+			return asset;
+		}
+
+		asset = load(name);
+		if (asset != null) {
+			StaticAsset existing = assets.putIfAbsent(name, asset);
+			if (existing != null) {
+				asset = existing;
+			}
+		}
+
+		return asset;
+	}
+
+	int size() {
+		return assets.size();
+	}
+
+	private StaticAsset load(String name) {
+		URL url = loader.getResource(name);
+		if (url == null) {
+			return null;
+		}
+
+		try {
+			URLConnection connection = url.openConnection();
+			long lastModified = connection.getLastModified();
+
+			byte[] content;
+			try (InputStream is = connection.getInputStream()) {
+				content = ByteStreams.toByteArray(is);
+			}
+
+			return new StaticAsset(content, guessContentType(name), lastModified, gzipIfSmaller(content));
+		} catch (IOException e) {
+			LOG.warn("Unable to read static asset " + name, e);
+			return null;
+		}
+	}
+
+	private static byte[] gzipIfSmaller(byte[] content) throws IOException {
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream(content.length / 2 + 64);
+		try (GZIPOutputStream gzipStream = new GZIPOutputStream(gzipped)) {
+			gzipStream.write(content);
+		}
+
+		return gzipped.size() <= content.length * MAX_GZIPPED_FRACTION ? gzipped.toByteArray() : null;
+	}
+
+	static String guessContentType(String name) {
+		if (name.endsWith(".js")) {
+			return "application/javascript";
+		} else if (name.endsWith(".css")) {
+			return "text/css";
+		} else {
+			return URLConnection.guessContentTypeFromName(name);
+		}
+	}
+
+	/**
+	 * The names of the files under a classpath directory, which may be on disk or in a jar.
+	 */
+	private List<String> listResources(String directory) {
+		URL url = loader.getResource(directory);
+		if (url == null) {
+			LOG.warn("Static content directory " + directory + " not found on the classpath");
+			return Collections.emptyList();
+		}
+
+		try {
+			switch (url.getProtocol()) {
+				case "file":
+					Path root = Paths.get(url.toURI());
+					try (Stream<Path> paths = Files.walk(root)) {
+						return paths
+							.filter(Files::isRegularFile)
+							.map(path -> directory + "/" + root.relativize(path).toString().replace(File.separatorChar, '/'))
+							.collect(Collectors.toList());
+					}
+				case "jar":
+					JarURLConnection connection = (JarURLConnection)url.openConnection();
+					// A shared jar file would be closed underneath the class loader
+					connection.setUseCaches(false);
+					String prefix = connection.getEntryName() + "/";
+					try (JarFile jar = connection.getJarFile()) {
+						return jar.stream()
+							.filter(entry -> !entry.isDirectory()
+							  && entry.getName().startsWith(prefix))
+							.map(entry -> "/" + entry.getName())
+							.collect(Collectors.toList());
+					}
+				default:
+					LOG.warn("Unable to list static content in " + url + " - it will be loaded when requested");
+					return Collections.emptyList();
+			}
+		} catch (IOException | URISyntaxException e) {
+			LOG.warn("Unable to list static content in " + url + " - it will be loaded when requested", e);
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * A static file held in memory, along with its validators and (if it compresses well) a gzipped copy.
+	 */
+	public static class StaticAsset {
+		private final byte[] content;
+		private final String contentType;
+		private final ConditionalGet validators;
+		private final byte[] gzipped;
+		private final ConditionalGet gzippedValidators;
+
+		StaticAsset(byte[] content, String contentType, long lastModified, byte[] gzipped) {
+			this.content = content;
+			this.contentType = contentType;
+			this.validators = ConditionalGet.forContent(content, lastModified);
+			this.gzipped = gzipped;
+			this.gzippedValidators = gzipped == null ? null : ConditionalGet.forContent(gzipped, lastModified);
+		}
+
+		/**
+		 * Not copied, so must not be modified
+		 */
+		public byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * @return null if the type could not be guessed from the name
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+
+		public ConditionalGet getValidators() {
+			return validators;
+		}
+
+		public boolean hasGzipped() {
+			return gzipped != null;
+		}
+
+		/**
+		 * Not copied, so must not be modified
+		 * @return null if there is no gzipped copy
+		 */
+		public byte[] getGzipped() {
+			return gzipped;
+		}
+
+		public ConditionalGet getGzippedValidators() {
+			return gzippedValidators;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package uk.nhs.fhir.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import uk.nhs.fhir.datalayer.FileCache;
+import uk.nhs.fhir.datalayer.FileCacheSnapshot;
+
+/**
+ * The validators (a strong ETag and, where known, Last-Modified) for a response, so that a client which already has
+ * the current content can be sent a 304 Not Modified rather than the whole body.
+ * Work these out and call respondIfNotModified() before doing any parsing or rendering.
+ * Content built by the server may be gzipped as it is sent, so its responses (including 304s) carry Vary: Accept-Encoding.
+ */
+public class ConditionalGet {
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+	// Content built by the server could change if it is redeployed, even if the files it is built from have not
+	private static final String SERVER_INSTANCE = Long.toString(System.currentTimeMillis(), 36);
+
+	// Added to the tag of content which is gzipped as it is sent, so that the two encodings have different tags
+	private static final String GZIP_TAG_SUFFIX = "-gzip";
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	// Content hashes of files, keyed by path, size and modification time so that changed files are hashed again
+	private static final Cache<String, HashCode> fileHashes = CacheBuilder.newBuilder().maximumSize(10000).build();
+
+	private final String etag;
+	// 0 if not known
+	private final long lastModified;
+	private final boolean variesByEncoding;
+
+	ConditionalGet(String etag, long lastModified) {
+		this(etag, lastModified, false);
+	}
+
+	ConditionalGet(String etag, long lastModified, boolean variesByEncoding) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.variesByEncoding = variesByEncoding;
+	}
+
+	/**
+	 * For a file sent exactly as it is on disk. Tagged by content, so the tag survives restarts and rewrites of the same content.
+	 */
+	public static ConditionalGet forFile(File file) {
+		return new ConditionalGet(quote(fileHash(file).toString()), file.lastModified());
+	}
+
+	/**
+	 * For content built from a single file (e.g. a resource encoded as JSON).
+	 * @param variant anything else which changes the content, e.g. the format
+	 */
+	public static ConditionalGet forContentBuiltFromFile(File file, Object... variant) {
+		return new ConditionalGet(quote(SERVER_INSTANCE + "-" + fileHash(file) + "-" + variantHash(variant)), file.lastModified(), true);
+	}
+
+	/**
+	 * For content built from the cached resources as a whole (e.g. a list of resources), which may change whenever the cache is refreshed
+	 * @param variant anything else which changes the content, e.g. the page requested
+	 */
+	public static ConditionalGet forSnapshot(Object... variant) {
+		FileCacheSnapshot snapshot = FileCache.getSnapshot();
+		return new ConditionalGet(
+			quote(SERVER_INSTANCE + "-g" + snapshot.getGeneration() + "-" + variantHash(variant)),
+			snapshot.getPublishedMillis(),
+			true);
+	}
+
+	/**
+	 * For content held in memory which is sent exactly as it is (e.g. a file bundled with the server). Tagged by content.
+	 * @param lastModified 0 if not known
+	 */
+	public static ConditionalGet forContent(byte[] content, long lastModified) {
+		return new ConditionalGet(quote(HASH_FUNCTION.hashBytes(content).toString()), lastModified);
+	}
+
+	/**
+	 * Adds the validators to the response. If the request shows that the client already has this content, also sets
+	 * the status to 304 Not Modified and returns true, in which case nothing else should be written.
+	 */
+	public boolean respondIfNotModified(HttpServletRequest request, HttpServletResponse response) {
+		addHeaders(response);
+
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = request.getDateHeader(HEADER_IF_MODIFIED_SINCE);
+		} catch (IllegalArgumentException e) {
+			// Unparseable date - ignore, as HTTP says to
+			ifModifiedSince = -1;
+		}
+
+		String ifNoneMatch = request.getHeader(HEADER_IF_NONE_MATCH);
+		if (isNotModified(ifNoneMatch, ifModifiedSince)) {
+			if (ifNoneMatch != null
+			  && ifNoneMatch.contains(gzipTag(etag))) {
+				// The client has the gzipped copy
+				response.setHeader(HEADER_ETAG, gzipTag(etag));
+			}
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	public void addHeaders(HttpServletResponse response) {
+		response.setHeader(HEADER_ETAG, etag);
+		if (variesByEncoding) {
+			// A 304 must carry the same Vary as the 200 would (RFC 7232 section 4.1)
+			response.setHeader(ServletUtils.HEADER_VARY, ServletUtils.HEADER_ACCEPT_ENCODING);
+		}
+		if (lastModified > 0) {
+			response.setDateHeader(HEADER_LAST_MODIFIED, lastModified);
+		}
+	}
+
+	/**
+	 * @param ifNoneMatch the If-None-Match header, or null
+	 * @param ifModifiedSince the If-Modified-Since header in milliseconds, or -1
+	 */
+	boolean isNotModified(String ifNoneMatch, long ifModifiedSince) {
+		// If-Modified-Since is ignored when If-None-Match is sent (RFC 7232 section 6)
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				// Weak comparison, as for any GET
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				if (tag.equals("*")
+				  || tag.equals(etag)
+				  || tag.equals(gzipTag(etag))) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		// Header dates only go down to the second
+		return ifModifiedSince >= 0
+		  && lastModified > 0
+		  && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+
+	String getETag() {
+		return etag;
+	}
+
+	boolean variesByEncoding() {
+		return variesByEncoding;
+	}
+
+	/**
+	 * Changes the tag already added to the response to that of a gzipped copy of the content.
+	 * For content which is gzipped as it is sent, after any 304 has been ruled out.
+	 */
+	public static void addGzipToETag(HttpServletResponse response) {
+		String etag = response.getHeader(HEADER_ETAG);
+		if (etag != null
+		  && etag.endsWith("\"")
+		  && !etag.endsWith(GZIP_TAG_SUFFIX + "\"")) {
+			response.setHeader(HEADER_ETAG, gzipTag(etag));
+		}
+	}
+
+	private static String gzipTag(String etag) {
+		return etag.substring(0, etag.length() - 1) + GZIP_TAG_SUFFIX + '"';
+	}
+
+	private static HashCode fileHash(File file) {
+		String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+		try {
+			return fileHashes.get(key, () -> Files.asByteSource(file).hash(HASH_FUNCTION));
+		} catch (ExecutionException e) {
+			throw new UncheckedIOException("Unable to read " + file.getAbsolutePath(),
+				e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause()));
+		}
+	}
+
+	private static String variantHash(Object... variant) {
+		Hasher hasher = Hashing.murmur3_32().newHasher();
+		for (Object part : variant) {
+			hasher.putUnencodedChars(Objects.toString(part)).putChar('|');
+		}
+		return hasher.hash().toString();
+	}
+
+	private static String quote(String tag) {
+		return '"' + tag + '"';
+	}
+}
@@ -24,6 +24,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import uk.nhs.fhir.load.FileLoader;
 
@@ -72,6 +73,29 @@ public class FHIRUtils {
         return resource;
     }
     
+    /**
+     * Makes a deep copy of a resource, so that it can be modified without affecting the original (e.g. one held in a cache).
+     */
+    public static IBaseResource copyResource(FhirVersion fhirVersion, IBaseResource resource) {
+    	if (resource == null) {
+    		return null;
+    	}
+    	
+    	switch (fhirVersion) {
+    		case STU3:
+    			return ((org.hl7.fhir.dstu3.model.Resource)resource).copy();
+    		case DSTU2:
+    			// DSTU2 model classes have no copy() method, so let HAPI copy the children across
+    			FhirContext fhirContext = FhirContexts.forVersion(fhirVersion);
+    			IBaseResource copy = fhirContext.getResourceDefinition(resource).newInstance();
+    			fhirContext.newTerser().cloneInto(resource, copy, false);
+    			copy.setId(resource.getIdElement().getValue());
+    			return copy;
+    		default:
+    			throw new IllegalStateException("Unable to copy resource for " + fhirVersion.toString());
+    	}
+    }
+    
     private static String getResourceIDFromURL(String url, String def) {
     	// Find the actual name of the resource from the URL
         int idx = url.lastIndexOf('/');
@@ -33,6 +33,26 @@ public class FhirServerProperties {
 	private static final String PROP_RESOURCE_ROOT_PATH = "defaultResourceRootPath";
 	private static final String PROP_RESOURCE_FOLDER_PREFIX = "resourceFolderPrefix";
 	private static final String PROP_VELOCITY_TEMPLATE_PATH = "velocityTemplateDirectory";
+	private static final String PROP_PARSED_RESOURCE_CACHE_MAX_BYTES = "parsedResourceCacheMaxBytes";
+	private static final String PROP_SERIALISED_RESOURCE_CACHE_MAX_BYTES = "serialisedResourceCacheMaxBytes";
+	private static final String PROP_CACHE_LOAD_THREADS = "cacheLoadThreads";
+	private static final String PROP_WATCH_RESOURCE_FILES = "watchResourceFiles";
+	private static final String PROP_PERSIST_METADATA_INDEX = "persistMetadataIndex";
+	private static final String PROP_RENDERED_PAGE_CACHE_MAX_BYTES = "renderedPageCacheMaxBytes";
+	private static final String PROP_RENDERED_PAGE_WARM_UP_COUNT = "renderedPageWarmUpCount";
+	private static final String PROP_HIGHLIGHTED_XML_CACHE_MAX_BYTES = "highlightedXmlCacheMaxBytes";
+	private static final String PROP_PAGING_MAX_SEARCHES = "pagingMaxSearches";
+	private static final String PROP_PAGING_MAX_BYTES = "pagingMaxBytes";
+	private static final String PROP_PAGING_SEARCH_TTL_SECONDS = "pagingSearchTtlSeconds";
+	
+	public static final long DEFAULT_PARSED_RESOURCE_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+	public static final long DEFAULT_SERIALISED_RESOURCE_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+	public static final long DEFAULT_RENDERED_PAGE_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+	public static final int DEFAULT_RENDERED_PAGE_WARM_UP_COUNT = 50;
+	public static final long DEFAULT_HIGHLIGHTED_XML_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+	public static final long DEFAULT_PAGING_MAX_SEARCHES = 100;
+	public static final long DEFAULT_PAGING_MAX_BYTES = 16L * 1024 * 1024;
+	public static final long DEFAULT_PAGING_SEARCH_TTL_SECONDS = 600;
 
 	private final Properties properties;
 	
@@ -76,6 +96,27 @@ public class FhirServerProperties {
     private Object getProperty(String propertyName) {
 		return properties.get(propertyName);
     }
+    
+    /**
+     * Optional numeric properties fall back to a default if they are missing from the property file
+     */
+    private long getLongProperty(String propertyName, long defaultValue) {
+    	String value = (String)getProperty(propertyName);
+    	if (Strings.isNullOrEmpty(value)) {
+    		return defaultValue;
+    	} else {
+    		return Long.parseLong(value.trim());
+    	}
+    }
+
+    private boolean getBooleanProperty(String propertyName, boolean defaultValue) {
+    	String value = (String)getProperty(propertyName);
+    	if (Strings.isNullOrEmpty(value)) {
+    		return defaultValue;
+    	} else {
+    		return Boolean.parseBoolean(value.trim());
+    	}
+    }
 
     // Should only get called once on Velocity init, so okay to parse on request, rather than adding to ServletContext
 	public String getVelocityTemplatePath() {
@@ -101,4 +142,73 @@ public class FhirServerProperties {
     public String getResourceFolderPrefix() {
     	return (String)getProperty(PROP_RESOURCE_FOLDER_PREFIX);
     }
+    
+    public long getParsedResourceCacheMaxBytes() {
+    	return getLongProperty(PROP_PARSED_RESOURCE_CACHE_MAX_BYTES, DEFAULT_PARSED_RESOURCE_CACHE_MAX_BYTES);
+    }
+    
+    public long getSerialisedResourceCacheMaxBytes() {
+    	return getLongProperty(PROP_SERIALISED_RESOURCE_CACHE_MAX_BYTES, DEFAULT_SERIALISED_RESOURCE_CACHE_MAX_BYTES);
+    }
+    
+    public long getRenderedPageCacheMaxBytes() {
+    	return getLongProperty(PROP_RENDERED_PAGE_CACHE_MAX_BYTES, DEFAULT_RENDERED_PAGE_CACHE_MAX_BYTES);
+    }
+    
+    /**
+     * Number of the most requested resource pages to render again straight after each cache refresh. Zero turns warm up off.
+     */
+    public int getRenderedPageWarmUpCount() {
+    	return (int)getLongProperty(PROP_RENDERED_PAGE_WARM_UP_COUNT, DEFAULT_RENDERED_PAGE_WARM_UP_COUNT);
+    }
+    
+    /**
+     * Upper bound on the memory held by syntax highlighted XML for the raw and example views
+     */
+    public long getHighlightedXmlCacheMaxBytes() {
+    	return getLongProperty(PROP_HIGHLIGHTED_XML_CACHE_MAX_BYTES, DEFAULT_HIGHLIGHTED_XML_CACHE_MAX_BYTES);
+    }
+    
+    /**
+     * Most searches to keep for paging through their results
+     */
+    public long getPagingMaxSearches() {
+    	return getLongProperty(PROP_PAGING_MAX_SEARCHES, DEFAULT_PAGING_MAX_SEARCHES);
+    }
+    
+    /**
+     * Upper bound on the estimated memory held by the searches kept for paging
+     */
+    public long getPagingMaxBytes() {
+    	return getLongProperty(PROP_PAGING_MAX_BYTES, DEFAULT_PAGING_MAX_BYTES);
+    }
+    
+    /**
+     * How long a search is kept for paging after its last page was requested
+     */
+    public long getPagingSearchTtlSeconds() {
+    	return getLongProperty(PROP_PAGING_SEARCH_TTL_SECONDS, DEFAULT_PAGING_SEARCH_TTL_SECONDS);
+    }
+    
+    /**
+     * Number of files to parse at once when loading the cache. Zero or missing means one per available processor.
+     */
+    public int getCacheLoadThreads() {
+    	int threads = (int)getLongProperty(PROP_CACHE_LOAD_THREADS, 0);
+    	return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Whether to reload changed files as soon as they are written, rather than waiting for /InvalidateCache
+     */
+    public boolean getWatchResourceFiles() {
+    	return getBooleanProperty(PROP_WATCH_RESOURCE_FILES, false);
+    }
+    
+    /**
+     * Whether to save the loaded resource metadata to disk, so that the server can start from it rather than loading every file
+     */
+    public boolean getPersistMetadataIndex() {
+    	return getBooleanProperty(PROP_PERSIST_METADATA_INDEX, false);
+    }
 }
@@ -3,73 +3,222 @@ package uk.nhs.fhir.util;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.nhs.fhir.datalayer.FileCache;
+
 public class ServletUtils {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(ServletUtils.class.getName());
 	
+	public static final String CACHE_GENERATION_HEADER = "X-FHIR-Cache-Generation";
+	
+	public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+	public static final String HEADER_CONTENT_LENGTH = "Content-Length";
+	public static final String HEADER_VARY = "Vary";
+	public static final String GZIP = "gzip";
+	public static final String GZIP_SUFFIX = ".gz";
+	
+	// Smaller responses fit in a packet or two anyway, so aren't worth compressing
+	private static final int MIN_GZIP_LENGTH = 1024;
+	private static final int GZIP_BUFFER_SIZE = 8192;
+	
     /**
      * Simple XML syntax highlight
-	 * @see https://coderwall.com/p/rjwkma/simple-java-html-syntax-highlighter-for-xml-code
+     * @see XmlHighlighter
      * @param source
      * @return syntax highlighted source
      */
     public static final String syntaxHighlight(final String source) {
-    	String target = source;
-        target = target.replaceAll("<([^>/]*)/>", "&lt;~blue~$1~/~/&gt;");
-        target = target.replaceAll("<([^>]*)>", "&lt;~blue~$1~/~&gt;");
-        target = target.replaceAll("([\\w]+)=\"([^\"]*)\"", "~red~$1~/~~black~=\"~/~~green~$2~/~~black~\"~/~");
-        target = target.replaceAll("~([a-z]+)~", "<span style=\"color: $1;\">");
-        target = target.replace("~/~", "</span>");
-        return target;
+    	return XmlHighlighter.highlight(source);
     }
     
     public static String prettyPrintXML(String xml) throws UnsupportedEncodingException, TransformerFactoryConfigurationError, TransformerException {
-    	Transformer transformer = TransformerFactory.newInstance().newTransformer();
-    	transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-    	transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-    	transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    	Transformer transformer = PRETTY_PRINTER.get();
     	//initialize StreamResult with File object to save to file
-    	StreamResult result = new StreamResult(new StringWriter());
-    	Source source = new StreamSource(new ByteArrayInputStream(xml.getBytes("utf-8")));;
+    	StreamResult result = new StreamResult(new StringWriter(xml.length() + xml.length() / 4));
+    	Source source = new StreamSource(new ByteArrayInputStream(xml.getBytes("utf-8")));
     	transformer.transform(source, result);
     	String xmlString = result.getWriter().toString();
     	return xmlString;
     }
     
-    public static void setResponseContentForSuccess(HttpServletResponse response, String contentType, String contentString) {
-    	setResponseContentForSuccess(response, contentType, new StringResponseContentWriter(contentString));
+    // Finding and creating a transformer is much slower than using one. They can be reused, but not by two threads at once.
+    private static final ThreadLocal<Transformer> PRETTY_PRINTER = ThreadLocal.withInitial(() -> {
+    	try {
+	    	Transformer transformer = TransformerFactory.newInstance().newTransformer();
+	    	transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+	    	transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+	    	transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+	    	return transformer;
+    	} catch (TransformerConfigurationException e) {
+    		throw new IllegalStateException("Unable to create XML transformer", e);
+    	}
+    });
+    
+    public static void setResponseContentForSuccess(HttpServletRequest request, HttpServletResponse response, String contentType, String contentString) {
+    	setResponseContentForSuccess(request, response, contentType, new StringResponseContentWriter(contentString));
     }
 
-	public static void setResponseContentForSuccess(HttpServletResponse response, String contentType, File contentFile) {
-		setResponseContentForSuccess(response, contentType, new FileResponseContentWriter(contentFile));
+	public static void setResponseContentForSuccess(HttpServletRequest request, HttpServletResponse response, String contentType, File contentFile) {
+		setResponseContentForSuccess(request, response, contentType, new FileResponseContentWriter(contentFile));
+	}
+	
+	/**
+	 * Sends a file, or a 304 if the client already has it.
+	 * If there is an up to date gzipped copy alongside it (e.g. snapshot.html.gz) and the client accepts gzip, that is sent as it is.
+	 * Otherwise the file may be gzipped as it is sent (see setResponseContentForSuccess).
+	 */
+	public static void sendFile(HttpServletRequest request, HttpServletResponse response, String contentType, File file) {
+		File gzipped = new File(file.getPath() + GZIP_SUFFIX);
+		boolean hasGzipped = gzipped.isFile()
+		  && gzipped.lastModified() >= file.lastModified();
+		
+		File toSend = file;
+		if (hasGzipped
+		  || isCompressible(contentType)) {
+			// Caches must not give the gzipped copy to clients which didn't ask for it. Set before any 304, which must match the 200.
+			response.setHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+		}
+		if (hasGzipped
+		  && acceptsGzip(request)) {
+			toSend = gzipped;
+		}
+		
+		// Tagged by the content actually sent, so the two encodings have different tags
+		if (ConditionalGet.forFile(toSend).respondIfNotModified(request, response)) {
+			return;
+		}
+		
+		if (toSend == gzipped) {
+			response.setHeader(HEADER_CONTENT_ENCODING, GZIP);
+		}
+		setResponseContentForSuccess(request, response, contentType, toSend);
+	}
+	
+	/**
+	 * Whether the request's Accept-Encoding header allows a gzipped response
+	 */
+	public static boolean acceptsGzip(HttpServletRequest request) {
+		return acceptsGzip(request.getHeader(HEADER_ACCEPT_ENCODING));
+	}
+	
+	/**
+	 * An explicit gzip (or x-gzip) entry decides, wherever it is in the header. * only applies if gzip isn't listed.
+	 * Either is refused with q=0.
+	 */
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		
+		Boolean gzip = null;
+		Boolean wildcard = null;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			String name = parts[0].trim();
+			if (name.equalsIgnoreCase(GZIP)
+			  || name.equalsIgnoreCase("x-gzip")) {
+				// if listed more than once, allowed by any
+				gzip = (gzip != null && gzip) || !hasZeroQuality(parts);
+			} else if (name.equals("*")) {
+				wildcard = (wildcard != null && wildcard) || !hasZeroQuality(parts);
+			}
+		}
+		
+		if (gzip != null) {
+			return gzip;
+		} else {
+			return wildcard != null && wildcard;
+		}
+	}
+	
+	private static boolean hasZeroQuality(String[] codingParts) {
+		for (int i=1; i<codingParts.length; i++) {
+			String param = codingParts[i].trim();
+			if (param.startsWith("q=")) {
+				try {
+					return Double.parseDouble(param.substring(2)) == 0.0;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Tells clients which generation of the server's resource cache a response was built from
+	 */
+	public static void addCacheGenerationHeader(HttpServletResponse response) {
+		response.setHeader(CACHE_GENERATION_HEADER, Long.toString(FileCache.getSnapshotGeneration()));
 	}
 	
-	private static void setResponseContentForSuccess(HttpServletResponse response, String contentType, ResponseContentWriter<?> contentWriter) {
+	/**
+	 * Text content is gzipped if the client accepts it and it is big enough to be worth it.
+	 * Anything sent this way which should be compressed without doing so per request should already be in memory
+	 * (e.g. in a cache) or have a gzipped copy on disk (see sendFile).
+	 */
+	private static void setResponseContentForSuccess(HttpServletRequest request, HttpServletResponse response, String contentType, ResponseContentWriter<?> contentWriter) {
 		try {
 			response.setStatus(200);
 			response.setContentType(contentType);
-			contentWriter.write(response);
+			addCacheGenerationHeader(response);
+			
+			// Content which is already encoded (e.g. a gzipped copy of a file) can't be compressed again
+			boolean compressible = isCompressible(contentType)
+			  && !response.containsHeader(HEADER_CONTENT_ENCODING);
+			if (compressible) {
+				response.setHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+			}
+			
+			if (compressible
+			  && contentWriter.length() >= MIN_GZIP_LENGTH
+			  && acceptsGzip(request)) {
+				response.setHeader(HEADER_CONTENT_ENCODING, GZIP);
+				ConditionalGet.addGzipToETag(response);
+				try (GZIPOutputStream gzipped = new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER_SIZE)) {
+					contentWriter.writeTo(gzipped, response);
+				}
+			} else {
+				contentWriter.write(response);
+			}
     	} catch (IOException e) {
     		LOG.error(e.getMessage());
 		}
 	}
+	
+	private static boolean isCompressible(String contentType) {
+		return contentType != null
+		  && (contentType.startsWith("text/")
+			|| contentType.contains("json")
+			|| contentType.contains("xml")
+			|| contentType.contains("javascript"));
+	}
 
 }
 
@@ -81,6 +230,16 @@ abstract class ResponseContentWriter<T> {
 	}
 	
 	abstract void write(HttpServletResponse response) throws IOException;
+	
+	/**
+	 * Writes the content to a stream wrapping the response's output stream (e.g. to compress it)
+	 */
+	abstract void writeTo(OutputStream out, HttpServletResponse response) throws IOException;
+	
+	/**
+	 * Roughly how big the content is (in characters or bytes)
+	 */
+	abstract long length();
 }
 
 class StringResponseContentWriter extends ResponseContentWriter<String> {
@@ -93,6 +252,17 @@ class StringResponseContentWriter extends ResponseContentWriter<String> {
 	void write(HttpServletResponse response) throws IOException {
 		response.getWriter().append(content);
 	}
+
+	@Override
+	void writeTo(OutputStream out, HttpServletResponse response) throws IOException {
+		// The same encoding the response's writer would use
+		out.write(content.getBytes(response.getCharacterEncoding()));
+	}
+
+	@Override
+	long length() {
+		return content.length();
+	}
 }
 
 class FileResponseContentWriter extends ResponseContentWriter<File> {
@@ -103,6 +273,26 @@ class FileResponseContentWriter extends ResponseContentWriter<File> {
 
 	@Override
 	void write(HttpServletResponse response) throws IOException {
-		FileUtils.copyFile(content, response.getOutputStream());
+		try (FileChannel channel = FileChannel.open(content.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			response.setHeader(ServletUtils.HEADER_CONTENT_LENGTH, Long.toString(size));
+			
+			// Lets the JDK move the bytes straight from the file, rather than through a buffer of our own
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			long position = 0;
+			while (position < size) {
+				position += channel.transferTo(position, size - position, out);
+			}
+		}
+	}
+
+	@Override
+	void writeTo(OutputStream out, HttpServletResponse response) throws IOException {
+		Files.copy(content.toPath(), out);
+	}
+
+	@Override
+	long length() {
+		return content.length();
 	}
 }
@@ -0,0 +1,233 @@
+package uk.nhs.fhir.util;
+
+/**
+ * Turns XML into HTML which shows the markup with tags in blue, attribute names in red and attribute values in green.
+ * The XML is read once from start to end, so this takes time in proportion to its length.
+ * Text and attribute values are copied as they are, as the escaping needed for XML also makes them safe as HTML.
+ * Whitespace is kept, so the XML should already be indented.
+ */
+public class XmlHighlighter {
+
+	private static final String MARKUP_START = "&lt;<span style=\"color: blue;\">";
+	private static final String MARKUP_END = "&gt;";
+	private static final String SPAN_END = "</span>";
+	private static final String ATTRIBUTE_NAME_START = "<span style=\"color: red;\">";
+	private static final String ATTRIBUTE_VALUE_START = "<span style=\"color: green;\">";
+	private static final String PUNCTUATION_START = "<span style=\"color: black;\">";
+
+	private static final String COMMENT_START = "<!--";
+	private static final String COMMENT_END = "-->";
+	private static final String CDATA_START = "<![CDATA[";
+	private static final String CDATA_END = "]]>";
+
+	public static String highlight(String xml) {
+		// Highlighting roughly doubles the length of typical FHIR XML
+		StringBuilder out = new StringBuilder(xml.length() * 2);
+		highlight(xml, out);
+		return out.toString();
+	}
+
+	public static void highlight(CharSequence xml, StringBuilder out) {
+		int length = xml.length();
+		int position = 0;
+
+		while (position < length) {
+			int markupStart = indexOf(xml, '<', position);
+			appendText(xml, position, markupStart, out);
+			if (markupStart < length) {
+				position = appendMarkup(xml, markupStart, out);
+			} else {
+				position = length;
+			}
+		}
+	}
+
+	/**
+	 * @param start the position of the opening '<'
+	 * @return the position after the end of the markup
+	 */
+	private static int appendMarkup(CharSequence xml, int start, StringBuilder out) {
+		if (startsWith(xml, start, COMMENT_START)) {
+			return appendLiteralMarkup(xml, start, COMMENT_END, out);
+		} else if (startsWith(xml, start, CDATA_START)) {
+			return appendLiteralMarkup(xml, start, CDATA_END, out);
+		}
+
+		int end = findMarkupEnd(xml, start + 1);
+		if (end == xml.length()) {
+			// Not closed - show the rest as it is
+			appendText(xml, start, end, out);
+			return end;
+		}
+
+		boolean selfClosing = xml.charAt(end - 1) == '/';
+
+		out.append(MARKUP_START);
+		appendTagBody(xml, start + 1, selfClosing ? end - 1 : end, out);
+		out.append(SPAN_END);
+		if (selfClosing) {
+			out.append('/');
+		}
+		out.append(MARKUP_END);
+
+		return end + 1;
+	}
+
+	/**
+	 * For comments and CDATA sections, whose content is not escaped in the XML and may contain anything
+	 */
+	private static int appendLiteralMarkup(CharSequence xml, int start, String terminator, StringBuilder out) {
+		int end = indexOf(xml, terminator, start + 1);
+		int contentEnd = end == xml.length() ? end : end + terminator.length() - 1;
+
+		out.append(MARKUP_START);
+		appendEscaped(xml, start + 1, contentEnd, out);
+		out.append(SPAN_END);
+		if (contentEnd < xml.length()) {
+			out.append(MARKUP_END);
+			return contentEnd + 1;
+		} else {
+			return contentEnd;
+		}
+	}
+
+	/**
+	 * The position of the '>' which closes the markup, ignoring any in quoted attribute values, or the length of the XML if there isn't one.
+	 */
+	private static int findMarkupEnd(CharSequence xml, int position) {
+		int length = xml.length();
+		char quote = 0;
+
+		for (; position < length; position++) {
+			char c = xml.charAt(position);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '>') {
+				return position;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Everything between the angle brackets of a tag, e.g. the element name and its attributes
+	 */
+	private static void appendTagBody(CharSequence xml, int position, int end, StringBuilder out) {
+		while (position < end) {
+			char c = xml.charAt(position);
+			if (!isNameChar(c)) {
+				out.append(c);
+				position++;
+				continue;
+			}
+
+			int nameEnd = position;
+			while (nameEnd < end
+			  && isNameChar(xml.charAt(nameEnd))) {
+				nameEnd++;
+			}
+
+			char quote = nameEnd + 1 < end && xml.charAt(nameEnd) == '=' ? xml.charAt(nameEnd + 1) : 0;
+			if (quote == '"' || quote == '\'') {
+				int valueStart = nameEnd + 2;
+				int valueEnd = Math.min(indexOf(xml, quote, valueStart), end);
+
+				out.append(ATTRIBUTE_NAME_START).append(xml, position, nameEnd).append(SPAN_END)
+					.append(PUNCTUATION_START).append('=').append(quote).append(SPAN_END)
+					.append(ATTRIBUTE_VALUE_START);
+				appendText(xml, valueStart, valueEnd, out);
+				out.append(SPAN_END);
+				if (valueEnd < end) {
+					out.append(PUNCTUATION_START).append(quote).append(SPAN_END);
+				}
+
+				position = valueEnd + 1;
+			} else {
+				// Element name, or a name without a value
+				out.append(xml, position, nameEnd);
+				position = nameEnd;
+			}
+		}
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c)
+		  || c == '_'
+		  || c == ':'
+		  || c == '-'
+		  || c == '.';
+	}
+
+	/**
+	 * Copies text which was escaped for XML. Entities are left alone, but '>' (which XML allows in text) is escaped.
+	 */
+	private static void appendText(CharSequence xml, int start, int end, StringBuilder out) {
+		int runStart = start;
+		for (int i = start; i < end; i++) {
+			char c = xml.charAt(i);
+			if (c == '<' || c == '>') {
+				out.append(xml, runStart, i).append(c == '<' ? "&lt;" : "&gt;");
+				runStart = i + 1;
+			}
+		}
+		out.append(xml, runStart, end);
+	}
+
+	private static void appendEscaped(CharSequence xml, int start, int end, StringBuilder out) {
+		for (int i = start; i < end; i++) {
+			char c = xml.charAt(i);
+			switch (c) {
+				case '<':
+					out.append("&lt;");
+					break;
+				case '>':
+					out.append("&gt;");
+					break;
+				case '&':
+					out.append("&amp;");
+					break;
+				default:
+					out.append(c);
+			}
+		}
+	}
+
+	private static boolean startsWith(CharSequence xml, int position, String prefix) {
+		if (position + prefix.length() > xml.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (xml.charAt(position + i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the position of the character, or the length of the XML if it doesn't appear
+	 */
+	private static int indexOf(CharSequence xml, char c, int from) {
+		int length = xml.length();
+		for (int i = from; i < length; i++) {
+			if (xml.charAt(i) == c) {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	private static int indexOf(CharSequence xml, String s, int from) {
+		for (int i = from; i + s.length() <= xml.length(); i++) {
+			if (startsWith(xml, i, s)) {
+				return i;
+			}
+		}
+		return xml.length();
+	}
+}
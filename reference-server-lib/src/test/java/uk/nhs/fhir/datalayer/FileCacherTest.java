@@ -0,0 +1,143 @@
+package uk.nhs.fhir.datalayer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.datalayer.collections.ResourceIndex;
+import uk.nhs.fhir.util.AbstractFhirFileLocator;
+import uk.nhs.fhir.util.FhirVersion;
+
+public class FileCacherTest {
+
+	private static final File resourceFile = Paths.get(".", "src", "test", "resources", "TestIncoming", "CareConnect-GPC-MedicationOrder-1.xml").toFile();
+	private static final String RESOURCE_NAME = "CareConnect-GPC-MedicationOrder-1";
+
+	private Path root;
+	private AbstractFhirFileLocator locator;
+	private File sourceFile;
+	private FileCacher fileCacher;
+
+	@Before
+	public void setUp() throws IOException {
+		root = Files.createTempDirectory("file-cacher");
+
+		locator = new AbstractFhirFileLocator() {
+			@Override
+			public Path getSourceRoot(FhirVersion fhirVersion) {
+				return root.resolve(fhirVersion.toString());
+			}
+
+			@Override
+			public Path getDestinationPathForResourceType(ResourceType type, FhirVersion version) {
+				return getSourcePathForResourceType(type, version).resolve("versioned");
+			}
+		};
+
+		sourceFile = locator.getSourcePathForResourceType(ResourceType.STRUCTUREDEFINITION, FhirVersion.DSTU2).resolve(resourceFile.getName()).toFile();
+		FileUtils.copyFile(resourceFile, sourceFile);
+
+		fileCacher = new FileCacher(locator, 2);
+		fileCacher.snapshotResourceMetadata();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(root.toFile());
+	}
+
+	@Test
+	public void testFullLoad() {
+		ResourceIndex index = dstu2Index();
+		assertEquals(1, index.getAll().size());
+		assertEquals(RESOURCE_NAME, index.getAll().get(0).getResourceName());
+		assertEquals(1, fileCacher.getFilesParsed());
+	}
+
+	@Test
+	public void testNothingReloadedIfNothingChanged() {
+		ResourceIndex index = dstu2Index();
+
+		fileCacher.refreshResourceMetadata();
+
+		assertEquals(0, fileCacher.getFilesParsed());
+		assertTrue(fileCacher.getChangedFiles().isEmpty());
+		assertSame(index, dstu2Index());
+	}
+
+	@Test
+	public void testRewritingSameContentIsNotReloaded() {
+		assertTrue(sourceFile.setLastModified(sourceFile.lastModified() + 10000));
+
+		fileCacher.refreshResourceMetadata();
+
+		assertEquals(0, fileCacher.getFilesParsed());
+	}
+
+	@Test
+	public void testChangedFileIsReloaded() throws IOException {
+		String content = new String(Files.readAllBytes(sourceFile.toPath()), StandardCharsets.UTF_8);
+		String renamedContent = content.replace("<name value=\"" + RESOURCE_NAME + "\"/>", "<name value=\"Renamed\"/>");
+		Files.write(sourceFile.toPath(), renamedContent.getBytes(StandardCharsets.UTF_8));
+
+		fileCacher.refreshResourceMetadata();
+
+		// The source file, its versioned copy and the example scan all share one parse
+		assertEquals(1, fileCacher.getFilesParsed());
+		assertEquals(1, dstu2Index().getAll().size());
+		assertEquals("Renamed", dstu2Index().getAll().get(0).getResourceName());
+	}
+
+	@Test
+	public void testRemovedFileIsDropped() throws IOException {
+		File versionedDir = sourceFile.getParentFile().toPath().resolve("versioned").toFile();
+		FileUtils.deleteDirectory(versionedDir);
+		assertTrue(sourceFile.delete());
+
+		fileCacher.refreshResourceMetadata();
+
+		assertEquals(0, fileCacher.getFilesParsed());
+		assertTrue(dstu2Index().getAll().isEmpty());
+	}
+
+	@Test
+	public void testRestoredIndexIsUsedWithoutParsing() throws IOException {
+		Path indexFile = root.resolve("metadata-index.bin");
+		fileCacher.saveIndex(indexFile);
+		
+		FileCacher restored = new FileCacher(locator, 2);
+		assertTrue(restored.loadIndex(indexFile));
+		
+		ResourceIndex index = restored.getResourceIndexByFhirVersion().get(FhirVersion.DSTU2);
+		assertEquals(1, index.getAll().size());
+		assertEquals(RESOURCE_NAME, index.getAll().get(0).getResourceName());
+		assertEquals(dstu2Index().getAll().get(0).getLatest().getVersionNo(), index.getAll().get(0).getLatest().getVersionNo());
+		
+		restored.refreshResourceMetadata();
+		assertEquals(0, restored.getFilesParsed());
+		assertTrue(restored.getChangedFiles().isEmpty());
+	}
+	
+	@Test
+	public void testUnreadableIndexIsIgnored() throws IOException {
+		Path indexFile = root.resolve("metadata-index.bin");
+		Files.write(indexFile, "not an index".getBytes(StandardCharsets.UTF_8));
+		
+		assertFalse(new FileCacher(locator, 2).loadIndex(indexFile));
+	}
+	
+	private ResourceIndex dstu2Index() {
+		return fileCacher.getResourceIndexByFhirVersion().get(FhirVersion.DSTU2);
+	}
+}
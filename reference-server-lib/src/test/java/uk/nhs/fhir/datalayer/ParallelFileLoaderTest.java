@@ -0,0 +1,58 @@
+package uk.nhs.fhir.datalayer;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ParallelFileLoaderTest {
+
+	@Test
+	public void testResultsAreInFileOrder() {
+		List<File> files = Lists.newArrayList();
+		for (int i = 0; i < 200; i++) {
+			files.add(new File("file" + i + ".xml"));
+		}
+
+		try (ParallelFileLoader loader = new ParallelFileLoader(4)) {
+			List<String> names = loader.map(files, file -> {
+				// finish in a different order to the one the files were submitted in
+				if (file.getName().hashCode() % 3 == 0) {
+					Thread.yield();
+				}
+				return file.getName();
+			});
+
+			Assert.assertEquals(200, names.size());
+			for (int i = 0; i < 200; i++) {
+				Assert.assertEquals("file" + i + ".xml", names.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testSingleThreadedRunsInline() {
+		List<File> files = Lists.newArrayList(new File("a.xml"), new File("b.xml"));
+
+		try (ParallelFileLoader loader = new ParallelFileLoader(0)) {
+			Assert.assertEquals(1, loader.getParallelism());
+
+			List<String> threadNames = loader.map(files, file -> Thread.currentThread().getName());
+			Assert.assertEquals(Lists.newArrayList(Thread.currentThread().getName(), Thread.currentThread().getName()), threadNames);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFailureAbortsLoad() {
+		List<File> files = Lists.newArrayList(new File("a.xml"), new File("b.xml"));
+
+		try (ParallelFileLoader loader = new ParallelFileLoader(2)) {
+			loader.map(files, file -> {
+				throw new RuntimeException("bad file " + file.getName());
+			});
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package uk.nhs.fhir.datalayer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.Test;
+
+import ca.uhn.fhir.parser.DataFormatException;
+import uk.nhs.fhir.load.FhirParsingFailedException;
+
+public class ParsedFileRegistryTest {
+
+	private static final File resourceFile = Paths.get(".", "src", "test", "resources", "TestIncoming", "CareConnect-GPC-MedicationOrder-1.xml").toFile();
+
+	@Test
+	public void testFileIsOnlyParsedOnce() throws FhirParsingFailedException {
+		ParsedFileRegistry registry = new ParsedFileRegistry();
+
+		IBaseResource first = registry.parse(resourceFile).getResource();
+		IBaseResource second = registry.parse(resourceFile.getAbsoluteFile()).getResource();
+
+		assertNotNull(first);
+		assertSame(first, second);
+		assertEquals(1, registry.getFilesParsed());
+		assertEquals(1, registry.getParsesReused());
+	}
+
+	@Test
+	public void testCopiesShareTheOriginalParse() throws IOException, FhirParsingFailedException {
+		File copyDir = Files.createTempDirectory("parsed-file-registry").toFile();
+		try {
+			File copy = new File(copyDir, "copy-versioned-1.xml");
+			FileUtils.copyFile(resourceFile, copy);
+
+			ParsedFileRegistry registry = new ParsedFileRegistry();
+			ParsedFileRegistry.ParsedFile original = registry.parse(resourceFile);
+			registry.recordCopy(resourceFile, copy);
+
+			assertSame(original, registry.parse(copy));
+			assertSame(original.getWrappedResource(), registry.parse(copy).getWrappedResource());
+			assertEquals(1, registry.getFilesParsed());
+		} finally {
+			FileUtils.deleteDirectory(copyDir);
+		}
+	}
+
+	// As before, the parser reports the HAPI error for unparseable files
+	@Test(expected = DataFormatException.class)
+	public void testFailuresAreRememberedToo() throws IOException, FhirParsingFailedException {
+		File notFhir = File.createTempFile("not-fhir", ".xml");
+		try {
+			FileUtils.writeStringToFile(notFhir, "<notFhir/>", "UTF-8");
+
+			ParsedFileRegistry registry = new ParsedFileRegistry();
+			registry.parse(notFhir);
+
+			try {
+				registry.parse(notFhir).getResource();
+			} finally {
+				assertEquals(1, registry.getFilesParsed());
+			}
+		} finally {
+			notFhir.delete();
+		}
+	}
+}
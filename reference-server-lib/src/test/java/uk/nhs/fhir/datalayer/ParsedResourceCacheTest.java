@@ -0,0 +1,59 @@
+package uk.nhs.fhir.datalayer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.Test;
+
+import ca.uhn.fhir.model.dstu2.resource.StructureDefinition;
+import uk.nhs.fhir.util.FhirVersion;
+
+public class ParsedResourceCacheTest {
+
+	private static final File resourceFile = Paths.get(".", "src", "test", "resources", "TestIncoming", "CareConnect-GPC-MedicationOrder-1.xml").toFile();
+
+	@Test
+	public void testRepeatedLoadsAreCached() {
+		ParsedResourceCache cache = new ParsedResourceCache(16L * 1024 * 1024);
+
+		IBaseResource first = cache.get(FhirVersion.DSTU2, resourceFile);
+		IBaseResource second = cache.get(FhirVersion.DSTU2, resourceFile);
+
+		assertNotNull(first);
+		assertSame(first, second);
+		assertEquals(1, cache.getStats().missCount());
+		assertEquals(1, cache.getStats().hitCount());
+
+		cache.invalidateAll();
+		assertNotSame(first, cache.get(FhirVersion.DSTU2, resourceFile));
+	}
+
+	@Test
+	public void testCopiesAreIndependent() {
+		ParsedResourceCache cache = new ParsedResourceCache(16L * 1024 * 1024);
+
+		StructureDefinition cached = (StructureDefinition)cache.get(FhirVersion.DSTU2, resourceFile);
+		StructureDefinition copy = (StructureDefinition)cache.getCopy(FhirVersion.DSTU2, resourceFile);
+
+		assertNotSame(cached, copy);
+		assertEquals(cached.getIdElement().getValue(), copy.getIdElement().getValue());
+		assertEquals(cached.getName(), copy.getName());
+
+		copy.setName("Changed");
+		assertNotEquals("Changed", cached.getName());
+	}
+
+	@Test
+	public void testEntriesLargerThanCacheAreNotRetained() {
+		ParsedResourceCache cache = new ParsedResourceCache(1L);
+
+		IBaseResource first = cache.get(FhirVersion.DSTU2, resourceFile);
+		IBaseResource second = cache.get(FhirVersion.DSTU2, resourceFile);
+
+		assertNotSame(first, second);
+		assertEquals(0, cache.size());
+	}
+}
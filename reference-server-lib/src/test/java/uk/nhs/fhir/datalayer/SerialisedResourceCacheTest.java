@@ -0,0 +1,105 @@
+package uk.nhs.fhir.datalayer;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import uk.nhs.fhir.datalayer.SerialisedResourceCache.SerialisedResource;
+import uk.nhs.fhir.datalayer.SerialisedResourceCache.SerialisedResourceKey;
+import uk.nhs.fhir.enums.MimeType;
+import uk.nhs.fhir.util.FhirVersion;
+
+public class SerialisedResourceCacheTest {
+
+	private static final File resourceFile = new File("Patient-1-versioned-1.0.xml");
+
+	@Test
+	public void testEncoderOnlyCalledOnce() {
+		SerialisedResourceCache cache = new SerialisedResourceCache(1024L * 1024, () -> 1L);
+		AtomicInteger encodeCount = new AtomicInteger(0);
+
+		SerialisedResourceKey key = new SerialisedResourceKey(FhirVersion.STU3, resourceFile, MimeType.JSON, true, true, null);
+		SerialisedResource first = cache.get(key, () -> {
+			encodeCount.incrementAndGet();
+			return new SerialisedResource("{}");
+		});
+		SerialisedResource second = cache.get(new SerialisedResourceKey(FhirVersion.STU3, resourceFile, MimeType.JSON, true, true, ""), () -> {
+			encodeCount.incrementAndGet();
+			return new SerialisedResource("{}");
+		});
+
+		assertSame(first, second);
+		assertEquals(1, encodeCount.get());
+	}
+
+	@Test
+	public void testKeysDistinguishFormats() {
+		SerialisedResourceCache cache = new SerialisedResourceCache(1024L * 1024, () -> 1L);
+
+		cache.get(new SerialisedResourceKey(FhirVersion.STU3, resourceFile, MimeType.JSON, true, true, null), () -> new SerialisedResource("{}"));
+		SerialisedResource xml = cache.get(new SerialisedResourceKey(FhirVersion.STU3, resourceFile, MimeType.XML, true, true, null), () -> new SerialisedResource("<Patient/>"));
+
+		assertEquals("<Patient/>", xml.getContent());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testClearedWhenGenerationChanges() {
+		AtomicLong generation = new AtomicLong(1L);
+		SerialisedResourceCache cache = new SerialisedResourceCache(1024L * 1024, generation::get);
+
+		SerialisedResourceKey key = new SerialisedResourceKey(FhirVersion.STU3, resourceFile, MimeType.XML, false, true, null);
+		SerialisedResource first = cache.get(key, () -> new SerialisedResource("<Patient/>"));
+		generation.incrementAndGet();
+		SerialisedResource second = cache.get(key, () -> new SerialisedResource("<Patient/>"));
+
+		assertNotSame(first, second);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testEncodingFromOlderGenerationNotServed() {
+		AtomicLong generation = new AtomicLong(1L);
+		SerialisedResourceCache cache = new SerialisedResourceCache(1024L * 1024, generation::get);
+
+		// A refresh is published, and another request clears the cache, while the resource is being encoded from the old data
+		SerialisedResourceKey key = new SerialisedResourceKey(FhirVersion.STU3, resourceFile, MimeType.XML, false, true, null);
+		SerialisedResourceKey otherKey = new SerialisedResourceKey(FhirVersion.STU3, resourceFile, MimeType.JSON, false, true, null);
+		SerialisedResource stale = cache.get(key, () -> {
+			generation.incrementAndGet();
+			cache.get(otherKey, () -> new SerialisedResource("{}"));
+			return new SerialisedResource("<Patient/>");
+		});
+		SerialisedResource fresh = cache.get(key, () -> new SerialisedResource("<Patient><id value=\"1\"/></Patient>"));
+
+		assertNotSame(stale, fresh);
+		assertSame(fresh, cache.get(key, () -> new SerialisedResource("<Patient/>")));
+	}
+
+	@Test
+	public void testFailedEncodingIsNotCached() {
+		SerialisedResourceCache cache = new SerialisedResourceCache(1024L * 1024, () -> 1L);
+
+		SerialisedResourceKey key = new SerialisedResourceKey(FhirVersion.STU3, resourceFile, MimeType.XML, false, true, null);
+		assertNull(cache.get(key, () -> null));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testGzippedBytesMatchContent() throws IOException {
+		SerialisedResource serialised = new SerialisedResource("<Patient xmlns=\"http://hl7.org/fhir\">é</Patient>");
+
+		byte[] unzipped = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(serialised.getGzippedBytes())));
+		assertArrayEquals(serialised.getBytes(), unzipped);
+		assertEquals(serialised.getContent(), new String(unzipped, StandardCharsets.UTF_8));
+	}
+}
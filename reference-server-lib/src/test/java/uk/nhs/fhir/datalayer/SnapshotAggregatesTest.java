@@ -0,0 +1,78 @@
+package uk.nhs.fhir.datalayer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.data.metadata.VersionNumber;
+import uk.nhs.fhir.datalayer.collections.ResourceEntityWithMultipleVersions;
+import uk.nhs.fhir.datalayer.collections.ResourceIndex;
+import uk.nhs.fhir.util.FhirVersion;
+
+public class SnapshotAggregatesTest {
+
+	private static ResourceEntityWithMultipleVersions entity(ResourceType type, String name, boolean extension, String displayGroup) {
+		return new ResourceEntityWithMultipleVersions(
+			new ResourceMetadata(name, new File(name + ".xml"), type, extension, Optional.empty(), displayGroup, false,
+				name, new VersionNumber("1.0"), "active", Lists.newArrayList(), null, null, null, FhirVersion.STU3, null));
+	}
+
+	private static FileCacheSnapshot snapshot() {
+		ResourceIndex index = new ResourceIndex(Lists.newArrayList(
+			entity(ResourceType.STRUCTUREDEFINITION, "patient", false, "Patient"),
+			entity(ResourceType.STRUCTUREDEFINITION, "Extension-Zeta", true, "Extension"),
+			entity(ResourceType.STRUCTUREDEFINITION, "Extension-Alpha", true, "Extension"),
+			entity(ResourceType.STRUCTUREDEFINITION, "Care-Patient", false, "Patient"),
+			entity(ResourceType.VALUESET, "Codes", false, "Code List")));
+
+		return new FileCacheSnapshot(1L, ImmutableMap.of(FhirVersion.STU3, index), ImmutableMap.of(), ImmutableMap.of());
+	}
+
+	@Test
+	public void testGroupsExcludeExtensionsAndAreSorted() {
+		Map<String, List<ResourceMetadata>> grouped = snapshot().getAggregates().getGroupedResources(ResourceType.STRUCTUREDEFINITION);
+
+		assertEquals(1, grouped.size());
+		List<ResourceMetadata> patients = grouped.get("Patient");
+		assertEquals("Care-Patient", patients.get(0).getResourceName());
+		assertEquals("patient", patients.get(1).getResourceName());
+
+		assertTrue(snapshot().getAggregates().getGroupedResources(ResourceType.CODESYSTEM).isEmpty());
+	}
+
+	@Test
+	public void testExtensionsAreSorted() {
+		SnapshotAggregates aggregates = snapshot().getAggregates();
+		List<ResourceMetadata> extensions = aggregates.getExtensions(FhirVersion.STU3);
+
+		assertEquals(2, extensions.size());
+		assertEquals("Extension-Alpha", extensions.get(0).getResourceName());
+		assertEquals(extensions, aggregates.getAllExtensions());
+	}
+
+	@Test
+	public void testCounts() {
+		Map<String, Integer> counts = snapshot().getAggregates().getResourceTypeCounts();
+
+		assertEquals(Integer.valueOf(2), counts.get("Extension"));
+		assertEquals(Integer.valueOf(2), counts.get(ResourceType.STRUCTUREDEFINITION.toString()));
+		assertEquals(Integer.valueOf(1), counts.get(ResourceType.VALUESET.toString()));
+	}
+
+	@Test
+	public void testBuiltOncePerSnapshot() {
+		FileCacheSnapshot snapshot = snapshot();
+
+		assertSame(snapshot.getAggregates(), snapshot.getAggregates());
+	}
+}
@@ -0,0 +1,67 @@
+package uk.nhs.fhir.datalayer.collections;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.data.metadata.VersionNumber;
+import uk.nhs.fhir.util.FhirVersion;
+
+public class NameIndexTest {
+
+	private static ResourceMetadata metadata(String name) {
+		return new ResourceMetadata(name, new File(name + "-versioned-1.0.xml"), ResourceType.STRUCTUREDEFINITION, false, Optional.empty(), null, false,
+			name, new VersionNumber("1.0"), "active", Lists.newArrayList(), null, null, null, FhirVersion.STU3, null);
+	}
+
+	private static final NameIndex index = new NameIndex(Lists.newArrayList(
+		metadata("CareConnect-Patient-1"),
+		metadata("CareConnect-Organization-1"),
+		metadata("GPConnect-Patient-1"),
+		metadata(null),
+		metadata("Patient")));
+
+	private static List<String> names(List<ResourceMetadata> matches) {
+		return matches.stream().map(ResourceMetadata::getResourceName).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testContainsIgnoresCaseAndKeepsOrder() {
+		assertEquals(Lists.newArrayList("CareConnect-Patient-1", "GPConnect-Patient-1", "Patient"), names(index.find("patient", NameIndex.Match.CONTAINS)));
+		assertEquals(Lists.newArrayList("CareConnect-Patient-1", "CareConnect-Organization-1", "GPConnect-Patient-1"), names(index.find("-", NameIndex.Match.CONTAINS)));
+		assertEquals(Lists.newArrayList("CareConnect-Organization-1"), names(index.find("T-ORG", NameIndex.Match.CONTAINS)));
+		assertTrue(index.find("Practitioner", NameIndex.Match.CONTAINS).isEmpty());
+	}
+
+	@Test
+	public void testSearchTermsAreLiteral() {
+		assertTrue(index.find("Care.*Patient", NameIndex.Match.CONTAINS).isEmpty());
+		assertTrue(index.find("(a+)+$", NameIndex.Match.CONTAINS).isEmpty());
+	}
+
+	@Test
+	public void testEmptyTermMatchesAllNamedResources() {
+		assertEquals(4, index.find("", NameIndex.Match.CONTAINS).size());
+	}
+
+	@Test
+	public void testStartsWith() {
+		assertEquals(Lists.newArrayList("CareConnect-Patient-1", "CareConnect-Organization-1"), names(index.find("careconnect", NameIndex.Match.STARTS_WITH)));
+		assertEquals(Lists.newArrayList("Patient"), names(index.find("pat", NameIndex.Match.STARTS_WITH)));
+	}
+
+	@Test
+	public void testExactIsCaseSensitive() {
+		assertEquals(Lists.newArrayList("Patient"), names(index.find("Patient", NameIndex.Match.EXACT)));
+		assertTrue(index.find("patient", NameIndex.Match.EXACT).isEmpty());
+	}
+}
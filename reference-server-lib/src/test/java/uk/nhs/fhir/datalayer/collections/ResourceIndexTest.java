@@ -0,0 +1,79 @@
+package uk.nhs.fhir.datalayer.collections;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import uk.nhs.fhir.data.metadata.ResourceMetadata;
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.data.metadata.VersionNumber;
+import uk.nhs.fhir.util.FhirVersion;
+
+public class ResourceIndexTest {
+
+	private static ResourceMetadata metadata(ResourceType type, String id, String name, String version, String url) {
+		return new ResourceMetadata(name, new File(id + "-versioned-" + version + ".xml"), type, false, Optional.empty(), null, false,
+			id, new VersionNumber(version), "active", Lists.newArrayList(), null, null, null, FhirVersion.STU3, url);
+	}
+
+	private static ResourceIndex index() {
+		ResourceEntityWithMultipleVersions patient = new ResourceEntityWithMultipleVersions(
+			metadata(ResourceType.STRUCTUREDEFINITION, "Patient-1", "Patient", "1.0", "https://fhir.nhs.uk/STU3/StructureDefinition/Patient-1"));
+		patient.add(metadata(ResourceType.STRUCTUREDEFINITION, "Patient-1", "Patient", "1.1", "https://fhir.nhs.uk/STU3/StructureDefinition/Patient-1"));
+
+		ResourceEntityWithMultipleVersions valueSet = new ResourceEntityWithMultipleVersions(
+			metadata(ResourceType.VALUESET, "Patient-1", "PatientCodes", "1.0", "https://fhir.nhs.uk/STU3/ValueSet/Patient-1"));
+
+		return new ResourceIndex(Lists.newArrayList(patient, valueSet));
+	}
+
+	@Test
+	public void testLookupById() {
+		ResourceIndex index = index();
+
+		assertEquals("Patient", index.getById(ResourceType.STRUCTUREDEFINITION, "Patient-1").getResourceName());
+		assertEquals("PatientCodes", index.getById(ResourceType.VALUESET, "Patient-1").getResourceName());
+		assertNull(index.getById(ResourceType.CODESYSTEM, "Patient-1"));
+		assertNull(index.getById(ResourceType.STRUCTUREDEFINITION, null));
+	}
+
+	@Test
+	public void testLookupByName() {
+		ResourceIndex index = index();
+
+		assertEquals(new VersionNumber("1.1"), index.getByName(ResourceType.STRUCTUREDEFINITION, "Patient").getLatest().getVersionNo());
+		assertNull(index.getByName(ResourceType.VALUESET, "Patient"));
+	}
+
+	@Test
+	public void testLookupByUrlReturnsLatestVersion() {
+		ResourceIndex index = index();
+
+		assertEquals(1, index.getLatestByUrl(ResourceType.STRUCTUREDEFINITION, "https://fhir.nhs.uk/STU3/StructureDefinition/Patient-1").size());
+		assertEquals(new VersionNumber("1.1"), index.getLatestByUrl(ResourceType.STRUCTUREDEFINITION, "https://fhir.nhs.uk/STU3/StructureDefinition/Patient-1").get(0).getVersionNo());
+		assertTrue(index.getLatestByUrl(ResourceType.VALUESET, "https://fhir.nhs.uk/STU3/StructureDefinition/Patient-1").isEmpty());
+	}
+
+	@Test
+	public void testTypeListsKeepLoadOrder() {
+		ResourceIndex index = index();
+
+		assertEquals(2, index.getAll().size());
+		assertEquals(1, index.getAllOfType(ResourceType.STRUCTUREDEFINITION).size());
+		assertTrue(index.getAllOfType(ResourceType.CONCEPTMAP).isEmpty());
+	}
+
+	@Test
+	public void testLatestOfTypeHasOneEntryPerResource() {
+		ResourceIndex index = index();
+
+		assertEquals(1, index.getLatestOfType(ResourceType.STRUCTUREDEFINITION).size());
+		assertEquals(new VersionNumber("1.1"), index.getLatestOfType(ResourceType.STRUCTUREDEFINITION).get(0).getVersionNo());
+		assertTrue(index.getLatestOfType(ResourceType.CONCEPTMAP).isEmpty());
+	}
+}
@@ -0,0 +1,201 @@
+package uk.nhs.fhir.interceptor;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.Test;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.RestfulServerUtils.ResponseEncoding;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.rest.server.servlet.ServletRestfulResponse;
+import uk.nhs.fhir.datalayer.SerialisedResourceCache.SerialisedResource;
+import uk.nhs.fhir.util.FhirContexts;
+import uk.nhs.fhir.util.FhirVersion;
+import uk.nhs.fhir.util.text.FhirTextSectionHelpers;
+
+public class SerialisedResourceInterceptorTest {
+
+	private static final String SERVER_BASE = "http://localhost:8080/fhir";
+	private static final String RESOURCE_JSON = "{\"resourceType\":\"StructureDefinition\",\"id\":\"test-profile\",\"meta\":{\"versionId\":\"2\"},"
+		+ "\"text\":{\"status\":\"generated\",\"div\":\"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">Test</div>\"},"
+		+ "\"url\":\"https://fhir.nhs.uk/StructureDefinition/test-profile\",\"name\":\"TestProfile\"}";
+
+	@Test
+	public void testDstu2HeadersMatchHapi() throws IOException {
+		RecordingResponse cached = cachedResponse(FhirVersion.DSTU2);
+		RecordingResponse uncached = hapiResponse(FhirVersion.DSTU2);
+
+		String expectedLocation = SERVER_BASE + "/StructureDefinition/test-profile/_history/2";
+		assertEquals(Collections.singletonList(expectedLocation), uncached.headers.get(Constants.HEADER_LOCATION));
+		assertEquals(Collections.singletonList(expectedLocation), uncached.headers.get(Constants.HEADER_CONTENT_LOCATION));
+		assertMatches(uncached, cached);
+	}
+
+	@Test
+	public void testStu3HeadersMatchHapi() throws IOException {
+		RecordingResponse cached = cachedResponse(FhirVersion.STU3);
+		RecordingResponse uncached = hapiResponse(FhirVersion.STU3);
+
+		String expectedLocation = SERVER_BASE + "/StructureDefinition/test-profile/_history/2";
+		assertEquals(Collections.singletonList(expectedLocation), uncached.headers.get(Constants.HEADER_LOCATION));
+		assertTrue(uncached.headers.get(Constants.HEADER_CONTENT_LOCATION).isEmpty());
+		assertMatches(uncached, cached);
+	}
+
+	// ETag and Last-Modified are left out, since the interceptor sends its own for the resource file
+	private static void assertMatches(RecordingResponse uncached, RecordingResponse cached) {
+		assertEquals(uncached.headers.get(Constants.HEADER_LOCATION), cached.headers.get(Constants.HEADER_LOCATION));
+		assertEquals(uncached.headers.get(Constants.HEADER_CONTENT_LOCATION), cached.headers.get(Constants.HEADER_CONTENT_LOCATION));
+		assertEquals(uncached.contentType, cached.contentType);
+		assertEquals(uncached.status, cached.status);
+		assertEquals(uncached.body(), cached.body());
+	}
+
+	private static RecordingResponse cachedResponse(FhirVersion fhirVersion) throws IOException {
+		RecordingResponse response = new RecordingResponse();
+		ServletRequestDetails details = readRequest(fhirVersion, response);
+		SerialisedResourceInterceptor interceptor = new SerialisedResourceInterceptor(fhirVersion, null);
+
+		SerialisedResource serialised = interceptor.serialise(details, parse(fhirVersion));
+		ResponseEncoding responseEncoding = RestfulServerUtils.determineResponseEncodingWithDefault(details);
+		interceptor.writeResponse(details, response.proxy, responseEncoding, serialised);
+
+		return response;
+	}
+
+	// What HAPI sends for the same read when the interceptor doesn't handle it
+	private static RecordingResponse hapiResponse(FhirVersion fhirVersion) throws IOException {
+		RecordingResponse response = new RecordingResponse();
+		ServletRequestDetails details = readRequest(fhirVersion, response);
+
+		IBaseResource resource = parse(fhirVersion);
+		FhirTextSectionHelpers.forVersion(fhirVersion).removeTextSection(resource);
+		RestfulServerUtils.streamResponseAsResource(details.getServer(), resource, Collections.emptySet(), Constants.STATUS_HTTP_200_OK, true, false, details);
+
+		return response;
+	}
+
+	private static ServletRequestDetails readRequest(FhirVersion fhirVersion, RecordingResponse response) {
+		FhirContext fhirContext = FhirContexts.forVersion(fhirVersion);
+
+		ServletRequestDetails details = new ServletRequestDetails();
+		details.setServer(new RestfulServer(fhirContext));
+		details.setServletRequest(emptyRequest());
+		details.setServletResponse(response.proxy);
+		details.setResponse(new ServletRestfulResponse(details));
+		details.setFhirServerBase(SERVER_BASE);
+		details.setParameters(new HashMap<>());
+		details.setRequestType(RequestTypeEnum.GET);
+		details.setRestOperationType(RestOperationTypeEnum.VREAD);
+		details.setResourceName("StructureDefinition");
+		return details;
+	}
+
+	private static IBaseResource parse(FhirVersion fhirVersion) {
+		return FhirContexts.forVersion(fhirVersion).newJsonParser().parseResource(RESOURCE_JSON);
+	}
+
+	// A request with no headers or parameters
+	private static HttpServletRequest emptyRequest() {
+		return (HttpServletRequest)Proxy.newProxyInstance(SerialisedResourceInterceptorTest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+			(proxy, method, args) -> {
+				if (method.getReturnType().equals(Enumeration.class)) {
+					return Collections.emptyEnumeration();
+				}
+				return defaultValue(method.getReturnType());
+			});
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type.equals(boolean.class)) {
+			return false;
+		} else if (type.equals(int.class)) {
+			return 0;
+		} else if (type.equals(long.class)) {
+			return 0L;
+		} else {
+			return null;
+		}
+	}
+
+	private static class RecordingResponse {
+		private final ListMultimap<String, String> headers = ArrayListMultimap.create();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final StringWriter chars = new StringWriter();
+		private String contentType = null;
+		private int status = 0;
+
+		private final HttpServletResponse proxy = (HttpServletResponse)Proxy.newProxyInstance(
+			SerialisedResourceInterceptorTest.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class},
+			(proxy, method, args) -> {
+				switch (method.getName()) {
+					case "addHeader":
+						headers.put((String)args[0], (String)args[1]);
+						return null;
+					case "setHeader":
+						headers.replaceValues((String)args[0], Collections.singletonList((String)args[1]));
+						return null;
+					case "containsHeader":
+						return headers.containsKey(args[0]);
+					case "setContentType":
+						contentType = (String)args[0];
+						return null;
+					case "setStatus":
+						status = (Integer)args[0];
+						return null;
+					case "getWriter":
+						return new PrintWriter(chars);
+					case "getOutputStream":
+						return outputStream();
+					default:
+						return defaultValue(method.getReturnType());
+				}
+			});
+
+		private ServletOutputStream outputStream() {
+			return new ServletOutputStream() {
+				@Override
+				public void write(int b) {
+					bytes.write(b);
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setWriteListener(WriteListener writeListener) {
+				}
+			};
+		}
+
+		String body() {
+			return new String(bytes.toByteArray(), StandardCharsets.UTF_8) + chars.toString();
+		}
+	}
+}
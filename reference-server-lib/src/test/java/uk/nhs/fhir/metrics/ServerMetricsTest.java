@@ -0,0 +1,97 @@
+package uk.nhs.fhir.metrics;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+public class ServerMetricsTest {
+
+	@Test
+	public void testHistogramBucketsAreCumulative() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.observe(TimeUnit.MICROSECONDS.toNanos(100));
+		histogram.observe(TimeUnit.MILLISECONDS.toNanos(3));
+		histogram.observe(TimeUnit.MINUTES.toNanos(10));
+
+		long[] cumulative = histogram.getCumulativeCounts();
+		assertEquals(1, cumulative[0]);
+		assertEquals(1, cumulative[2]);
+		// 0.005s bucket
+		assertEquals(2, cumulative[3]);
+		assertEquals(2, cumulative[LatencyHistogram.boundCount() - 1]);
+		assertEquals(3, cumulative[LatencyHistogram.boundCount()]);
+		assertEquals(3, histogram.getCount());
+	}
+
+	@Test
+	public void testRequestsExposedByRouteAndType() throws IOException {
+		ServerMetrics metrics = new ServerMetrics();
+		metrics.recordRequest("page", "StructureDefinition", TimeUnit.MILLISECONDS.toNanos(20), 1000);
+		metrics.recordRequest("page", "StructureDefinition", TimeUnit.MILLISECONDS.toNanos(40), 500);
+		metrics.recordRequest("fhir_read", "ValueSet", TimeUnit.MILLISECONDS.toNanos(1), 200);
+
+		String text = prometheusText(metrics);
+		assertTrue(text.contains("# TYPE fhir_http_request_duration_seconds histogram\n"));
+		assertTrue(text.contains("fhir_http_request_duration_seconds_bucket{route=\"page\",resource_type=\"StructureDefinition\",le=\"0.025\"} 1\n"));
+		assertTrue(text.contains("fhir_http_request_duration_seconds_bucket{route=\"page\",resource_type=\"StructureDefinition\",le=\"+Inf\"} 2\n"));
+		assertTrue(text.contains("fhir_http_request_duration_seconds_sum{route=\"page\",resource_type=\"StructureDefinition\"} 0.06\n"));
+		assertTrue(text.contains("fhir_http_request_duration_seconds_count{route=\"fhir_read\",resource_type=\"ValueSet\"} 1\n"));
+		assertTrue(text.contains("fhir_http_response_bytes_total{route=\"page\"} 1500\n"));
+
+		assertEquals(Long.valueOf(2), metrics.getRequestCounts().get("page StructureDefinition"));
+		assertEquals(30.0, metrics.getMeanRequestMillis().get("page StructureDefinition"), 0.001);
+	}
+
+	@Test
+	public void testCacheStatisticsReadWhenExposed() throws IOException {
+		ServerMetrics metrics = new ServerMetrics();
+		Cache<String, String> cache = CacheBuilder.newBuilder().recordStats().build();
+		metrics.registerCache("test_cache", cache::stats, cache::size);
+
+		cache.put("a", "A");
+		cache.getIfPresent("a");
+		cache.getIfPresent("b");
+
+		String text = prometheusText(metrics);
+		assertTrue(text.contains("fhir_cache_size{cache=\"test_cache\"} 1\n"));
+		assertTrue(text.contains("fhir_cache_hits_total{cache=\"test_cache\"} 1\n"));
+		assertTrue(text.contains("fhir_cache_misses_total{cache=\"test_cache\"} 1\n"));
+		assertTrue(text.contains("fhir_cache_hit_ratio{cache=\"test_cache\"} 0.5\n"));
+	}
+
+	@Test
+	public void testRefreshesAndParses() throws IOException {
+		ServerMetrics metrics = new ServerMetrics();
+		metrics.recordRefresh(false, TimeUnit.SECONDS.toNanos(3));
+		metrics.recordRefresh(true, TimeUnit.MILLISECONDS.toNanos(200));
+		metrics.recordParses(ServerMetrics.PARSE_PHASE_REFRESH, 40);
+		metrics.recordParses(ServerMetrics.PARSE_PHASE_REQUEST, 1);
+
+		String text = prometheusText(metrics);
+		assertTrue(text.contains("fhir_cache_refresh_duration_seconds_count{type=\"full\"} 1\n"));
+		assertTrue(text.contains("fhir_cache_refresh_duration_seconds_bucket{type=\"incremental\",le=\"0.25\"} 1\n"));
+		assertTrue(text.contains("fhir_resource_parses_total{phase=\"refresh\"} 40\n"));
+		assertTrue(text.contains("fhir_cache_refresh_failures_total 0\n"));
+
+		assertEquals(2, metrics.getRefreshCount());
+		assertEquals(200.0, metrics.getLastRefreshMillis(), 0.001);
+	}
+
+	@Test
+	public void testLabelValuesEscaped() {
+		assertEquals("a\\\"b\\\\c\\n", ServerMetrics.escape("a\"b\\c\n"));
+	}
+
+	private String prometheusText(ServerMetrics metrics) throws IOException {
+		StringWriter text = new StringWriter();
+		metrics.writePrometheus(text);
+		return text.toString();
+	}
+}
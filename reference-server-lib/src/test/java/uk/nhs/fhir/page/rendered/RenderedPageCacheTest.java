@@ -0,0 +1,62 @@
+package uk.nhs.fhir.page.rendered;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import uk.nhs.fhir.data.metadata.ResourceType;
+import uk.nhs.fhir.page.rendered.RenderedPageCache.RenderedPageKey;
+import uk.nhs.fhir.util.FhirVersion;
+
+public class RenderedPageCacheTest {
+
+	private static final RenderedPageKey KEY = new RenderedPageKey(FhirVersion.STU3, ResourceType.STRUCTUREDEFINITION, "CareConnect-Patient-1", null, null);
+
+	@Test
+	public void testRenderedOncePerGeneration() {
+		AtomicLong generation = new AtomicLong(1L);
+		AtomicInteger renderCount = new AtomicInteger(0);
+		RenderedPageCache cache = new RenderedPageCache(1024L * 1024, 0, generation::get, key -> "<html>" + renderCount.incrementAndGet() + "</html>");
+
+		assertEquals("<html>1</html>", cache.get(KEY));
+		assertEquals("<html>1</html>", cache.get(new RenderedPageKey(FhirVersion.STU3, ResourceType.STRUCTUREDEFINITION, "CareConnect-Patient-1", null, "")));
+
+		generation.incrementAndGet();
+		assertEquals("<html>2</html>", cache.get(KEY));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testMissingResourceIsNotCached() {
+		RenderedPageCache cache = new RenderedPageCache(1024L * 1024, 0, () -> 1L, key -> null);
+
+		assertNull(cache.get(KEY));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testRequestedPagesAreWarmedUpAfterRefresh() throws InterruptedException {
+		AtomicLong generation = new AtomicLong(1L);
+		AtomicInteger renderCount = new AtomicInteger(0);
+		CountDownLatch warmedUp = new CountDownLatch(2);
+		RenderedPageCache cache = new RenderedPageCache(1024L * 1024, 10, generation::get, key -> {
+			renderCount.incrementAndGet();
+			warmedUp.countDown();
+			return "<html/>";
+		});
+
+		cache.get(KEY);
+		generation.incrementAndGet();
+		cache.scheduleWarmUp();
+
+		assertTrue(warmedUp.await(10, TimeUnit.SECONDS));
+		cache.get(KEY);
+		// Served from the page rendered by the warm up
+		assertEquals(2, renderCount.get());
+	}
+}
@@ -0,0 +1,72 @@
+package uk.nhs.fhir.resourcehandlers;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import uk.nhs.fhir.datalayer.SearchResult;
+import uk.nhs.fhir.util.FhirVersion;
+
+public class SearchResultPagingProviderTest {
+
+	private final AtomicLong generation = new AtomicLong(1);
+	private final AtomicInteger searchesRun = new AtomicInteger(0);
+
+	private Supplier<SearchResult> search() {
+		return () -> {
+			searchesRun.incrementAndGet();
+			return new SearchResult(FhirVersion.STU3, Lists.newArrayList());
+		};
+	}
+
+	@Test
+	public void testSameQuerySharesSearch() {
+		SearchResultPagingProvider provider = new SearchResultPagingProvider(10, 1024 * 1024, 60, generation::get);
+
+		PagedBundleProvider first = provider.search("STU3|StructureDefinition|2|pat", search());
+		PagedBundleProvider second = provider.search("STU3|StructureDefinition|2|pat", search());
+
+		assertEquals(1, searchesRun.get());
+		assertSame(first, second);
+		assertEquals(1, provider.getSearchesShared());
+
+		String searchId = provider.storeResultList(first);
+		assertEquals(first.getSearchId(), searchId);
+		assertSame(first, provider.retrieveResultList(searchId));
+	}
+
+	@Test
+	public void testNewGenerationRunsSearchAgain() {
+		SearchResultPagingProvider provider = new SearchResultPagingProvider(10, 1024 * 1024, 60, generation::get);
+
+		PagedBundleProvider first = provider.search("STU3|ValueSet|1|", search());
+		generation.incrementAndGet();
+		PagedBundleProvider second = provider.search("STU3|ValueSet|1|", search());
+
+		assertEquals(2, searchesRun.get());
+		assertNotEquals(first.getSearchId(), second.getSearchId());
+
+		// Pages of the older search can still be served
+		assertSame(first, provider.retrieveResultList(first.getSearchId()));
+	}
+
+	@Test
+	public void testBoundedByNumberOfSearches() {
+		SearchResultPagingProvider provider = new SearchResultPagingProvider(2, 1024 * 1024, 60, generation::get);
+
+		for (int i = 0; i < 5; i++) {
+			provider.search("STU3|ValueSet|2|" + i, search());
+		}
+
+		assertEquals(2, provider.size());
+		assertEquals(3, provider.getEvictions());
+		assertNull(provider.retrieveResultList(SearchResultPagingProvider.searchId("STU3|ValueSet|2|0", 1)));
+		assertEquals(1, provider.getExpiredPageRequests());
+	}
+}
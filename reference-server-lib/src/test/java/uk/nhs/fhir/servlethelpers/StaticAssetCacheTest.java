@@ -0,0 +1,52 @@
+package uk.nhs.fhir.servlethelpers;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+import uk.nhs.fhir.servlethelpers.StaticAssetCache.StaticAsset;
+
+public class StaticAssetCacheTest {
+
+	@Test
+	public void testPreloadsStaticDirectories() {
+		StaticAssetCache cache = new StaticAssetCache(StaticAssetCacheTest.class);
+		cache.preload();
+
+		int preloaded = cache.size();
+		assertTrue(preloaded > 0);
+
+		assertNotNull(cache.get("/style/style.css"));
+		assertNotNull(cache.get("/js/jquery-ui/jquery-ui.min.js"));
+		assertEquals(preloaded, cache.size());
+	}
+
+	@Test
+	public void testTextIsGzipped() throws IOException {
+		StaticAssetCache cache = new StaticAssetCache(StaticAssetCacheTest.class);
+		StaticAsset stylesheet = cache.get("/style/style.css");
+
+		assertEquals("text/css", stylesheet.getContentType());
+		assertTrue(stylesheet.hasGzipped());
+		try (GZIPInputStream unzipped = new GZIPInputStream(new ByteArrayInputStream(stylesheet.getGzipped()))) {
+			assertArrayEquals(stylesheet.getContent(), ByteStreams.toByteArray(unzipped));
+		}
+
+		// Already compressed
+		assertFalse(cache.get("/images/hl7logo.png").hasGzipped());
+	}
+
+	@Test
+	public void testMissingAssetIsNotCached() {
+		StaticAssetCache cache = new StaticAssetCache(StaticAssetCacheTest.class);
+
+		assertNull(cache.get("/style/missing.css"));
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,96 @@
+package uk.nhs.fhir.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class ConditionalGetTest {
+
+	private static final long LAST_MODIFIED = 1500000000000L;
+
+	@Test
+	public void testMatchingETag() {
+		ConditionalGet validators = new ConditionalGet("\"abc\"", LAST_MODIFIED);
+
+		assertTrue(validators.isNotModified("\"abc\"", -1));
+		assertTrue(validators.isNotModified("\"xyz\", W/\"abc\"", -1));
+		assertTrue(validators.isNotModified("*", -1));
+		assertFalse(validators.isNotModified("\"xyz\"", -1));
+	}
+
+	@Test
+	public void testGzippedTagMatches() {
+		ConditionalGet validators = new ConditionalGet("\"abc\"", LAST_MODIFIED);
+
+		assertTrue(validators.isNotModified("\"abc-gzip\"", -1));
+		assertFalse(validators.isNotModified("\"abc-br\"", -1));
+	}
+
+	@Test
+	public void testIfModifiedSince() {
+		// Header dates have no milliseconds, but file times can
+		ConditionalGet validators = new ConditionalGet("\"abc\"", LAST_MODIFIED + 500);
+
+		assertTrue(validators.isNotModified(null, LAST_MODIFIED));
+		assertTrue(validators.isNotModified(null, LAST_MODIFIED + 60000));
+		assertFalse(validators.isNotModified(null, LAST_MODIFIED - 1000));
+		assertFalse(validators.isNotModified(null, -1));
+	}
+
+	@Test
+	public void testIfNoneMatchTakesPrecedence() {
+		ConditionalGet validators = new ConditionalGet("\"abc\"", LAST_MODIFIED);
+
+		assertFalse(validators.isNotModified("\"xyz\"", LAST_MODIFIED));
+	}
+
+	@Test
+	public void testFileTagFollowsContent() throws IOException {
+		File file = File.createTempFile("conditional-get", ".html");
+		try {
+			FileUtils.writeStringToFile(file, "<html/>", "UTF-8");
+			String original = ConditionalGet.forFile(file).getETag();
+
+			assertTrue(file.setLastModified(file.lastModified() + 10000));
+			assertEquals(original, ConditionalGet.forFile(file).getETag());
+
+			FileUtils.writeStringToFile(file, "<html></html>", "UTF-8");
+			assertNotEquals(original, ConditionalGet.forFile(file).getETag());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testVariantsHaveDifferentTags() throws IOException {
+		File file = File.createTempFile("conditional-get", ".xml");
+		try {
+			FileUtils.writeStringToFile(file, "<Patient/>", "UTF-8");
+
+			assertNotEquals(
+				ConditionalGet.forContentBuiltFromFile(file, "xml").getETag(),
+				ConditionalGet.forContentBuiltFromFile(file, "json").getETag());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testBuiltContentVariesByEncoding() throws IOException {
+		File file = File.createTempFile("conditional-get", ".xml");
+		try {
+			FileUtils.writeStringToFile(file, "<Patient/>", "UTF-8");
+
+			// May be gzipped as it is sent
+			assertTrue(ConditionalGet.forContentBuiltFromFile(file, "xml").variesByEncoding());
+			// Callers say whether there is a gzipped copy
+			assertFalse(ConditionalGet.forFile(file).variesByEncoding());
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package uk.nhs.fhir.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ServletUtilsTest {
+
+	@Test
+	public void testAcceptsGzip() {
+		assertTrue(ServletUtils.acceptsGzip("gzip, deflate, br"));
+		assertTrue(ServletUtils.acceptsGzip("deflate, x-gzip;q=0.5"));
+		assertTrue(ServletUtils.acceptsGzip("*"));
+		assertFalse(ServletUtils.acceptsGzip((String)null));
+		assertFalse(ServletUtils.acceptsGzip("identity"));
+		assertFalse(ServletUtils.acceptsGzip("gzip;q=0"));
+	}
+
+	@Test
+	public void testExplicitGzipOverridesWildcard() {
+		assertTrue(ServletUtils.acceptsGzip("*;q=0, gzip"));
+		assertFalse(ServletUtils.acceptsGzip("gzip;q=0, *"));
+		assertFalse(ServletUtils.acceptsGzip("*, gzip;q=0.0"));
+	}
+}
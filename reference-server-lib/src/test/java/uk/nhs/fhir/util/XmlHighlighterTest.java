@@ -0,0 +1,57 @@
+package uk.nhs.fhir.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class XmlHighlighterTest {
+
+	private static final String BLUE = "<span style=\"color: blue;\">";
+	private static final String RED = "<span style=\"color: red;\">";
+	private static final String GREEN = "<span style=\"color: green;\">";
+	private static final String BLACK = "<span style=\"color: black;\">";
+	private static final String END = "</span>";
+
+	@Test
+	public void testElementsAndAttributes() {
+		String xml = "<Patient xmlns=\"http://hl7.org/fhir\">\n    <active value=\"true\"/>\n</Patient>";
+
+		String expected =
+			"&lt;" + BLUE + "Patient " + attribute("xmlns", "http://hl7.org/fhir") + END + "&gt;\n"
+			+ "    &lt;" + BLUE + "active " + attribute("value", "true") + END + "/&gt;\n"
+			+ "&lt;" + BLUE + "/Patient" + END + "&gt;";
+
+		assertEquals(expected, XmlHighlighter.highlight(xml));
+	}
+
+	@Test
+	public void testTextIsCopied() {
+		String xml = "<div>a &amp; b ~red~ c > d</div>";
+
+		assertEquals("&lt;" + BLUE + "div" + END + "&gt;a &amp; b ~red~ c &gt; d&lt;" + BLUE + "/div" + END + "&gt;",
+			XmlHighlighter.highlight(xml));
+	}
+
+	@Test
+	public void testQuotedAngleBracketDoesNotEndTag() {
+		String xml = "<valueString value='a > b'/>";
+
+		assertEquals("&lt;" + BLUE + "valueString " + RED + "value" + END + BLACK + "='" + END + GREEN + "a &gt; b" + END + BLACK + "'" + END + END + "/&gt;",
+			XmlHighlighter.highlight(xml));
+	}
+
+	@Test
+	public void testCommentIsEscaped() {
+		assertEquals("&lt;" + BLUE + "!-- a &lt;b&gt; &amp; c --" + END + "&gt;",
+			XmlHighlighter.highlight("<!-- a <b> & c -->"));
+	}
+
+	@Test
+	public void testUnclosedMarkup() {
+		assertEquals("text &lt;Patient", XmlHighlighter.highlight("text <Patient"));
+	}
+
+	private static String attribute(String name, String value) {
+		return RED + name + END + BLACK + "=\"" + END + GREEN + value + END + BLACK + "\"" + END;
+	}
+}
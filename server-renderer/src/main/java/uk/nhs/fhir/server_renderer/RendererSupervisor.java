@@ -29,6 +29,8 @@ public class RendererSupervisor {
 	public void tryStartRendering(Path sourceDirectory, Path destinationDirectory, Path githubCacheDir, Optional<Path> logFileDir, ServerRendererWindow mainAppWindow) {
 		Optional<Set<String>> allowedMissingExtensionPrefixes = mainAppWindow.getAllowedMissingExtensionPrefixes();
 		Optional<Set<String>> localDomains = mainAppWindow.getLocalDomains();
+		int renderThreads = mainAppWindow.getRenderThreads();
+		boolean incremental = mainAppWindow.getIncremental();
 		
 		final String outputDesc = " -> " + destinationDirectory.toString();
 		
@@ -42,7 +44,7 @@ public class RendererSupervisor {
 			long currentTimeMillis = System.currentTimeMillis();
 			Thread renderer = createRenderMainThread(sourceDirectory, destinationDirectory, githubCacheDir, 
 				logFileDir.map(dir -> dir.resolve("render" + currentTimeMillis + ".log")), mainAppWindow, allowedMissingExtensionPrefixes,
-				localDomains);
+				localDomains, renderThreads, incremental);
 			
 			if (isRendering.compareAndSet(false, true)) {
 				renderer.start();
@@ -58,7 +60,8 @@ public class RendererSupervisor {
 	}
 
 	private Thread createRenderMainThread(final Path sourceDirectory, final Path destinationDirectory, final Path githubCacheDir, final Optional<Path> logFile, 
-		final JFrame parentWindow, final Optional<Set<String>> allowedMissingExtensionPrefixes, final Optional<Set<String>> localDomains) {
+		final JFrame parentWindow, final Optional<Set<String>> allowedMissingExtensionPrefixes, final Optional<Set<String>> localDomains,
+		final int renderThreads, final boolean incremental) {
 		return new Thread(new Runnable() {
 			public void run() {
 				try {
@@ -69,7 +72,7 @@ public class RendererSupervisor {
 					
 					FhirProfileRenderer renderer = new FhirProfileRenderer(sourceDirectory, destinationDirectory, newBaseUrl, allowedMissingExtensionPrefixes, 
 							Optional.of(githubCacheDir), new DeferredDialogEventAccumulator(parentWindow, logFile.map(Path::toFile)),
-							localDomains, true);
+							localDomains, true, renderThreads, incremental);
 					
 					RendererExitStatus exitStatus = renderer.process();
 					output.displayUpdate("Renderer exited with code " + exitStatus.exitCode());
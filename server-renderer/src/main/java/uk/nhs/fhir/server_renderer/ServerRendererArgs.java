@@ -7,11 +7,16 @@ public class ServerRendererArgs {
 	private final boolean largeText;
 	private final Optional<Set<String>> localDomains;
 	private final Optional<Set<String>> allowedMissingExtensionPrefixes;
+	private final Optional<Integer> renderThreads;
+	private final boolean incremental;
 	
-	public ServerRendererArgs(boolean largeText, Optional<Set<String>> localDomains, Optional<Set<String>> allowedMissingExtensionPrefixes) {
+	public ServerRendererArgs(boolean largeText, Optional<Set<String>> localDomains, Optional<Set<String>> allowedMissingExtensionPrefixes,
+			Optional<Integer> renderThreads, boolean incremental) {
 		this.largeText = largeText;
 		this.localDomains = localDomains;
 		this.allowedMissingExtensionPrefixes = allowedMissingExtensionPrefixes;
+		this.renderThreads = renderThreads;
+		this.incremental = incremental;
 	}
 	
 	public boolean getLargeText() {
@@ -25,4 +30,12 @@ public class ServerRendererArgs {
 	public Optional<Set<String>> getAllowedMissingExtensionPrefixes() {
 		return allowedMissingExtensionPrefixes;
 	}
+	
+	public Optional<Integer> getRenderThreads() {
+		return renderThreads;
+	}
+	
+	public boolean getIncremental() {
+		return incremental;
+	}
 }
@@ -7,6 +7,7 @@ import uk.nhs.fhir.util.cli.CliArgSpec;
 import uk.nhs.fhir.util.cli.CliArgSpecBuilder;
 import uk.nhs.fhir.util.cli.CliArgsParser;
 import uk.nhs.fhir.util.cli.CliFlag;
+import uk.nhs.fhir.util.cli.CliIntArg;
 import uk.nhs.fhir.util.cli.CliStringSetArg;
 import uk.nhs.fhir.util.cli.ParsedArgs;
 
@@ -14,6 +15,8 @@ public class ServerRendererCliArgsParser extends CliArgsParser<ServerRendererArg
 	
 	private static final CliStringSetArg ARG_MISSING_EXT = RendererCliArg.ARG_MISSING_EXT;
 	private static final CliStringSetArg ARG_LOCAL_DOMAINS = RendererCliArg.ARG_LOCAL_DOMAINS;
+	private static final CliIntArg ARG_RENDER_THREADS = RendererCliArg.ARG_RENDER_THREADS;
+	private static final CliFlag FLAG_INCREMENTAL = RendererCliArg.FLAG_INCREMENTAL;
 	private static final CliFlag ARG_LARGE_TEXT = new CliFlag("large-text", "enlarge windows and text for high density displays", "large-text", "t");
 	
 	private static final CliArgSpec SERVER_RENDERER_ARGS =
@@ -21,8 +24,10 @@ public class ServerRendererCliArgsParser extends CliArgsParser<ServerRendererArg
 			.optionalFlagged()
 				.addArg(ARG_MISSING_EXT)
 				.addArg(ARG_LOCAL_DOMAINS)
+				.addArg(ARG_RENDER_THREADS)
 			.booleanFlag()
 				.addFlag(ARG_LARGE_TEXT)
+				.addFlag(FLAG_INCREMENTAL)
 			.build();
 	
 	public ServerRendererCliArgsParser() {
@@ -34,7 +39,9 @@ public class ServerRendererCliArgsParser extends CliArgsParser<ServerRendererArg
 		return new ServerRendererArgs(
 			parsedArgs.get(ARG_LARGE_TEXT),
 			Optional.ofNullable(parsedArgs.get(ARG_LOCAL_DOMAINS)), 
-			Optional.ofNullable(parsedArgs.get(ARG_MISSING_EXT)));
+			Optional.ofNullable(parsedArgs.get(ARG_MISSING_EXT)),
+			Optional.ofNullable(parsedArgs.get(ARG_RENDER_THREADS)),
+			parsedArgs.get(FLAG_INCREMENTAL));
 	}
 
 }
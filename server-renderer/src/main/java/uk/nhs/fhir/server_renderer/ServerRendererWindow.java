@@ -18,12 +18,15 @@ import java.util.Set;
 
 import javax.swing.Box;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
@@ -41,6 +44,7 @@ public class ServerRendererWindow extends JFrame implements RendererListener {
 	private static final Font BIG_FONT = new Font("Dialog", Font.BOLD, 30);
 	private static final double BIG_WINDOW_HEIGHT_FACTOR = 1.5;
 	private static final double BIG_WINDOW_WIDTH_FACTOR = 1.5;
+	private static final int MAX_RENDER_THREADS = 64;
 	
 	private final Path renderedFileDir;
 	private final Path importedFileDir;
@@ -60,6 +64,14 @@ public class ServerRendererWindow extends JFrame implements RendererListener {
 		this.allowedMissingExtensionPrefixes = cliArgs.getAllowedMissingExtensionPrefixes();
 		this.localDomains = cliArgs.getLocalDomains();
 		
+		// 0 on the command line means one thread per processor
+		int renderThreads = cliArgs.getRenderThreads().orElse(1);
+		if (renderThreads == 0) {
+			renderThreads = Runtime.getRuntime().availableProcessors();
+		}
+		renderThreadsSpinner.setModel(new SpinnerNumberModel(Math.min(renderThreads, MAX_RENDER_THREADS), 1, MAX_RENDER_THREADS, 1));
+		incrementalCheckBox.setSelected(cliArgs.getIncremental());
+		
 		initWindow();
 		initPanel();
 		initButtonActions();
@@ -84,6 +96,11 @@ public class ServerRendererWindow extends JFrame implements RendererListener {
 	private final JButton chooseRootDirectoryButton = new JButton("Select...");
 	private final JFileChooser rootDirectoryChooser = new JFileChooser();
 
+	private final JPanel renderThreadsRow = new JPanel();
+	private final JLabel renderThreadsLabel = new JLabel("Render threads:");
+	private final JSpinner renderThreadsSpinner = new JSpinner();
+	private final JCheckBox incrementalCheckBox = new JCheckBox("Only render changed files");
+
 	private final JPanel buttonsBar = new JPanel();
 	private final JButton runRendererButton = new JButton("Run renderer");
 	private final JButton clearCacheButton = new JButton("Clear server cache");
@@ -169,6 +186,15 @@ public class ServerRendererWindow extends JFrame implements RendererListener {
 		mainCons.weightx = 1;
 		mainPanel.add(rendererRootFilePathRow, mainCons);
 		
+		renderThreadsRow.setLayout(new FlowLayout(FlowLayout.LEFT, 0, mainPadding));
+		renderThreadsRow.add(renderThreadsLabel);
+		renderThreadsRow.add(Box.createHorizontalStrut(mainPadding));
+		renderThreadsRow.add(renderThreadsSpinner);
+		renderThreadsRow.add(Box.createHorizontalStrut(mainPadding));
+		renderThreadsRow.add(incrementalCheckBox);
+		mainCons.gridy = 1;
+		mainPanel.add(renderThreadsRow, mainCons);
+		
 		buttonsBar.setLayout(new FlowLayout());
 		buttonsBar.add(runRendererButton);
 		buttonsBar.add(clearCacheButton);
@@ -276,6 +302,8 @@ public class ServerRendererWindow extends JFrame implements RendererListener {
 				runRendererButton.setText("Running");
 
 				chooseRootDirectoryButton.setEnabled(false);
+				renderThreadsSpinner.setEnabled(false);
+				incrementalCheckBox.setEnabled(false);
 				clearCacheButton.setEnabled(false);
 				exportToZipButton.setEnabled(false);
 			}});
@@ -288,6 +316,8 @@ public class ServerRendererWindow extends JFrame implements RendererListener {
 			public void run() {
 				runRendererButton.setText("Loading resources");
 				chooseRootDirectoryButton.setEnabled(true);
+				renderThreadsSpinner.setEnabled(true);
+				incrementalCheckBox.setEnabled(true);
 			}});
 		
 		FilesystemIF.invalidateCache();
@@ -309,4 +339,12 @@ public class ServerRendererWindow extends JFrame implements RendererListener {
 	public Optional<Set<String>> getLocalDomains() {
 		return localDomains;
 	}
+
+	public int getRenderThreads() {
+		return (Integer)renderThreadsSpinner.getValue();
+	}
+
+	public boolean getIncremental() {
+		return incrementalCheckBox.isSelected();
+	}
 }